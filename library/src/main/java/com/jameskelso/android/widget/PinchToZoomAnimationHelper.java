@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.graphics.Matrix;
+import android.support.annotation.NonNull;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * Encapsulates programmatic zoom and pan animation for {@link PinchToZoomImageView}.
+ * <p/>
+ * {@link #start(Matrix, Matrix)} reads the zoom level and translation of the current image
+ * matrix and of the destination matrix. The destination is expected to already be within the zoom
+ * and translation bounds of the view. Once per frame, when stepped by the shared
+ * {@link PinchToZoomFrameDriver}, the zoom level and translation are interpolated between the two
+ * and reported to {@link #mAnimationListener}, which applies them to the image. Values are held
+ * in primitive fields, so no objects are allocated while the animation runs.
+ * <p/>
+ * {@link #stop()} ends the animation immediately, leaving the image where the last frame put it.
+ */
+class PinchToZoomAnimationHelper implements PinchToZoomFrameDriver.FrameClient {
+    // Duration of an animation, in milliseconds
+    protected static final long DEFAULT_DURATION = 300;
+
+    // Recycled objects to avoid new instance creation
+    protected final float[] mMatrixValues = new float[9];
+
+    protected final Interpolator mInterpolator = new AccelerateDecelerateInterpolator();
+    protected final OnPinchToZoomAnimationListener mAnimationListener;
+
+    protected long mDuration = DEFAULT_DURATION;
+
+    // Zoom level and translation at the start and end of the animation
+    protected float mFromScale;
+    protected float mFromTranslationX;
+    protected float mFromTranslationY;
+    protected float mToScale;
+    protected float mToTranslationX;
+    protected float mToTranslationY;
+
+    // Time the animation started, on the same clock as Choreographer frame times
+    protected long mStartTimeNanos;
+
+    // Whether the helper is registered with the frame driver
+    protected boolean mAnimating;
+
+    PinchToZoomAnimationHelper(@NonNull OnPinchToZoomAnimationListener listener) {
+        mAnimationListener = listener;
+    }
+
+    /**
+     * Start animating from one image matrix to another, stopping any animation already in
+     * progress. Only the scale and translation of each matrix are used.
+     *
+     * @param from the current image matrix
+     * @param to   the image matrix at the end of the animation
+     */
+    void start(Matrix from, Matrix to) {
+        stop();
+
+        from.getValues(mMatrixValues);
+        mFromScale = mMatrixValues[Matrix.MSCALE_X];
+        mFromTranslationX = mMatrixValues[Matrix.MTRANS_X];
+        mFromTranslationY = mMatrixValues[Matrix.MTRANS_Y];
+
+        to.getValues(mMatrixValues);
+        mToScale = mMatrixValues[Matrix.MSCALE_X];
+        mToTranslationX = mMatrixValues[Matrix.MTRANS_X];
+        mToTranslationY = mMatrixValues[Matrix.MTRANS_Y];
+
+        mStartTimeNanos = System.nanoTime();
+        mAnimating = true;
+        addToFrameDriver();
+    }
+
+    /**
+     * Stop the current animation, if there is one.
+     */
+    void stop() {
+        if (!mAnimating) {
+            return;
+        }
+        mAnimating = false;
+        removeFromFrameDriver();
+    }
+
+    /**
+     * Determine whether an animation is in progress.
+     *
+     * @return a boolean indicating whether or not an animation is in progress
+     */
+    boolean isAnimating() {
+        return mAnimating;
+    }
+
+    /**
+     * Interpolate the zoom level and translation for the current frame and notify
+     * {@link #mAnimationListener}.
+     *
+     * @param frameTimeNanos the time at which the frame started rendering
+     * @return true until the animation reaches its destination
+     */
+    @Override
+    public boolean doFrame(long frameTimeNanos) {
+        if (!mAnimating) {
+            return false;
+        }
+
+        float elapsed = (frameTimeNanos - mStartTimeNanos) / 1000000f;
+        float input = Math.max(0f, Math.min(1f, elapsed / mDuration));
+        float fraction = mInterpolator.getInterpolation(input);
+        if (input >= 1f) {
+            mAnimating = false;
+        }
+
+        // The listener may start a new animation, in which case the helper stays registered
+        mAnimationListener.onAnimationStep(
+                mFromScale + (mToScale - mFromScale) * fraction,
+                mFromTranslationX + (mToTranslationX - mFromTranslationX) * fraction,
+                mFromTranslationY + (mToTranslationY - mFromTranslationY) * fraction);
+        return mAnimating;
+    }
+
+    protected void addToFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().add(this);
+    }
+
+    protected void removeFromFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().remove(this);
+    }
+
+    /**
+     * An interface which allows an interested class to be notified of each frame of an animation.
+     */
+    interface OnPinchToZoomAnimationListener {
+        void onAnimationStep(float scaleFactor, float translationX, float translationY);
+    }
+}
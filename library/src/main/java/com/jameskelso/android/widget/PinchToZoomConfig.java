@@ -0,0 +1,418 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.jameskelso.android.widget;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StyleRes;
+import android.util.AttributeSet;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable zoom configuration for {@link PinchToZoomImageView}. Any number of views may share a
+ * single instance, so a view holds only a reference to its configuration alongside its dynamic
+ * state (the image matrix and zoom level).
+ * <p/>
+ * Instances are interned, so views with equal configuration share the same instance. Changing a
+ * value creates (or finds) a different instance using one of the with methods, such as
+ * {@link #withPadding(int, int, int, int)}; the original is never modified.
+ * <p/>
+ * Configuration from layout XML is resolved by {@link #obtain(Context, AttributeSet, int, int)}.
+ * When the layout element sets none of the PinchToZoomImageView attributes itself and relies only
+ * on a style, the resolved configuration is cached per theme and style, so views that share a
+ * style only read their styled attributes once.
+ */
+final class PinchToZoomConfig {
+    // Canonical instances, keyed by value. Guarded by PinchToZoomConfig.class.
+    private static final Map<PinchToZoomConfig, WeakReference<PinchToZoomConfig>> sInterned =
+            new WeakHashMap<PinchToZoomConfig, WeakReference<PinchToZoomConfig>>();
+
+    /**
+     * Configuration of a view that has not been given any
+     */
+    static final PinchToZoomConfig DEFAULT = intern(new PinchToZoomConfig(false, true, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, PinchToZoomTouchHelper.DEFAULT_PAN_THRESHOLD, false));
+
+    // Configuration resolved from styles, keyed by theme. Guarded by PinchToZoomConfig.class.
+    private static final Map<Resources.Theme, Map<StyleKey, PinchToZoomConfig>> sStyleCache =
+            new WeakHashMap<Resources.Theme, Map<StyleKey, PinchToZoomConfig>>();
+
+    final boolean cropToPadding;
+    final boolean pinAxesSmallerThanViewBounds;
+    final int paddingLeft;
+    final int paddingTop;
+    final int paddingRight;
+    final int paddingBottom;
+    final int translationExtraLeft;
+    final int translationExtraTop;
+    final int translationExtraRight;
+    final int translationExtraBottom;
+    final int minBitmapWidth;
+    final int minBitmapHeight;
+    final int maxBitmapWidth;
+    final int maxBitmapHeight;
+    final int panThreshold;
+    final boolean lightweight;
+
+    private PinchToZoomConfig(boolean cropToPadding, boolean pinAxesSmallerThanViewBounds,
+                              int paddingLeft, int paddingTop, int paddingRight,
+                              int paddingBottom, int translationExtraLeft,
+                              int translationExtraTop, int translationExtraRight,
+                              int translationExtraBottom, int minBitmapWidth,
+                              int minBitmapHeight, int maxBitmapWidth, int maxBitmapHeight,
+                              int panThreshold, boolean lightweight) {
+        this.cropToPadding = cropToPadding;
+        this.pinAxesSmallerThanViewBounds = pinAxesSmallerThanViewBounds;
+        this.paddingLeft = paddingLeft;
+        this.paddingTop = paddingTop;
+        this.paddingRight = paddingRight;
+        this.paddingBottom = paddingBottom;
+        this.translationExtraLeft = translationExtraLeft;
+        this.translationExtraTop = translationExtraTop;
+        this.translationExtraRight = translationExtraRight;
+        this.translationExtraBottom = translationExtraBottom;
+        this.minBitmapWidth = minBitmapWidth;
+        this.minBitmapHeight = minBitmapHeight;
+        this.maxBitmapWidth = maxBitmapWidth;
+        this.maxBitmapHeight = maxBitmapHeight;
+        this.panThreshold = panThreshold;
+        this.lightweight = lightweight;
+    }
+
+    /**
+     * Resolve the configuration for a view from layout XML. Padding and crop-to-padding are not
+     * part of the PinchToZoomImageView styleable, so they are left at their defaults; apply them
+     * from the view using {@link #withPadding(int, int, int, int)} and
+     * {@link #withCropToPadding(boolean)}.
+     * <p/>
+     * Note that the style cache assumes a theme is not modified after views have been inflated
+     * with it.
+     *
+     * @param context     context of the view, providing its theme
+     * @param attrs       attribute set provided by the constructor of the view
+     * @param defStyle    attribute ID that points to default style resource provided by constructor
+     * @param defStyleRes default style resource provided by constructor
+     * @return the resolved configuration
+     */
+    @NonNull
+    static PinchToZoomConfig obtain(@NonNull Context context, @Nullable AttributeSet attrs,
+                                    int defStyle, @StyleRes int defStyleRes) {
+        if (attrs == null) {
+            return DEFAULT;
+        }
+
+        // Only configuration that comes entirely from styles can be shared between elements
+        StyleKey key = null;
+        if (!hasInlineAttributes(attrs)) {
+            key = new StyleKey(attrs.getStyleAttribute(), defStyle, defStyleRes);
+            synchronized (PinchToZoomConfig.class) {
+                Map<StyleKey, PinchToZoomConfig> styles = sStyleCache.get(context.getTheme());
+                PinchToZoomConfig cached = styles != null ? styles.get(key) : null;
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
+        PinchToZoomConfig config = resolve(context, attrs, defStyle, defStyleRes);
+
+        if (key != null) {
+            synchronized (PinchToZoomConfig.class) {
+                Map<StyleKey, PinchToZoomConfig> styles = sStyleCache.get(context.getTheme());
+                if (styles == null) {
+                    styles = new HashMap<StyleKey, PinchToZoomConfig>();
+                    sStyleCache.put(context.getTheme(), styles);
+                }
+                styles.put(key, config);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Read the PinchToZoomImageView styled attributes.
+     */
+    private static PinchToZoomConfig resolve(Context context, AttributeSet attrs, int defStyle,
+                                             @StyleRes int defStyleRes) {
+        TypedArray a = context.obtainStyledAttributes(attrs,
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView, defStyle,
+                defStyleRes);
+
+        boolean lightweight = a.getBoolean(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_lightweight, false);
+
+        int minBitmapWidth = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_minBitmapWidth, 0);
+        int minBitmapHeight = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_minBitmapHeight, 0);
+
+        int maxBitmapWidth = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_maxBitmapWidth,
+                0);
+        int maxBitmapHeight = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_maxBitmapHeight,
+                0);
+
+        int panThreshold = a.getInt(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_panThreshold,
+                PinchToZoomTouchHelper.DEFAULT_PAN_THRESHOLD);
+
+        boolean pinAxes = a.getBoolean(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_pinAxesSmallerThanBounds,
+                true);
+
+        int translationExtraLeft = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraLeft, 0);
+        int translationExtraTop = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraTop, 0);
+        int translationExtraRight = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraRight, 0);
+        int translationExtraBottom = a.getDimensionPixelSize(
+                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraBottom, 0);
+
+        a.recycle();
+
+        // A minimum size only applies if it has been set
+        if (minBitmapWidth != 0 || minBitmapHeight != 0) {
+            verifyBitmapMinimumSize(minBitmapWidth, minBitmapHeight);
+        }
+        verifyTranslationExtra(translationExtraLeft, translationExtraTop, translationExtraRight,
+                translationExtraBottom);
+
+        return intern(new PinchToZoomConfig(false, pinAxes, 0, 0, 0, 0, translationExtraLeft,
+                translationExtraTop, translationExtraRight, translationExtraBottom,
+                minBitmapWidth, minBitmapHeight, maxBitmapWidth, maxBitmapHeight, panThreshold,
+                lightweight));
+    }
+
+    /**
+     * Determine whether a layout element sets any PinchToZoomImageView attribute directly,
+     * rather than through a style.
+     */
+    private static boolean hasInlineAttributes(AttributeSet attrs) {
+        int[] styleable = R.styleable.com_jameskelso_android_widget_PinchToZoomImageView;
+        for (int i = 0; i < attrs.getAttributeCount(); i++) {
+            int nameResource = attrs.getAttributeNameResource(i);
+            for (int attr : styleable) {
+                if (attr == nameResource) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the canonical instance equal to a configuration, making it canonical if there is none.
+     */
+    private static synchronized PinchToZoomConfig intern(PinchToZoomConfig config) {
+        WeakReference<PinchToZoomConfig> ref = sInterned.get(config);
+        PinchToZoomConfig interned = ref != null ? ref.get() : null;
+        if (interned == null) {
+            sInterned.put(config, new WeakReference<PinchToZoomConfig>(config));
+            interned = config;
+        }
+        return interned;
+    }
+
+    private static void verifyTranslationExtra(int left, int top, int right, int bottom) {
+        if (left < 0 || top < 0 || right < 0 || bottom < 0) {
+            throw new IllegalArgumentException("setTranslationExtra() values cannot be less than " +
+                    "0. Use setPadding() combined with setCropToPadding(true) instead.");
+        }
+    }
+
+    private static void verifyBitmapMinimumSize(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException(
+                    "Minimum bitmap width and height must be greater than 0.");
+        }
+    }
+
+    PinchToZoomConfig withCropToPadding(boolean cropToPadding) {
+        if (cropToPadding == this.cropToPadding) {
+            return this;
+        }
+        return intern(new PinchToZoomConfig(cropToPadding, pinAxesSmallerThanViewBounds,
+                paddingLeft, paddingTop, paddingRight, paddingBottom, translationExtraLeft,
+                translationExtraTop, translationExtraRight, translationExtraBottom,
+                minBitmapWidth, minBitmapHeight, maxBitmapWidth, maxBitmapHeight, panThreshold,
+                lightweight));
+    }
+
+    PinchToZoomConfig withPinAxesSmallerThanViewBounds(boolean pinAxesSmallerThanViewBounds) {
+        if (pinAxesSmallerThanViewBounds == this.pinAxesSmallerThanViewBounds) {
+            return this;
+        }
+        return intern(new PinchToZoomConfig(cropToPadding, pinAxesSmallerThanViewBounds,
+                paddingLeft, paddingTop, paddingRight, paddingBottom, translationExtraLeft,
+                translationExtraTop, translationExtraRight, translationExtraBottom,
+                minBitmapWidth, minBitmapHeight, maxBitmapWidth, maxBitmapHeight, panThreshold,
+                lightweight));
+    }
+
+    PinchToZoomConfig withPadding(int left, int top, int right, int bottom) {
+        if (left == paddingLeft && top == paddingTop && right == paddingRight
+                && bottom == paddingBottom) {
+            return this;
+        }
+        return intern(new PinchToZoomConfig(cropToPadding, pinAxesSmallerThanViewBounds, left,
+                top, right, bottom, translationExtraLeft, translationExtraTop,
+                translationExtraRight, translationExtraBottom, minBitmapWidth, minBitmapHeight,
+                maxBitmapWidth, maxBitmapHeight, panThreshold, lightweight));
+    }
+
+    /**
+     * @throws IllegalArgumentException if any value is negative
+     */
+    PinchToZoomConfig withTranslationExtra(int left, int top, int right, int bottom) {
+        verifyTranslationExtra(left, top, right, bottom);
+        if (left == translationExtraLeft && top == translationExtraTop
+                && right == translationExtraRight && bottom == translationExtraBottom) {
+            return this;
+        }
+        return intern(new PinchToZoomConfig(cropToPadding, pinAxesSmallerThanViewBounds,
+                paddingLeft, paddingTop, paddingRight, paddingBottom, left, top, right, bottom,
+                minBitmapWidth, minBitmapHeight, maxBitmapWidth, maxBitmapHeight, panThreshold,
+                lightweight));
+    }
+
+    /**
+     * @throws IllegalArgumentException if width or height is less than 1
+     */
+    PinchToZoomConfig withBitmapMinimumSize(int width, int height) {
+        verifyBitmapMinimumSize(width, height);
+        if (width == minBitmapWidth && height == minBitmapHeight) {
+            return this;
+        }
+        return intern(new PinchToZoomConfig(cropToPadding, pinAxesSmallerThanViewBounds,
+                paddingLeft, paddingTop, paddingRight, paddingBottom, translationExtraLeft,
+                translationExtraTop, translationExtraRight, translationExtraBottom, width, height,
+                maxBitmapWidth, maxBitmapHeight, panThreshold, lightweight));
+    }
+
+    PinchToZoomConfig withBitmapMaximumSize(int width, int height) {
+        if (width == maxBitmapWidth && height == maxBitmapHeight) {
+            return this;
+        }
+        return intern(new PinchToZoomConfig(cropToPadding, pinAxesSmallerThanViewBounds,
+                paddingLeft, paddingTop, paddingRight, paddingBottom, translationExtraLeft,
+                translationExtraTop, translationExtraRight, translationExtraBottom,
+                minBitmapWidth, minBitmapHeight, width, height, panThreshold, lightweight));
+    }
+
+    PinchToZoomConfig withPanThreshold(int panThreshold) {
+        if (panThreshold == this.panThreshold) {
+            return this;
+        }
+        return intern(new PinchToZoomConfig(cropToPadding, pinAxesSmallerThanViewBounds,
+                paddingLeft, paddingTop, paddingRight, paddingBottom, translationExtraLeft,
+                translationExtraTop, translationExtraRight, translationExtraBottom,
+                minBitmapWidth, minBitmapHeight, maxBitmapWidth, maxBitmapHeight, panThreshold,
+                lightweight));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PinchToZoomConfig)) {
+            return false;
+        }
+        PinchToZoomConfig that = (PinchToZoomConfig) o;
+        return cropToPadding == that.cropToPadding
+                && pinAxesSmallerThanViewBounds == that.pinAxesSmallerThanViewBounds
+                && paddingLeft == that.paddingLeft
+                && paddingTop == that.paddingTop
+                && paddingRight == that.paddingRight
+                && paddingBottom == that.paddingBottom
+                && translationExtraLeft == that.translationExtraLeft
+                && translationExtraTop == that.translationExtraTop
+                && translationExtraRight == that.translationExtraRight
+                && translationExtraBottom == that.translationExtraBottom
+                && minBitmapWidth == that.minBitmapWidth
+                && minBitmapHeight == that.minBitmapHeight
+                && maxBitmapWidth == that.maxBitmapWidth
+                && maxBitmapHeight == that.maxBitmapHeight
+                && panThreshold == that.panThreshold
+                && lightweight == that.lightweight;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = cropToPadding ? 1 : 0;
+        result = 31 * result + (pinAxesSmallerThanViewBounds ? 1 : 0);
+        result = 31 * result + paddingLeft;
+        result = 31 * result + paddingTop;
+        result = 31 * result + paddingRight;
+        result = 31 * result + paddingBottom;
+        result = 31 * result + translationExtraLeft;
+        result = 31 * result + translationExtraTop;
+        result = 31 * result + translationExtraRight;
+        result = 31 * result + translationExtraBottom;
+        result = 31 * result + minBitmapWidth;
+        result = 31 * result + minBitmapHeight;
+        result = 31 * result + maxBitmapWidth;
+        result = 31 * result + maxBitmapHeight;
+        result = 31 * result + panThreshold;
+        result = 31 * result + (lightweight ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * Identifies the styles an element was inflated with
+     */
+    private static final class StyleKey {
+        final int styleAttribute;
+        final int defStyle;
+        final int defStyleRes;
+
+        StyleKey(int styleAttribute, int defStyle, int defStyleRes) {
+            this.styleAttribute = styleAttribute;
+            this.defStyle = defStyle;
+            this.defStyleRes = defStyleRes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StyleKey)) {
+                return false;
+            }
+            StyleKey that = (StyleKey) o;
+            return styleAttribute == that.styleAttribute && defStyle == that.defStyle
+                    && defStyleRes == that.defStyleRes;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * styleAttribute + defStyle) + defStyleRes;
+        }
+    }
+}
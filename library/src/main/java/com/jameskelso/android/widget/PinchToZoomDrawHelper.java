@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+
+/**
+ * Draws only the visible part of a bitmap for {@link PinchToZoomImageView}.
+ * <p/>
+ * {@link android.widget.ImageView} draws the whole drawable through the image matrix and relies
+ * on the canvas clip to discard what falls outside the view. When the image is zoomed far in,
+ * only a small window of the bitmap is visible, but the whole bitmap is still submitted for
+ * filtering. Instead, {@link #draw(Canvas, Drawable, Matrix)} maps the clip bounds of the canvas
+ * back through the inverse of the transform from bitmap pixels to the view, rounds the result out
+ * to whole bitmap pixels, and draws just that source rectangle into the matching destination
+ * rectangle.
+ * <p/>
+ * Only a {@link BitmapDrawable} that is not tiled, drawn through a matrix that only scales and
+ * translates, can be drawn this way. {@link #canDraw(Drawable, Matrix)} reports whether that is
+ * the case so the view can fall back to the regular draw. The bitmap is drawn with the paint of
+ * the drawable, so its alpha, color filter and filtering are kept. All objects are recycled, so
+ * nothing is allocated while drawing.
+ */
+class PinchToZoomDrawHelper {
+    // Recycled objects to avoid new instance creation
+    protected final float[] mMatrixValues = new float[9];
+    protected final Matrix mBitmapMatrix = new Matrix();
+    protected final Matrix mInverse = new Matrix();
+    protected final Rect mClipBounds = new Rect();
+    protected final RectF mVisible = new RectF();
+    protected final Rect mSrc = new Rect();
+    protected final RectF mDst = new RectF();
+
+    /**
+     * Determine whether a drawable can be drawn through an image matrix by
+     * {@link #draw(Canvas, Drawable, Matrix)}.
+     *
+     * @param drawable    the drawable of the view
+     * @param imageMatrix the image matrix of the view
+     * @return a boolean indicating whether or not only the visible part can be drawn
+     */
+    boolean canDraw(@Nullable Drawable drawable, Matrix imageMatrix) {
+        if (!(drawable instanceof BitmapDrawable)) {
+            return false;
+        }
+        BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
+        Bitmap bitmap = bitmapDrawable.getBitmap();
+        if (bitmap == null || bitmap.isRecycled() || bitmapDrawable.getTileModeX() != null
+                || bitmapDrawable.getTileModeY() != null || drawable.getBounds().isEmpty()) {
+            return false;
+        }
+
+        imageMatrix.getValues(mMatrixValues);
+        return mMatrixValues[Matrix.MSKEW_X] == 0 && mMatrixValues[Matrix.MSKEW_Y] == 0
+                && mMatrixValues[Matrix.MSCALE_X] > 0 && mMatrixValues[Matrix.MSCALE_Y] > 0
+                && mMatrixValues[Matrix.MPERSP_0] == 0 && mMatrixValues[Matrix.MPERSP_1] == 0;
+    }
+
+    /**
+     * Draw the part of a bitmap drawable that falls within the clip bounds of a canvas. The
+     * canvas must already be translated to the content area of the view, as
+     * {@link android.widget.ImageView} does before applying the image matrix. Only call this if
+     * {@link #canDraw(Drawable, Matrix)} returns true.
+     *
+     * @param canvas      the canvas to draw on
+     * @param drawable    the drawable of the view
+     * @param imageMatrix the image matrix of the view
+     */
+    void draw(Canvas canvas, Drawable drawable, Matrix imageMatrix) {
+        if (!canvas.getClipBounds(mClipBounds)) {
+            return;
+        }
+
+        BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
+        Bitmap bitmap = bitmapDrawable.getBitmap();
+        if (!getVisibleSource(bitmap.getWidth(), bitmap.getHeight(), drawable.getBounds(),
+                imageMatrix, mClipBounds)) {
+            return;
+        }
+        canvas.drawBitmap(bitmap, mSrc, mDst, bitmapDrawable.getPaint());
+    }
+
+    /**
+     * Work out which bitmap pixels fall within a visible rectangle, storing them in
+     * {@link #mSrc}, and where those pixels are drawn, storing it in {@link #mDst}.
+     *
+     * @param bitmapWidth  width of the bitmap, in pixels
+     * @param bitmapHeight height of the bitmap, in pixels
+     * @param bounds       bounds of the drawable, which the bitmap is stretched to fill
+     * @param imageMatrix  the image matrix of the view
+     * @param visible      the visible rectangle, in the coordinates the image matrix maps to
+     * @return false if no part of the bitmap is visible
+     */
+    protected boolean getVisibleSource(int bitmapWidth, int bitmapHeight, Rect bounds,
+                                       Matrix imageMatrix, Rect visible) {
+        // Bitmap pixels to drawable bounds, then drawable bounds to the view
+        mBitmapMatrix.setScale((float) bounds.width() / bitmapWidth,
+                (float) bounds.height() / bitmapHeight);
+        mBitmapMatrix.postTranslate(bounds.left, bounds.top);
+        mBitmapMatrix.postConcat(imageMatrix);
+        if (!mBitmapMatrix.invert(mInverse)) {
+            return false;
+        }
+
+        mVisible.set(visible);
+        mInverse.mapRect(mVisible);
+        mVisible.roundOut(mSrc);
+        if (!mSrc.intersect(0, 0, bitmapWidth, bitmapHeight)) {
+            return false;
+        }
+
+        // Draw whole source pixels, so the destination may extend slightly past the visible area
+        mDst.set(mSrc);
+        mBitmapMatrix.mapRect(mDst);
+        return true;
+    }
+}
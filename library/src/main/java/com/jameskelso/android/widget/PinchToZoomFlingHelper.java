@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.content.Context;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.widget.OverScroller;
+
+/**
+ * Encapsulates fling logic for {@link PinchToZoomImageView}.
+ * <p/>
+ * {@link #fling(float, float, RectF)} starts an {@link OverScroller} fling from the current
+ * position of the image, limited to the translation that is available before the image would cross
+ * the bounds of the view. The fling is advanced once per frame by the shared
+ * {@link PinchToZoomFrameDriver}, and each step is reported to {@link #mFlingListener} as the
+ * distance moved since the previous frame. Positions are tracked relative to where the fling
+ * started, so no objects are allocated while the fling runs.
+ * <p/>
+ * {@link #stop()} ends the fling immediately, for example when the user touches the view again.
+ */
+class PinchToZoomFlingHelper implements PinchToZoomFrameDriver.FrameClient {
+    protected final OverScroller mScroller;
+    protected final OnPinchToZoomFlingListener mFlingListener;
+
+    // Position reported by the scroller on the previous frame
+    protected int mLastX;
+    protected int mLastY;
+
+    // Whether the helper is registered with the frame driver
+    protected boolean mFlinging;
+
+    PinchToZoomFlingHelper(Context context, @NonNull OnPinchToZoomFlingListener listener) {
+        mScroller = new OverScroller(context);
+        mFlingListener = listener;
+    }
+
+    /**
+     * Start a fling, stopping any fling already in progress.
+     *
+     * @param velocityX            initial velocity on the X coordinate plane, in pixels per second
+     * @param velocityY            initial velocity on the Y coordinate plane, in pixels per second
+     * @param availableTranslation how far the image may travel from its current position. The
+     *                             left and right values are the smallest and largest translation
+     *                             on the X coordinate plane, and top and bottom on the Y
+     *                             coordinate plane.
+     */
+    void fling(float velocityX, float velocityY, RectF availableTranslation) {
+        stop();
+
+        mScroller.fling(0, 0, Math.round(velocityX), Math.round(velocityY),
+                (int) availableTranslation.left, (int) availableTranslation.right,
+                (int) availableTranslation.top, (int) availableTranslation.bottom);
+        if (mScroller.isFinished()) {
+            return;
+        }
+
+        mLastX = 0;
+        mLastY = 0;
+        mFlinging = true;
+        addToFrameDriver();
+    }
+
+    /**
+     * Stop the current fling, if there is one. The image stays where the last frame left it.
+     */
+    void stop() {
+        if (!mFlinging) {
+            return;
+        }
+        mFlinging = false;
+        mScroller.forceFinished(true);
+        removeFromFrameDriver();
+    }
+
+    /**
+     * Determine whether a fling is in progress.
+     *
+     * @return a boolean indicating whether or not a fling is in progress
+     */
+    boolean isFlinging() {
+        return mFlinging;
+    }
+
+    /**
+     * Advance the fling to the current frame and notify {@link #mFlingListener} of the distance
+     * moved.
+     *
+     * @param frameTimeNanos the time at which the frame started rendering
+     * @return true until the fling is finished
+     */
+    @Override
+    public boolean doFrame(long frameTimeNanos) {
+        if (!mFlinging) {
+            return false;
+        }
+
+        boolean running = mScroller.computeScrollOffset();
+        int x = mScroller.getCurrX();
+        int y = mScroller.getCurrY();
+        int dx = x - mLastX;
+        int dy = y - mLastY;
+        mLastX = x;
+        mLastY = y;
+        if (!running || mScroller.isFinished()) {
+            mFlinging = false;
+        }
+
+        // The listener may start a new fling, in which case the helper stays registered
+        if (dx != 0 || dy != 0) {
+            mFlingListener.onFlingStep(dx, dy);
+        }
+        return mFlinging;
+    }
+
+    protected void addToFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().add(this);
+    }
+
+    protected void removeFromFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().remove(this);
+    }
+
+    /**
+     * An interface which allows an interested class to be notified as a fling moves the image.
+     */
+    interface OnPinchToZoomFlingListener {
+        void onFlingStep(float dx, float dy);
+    }
+}
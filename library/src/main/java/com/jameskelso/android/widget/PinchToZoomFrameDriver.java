@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * A process wide frame driver for the animations and flings of every
+ * {@link PinchToZoomImageView}.
+ * <p/>
+ * Rather than each helper posting its own {@link Choreographer} frame callback, helpers register
+ * a {@link FrameClient} with {@link #add(FrameClient)}. The driver posts a single frame callback
+ * while at least one client is registered and steps every client in a single pass per frame. A
+ * client that returns false from {@link FrameClient#doFrame(long)} is dropped, and once no clients
+ * remain the driver stops posting frame callbacks until a client is added again.
+ * <p/>
+ * Clients may be added and removed at any time, including from inside a frame. Clients added
+ * while a frame is being dispatched are first stepped on the following frame. The driver must only
+ * be used from the main thread.
+ */
+class PinchToZoomFrameDriver implements Choreographer.FrameCallback {
+    private static PinchToZoomFrameDriver sInstance;
+
+    // Registered clients. Entries removed during a frame are set to null and compacted afterwards.
+    protected final ArrayList<FrameClient> mClients = new ArrayList<FrameClient>();
+
+    // Whether a frame callback is currently posted
+    protected boolean mPosted;
+
+    // Whether clients are currently being stepped
+    protected boolean mDispatching;
+
+    /**
+     * Retrieve the frame driver shared by every view in the process.
+     *
+     * @return the shared frame driver
+     */
+    static PinchToZoomFrameDriver getInstance() {
+        if (sInstance == null) {
+            sInstance = new PinchToZoomFrameDriver();
+        }
+        return sInstance;
+    }
+
+    PinchToZoomFrameDriver() {
+    }
+
+    /**
+     * Start stepping a client on every frame. Adding a client that is already registered has no
+     * effect.
+     *
+     * @param client the client to step
+     */
+    void add(@NonNull FrameClient client) {
+        if (mClients.contains(client)) {
+            return;
+        }
+        mClients.add(client);
+
+        // During a frame, the callback for the next frame is posted once dispatch has finished
+        if (!mPosted && !mDispatching) {
+            mPosted = true;
+            postFrameCallback();
+        }
+    }
+
+    /**
+     * Stop stepping a client. Removing a client that is not registered has no effect.
+     *
+     * @param client the client to stop stepping
+     */
+    void remove(@NonNull FrameClient client) {
+        int index = mClients.indexOf(client);
+        if (index < 0) {
+            return;
+        }
+
+        if (mDispatching) {
+            mClients.set(index, null);
+            return;
+        }
+
+        mClients.remove(index);
+        if (mClients.isEmpty() && mPosted) {
+            mPosted = false;
+            removeFrameCallback();
+        }
+    }
+
+    /**
+     * Determine whether any client is registered.
+     *
+     * @return a boolean indicating whether or not the driver has work to do
+     */
+    boolean isActive() {
+        return !mClients.isEmpty();
+    }
+
+    /**
+     * Step every registered client, drop those that have finished, and post another frame
+     * callback if any clients remain.
+     *
+     * @param frameTimeNanos the time at which the frame started rendering
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPosted = false;
+        mDispatching = true;
+
+        final int count = mClients.size();
+        for (int i = 0; i < count; i++) {
+            FrameClient client = mClients.get(i);
+            if (client != null && !client.doFrame(frameTimeNanos) && mClients.get(i) == client) {
+                mClients.set(i, null);
+            }
+        }
+
+        mDispatching = false;
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            if (mClients.get(i) == null) {
+                mClients.remove(i);
+            }
+        }
+
+        if (!mClients.isEmpty()) {
+            mPosted = true;
+            postFrameCallback();
+        }
+    }
+
+    protected void postFrameCallback() {
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    protected void removeFrameCallback() {
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * An interface for work that is stepped once per frame by {@link PinchToZoomFrameDriver}.
+     */
+    interface FrameClient {
+        /**
+         * Advance to the current frame.
+         *
+         * @param frameTimeNanos the time at which the frame started rendering
+         * @return true to be stepped again on the next frame, false once finished
+         */
+        boolean doFrame(long frameTimeNanos);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.support.annotation.NonNull;
+import android.view.MotionEvent;
+
+/**
+ * Tracks every pointer of a touch gesture for {@link PinchToZoomTouchHelper}. Each
+ * {@link MotionEvent} is read exactly once, in {@link #onTouchEvent(MotionEvent)}, and reduced to
+ * the centroid (focus) of all pointers that are down and their span (twice the average distance
+ * of the pointers from the focus). Between two consecutive {@link MotionEvent#ACTION_MOVE} events
+ * the change in focus is reported as a pan delta ({@link #mDeltaX}, {@link #mDeltaY}) and the
+ * ratio of the spans is reported as a scale factor ({@link #mScaleFactor}), so a single event
+ * yields both parts of a combined pan and zoom.
+ * <p/>
+ * Whenever a pointer goes down or up, the focus and span are recalculated from the pointers that
+ * remain, and the next move is measured from there. A finger joining or leaving the gesture
+ * therefore never shows up as a jump. All state is held in primitive fields, so no objects are
+ * allocated while a gesture is tracked.
+ */
+class PinchToZoomGestureTracker {
+    // Number of pointers currently down, not counting one that is being lifted
+    protected int mPointerCount;
+
+    // Position of the first pointer of the current gesture when it went down
+    protected float mDownX;
+    protected float mDownY;
+
+    // Centroid and span of the pointers that are down
+    protected float mFocusX;
+    protected float mFocusY;
+    protected float mSpan;
+
+    // Change since the previous event. Zero (or 1.0 for the scale) unless the event was a move.
+    protected float mDeltaX;
+    protected float mDeltaY;
+    protected float mScaleFactor = 1.0f;
+
+    // Whether more than one pointer has been down at once during the current gesture
+    protected boolean mMultiTouch;
+
+    // Time of the latest event, in the {@link android.os.SystemClock#uptimeMillis()} time base
+    protected long mEventTime;
+
+    /**
+     * Read a motion event, updating the focus, span and deltas.
+     *
+     * @param event the event to read
+     * @return a boolean indicating whether or not the event moved the focus or changed the span
+     */
+    boolean onTouchEvent(@NonNull MotionEvent event) {
+        final int action = event.getActionMasked();
+        mEventTime = event.getEventTime();
+
+        if (action == MotionEvent.ACTION_DOWN) {
+            mDownX = event.getX();
+            mDownY = event.getY();
+            mMultiTouch = false;
+        } else if (action == MotionEvent.ACTION_POINTER_DOWN) {
+            mMultiTouch = true;
+        }
+
+        // A pointer that is being lifted no longer counts towards the focus or span
+        final int skipIndex = action == MotionEvent.ACTION_POINTER_UP
+                ? event.getActionIndex() : -1;
+        final int eventPointerCount = event.getPointerCount();
+
+        float sumX = 0;
+        float sumY = 0;
+        int count = 0;
+        for (int i = 0; i < eventPointerCount; i++) {
+            if (i == skipIndex) {
+                continue;
+            }
+            sumX += event.getX(i);
+            sumY += event.getY(i);
+            count++;
+        }
+        if (count == 0) {
+            reset();
+            return false;
+        }
+        final float focusX = sumX / count;
+        final float focusY = sumY / count;
+
+        float span = 0;
+        if (count > 1) {
+            float sumDistance = 0;
+            for (int i = 0; i < eventPointerCount; i++) {
+                if (i == skipIndex) {
+                    continue;
+                }
+                final float dx = event.getX(i) - focusX;
+                final float dy = event.getY(i) - focusY;
+                sumDistance += (float) Math.sqrt(dx * dx + dy * dy);
+            }
+            span = sumDistance / count * 2;
+        }
+
+        // Only a move with the same pointers as the last event is measured against it. Anything
+        // else re-anchors the gesture at the current focus and span.
+        if (action == MotionEvent.ACTION_MOVE && count == mPointerCount) {
+            mDeltaX = focusX - mFocusX;
+            mDeltaY = focusY - mFocusY;
+            mScaleFactor = mSpan > 0 && span > 0 ? span / mSpan : 1.0f;
+        } else {
+            mDeltaX = 0;
+            mDeltaY = 0;
+            mScaleFactor = 1.0f;
+        }
+
+        mFocusX = focusX;
+        mFocusY = focusY;
+        mSpan = span;
+        mPointerCount = action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL
+                ? 0 : count;
+
+        return mDeltaX != 0 || mDeltaY != 0 || mScaleFactor != 1.0f;
+    }
+
+    /**
+     * Determine whether the current gesture has moved far enough from where it started to no
+     * longer be a tap.
+     *
+     * @param threshold distance on either axis beyond which the gesture is not a tap
+     * @return a boolean indicating whether or not the gesture is still a tap
+     */
+    boolean isTap(int threshold) {
+        return !mMultiTouch && Math.abs(mFocusX - mDownX) < threshold
+                && Math.abs(mFocusY - mDownY) < threshold;
+    }
+
+    /**
+     * Forget the current gesture.
+     */
+    void reset() {
+        mPointerCount = 0;
+        mDownX = 0;
+        mDownY = 0;
+        mFocusX = 0;
+        mFocusY = 0;
+        mSpan = 0;
+        mDeltaX = 0;
+        mDeltaY = 0;
+        mScaleFactor = 1.0f;
+        mMultiTouch = false;
+        mEventTime = 0;
+    }
+}
@@ -22,8 +22,17 @@ package com.jameskelso.android.widget;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.DrawFilter;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PaintFlagsDrawFilter;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
@@ -33,6 +42,8 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StyleRes;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
 import android.widget.ImageView;
 
 /**
@@ -65,6 +76,44 @@ import android.widget.ImageView;
  * controlled by {@link #setPanThreshold(int)}. As the pan threshold increases, the user will need
  * to drag further on the view to initiate panning on the image. If this value is not set, it
  * defaults to an arguably reasonable value.
+ * <p/>
+ * The zoom level and position of each image can be remembered across instances of this view, and
+ * across launches of the application, by setting a {@link PinchToZoomViewportStore} using
+ * {@link #setViewportStore(PinchToZoomViewportStore)} and identifying the current image using
+ * {@link #setViewportKey(String)}. When an image with a saved viewport is shown again, it is
+ * restored at the zoom level and position at which it was last seen.
+ * <p/>
+ * Touch latency can be partly hidden by setting a prediction time using
+ * {@link #setTouchPredictionTime(int)}. While the user pans, the image is drawn where the finger is
+ * expected to be that far in the future, rather than where it was last sampled. How well the
+ * prediction performs on a device can be measured with an {@link OnTouchPredictionListener}.
+ * <p/>
+ * When the image is zoomed far in, drawing can be made cheaper by enabling
+ * {@link #setVisibleRectDrawingEnabled(boolean)}, which draws only the part of a bitmap that is
+ * visible rather than the whole bitmap clipped to the view.
+ * <p/>
+ * While the image is moving, the view is drawn into a hardware layer if it is hardware accelerated
+ * and small enough to fit in a texture. The layer is removed once the image settles. This can be
+ * turned off using {@link #setGestureLayerEnabled(boolean)}, and its effect measured with an
+ * {@link OnMotionSettledListener}.
+ * <p/>
+ * On devices where filtering a large bitmap every frame is expensive, bitmap filtering and
+ * dithering can be turned off while the image moves using
+ * {@link #setReducedQualityDuringMotion(boolean)}. The image is redrawn once at full quality when
+ * it settles.
+ * <p/>
+ * On devices whose touch panel reports at a different rate from the display refresh, panning and
+ * zooming can be made smoother by enabling {@link #setInputResamplingEnabled(boolean)}, which
+ * applies exactly one transform per displayed frame.
+ * <p/>
+ * Views that are shown in large numbers but rarely touched, such as the cells of a grid, can be
+ * made lightweight by setting the lightweight attribute in layout XML. A lightweight view does not
+ * create its touch and zoom machinery until it is first touched or zoomed. Until then, the initial
+ * scale is calculated using a helper shared by all lightweight views.
+ * <p/>
+ * Zoom configuration is held in an immutable object that is shared by every view with the same
+ * configuration. Views that take their configuration from the same style resolve it from styled
+ * attributes only once.
  *
  * @attr ref R.styleable#com_jameskelso_android_widget_PinchToZoomImageView_minBitmapWidth
  * @attr ref R.styleable#com_jameskelso_android_widget_PinchToZoomImageView_maxBitmapWidth
@@ -76,10 +125,78 @@ import android.widget.ImageView;
  * @attr ref R.styleable#com_jameskelso_android_widget_PinchToZoomImageView_transExtraRight
  * @attr ref R.styleable#com_jameskelso_android_widget_PinchToZoomImageView_transExtraTop
  * @attr ref R.styleable#com_jameskelso_android_widget_PinchToZoomImageView_transExtraBottom
+ * @attr ref R.styleable#com_jameskelso_android_widget_PinchToZoomImageView_lightweight
  */
 public class PinchToZoomImageView extends ImageView implements
         PinchToZoomTouchHelper.OnPinchToZoomTouchListener,
-        PinchToZoomMatrixHelper.OnPinchToZoomMatrixChangeListener {
+        PinchToZoomTouchHelper.OnPinchToZoomPredictedPanListener,
+        PinchToZoomMatrixHelper.OnPinchToZoomMatrixChangeListener,
+        PinchToZoomFlingHelper.OnPinchToZoomFlingListener,
+        PinchToZoomAnimationHelper.OnPinchToZoomAnimationListener,
+        PinchToZoomMotionTracker.OnPinchToZoomMotionListener,
+        PinchToZoomOverscanCache.OnPinchToZoomCacheRenderListener,
+        PinchToZoomOversizeHelper.OnPinchToZoomOversizeListener,
+        PinchToZoomRasterCache.OnPinchToZoomRasterListener {
+
+    /**
+     * Render modes reported to {@link OnOversizeImageListener}. The oversize bitmap could not be
+     * prepared, so it is passed to {@link ImageView} as usual and may fail to draw.
+     */
+    public static final int OVERSIZE_RENDER_MODE_NONE = PinchToZoomOversizeHelper.MODE_NONE;
+
+    /**
+     * The oversize bitmap is drawn as a grid of tiles, each within the texture limit
+     */
+    public static final int OVERSIZE_RENDER_MODE_TILED = PinchToZoomOversizeHelper.MODE_TILED;
+
+    /**
+     * The oversize bitmap is drawn from a copy scaled down to fit within the texture limit
+     */
+    public static final int OVERSIZE_RENDER_MODE_DOWNSAMPLED =
+            PinchToZoomOversizeHelper.MODE_DOWNSAMPLED;
+
+    /**
+     * Stands in for the touch helper of a lightweight view until the view is first touched
+     */
+    private static final OnTouchListener LAZY_TOUCH_LISTENER = new OnTouchListener() {
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            return ((PinchToZoomImageView) v).ensureTouchHelper().onTouch(v, event);
+        }
+    };
+
+    /**
+     * Turns off bitmap filtering and dithering while the image is moving
+     */
+    private static final DrawFilter MOTION_DRAW_FILTER = new PaintFlagsDrawFilter(
+            Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG, 0);
+
+    /**
+     * Matrix helper shared by lightweight views that have not yet created their own. It is only
+     * used from the main thread, and only for the duration of a single measure pass.
+     */
+    private static PinchToZoomMatrixHelper sDormantMatrixHelper;
+
+    /**
+     * Layout states. There is no source image with a known size.
+     */
+    protected static final int LAYOUT_STATE_NO_SOURCE = 0;
+
+    /**
+     * There is a source image, and it will be scaled to fit on the next measure pass.
+     */
+    protected static final int LAYOUT_STATE_AWAITING_FIT = 1;
+
+    /**
+     * The source image has been scaled to fit the current size of the view.
+     */
+    protected static final int LAYOUT_STATE_FITTED = 2;
+
+    /**
+     * The source image has been zoomed or panned away from the fit, by the user or by restoring
+     * saved state.
+     */
+    protected static final int LAYOUT_STATE_USER_TRANSFORMED = 3;
 
     /**
      * Helper class to abstract the math behind touches.
@@ -91,11 +208,204 @@ public class PinchToZoomImageView extends ImageView implements
      */
     protected PinchToZoomMatrixHelper mMatrixHelper;
 
+    /**
+     * Helper class to carry a pan on as a fling. Created the first time the user flings.
+     */
+    protected PinchToZoomFlingHelper mFlingHelper;
+
+    /**
+     * Recycled bounds of the translation available to a fling
+     */
+    protected RectF mFlingBounds;
+
+    /**
+     * Helper class to animate the zoom level and position. Created the first time an animation is
+     * requested.
+     */
+    protected PinchToZoomAnimationHelper mAnimationHelper;
+
+    /**
+     * Recycled image matrix at the end of an animation
+     */
+    protected Matrix mAnimationTarget;
+
+    /**
+     * Helper class to draw only the visible part of a bitmap. Null unless visible rect drawing is
+     * enabled.
+     */
+    protected PinchToZoomDrawHelper mDrawHelper;
+
+    /**
+     * Offscreen copy of the content area and a margin around it, used to draw pans. Null unless
+     * an overscan margin has been set.
+     */
+    protected PinchToZoomOverscanCache mOverscanCache;
+
+    /**
+     * Snapshot of the content area scaled in place of the source image during a pinch. Null
+     * unless pinch snapshots are enabled.
+     */
+    protected PinchToZoomPinchSnapshot mPinchSnapshot;
+
+    /**
+     * Recycled bounds of the source image while a pinch snapshot is drawn
+     */
+    protected final RectF mSnapshotImageBounds = new RectF();
+
+    /**
+     * Recycled inverse of an image matrix the source image is about to be shown at, the content
+     * area mapped through it, and the bounds of the source image, while tile work for that
+     * viewport is started early
+     */
+    protected final Matrix mPrefetchInverse = new Matrix();
+    protected final RectF mPrefetchRegion = new RectF();
+    protected final Rect mPrefetchBounds = new Rect();
+
+    /**
+     * Helper class to notice when the image starts moving and when it settles. Created the first
+     * time the image moves.
+     */
+    protected PinchToZoomMotionTracker mMotionTracker;
+
+    /**
+     * Flag indicating the view may be drawn into a hardware layer while the image moves
+     */
+    protected boolean mGestureLayerEnabled = true;
+
+    /**
+     * Flag indicating the view was switched to a hardware layer when the current motion started
+     */
+    protected boolean mLayerPromoted;
+
+    /**
+     * Largest layer the hardware canvas can hold, or 0 until the view has been drawn on one
+     */
+    protected int mMaxLayerWidth;
+    protected int mMaxLayerHeight;
+
+    /**
+     * Flag indicating bitmap filtering is turned off while the image moves
+     */
+    protected boolean mReducedQualityDuringMotion;
+
+    /**
+     * Flag indicating the image matrix last changed while the image was moving, so the next draw
+     * is at reduced quality
+     */
+    protected boolean mDrawAtMotionQuality;
+
+    /**
+     * Listener notified each time the image settles
+     */
+    protected OnMotionSettledListener mOnMotionSettledListener;
+
+    /**
+     * Helper class to draw bitmaps larger than the texture limit of a hardware canvas. Created
+     * the first time such a bitmap is drawn.
+     */
+    protected PinchToZoomOversizeHelper mOversizeHelper;
+
+    /**
+     * Listener notified when an oversize bitmap is prepared for drawing
+     */
+    protected OnOversizeImageListener mOnOversizeImageListener;
+
+    /**
+     * Cache drawing drawables other than bitmaps from tiles rendered at the current zoom level,
+     * or null if they are drawn directly
+     */
+    protected PinchToZoomRasterCache mRasterCache;
+
+    /**
+     * Flag indicating opaque images set by region decoder may be decoded as RGB_565
+     */
+    protected boolean mRgb565DecodingEnabled;
+
+    /**
+     * Current layout state, one of the LAYOUT_STATE constants. This has no initializer because
+     * the source image may be set from the super constructor.
+     */
+    protected int mLayoutState;
+
+    /**
+     * Measured size of the view the current transform was calculated for
+     */
+    protected int mLayoutWidth;
+    protected int mLayoutHeight;
+
     /**
      * Flag indicating a checkTranslationBounds call is necessary on the next measure pass
      */
     protected boolean mRequiresTranslationBoundsCheck = false;
 
+    /**
+     * Flag indicating this view is currently attached to a window
+     */
+    protected boolean mAttachedToWindow = false;
+
+    /**
+     * Flag indicating zoom work is paused because the view is detached or not visible
+     */
+    protected boolean mZoomWorkPaused = true;
+
+    /**
+     * Store in which the viewport of each image is remembered, or null if viewports are not
+     * remembered
+     */
+    protected PinchToZoomViewportStore mViewportStore;
+
+    /**
+     * Key identifying the current image in {@link #mViewportStore}
+     */
+    protected String mViewportKey;
+
+    /**
+     * Flag indicating a saved viewport should be looked up on the next measure pass
+     */
+    protected boolean mRequiresViewportRestore = false;
+
+    /**
+     * Callback run by {@link #mViewportStore} once it has read its log, to retry the lookup of a
+     * saved viewport
+     */
+    protected final Runnable mViewportLoadedCallback = new Runnable() {
+        @Override
+        public void run() {
+            if (mRequiresViewportRestore) {
+                requestLayout();
+            }
+        }
+    };
+
+    /**
+     * Zoom configuration, shared with any other view that has the same configuration. This has no
+     * initializer because padding may be set from the super constructor. Package-private because
+     * the configuration type is not part of the public API.
+     */
+    PinchToZoomConfig mConfig;
+
+    /**
+     * Listeners set on a lightweight view before its touch helper was created. These have no
+     * initializers because they may be set from the super constructor.
+     */
+    protected OnTouchListener mPendingOnTouchListener;
+    protected OnClickListener mPendingOnClickListener;
+
+    /**
+     * How far ahead, in milliseconds, to predict a panning pointer, or 0 if pans are not predicted
+     */
+    protected int mTouchPredictionTime;
+
+    /**
+     * Listener notified of the error of each touch prediction
+     */
+    protected OnTouchPredictionListener mOnTouchPredictionListener;
+
+    /**
+     * Flag indicating moves are resampled to the display frame rate
+     */
+    protected boolean mInputResamplingEnabled;
+
     public PinchToZoomImageView(Context context) {
         super(context);
         setUp(null, 0, 0);
@@ -119,7 +429,9 @@ public class PinchToZoomImageView extends ImageView implements
     }
 
     /**
-     * Load values from attributes when this view is inflated from layout XML.
+     * Load values from attributes when this view is inflated from layout XML. The configuration is
+     * shared with other views that use the same style, and is combined with the padding of this
+     * view.
      *
      * @param attrs       attribute set provided by the constructor
      * @param defStyle    attribute ID that points to default style resource provided by constructor
@@ -127,65 +439,14 @@ public class PinchToZoomImageView extends ImageView implements
      */
     private void resolveAttrs(@Nullable AttributeSet attrs, int defStyle,
                               @StyleRes int defStyleRes) {
-        if (attrs == null) {
-            return;
-        }
-
-        //Retrieve styles attributes
-        TypedArray a = getContext().obtainStyledAttributes(attrs,
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView, defStyle,
+        PinchToZoomConfig config = PinchToZoomConfig.obtain(getContext(), attrs, defStyle,
                 defStyleRes);
 
-        int minBitmapWidth = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_minBitmapWidth, 0);
-        int minBitmapHeight = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_minBitmapHeight, 0);
-        if (minBitmapWidth != 0 || minBitmapHeight != 0) {
-            mMatrixHelper.setBitmapMinimumSize(minBitmapWidth, minBitmapHeight);
-        }
-
-        int maxBitmapWidth = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_maxBitmapWidth,
-                0);
-        int maxBitmapHeight = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_maxBitmapHeight,
-                0);
-        if (maxBitmapWidth != 0 || maxBitmapHeight != 0) {
-            mMatrixHelper.setBitmapMaximumSize(maxBitmapWidth, maxBitmapHeight);
-        }
-
-        int panThreshold = a.getInt(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_panThreshold, -1);
-        if (panThreshold != -1) {
-            mTouchHelper.setPanThreshold(panThreshold);
-        }
-
-        boolean pinAxes = a.getBoolean(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_pinAxesSmallerThanBounds,
-                true);
-        mMatrixHelper.setPinAxesSmallerThanViewBounds(pinAxes);
-
-        int translationExtraLeft = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraLeft, 0);
-        int translationExtraTop = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraTop, 0);
-        int translationExtraRight = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraRight, 0);
-        int translationExtraBottom = a.getDimensionPixelSize(
-                R.styleable.com_jameskelso_android_widget_PinchToZoomImageView_transExtraBottom, 0);
-        if (translationExtraLeft != 0 || translationExtraTop != 0 || translationExtraRight != 0
-                || translationExtraBottom != 0) {
-            mMatrixHelper.setTranslationExtra(translationExtraLeft, translationExtraTop,
-                    translationExtraRight, translationExtraBottom);
-        }
-
-        a.recycle();
-
         if (Build.VERSION.SDK_INT >= 16) {
-            mMatrixHelper.setCropToPadding(getCropToPadding());
+            config = config.withCropToPadding(getCropToPadding());
         }
 
-        mMatrixHelper.setPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(),
+        mConfig = config.withPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(),
                 getPaddingBottom());
     }
 
@@ -200,15 +461,137 @@ public class PinchToZoomImageView extends ImageView implements
         setClickable(true);
         super.setScaleType(ScaleType.MATRIX);
 
-        // Instantiate touch helper object and make it the default OnTouchListener
-        mTouchHelper = new PinchToZoomTouchHelper(getContext(), this);
-        super.setOnTouchListener(mTouchHelper);
-
-        // Instantiate the matrix helper object
-        mMatrixHelper = new PinchToZoomMatrixHelper(this);
-
         // Load values from layout XML
         resolveAttrs(attrs, defStyle, defStyleRes);
+
+        if (!mConfig.lightweight) {
+            ensureTouchHelper();
+            ensureMatrixHelper();
+        } else {
+            super.setOnTouchListener(LAZY_TOUCH_LISTENER);
+        }
+    }
+
+    /**
+     * Create the touch helper if it does not yet exist, and make it the default OnTouchListener.
+     * Any listeners set before it existed are handed over to it.
+     *
+     * @return the touch helper
+     */
+    protected PinchToZoomTouchHelper ensureTouchHelper() {
+        if (mTouchHelper == null) {
+            mTouchHelper = new PinchToZoomTouchHelper(getContext(), this);
+            mTouchHelper.setPanThreshold(mConfig.panThreshold);
+            mTouchHelper.setOnTouchListener(mPendingOnTouchListener);
+            mTouchHelper.setOnClickListener(mPendingOnClickListener);
+            mPendingOnTouchListener = null;
+            mPendingOnClickListener = null;
+            applyTouchPrediction();
+            applyInputResampling();
+            super.setOnTouchListener(mTouchHelper);
+        }
+        return mTouchHelper;
+    }
+
+    /**
+     * Create the matrix helper if it does not yet exist. If this view has already been measured,
+     * the initial scale and translation are performed straight away so the new helper picks up
+     * where the shared helper left off.
+     *
+     * @return the matrix helper
+     */
+    protected PinchToZoomMatrixHelper ensureMatrixHelper() {
+        if (mMatrixHelper == null) {
+            mMatrixHelper = new PinchToZoomMatrixHelper(this);
+            mMatrixHelper.setConfig(mConfig);
+
+            if (mLayoutState == LAYOUT_STATE_FITTED) {
+                captureDrawableState();
+                mMatrixHelper.performInitialScaleAndTranslate(mLayoutWidth, mLayoutHeight);
+            }
+        }
+        return mMatrixHelper;
+    }
+
+    /**
+     * Hand a touch predictor matching {@link #mTouchPredictionTime} to the touch helper, if it
+     * exists.
+     */
+    protected void applyTouchPrediction() {
+        if (mTouchHelper == null) {
+            return;
+        }
+        if (mTouchPredictionTime == 0) {
+            mTouchHelper.setTouchPredictor(null, null);
+            return;
+        }
+
+        float maxDistance = PinchToZoomTouchPredictor.DEFAULT_MAX_DISTANCE_DP
+                * getResources().getDisplayMetrics().density;
+        PinchToZoomTouchPredictor predictor = new PinchToZoomTouchPredictor(mTouchPredictionTime,
+                maxDistance);
+        predictor.setListener(mOnTouchPredictionListener);
+        mTouchHelper.setTouchPredictor(predictor, this);
+    }
+
+    /**
+     * Hand an input resampler to the touch helper if resampling is enabled, or take it away if
+     * not. Does nothing if the touch helper does not exist.
+     */
+    protected void applyInputResampling() {
+        if (mTouchHelper == null) {
+            return;
+        }
+        boolean resampling = mTouchHelper.mInputResampler != null;
+        if (mInputResamplingEnabled == resampling) {
+            return;
+        }
+        mTouchHelper.setInputResampler(mInputResamplingEnabled
+                ? new PinchToZoomInputResampler(this) : null);
+    }
+
+    /**
+     * Switch to a different configuration, and hand it to whichever helpers exist.
+     *
+     * @param config the new configuration
+     */
+    void applyConfig(@NonNull PinchToZoomConfig config) {
+        // A fitted image is fitted again under the new configuration
+        if (config != mConfig && mLayoutState == LAYOUT_STATE_FITTED) {
+            mLayoutState = LAYOUT_STATE_AWAITING_FIT;
+            requestLayout();
+        }
+        mConfig = config;
+        if (mMatrixHelper != null) {
+            mMatrixHelper.setConfig(config);
+        }
+        if (mTouchHelper != null) {
+            mTouchHelper.setPanThreshold(config.panThreshold);
+        }
+    }
+
+    /**
+     * Scale and translate the current source image to fit this view without creating a matrix
+     * helper, using {@link #sDormantMatrixHelper} instead. Used by lightweight views until they
+     * are first touched or zoomed.
+     */
+    protected void performDormantInitialScale() {
+        Drawable d = getDrawable();
+        if (d == null || d.getIntrinsicWidth() <= 0 || d.getIntrinsicHeight() <= 0) {
+            return;
+        }
+
+        if (sDormantMatrixHelper == null) {
+            sDormantMatrixHelper = new PinchToZoomMatrixHelper(null);
+        }
+        PinchToZoomMatrixHelper helper = sDormantMatrixHelper;
+        helper.prepareForReuse(this);
+        helper.setConfig(mConfig);
+        helper.setSrcBitmapSize(d.getIntrinsicWidth(), d.getIntrinsicHeight());
+        helper.performInitialScaleAndTranslate(getMeasuredWidth(), getMeasuredHeight());
+
+        // Don't hold on to this view
+        helper.prepareForReuse(null);
     }
 
     /**
@@ -237,6 +620,10 @@ public class PinchToZoomImageView extends ImageView implements
      */
     @Override
     public void setOnTouchListener(@Nullable OnTouchListener listener) {
+        if (mTouchHelper == null) {
+            mPendingOnTouchListener = listener;
+            return;
+        }
         mTouchHelper.setOnTouchListener(listener);
     }
 
@@ -250,13 +637,18 @@ public class PinchToZoomImageView extends ImageView implements
      */
     @Override
     public void setOnClickListener(@Nullable OnClickListener listener) {
+        if (mTouchHelper == null) {
+            mPendingOnClickListener = listener;
+            return;
+        }
         mTouchHelper.setOnClickListener(listener);
     }
 
     /**
-     * Perform the measure pass on this widget. Additionally, if the zoom level is identity (1.0),
-     * capture information about the view so that the matrix helper can perform the necessary
-     * calculations for panning and zooming.
+     * Perform the measure pass on this widget. Additionally, advance the layout state: the source
+     * image is scaled to fit once each time the source image or the size of the view changes, and
+     * not on any other measure pass. Once the user has zoomed or panned, a change in size only
+     * re-checks the translation bounds.
      *
      * @param widthMeasureSpec  {@link android.view.View.MeasureSpec} for the desired view width
      * @param heightMeasureSpec {@link android.view.View.MeasureSpec} for the desired view height
@@ -265,18 +657,515 @@ public class PinchToZoomImageView extends ImageView implements
     public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
-        if (mRequiresTranslationBoundsCheck) {
+        // A saved viewport needs a matrix helper of its own to hold it. Until the store has read
+        // its log, assume there may be one.
+        if (mMatrixHelper == null && mRequiresViewportRestore) {
+            if (!mViewportStore.isLoaded() || mViewportStore.get(mViewportKey) != null) {
+                ensureMatrixHelper();
+            } else {
+                mRequiresViewportRestore = false;
+            }
+        }
+
+        if (getMeasuredWidth() != mLayoutWidth || getMeasuredHeight() != mLayoutHeight) {
+            onLayoutSizeChanged();
+        }
+
+        if (mRequiresTranslationBoundsCheck && mMatrixHelper != null) {
             mRequiresTranslationBoundsCheck = false;
             mMatrixHelper.checkTranslationBounds(getMeasuredWidth(), getMeasuredHeight());
         }
 
-        // We capture some information about the drawable when we haven't yet scaled it
-        if (mMatrixHelper.isActualSizeZoomLevel()) {
+        if (mLayoutState == LAYOUT_STATE_NO_SOURCE || mLayoutState == LAYOUT_STATE_AWAITING_FIT) {
+            performInitialFit();
+        }
+
+        if (mRequiresViewportRestore) {
+            restoreViewport();
+        }
+    }
+
+    /**
+     * Invoked from the measure pass when the measured size of this view differs from the size the
+     * current transform was calculated for, such as on rotation, a multi-window resize, or when a
+     * soft keyboard is shown. A fitted image is fitted again. A transformed image keeps its zoom
+     * level, and the point of the image at the center of the view stays at the center. Only the
+     * image matrix is updated; the drawable is left as it is.
+     */
+    protected void onLayoutSizeChanged() {
+        int width = getMeasuredWidth();
+        int height = getMeasuredHeight();
+
+        if (mLayoutState == LAYOUT_STATE_FITTED) {
+            mLayoutState = LAYOUT_STATE_AWAITING_FIT;
+        } else if (mLayoutState == LAYOUT_STATE_USER_TRANSFORMED) {
+            if (mMatrixHelper != null && mLayoutWidth != 0 && mLayoutHeight != 0 && width != 0
+                    && height != 0) {
+                mMatrixHelper.onViewSizeChanged(mLayoutWidth, mLayoutHeight, width, height);
+            } else {
+                // Nothing to map from (such as after restoring instance state), so just make
+                // sure the image is still within bounds
+                mRequiresTranslationBoundsCheck = true;
+            }
+            mLayoutWidth = width;
+            mLayoutHeight = height;
+        }
+    }
+
+    /**
+     * Scale the source image to fit the measured size of this view, and move to
+     * {@link #LAYOUT_STATE_FITTED}. If there is no source image with a known size, move to
+     * {@link #LAYOUT_STATE_NO_SOURCE} instead. If the view has not been given a size yet, wait.
+     */
+    protected void performInitialFit() {
+        Drawable d = getDrawable();
+        if (d == null || d.getIntrinsicWidth() <= 0 || d.getIntrinsicHeight() <= 0) {
+            mLayoutState = LAYOUT_STATE_NO_SOURCE;
+            return;
+        }
+
+        int width = getMeasuredWidth();
+        int height = getMeasuredHeight();
+        if (width == 0 || height == 0) {
+            mLayoutState = LAYOUT_STATE_AWAITING_FIT;
+            return;
+        }
+
+        if (mMatrixHelper == null) {
+            performDormantInitialScale();
+        } else {
+            // We capture some information about the drawable before we scale it
             captureDrawableState();
 
             // Scale our drawable to fit the screen
-            mMatrixHelper.performInitialScaleAndTranslate(getMeasuredWidth(), getMeasuredHeight());
+            mMatrixHelper.performInitialScaleAndTranslate(width, height);
         }
+
+        mLayoutState = LAYOUT_STATE_FITTED;
+        mLayoutWidth = width;
+        mLayoutHeight = height;
+    }
+
+    /**
+     * Draw the source image, with bitmap filtering turned off if the image is moving and reduced
+     * quality during motion is enabled.
+     *
+     * @param canvas the canvas on which the source image will be drawn
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mMaxLayerWidth == 0 && canvas.isHardwareAccelerated()) {
+            mMaxLayerWidth = canvas.getMaximumBitmapWidth();
+            mMaxLayerHeight = canvas.getMaximumBitmapHeight();
+        }
+        if (mMotionTracker != null) {
+            mMotionTracker.onFrameDrawn();
+        }
+        if (mRequiresViewportRestore && mViewportStore != null) {
+            if (!mViewportStore.isLoaded()) {
+                // Drawing the fitted image now would make it jump once the saved viewport is
+                // applied, and start tile work for a viewport that is about to be replaced
+                mViewportStore.runWhenLoaded(mViewportLoadedCallback);
+                return;
+            }
+            restoreViewport();
+        }
+
+        if (!mDrawAtMotionQuality) {
+            drawSource(canvas);
+            return;
+        }
+        final DrawFilter drawFilter = canvas.getDrawFilter();
+        canvas.setDrawFilter(MOTION_DRAW_FILTER);
+        drawSource(canvas);
+        canvas.setDrawFilter(drawFilter);
+    }
+
+    /**
+     * Draw the source image. During a pinch, if a pinch snapshot was taken and still covers the
+     * image, the content area is drawn from the snapshot. If an overscan margin is set, the image
+     * is moving and the scale is steady, it is drawn from the overscan cache. Otherwise it is
+     * drawn by {@link #drawContent(Canvas, Drawable, Matrix)}. If none of these apply and visible
+     * rect drawing does not either, the source image is drawn by {@link ImageView}.
+     *
+     * @param canvas the canvas on which the source image will be drawn
+     */
+    protected void drawSource(Canvas canvas) {
+        final Drawable d = getDrawable();
+        final Matrix imageMatrix = getImageMatrix();
+        final boolean hasBounds = d != null && !d.getBounds().isEmpty();
+        final boolean snapshot = hasBounds && mPinchSnapshot != null
+                && mPinchSnapshot.isCaptured();
+        final boolean cacheable = hasBounds && mOverscanCache != null && mMotionTracker != null
+                && mMotionTracker.isMoving();
+        final boolean oversize = hasBounds && isOversize(canvas, d);
+        final boolean region = hasBounds && d instanceof PinchToZoomRegionDrawable;
+        final boolean raster = hasBounds && mRasterCache != null
+                && PinchToZoomRasterCache.canRaster(d);
+        if (!snapshot && !cacheable && !oversize && !region && !raster
+                && (mDrawHelper == null || !mDrawHelper.canDraw(d, imageMatrix))) {
+            super.onDraw(canvas);
+            return;
+        }
+
+        final int saveCount = canvas.save();
+        if (mConfig.cropToPadding) {
+            final int scrollX = getScrollX();
+            final int scrollY = getScrollY();
+            canvas.clipRect(scrollX + getPaddingLeft(), scrollY + getPaddingTop(),
+                    scrollX + getWidth() - getPaddingRight(),
+                    scrollY + getHeight() - getPaddingBottom());
+        }
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        if (snapshot) {
+            mSnapshotImageBounds.set(d.getBounds());
+        }
+        if (!(snapshot && mPinchSnapshot.draw(canvas, imageMatrix, mSnapshotImageBounds))
+                && !(cacheable && mOverscanCache.draw(canvas, imageMatrix, getContentWidth(),
+                getContentHeight()))) {
+            drawContent(canvas, d, imageMatrix);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Draw the source image into the content area. A bitmap too large for the texture limit of a
+     * hardware canvas is drawn by {@link PinchToZoomOversizeHelper}, and a drawable that is not a
+     * bitmap is drawn by {@link PinchToZoomRasterCache} if it is enabled. Otherwise, if visible
+     * rect drawing is enabled and the source image is a bitmap, only the part of the bitmap that
+     * is visible is drawn. Otherwise the whole drawable is drawn through the image matrix, as
+     * {@link ImageView} does. A {@link PinchToZoomRegionDrawable} is told the scale first, so it
+     * can decode at a suitable sample size.
+     *
+     * @param canvas      the canvas on which the source image will be drawn, translated to the top
+     *                    left of the content area
+     * @param d           the source image
+     * @param imageMatrix the image matrix of the view
+     */
+    protected void drawContent(Canvas canvas, Drawable d, Matrix imageMatrix) {
+        if (isOversize(canvas, d) && drawOversize(canvas, d, imageMatrix)) {
+            return;
+        }
+        if (mRasterCache != null && PinchToZoomRasterCache.canRaster(d)
+                && mRasterCache.draw(canvas, d, imageMatrix)) {
+            return;
+        }
+        if (mDrawHelper != null && mDrawHelper.canDraw(d, imageMatrix)) {
+            mDrawHelper.draw(canvas, d, imageMatrix);
+            return;
+        }
+
+        if (d instanceof PinchToZoomRegionDrawable) {
+            ((PinchToZoomRegionDrawable) d).setDrawScale(imageMatrix.mapRadius(1f));
+        }
+        final int saveCount = canvas.save();
+        canvas.concat(imageMatrix);
+        d.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Determine whether the source image is a bitmap too large to draw on a canvas. Only a
+     * hardware canvas has a texture limit, and it is known once this view has been drawn on one.
+     *
+     * @param canvas the canvas on which the source image will be drawn
+     * @param d      the source image
+     * @return a boolean indicating whether or not the source image is oversize for the canvas
+     */
+    protected boolean isOversize(Canvas canvas, Drawable d) {
+        return canvas.isHardwareAccelerated()
+                && PinchToZoomOversizeHelper.isOversize(d, mMaxLayerWidth, mMaxLayerHeight);
+    }
+
+    /**
+     * Draw an oversize bitmap as tiles, or downsampled if it cannot be tiled. The bitmap is
+     * prepared the first time it is drawn, and {@link #mOnOversizeImageListener} is notified of
+     * how it will be drawn. Tiles are cut in the background, so at first only a preview, or
+     * nothing, is drawn.
+     *
+     * @param canvas      the canvas on which the source image will be drawn
+     * @param d           the source image, an oversize {@link BitmapDrawable}
+     * @param imageMatrix the image matrix of the view
+     * @return a boolean indicating whether or not the bitmap was drawn
+     */
+    protected boolean drawOversize(Canvas canvas, Drawable d, Matrix imageMatrix) {
+        prepareOversize(((BitmapDrawable) d).getBitmap());
+        if (mOversizeHelper.getMode() == PinchToZoomOversizeHelper.MODE_NONE) {
+            return false;
+        }
+        mOversizeHelper.draw(canvas, d, imageMatrix);
+        return true;
+    }
+
+    /**
+     * Prepare an oversize bitmap to be drawn by {@link #mOversizeHelper}, unless it already has
+     * been, and notify {@link #mOnOversizeImageListener} of how it will be drawn.
+     *
+     * @param bitmap the oversize bitmap
+     */
+    protected void prepareOversize(Bitmap bitmap) {
+        if (mOversizeHelper == null) {
+            mOversizeHelper = new PinchToZoomOversizeHelper(this);
+        }
+        if (bitmap != mOversizeHelper.mSource) {
+            onOversizeModeChanged(mOversizeHelper.prepare(bitmap, mMaxLayerWidth,
+                    mMaxLayerHeight));
+        }
+    }
+
+    /**
+     * Start the tile work for the part of the source image that will be visible at an image
+     * matrix, before the image is drawn there. A {@link PinchToZoomRegionDrawable} starts
+     * decoding it, and an oversize bitmap starts cutting its tiles once the texture limit is
+     * known. Until {@link #endPrefetch()}, drawing does not start tile work of its own.
+     *
+     * @param imageMatrix the image matrix the source image is about to be shown at
+     */
+    protected void prefetchViewport(Matrix imageMatrix) {
+        final Drawable d = getDrawable();
+        if (d == null || d.getIntrinsicWidth() <= 0 || d.getIntrinsicHeight() <= 0
+                || !imageMatrix.invert(mPrefetchInverse)) {
+            return;
+        }
+
+        // The image is drawn at its intrinsic size, which it may not have been given yet if
+        // this view has not been laid out
+        mPrefetchBounds.set(d.getBounds());
+        if (mPrefetchBounds.isEmpty()) {
+            mPrefetchBounds.set(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
+        }
+        mPrefetchRegion.set(0, 0, getMeasuredWidth() - getPaddingLeft() - getPaddingRight(),
+                getMeasuredHeight() - getPaddingTop() - getPaddingBottom());
+        mPrefetchInverse.mapRect(mPrefetchRegion);
+        final float scale = imageMatrix.mapRadius(1f);
+
+        if (d instanceof PinchToZoomRegionDrawable) {
+            ((PinchToZoomRegionDrawable) d).prefetch(mPrefetchRegion, mPrefetchBounds, scale);
+        } else if (PinchToZoomOversizeHelper.isOversize(d, mMaxLayerWidth, mMaxLayerHeight)) {
+            prepareOversize(((BitmapDrawable) d).getBitmap());
+            mOversizeHelper.prefetch(mPrefetchRegion, mPrefetchBounds, scale);
+        }
+    }
+
+    /**
+     * Let drawing start tile work again once the source image is shown at the image matrix that
+     * was passed to {@link #prefetchViewport(Matrix)}.
+     */
+    protected void endPrefetch() {
+        final Drawable d = getDrawable();
+        if (d instanceof PinchToZoomRegionDrawable) {
+            ((PinchToZoomRegionDrawable) d).endPrefetch();
+        }
+        if (mOversizeHelper != null) {
+            mOversizeHelper.endPrefetch();
+        }
+    }
+
+    /**
+     * A callback from the oversize helper indicating that more tiles of an oversize bitmap can
+     * be drawn.
+     */
+    @Override
+    public void onOversizeTilesCommitted() {
+        invalidate();
+    }
+
+    /**
+     * A callback from the oversize helper indicating how an oversize bitmap will be drawn, either
+     * when it is first prepared or when tiling fails and it is downsampled instead.
+     *
+     * @param mode the render mode chosen for the bitmap
+     */
+    @Override
+    public void onOversizeModeChanged(int mode) {
+        if (mOnOversizeImageListener == null) {
+            return;
+        }
+        final Bitmap bitmap = mOversizeHelper.mSource;
+        mOnOversizeImageListener.onOversizeImage(bitmap.getWidth(), bitmap.getHeight(),
+                mMaxLayerWidth, mMaxLayerHeight, mode);
+    }
+
+    /**
+     * A callback from the raster cache indicating that the tiles drawn for the source image have
+     * changed.
+     */
+    @Override
+    public void onRasterTilesChanged() {
+        invalidate();
+    }
+
+    /**
+     * Get the width of the area inside the padding of this view, where the source image is drawn.
+     *
+     * @return the content width in pixels
+     */
+    protected int getContentWidth() {
+        return getWidth() - getPaddingLeft() - getPaddingRight();
+    }
+
+    /**
+     * Get the height of the area inside the padding of this view, where the source image is drawn.
+     *
+     * @return the content height in pixels
+     */
+    protected int getContentHeight() {
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
+    /**
+     * A callback from the overscan cache asking for the source image to be rendered into it.
+     *
+     * @param canvas the cache canvas, translated to the top left of the content area
+     */
+    @Override
+    public void onRenderCache(Canvas canvas) {
+        drawContent(canvas, getDrawable(), getImageMatrix());
+    }
+
+    /**
+     * Redraw the overscan cache when the source image changes its appearance, for example when
+     * its alpha or color filter changes.
+     *
+     * @param dr the drawable to invalidate
+     */
+    @Override
+    public void invalidateDrawable(@NonNull Drawable dr) {
+        if (mOverscanCache != null && dr == getDrawable()) {
+            mOverscanCache.invalidate();
+        }
+        if (mRasterCache != null && dr == getDrawable()) {
+            mRasterCache.invalidate();
+        }
+        super.invalidateDrawable(dr);
+    }
+
+    /**
+     * Resume zoom work when this view is attached to a window, provided it is also visible.
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttachedToWindow = true;
+        updateZoomWorkState();
+    }
+
+    /**
+     * Pause zoom work when this view is detached from its window. The current image matrix is
+     * retained so the view can pick up where it left off if it is attached again. The preview of
+     * an oversize bitmap, which is kept while the view is only hidden, is freed as well.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttachedToWindow = false;
+        updateZoomWorkState();
+        if (mOversizeHelper != null) {
+            mOversizeHelper.release();
+        }
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Pause or resume zoom work when the visibility of this view or one of its ancestors changes.
+     *
+     * @param changedView the view whose visibility changed
+     * @param visibility  the new visibility of changedView
+     */
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateZoomWorkState();
+    }
+
+    /**
+     * Pause or resume zoom work when the visibility of the window containing this view changes.
+     *
+     * @param visibility the new visibility of the window
+     */
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateZoomWorkState();
+    }
+
+    /**
+     * Determine whether zoom work should currently be running, and invoke
+     * {@link #onZoomWorkPaused()} or {@link #onZoomWorkResumed()} if that has changed. Zoom work
+     * only runs while the view is attached to a visible window and is itself shown. This does not
+     * depend on the helpers, so a lightweight view that has never been touched pauses and resumes
+     * like any other.
+     */
+    protected void updateZoomWorkState() {
+        // Visibility callbacks can occur in the super constructor before this view is initialized
+        if (mConfig == null) {
+            return;
+        }
+
+        boolean paused = !mAttachedToWindow || getWindowVisibility() != VISIBLE || !isShown();
+        if (paused == mZoomWorkPaused) {
+            return;
+        }
+
+        mZoomWorkPaused = paused;
+        if (paused) {
+            onZoomWorkPaused();
+        } else {
+            onZoomWorkResumed();
+        }
+    }
+
+    /**
+     * Invoked when this view is detached or hidden. Any gesture in progress is abandoned, since
+     * the rest of its events will never arrive. Background decoding stops: the tiles of an
+     * oversize bitmap drop to its preview, and the strips of a region decoder and the raster
+     * tiles are freed, along with the work in progress on them. They are decoded again for the
+     * visible region the next time the view is drawn. The image matrix is left untouched, and the
+     * current viewport is saved if a {@link PinchToZoomViewportStore} has been set.
+     */
+    protected void onZoomWorkPaused() {
+        stopMotion();
+        if (mMotionTracker != null) {
+            mMotionTracker.settleNow();
+        }
+        if (mOverscanCache != null) {
+            mOverscanCache.release();
+        }
+        if (mPinchSnapshot != null) {
+            mPinchSnapshot.release();
+        }
+        if (mOversizeHelper != null) {
+            mOversizeHelper.dropToPreview();
+        }
+        releaseRegionDrawable();
+        if (mRasterCache != null) {
+            mRasterCache.release();
+        }
+        saveViewport();
+        if (mTouchHelper != null) {
+            mTouchHelper.reset();
+        }
+    }
+
+    /**
+     * Invoked when this view is attached and visible again. Work resumes from the retained image
+     * matrix rather than performing a full {@link #reset()}. Since the view may have been resized
+     * while it was hidden, the translation bounds are re-checked on the next measure pass. The
+     * view is redrawn so that decoding restarts for the visible region.
+     */
+    protected void onZoomWorkResumed() {
+        if (mLayoutState == LAYOUT_STATE_USER_TRANSFORMED) {
+            mRequiresTranslationBoundsCheck = true;
+        }
+        invalidate();
+    }
+
+    /**
+     * Determine whether zoom work is currently paused because this view is detached or hidden.
+     *
+     * @return a boolean indicating whether or not zoom work is paused
+     */
+    protected boolean isZoomWorkPaused() {
+        return mZoomWorkPaused;
     }
 
     /**
@@ -294,8 +1183,8 @@ public class PinchToZoomImageView extends ImageView implements
      */
     @Override
     public void setPadding(int left, int top, int right, int bottom) {
-        if (mMatrixHelper != null) {
-            mMatrixHelper.setPadding(left, top, right, bottom);
+        if (mConfig != null) {
+            applyConfig(mConfig.withPadding(left, top, right, bottom));
         }
         super.setPadding(left, top, right, bottom);
     }
@@ -318,9 +1207,10 @@ public class PinchToZoomImageView extends ImageView implements
     @Override
     public void setPaddingRelative(int start, int top, int end, int bottom) {
         super.setPaddingRelative(start, top, end, bottom);
-        mMatrixHelper.setPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(),
-                getPaddingBottom());
-
+        if (mConfig != null) {
+            applyConfig(mConfig.withPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(),
+                    getPaddingBottom()));
+        }
     }
 
     /**
@@ -332,7 +1222,9 @@ public class PinchToZoomImageView extends ImageView implements
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
     public void setCropToPadding(boolean cropToPadding) {
-        mMatrixHelper.setCropToPadding(cropToPadding);
+        if (mConfig != null) {
+            applyConfig(mConfig.withCropToPadding(cropToPadding));
+        }
         super.setCropToPadding(cropToPadding);
     }
 
@@ -349,38 +1241,181 @@ public class PinchToZoomImageView extends ImageView implements
     }
 
     /**
-     * Change the source image for this ImageView. Also, reset touch and matrix helpers to identity.
+     * Change the source image for this ImageView. Also, reset touch and matrix helpers to identity.
+     *
+     * @param uri uri for the source image
+     */
+    @Override
+    public void setImageURI(Uri uri) {
+        reset();
+        super.setImageURI(uri);
+    }
+
+    /**
+     * Change the source image for this ImageView. Also, reset touch and matrix helpers to identity.
+     *
+     * @param drawable Drawable for the source image
+     */
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        reset();
+        super.setImageDrawable(drawable);
+    }
+
+    /**
+     * Change the source image for this ImageView to an image decoded through a
+     * {@link BitmapRegionDecoder}, for images too large to decode in one go. Only the visible
+     * region is decoded, at a sample size to suit the current zoom level, in horizontal strips on
+     * a background thread. Each strip is drawn as soon as it has been decoded, and a pass stops
+     * early once the user zooms or pans away from it. The decoder is not recycled by this view.
+     * Also, reset touch and matrix helpers to identity.
+     *
+     * @param decoder decoder for the source image, or null to clear the source image
+     */
+    public void setImageRegionDecoder(@Nullable BitmapRegionDecoder decoder) {
+        setImageDrawable(decoder == null ? null
+                : new PinchToZoomRegionDrawable(decoder, mRgb565DecodingEnabled));
+    }
+
+    /**
+     * Free the strips decoded by the source image if it is a {@link PinchToZoomRegionDrawable}.
+     * They are decoded again the next time it is drawn.
+     */
+    protected void releaseRegionDrawable() {
+        final Drawable d = getDrawable();
+        if (d instanceof PinchToZoomRegionDrawable) {
+            ((PinchToZoomRegionDrawable) d).release();
+        }
+    }
+
+    /**
+     * Reset the touch and matrix helpers to identity
+     */
+    protected void reset() {
+        stopMotion();
+
+        // Remember where the outgoing image was left before it is forgotten
+        saveViewport();
+
+        // Items can be null because drawables are set in the super constructor. Setting a drawable
+        // triggers a reset().
+        if (mTouchHelper != null) {
+            mTouchHelper.reset();
+        }
+        if (mMatrixHelper != null) {
+            mMatrixHelper.reset();
+        }
+        if (mOverscanCache != null) {
+            mOverscanCache.invalidate();
+        }
+        if (mPinchSnapshot != null) {
+            mPinchSnapshot.discard();
+        }
+        if (mOversizeHelper != null) {
+            mOversizeHelper.release();
+        }
+        releaseRegionDrawable();
+        if (mRasterCache != null) {
+            mRasterCache.reset();
+        }
+
+        // Fit the new image on the next measure pass, even if it is the same size as the old one
+        mLayoutState = LAYOUT_STATE_AWAITING_FIT;
+        requestLayout();
+
+        // Look up the viewport of the new image once it has been measured
+        mRequiresViewportRestore = mViewportStore != null && mViewportKey != null;
+    }
+
+    /**
+     * Set the store in which the zoom level and position of each image is remembered. The same
+     * store may be shared by any number of views. Images are identified in the store by the key
+     * set using {@link #setViewportKey(String)}.
+     *
+     * @param store the store to use, or null to stop remembering viewports
+     */
+    public void setViewportStore(@Nullable PinchToZoomViewportStore store) {
+        if (store == mViewportStore) {
+            return;
+        }
+        saveViewport();
+        mViewportStore = store;
+        mRequiresViewportRestore = store != null && mViewportKey != null;
+        requestLayout();
+    }
+
+    /**
+     * Identify the current image in the {@link PinchToZoomViewportStore} set using
+     * {@link #setViewportStore(PinchToZoomViewportStore)}. The viewport of the previous key is
+     * saved, and any viewport saved for the new key is restored on the next measure pass. Set the
+     * key after setting the image, since setting an image saves the viewport of the current key.
      *
-     * @param uri uri for the source image
+     * @param key a key that uniquely identifies the current image, such as its URI, or null if the
+     *            viewport of the current image should not be remembered
      */
-    @Override
-    public void setImageURI(Uri uri) {
-        reset();
-        super.setImageURI(uri);
+    public void setViewportKey(@Nullable String key) {
+        if (key == null ? mViewportKey == null : key.equals(mViewportKey)) {
+            return;
+        }
+        saveViewport();
+        mViewportKey = key;
+        mRequiresViewportRestore = mViewportStore != null && key != null;
+        requestLayout();
     }
 
     /**
-     * Change the source image for this ImageView. Also, reset touch and matrix helpers to identity.
-     *
-     * @param drawable Drawable for the source image
+     * Save the current viewport in {@link #mViewportStore} under {@link #mViewportKey}. Nothing is
+     * saved if either is missing, or if the image has not yet been laid out.
      */
-    @Override
-    public void setImageDrawable(Drawable drawable) {
-        reset();
-        super.setImageDrawable(drawable);
+    protected void saveViewport() {
+        if (mViewportStore == null || mViewportKey == null || mMatrixHelper == null
+                || (mLayoutState != LAYOUT_STATE_FITTED
+                && mLayoutState != LAYOUT_STATE_USER_TRANSFORMED)) {
+            return;
+        }
+
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        mMatrixHelper.onSaveViewport(viewport, getMeasuredWidth(), getMeasuredHeight());
+        if (viewport.srcBitmapWidth == 0 || viewport.srcBitmapHeight == 0) {
+            return;
+        }
+        mViewportStore.put(mViewportKey, viewport);
     }
 
     /**
-     * Reset the touch and matrix helpers to identity
+     * Apply the viewport saved in {@link #mViewportStore} under {@link #mViewportKey}, if there is
+     * one and it was saved against an image of the same size as the current image. The lookup is
+     * retried on later measure passes until the size of the current image is known. The store is
+     * never read on the main thread: until it has read its log, the image is not drawn, and the
+     * lookup is retried once the log is ready or the view is next drawn. If the user has moved the
+     * image by then, the saved viewport is not applied. Once a viewport is applied, tile work for
+     * it starts straight away rather than at the next draw.
      */
-    protected void reset() {
-        // Items can be null because drawables are set in the super constructor. Setting a drawable
-        // triggers a reset().
-        if (mTouchHelper != null) {
-            mTouchHelper.reset();
+    protected void restoreViewport() {
+        if (mViewportStore == null || mViewportKey == null
+                || mLayoutState == LAYOUT_STATE_USER_TRANSFORMED) {
+            mRequiresViewportRestore = false;
+            return;
         }
-        if (mMatrixHelper != null) {
-            mMatrixHelper.reset();
+        if (!mViewportStore.isLoaded()) {
+            mViewportStore.runWhenLoaded(mViewportLoadedCallback);
+            return;
+        }
+
+        // Wait until the initial scale has captured the size of the current image
+        if (mLayoutState != LAYOUT_STATE_FITTED) {
+            return;
+        }
+        mRequiresViewportRestore = false;
+
+        PinchToZoomViewportStore.Viewport viewport = mViewportStore.get(mViewportKey);
+        if (viewport != null && mMatrixHelper.onRestoreViewport(viewport, mLayoutWidth,
+                mLayoutHeight)) {
+            mLayoutState = LAYOUT_STATE_USER_TRANSFORMED;
+
+            // Drawing takes over once the tile work has started
+            prefetchViewport(mMatrixHelper.mMatrix);
+            endPrefetch();
         }
     }
 
@@ -415,7 +1450,7 @@ public class PinchToZoomImageView extends ImageView implements
      * @attr ref R.styleable#com_jameskelso_android_widget_PinchToZoomImageView_transExtraBottom
      */
     public void setTranslationExtra(int left, int top, int right, int bottom) {
-        mMatrixHelper.setTranslationExtra(left, top, right, bottom);
+        applyConfig(mConfig.withTranslationExtra(left, top, right, bottom));
     }
 
     /**
@@ -426,7 +1461,7 @@ public class PinchToZoomImageView extends ImageView implements
      * @param minBitmapHeight minimum height in pixels to which the bitmap can be scaled
      */
     public void setBitmapMinimumSizePixels(int minBitmapWidth, int minBitmapHeight) {
-        this.mMatrixHelper.setBitmapMinimumSize(minBitmapWidth, minBitmapHeight);
+        applyConfig(mConfig.withBitmapMinimumSize(minBitmapWidth, minBitmapHeight));
     }
 
     /**
@@ -437,7 +1472,7 @@ public class PinchToZoomImageView extends ImageView implements
      * @param maxBitmapHeight maximum height in pixels to which the bitmap can be scaled
      */
     public void setBitmapMaximumSizePixels(int maxBitmapWidth, int maxBitmapHeight) {
-        this.mMatrixHelper.setBitmapMaximumSize(maxBitmapWidth, maxBitmapHeight);
+        applyConfig(mConfig.withBitmapMaximumSize(maxBitmapWidth, maxBitmapHeight));
     }
 
     /**
@@ -450,7 +1485,7 @@ public class PinchToZoomImageView extends ImageView implements
      *                     a panning gesture
      */
     public void setPanThreshold(int panThreshold) {
-        this.mTouchHelper.setPanThreshold(panThreshold);
+        applyConfig(mConfig.withPanThreshold(panThreshold));
     }
 
     /**
@@ -463,23 +1498,308 @@ public class PinchToZoomImageView extends ImageView implements
      * @param pinAxesSmallerThanViewBounds whether or not translations should be pinned
      */
     public void setPinAxesSmallerThanViewBounds(boolean pinAxesSmallerThanViewBounds) {
-        this.mMatrixHelper.setPinAxesSmallerThanViewBounds(pinAxesSmallerThanViewBounds);
+        applyConfig(mConfig.withPinAxesSmallerThanViewBounds(pinAxesSmallerThanViewBounds));
+    }
+
+    /**
+     * Set how far ahead of the latest touch sample to draw the image while the user pans, hiding
+     * that much of the delay between the finger moving and the image moving on screen. A good
+     * value is usually one or two frames. The prediction is capped to a short distance and fades
+     * out when the finger stops suddenly. When the pan ends, any translation that was only
+     * predicted is taken back. If this value is not set, pans are not predicted.
+     *
+     * @param predictionTimeMillis time in milliseconds to predict ahead, or 0 to disable
+     */
+    public void setTouchPredictionTime(int predictionTimeMillis) {
+        if (predictionTimeMillis < 0) {
+            throw new IllegalArgumentException("Touch prediction time must not be negative.");
+        }
+        mTouchPredictionTime = predictionTimeMillis;
+        applyTouchPrediction();
+    }
+
+    /**
+     * Set a listener to be notified of how accurate each touch prediction was, so the prediction
+     * time can be tuned for a device. Has no effect unless a prediction time has been set using
+     * {@link #setTouchPredictionTime(int)}.
+     *
+     * @param listener the listener, or null to stop reporting
+     */
+    public void setOnTouchPredictionListener(@Nullable OnTouchPredictionListener listener) {
+        mOnTouchPredictionListener = listener;
+        if (mTouchHelper != null && mTouchHelper.mTouchPredictor != null) {
+            mTouchHelper.mTouchPredictor.setListener(listener);
+        }
+    }
+
+    /**
+     * Set whether this view may be drawn into a hardware layer while the image is moving. The
+     * layer is only used if the view is hardware accelerated, has no other layer type set, and is
+     * small enough to fit in a texture. It is removed once the image has been still for a short
+     * time. Turn this off for views where redrawing the layer costs more than it saves. If this
+     * value is not set, it is enabled by default.
+     *
+     * @param gestureLayerEnabled whether or not a hardware layer may be used during motion
+     */
+    public void setGestureLayerEnabled(boolean gestureLayerEnabled) {
+        mGestureLayerEnabled = gestureLayerEnabled;
+        if (!gestureLayerEnabled) {
+            restoreLayerType();
+        }
+    }
+
+    /**
+     * Set whether bitmap filtering and dithering are turned off while the image is moving. This
+     * makes each frame of a gesture, fling or animation cheaper to draw, at the cost of a blockier
+     * image while it moves. Once the image settles it is redrawn once at full quality. If this
+     * value is not set, it is disabled by default.
+     *
+     * @param reducedQualityDuringMotion whether or not to draw at reduced quality during motion
+     */
+    public void setReducedQualityDuringMotion(boolean reducedQualityDuringMotion) {
+        mReducedQualityDuringMotion = reducedQualityDuringMotion;
+        if (!reducedQualityDuringMotion && mDrawAtMotionQuality) {
+            mDrawAtMotionQuality = false;
+            invalidate();
+        }
+    }
+
+    /**
+     * Set a listener to be notified each time the image settles after a gesture, fling or
+     * animation, with the average frame interval while it was moving. Comparing the reports with
+     * and without {@link #setGestureLayerEnabled(boolean)} measures what the hardware layer saves
+     * on a device.
+     *
+     * @param listener the listener, or null to stop reporting
+     */
+    public void setOnMotionSettledListener(@Nullable OnMotionSettledListener listener) {
+        mOnMotionSettledListener = listener;
+    }
+
+    /**
+     * Set a listener to be notified when the source image is a bitmap too large for the texture
+     * limit of the hardware canvas, and so is drawn as tiles or downsampled instead. The limit
+     * is read from the first hardware canvas this view is drawn on. The listener is notified once
+     * for each oversize bitmap, with the render mode chosen for it, and again if tiling later
+     * fails and the bitmap is downsampled instead.
+     *
+     * @param listener the listener, or null to stop reporting
+     */
+    public void setOnOversizeImageListener(@Nullable OnOversizeImageListener listener) {
+        mOnOversizeImageListener = listener;
+    }
+
+    /**
+     * Set whether only the visible part of the source image is drawn. When enabled and the source
+     * image is a {@link android.graphics.drawable.BitmapDrawable}, the visible area of the view is
+     * mapped back through the image matrix to find the bitmap pixels it covers, and only those
+     * pixels are drawn. This saves filtering the whole bitmap when it is zoomed far in. Other
+     * drawables, and tiled bitmaps, are drawn as usual. Tinting of the drawable is not applied
+     * when only the visible part is drawn. If this value is not set, it is disabled by default.
+     *
+     * @param visibleRectDrawingEnabled whether or not only the visible part should be drawn
+     */
+    public void setVisibleRectDrawingEnabled(boolean visibleRectDrawingEnabled) {
+        if (visibleRectDrawingEnabled == (mDrawHelper != null)) {
+            return;
+        }
+        mDrawHelper = visibleRectDrawingEnabled ? new PinchToZoomDrawHelper() : null;
+        invalidate();
+    }
+
+    /**
+     * Set the margin, in pixels, of the overscan cache. When set, the content area and this much
+     * more on every side are rendered into an offscreen bitmap at the current scale, and pans are
+     * drawn by translating that bitmap rather than redrawing the source image. The cache is
+     * rendered again once a pan moves further than the margin, or the scale changes. While the
+     * scale is changing the source image is drawn directly. This makes the cost of a pan frame
+     * independent of the size of the source image, at the cost of a bitmap slightly larger than
+     * the view. If this value is not set, there is no overscan cache.
+     *
+     * @param marginPixels margin around the content area to cache, or 0 to disable the cache
+     */
+    public void setOverscanCacheMargin(int marginPixels) {
+        if (marginPixels < 0) {
+            throw new IllegalArgumentException("Overscan margin must not be negative.");
+        }
+        if (mOverscanCache != null) {
+            if (mOverscanCache.mMargin == marginPixels) {
+                return;
+            }
+            mOverscanCache.release();
+        }
+        mOverscanCache = marginPixels == 0 ? null
+                : new PinchToZoomOverscanCache(marginPixels, this);
+        invalidate();
+    }
+
+    /**
+     * Set whether source images that are not bitmaps, such as vector and shape drawables, are
+     * drawn from a raster cache. When enabled, the drawable is rendered into tiles at the current
+     * zoom level rounded up to a power of two, and the tiles are drawn through the image matrix
+     * rather than the drawable itself. While the image moves, the existing tiles are scaled. Once
+     * it settles, tiles are rendered again at the new zoom level a few per frame, and the old
+     * tiles are drawn until they are ready. This avoids redrawing complex paths every frame, at
+     * the cost of some softness while zooming. If this value is not set, it is disabled by
+     * default.
+     *
+     * @param rasterCacheEnabled whether or not drawables should be drawn from a raster cache
+     */
+    public void setRasterCacheEnabled(boolean rasterCacheEnabled) {
+        if (rasterCacheEnabled == (mRasterCache != null)) {
+            return;
+        }
+        if (rasterCacheEnabled) {
+            mRasterCache = new PinchToZoomRasterCache(this);
+        } else {
+            mRasterCache.release();
+            mRasterCache = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Set whether images set using {@link #setImageRegionDecoder(BitmapRegionDecoder)} may be
+     * decoded as {@link Bitmap.Config#RGB_565}, at half the memory of ARGB_8888. When enabled, the
+     * config is chosen from the first part of each image decoded, and RGB_565 is used only if the
+     * image is opaque and is not mostly smooth gradients, where banding would show. Otherwise
+     * ARGB_8888 is used as usual. Applies to images set after this is called. If this value is not
+     * set, it is disabled by default.
+     *
+     * @param rgb565DecodingEnabled whether or not opaque images may be decoded as RGB_565
+     */
+    public void setRgb565DecodingEnabled(boolean rgb565DecodingEnabled) {
+        mRgb565DecodingEnabled = rgb565DecodingEnabled;
+    }
+
+    /**
+     * Set whether a pinch scales a snapshot of the view rather than redrawing the source image.
+     * When enabled, the content area is captured once when a second finger goes down, and each
+     * frame of the pinch draws that snapshot scaled and translated to match the gesture. When the
+     * pinch ends, the source image is redrawn crisply at its final scale. If the pinch reveals
+     * part of the image that was outside the view when the snapshot was taken, the source image
+     * is drawn instead. If this value is not set, it is disabled by default.
+     *
+     * @param pinchSnapshotEnabled whether or not pinches should scale a snapshot
+     */
+    public void setPinchSnapshotEnabled(boolean pinchSnapshotEnabled) {
+        if (pinchSnapshotEnabled == (mPinchSnapshot != null)) {
+            return;
+        }
+        if (pinchSnapshotEnabled) {
+            mPinchSnapshot = new PinchToZoomPinchSnapshot(this);
+        } else {
+            mPinchSnapshot.release();
+            mPinchSnapshot = null;
+            invalidate();
+        }
+    }
+
+    /**
+     * Set whether pans and zooms are resampled to the display frame rate. When enabled, touch
+     * moves are collected and interpolated to just before the time of each frame, and exactly one
+     * transform is applied per displayed frame. This smooths out judder on devices whose touch
+     * panel reports at a different rate from the display refresh, and avoids recalculating the
+     * image matrix for moves that would never be seen. If this value is not set, it is disabled
+     * by default, and every move is applied as it arrives.
+     *
+     * @param inputResamplingEnabled whether or not moves should be resampled
+     */
+    public void setInputResamplingEnabled(boolean inputResamplingEnabled) {
+        mInputResamplingEnabled = inputResamplingEnabled;
+        applyInputResampling();
+    }
+
+    /**
+     * Animate to an absolute zoom level, keeping the point of the image under a focus in place.
+     * Intended for gestures such as double-tap to zoom. The zoom level is capped by the minimum and
+     * maximum bitmap size, and the image stops within the translation bounds. Any fling or
+     * animation in progress stops, as does this animation if the user touches the view. This has
+     * no effect until the image has been laid out.
+     *
+     * @param scaleFactor the zoom level, where 1.0 shows the image at its intrinsic size
+     * @param focusX      the X coordinate, within the view, that should stay in place
+     * @param focusY      the Y coordinate, within the view, that should stay in place
+     */
+    public void animateZoomTo(float scaleFactor, float focusX, float focusY) {
+        if (!prepareAnimation()) {
+            return;
+        }
+        mMatrixHelper.getZoomTarget(getMeasuredWidth(), getMeasuredHeight(), scaleFactor, focusX,
+                focusY, mAnimationTarget);
+        startAnimation();
+    }
+
+    /**
+     * Animate the image so that a point of it is shown at the center of the view, keeping the
+     * current zoom level. Intended for jumping to a location, such as a search result. The image
+     * stops within the translation bounds, so a point near an edge may not reach the center. Any
+     * fling or animation in progress stops, as does this animation if the user touches the view.
+     * This has no effect until the image has been laid out.
+     *
+     * @param x the X coordinate, in pixels of the image at its intrinsic size
+     * @param y the Y coordinate, in pixels of the image at its intrinsic size
+     */
+    public void animateCenterOn(float x, float y) {
+        if (!prepareAnimation()) {
+            return;
+        }
+        mMatrixHelper.getCenterTarget(getMeasuredWidth(), getMeasuredHeight(), x, y,
+                mAnimationTarget);
+        startAnimation();
+    }
+
+    /**
+     * Stop anything else that is moving the image and make sure the animation helper exists.
+     *
+     * @return false if the image has not been laid out yet, so there is nothing to animate
+     */
+    protected boolean prepareAnimation() {
+        if (mLayoutState != LAYOUT_STATE_FITTED && mLayoutState != LAYOUT_STATE_USER_TRANSFORMED) {
+            return false;
+        }
+
+        stopMotion();
+        ensureMatrixHelper();
+        if (mAnimationHelper == null) {
+            mAnimationHelper = new PinchToZoomAnimationHelper(this);
+            mAnimationTarget = new Matrix();
+        }
+        return true;
+    }
+
+    /**
+     * Animate from the current image matrix to {@link #mAnimationTarget}. While zoom work is
+     * paused, the target is applied immediately instead. Tile work for the target starts with the
+     * animation, and drawing does not start tile work for the frames on the way until it ends.
+     */
+    protected void startAnimation() {
+        mLayoutState = LAYOUT_STATE_USER_TRANSFORMED;
+        if (mZoomWorkPaused) {
+            // Nothing is drawn while paused, so skip straight to the end
+            mMatrixHelper.setTransform(getMeasuredWidth(), getMeasuredHeight(), mAnimationTarget);
+            return;
+        }
+        mAnimationHelper.start(mMatrixHelper.mMatrix, mAnimationTarget);
+        prefetchViewport(mAnimationTarget);
     }
 
     /**
      * Generate a representation of internal state that can later be used to create a new instance
-     * with that same state. This state should only contains information that is not persistent or
-     * can not be reconstructed later.
+     * with that same state. This state only contains the zoom level and translation of the image,
+     * since configuration is reconstructed from layout XML.
      *
      * @return a PinchToZoomSavedState object containing the view's current dynamic state.
      */
     @Override
     public PinchToZoomSavedState onSaveInstanceState() {
         Parcelable superState = super.onSaveInstanceState();
+        saveViewport();
 
         PinchToZoomSavedState state = new PinchToZoomSavedState(superState);
-        mMatrixHelper.onSaveInstanceState(state);
-        mTouchHelper.onSaveInstanceState(state);
+        if (mMatrixHelper != null) {
+            mMatrixHelper.onSaveInstanceState(state);
+        }
 
         return state;
     }
@@ -497,10 +1817,17 @@ public class PinchToZoomImageView extends ImageView implements
             PinchToZoomSavedState ptzState = (PinchToZoomSavedState) state;
             super.onRestoreInstanceState(ptzState.getSuperState());
 
-            mMatrixHelper.onRestoreInstanceState(ptzState);
-            mTouchHelper.onRestoreInstanceState(ptzState);
+            // State written by an unknown version of the parcel format is ignored, as is the
+            // empty state of a lightweight view that was never zoomed
+            if (ptzState.hasDynamicState()
+                    && (mMatrixHelper != null || ptzState.srcBitmapWidth != 0)) {
+                ensureMatrixHelper().onRestoreInstanceState(ptzState);
+                mRequiresTranslationBoundsCheck = true;
+                mLayoutState = LAYOUT_STATE_USER_TRANSFORMED;
 
-            mRequiresTranslationBoundsCheck = true;
+                // Instance state is more recent than anything in the viewport store
+                mRequiresViewportRestore = false;
+            }
         } else {
             throw new IllegalArgumentException("Wrong state class, expecting " +
                     "PinchToZoomSavedState but received " + state.getClass().toString() +
@@ -519,8 +1846,11 @@ public class PinchToZoomImageView extends ImageView implements
      */
     @Override
     public void onPinchToZoom(float desiredScaleFactor, float focusX, float focusY) {
-        mMatrixHelper.scale(getMeasuredWidth(), getMeasuredHeight(), desiredScaleFactor,
-                focusX, focusY);
+        PinchToZoomMatrixHelper matrixHelper = ensureMatrixHelper();
+        mLayoutState = LAYOUT_STATE_USER_TRANSFORMED;
+        onMotion();
+        matrixHelper.scale(getMeasuredWidth(), getMeasuredHeight(), desiredScaleFactor, focusX,
+                focusY);
     }
 
     /**
@@ -532,17 +1862,303 @@ public class PinchToZoomImageView extends ImageView implements
      */
     @Override
     public void onPan(float dx, float dy) {
+        PinchToZoomMatrixHelper matrixHelper = ensureMatrixHelper();
+        mLayoutState = LAYOUT_STATE_USER_TRANSFORMED;
+        onMotion();
+        matrixHelper.translate(getMeasuredWidth(), getMeasuredHeight(), dx, dy);
+    }
+
+    /**
+     * A callback from the touch helper moving the image ahead of a panning pointer, to where the
+     * pointer is predicted to be.
+     *
+     * @param dx amount by which the image should be translated on the X-axis
+     * @param dy amount by which the image should be translated on the Y-axis
+     * @return the translation applied once the image was kept within its bounds
+     */
+    @Override
+    public PointF onPredictedPan(float dx, float dy) {
+        PinchToZoomMatrixHelper matrixHelper = ensureMatrixHelper();
+        mLayoutState = LAYOUT_STATE_USER_TRANSFORMED;
+        onMotion();
+        return matrixHelper.translate(getMeasuredWidth(), getMeasuredHeight(), dx, dy);
+    }
+
+    /**
+     * A callback from {@link PinchToZoomTouchHelper} indicating that a multi-touch gesture has
+     * both changed its span and moved its focus. The image is scaled about the previous focus and
+     * moved along with the gesture in a single update of the image matrix.
+     *
+     * @param desiredScaleFactor the desired factor to which the image should be scaled
+     * @param focusX             the X coordinate of the focus of the gesture before it moved
+     * @param focusY             the Y coordinate of the focus of the gesture before it moved
+     * @param dx                 the distance the focus has moved on the X coordinate plane
+     * @param dy                 the distance the focus has moved on the Y coordinate plane
+     */
+    @Override
+    public void onPinchToZoomAndPan(float desiredScaleFactor, float focusX, float focusY, float dx,
+                                    float dy) {
+        PinchToZoomMatrixHelper matrixHelper = ensureMatrixHelper();
+        mLayoutState = LAYOUT_STATE_USER_TRANSFORMED;
+        onMotion();
+        matrixHelper.scaleAndTranslate(getMeasuredWidth(), getMeasuredHeight(), desiredScaleFactor,
+                focusX, focusY, dx, dy);
+    }
+
+    /**
+     * A callback from {@link PinchToZoomTouchHelper} indicating that the user has touched the
+     * view. Any fling or animation in progress stops where it is.
+     */
+    @Override
+    public void onGestureStart() {
+        stopMotion();
+    }
+
+    /**
+     * A callback from {@link PinchToZoomTouchHelper} indicating that a second finger has gone
+     * down. If pinch snapshots are enabled, the content area is captured so that the rest of the
+     * pinch can scale the snapshot rather than redraw the source image.
+     */
+    @Override
+    public void onPinchStart() {
+        if (mPinchSnapshot != null && getDrawable() != null) {
+            mPinchSnapshot.capture(getImageMatrix(), getContentWidth(), getContentHeight());
+        }
+    }
+
+    /**
+     * A callback from {@link PinchToZoomTouchHelper} indicating that the pinch has ended. Any
+     * snapshot is dropped and the source image is redrawn at its final scale.
+     */
+    @Override
+    public void onPinchEnd() {
+        if (mPinchSnapshot != null && mPinchSnapshot.isCaptured()) {
+            mPinchSnapshot.discard();
+            invalidate();
+        }
+    }
+
+    /**
+     * A callback from {@link PinchToZoomTouchHelper} indicating that the user lifted their finger
+     * while panning quickly. The pan carries on as a fling, which stops at the translation bounds.
+     *
+     * @param velocityX velocity of the pan on the X coordinate plane, in pixels per second
+     * @param velocityY velocity of the pan on the Y coordinate plane, in pixels per second
+     */
+    @Override
+    public void onFling(float velocityX, float velocityY) {
+        if (mMatrixHelper == null || mZoomWorkPaused) {
+            return;
+        }
+        if (mFlingHelper == null) {
+            mFlingHelper = new PinchToZoomFlingHelper(getContext(), this);
+            mFlingBounds = new RectF();
+        }
+
+        mMatrixHelper.getAvailableTranslation(getMeasuredWidth(), getMeasuredHeight(),
+                mFlingBounds);
+        mFlingHelper.fling(velocityX, velocityY, mFlingBounds);
+    }
+
+    /**
+     * A callback from {@link PinchToZoomFlingHelper} indicating that a fling has moved the image
+     * since the last frame.
+     *
+     * @param dx amount by which the image should be translated on the X-axis
+     * @param dy amount by which the image should be translated on the Y-axis
+     */
+    @Override
+    public void onFlingStep(float dx, float dy) {
+        if (mMatrixHelper == null) {
+            return;
+        }
+        onMotion();
         mMatrixHelper.translate(getMeasuredWidth(), getMeasuredHeight(), dx, dy);
     }
 
+    /**
+     * A callback from {@link PinchToZoomAnimationHelper} with the zoom level and translation for
+     * the current frame of an animation.
+     *
+     * @param scaleFactor  the zoom level
+     * @param translationX the translation on the X coordinate plane
+     * @param translationY the translation on the Y coordinate plane
+     */
+    @Override
+    public void onAnimationStep(float scaleFactor, float translationX, float translationY) {
+        if (mMatrixHelper == null) {
+            return;
+        }
+        onMotion();
+        mMatrixHelper.setTransform(getMeasuredWidth(), getMeasuredHeight(), scaleFactor,
+                translationX, translationY);
+        if (mAnimationHelper == null || !mAnimationHelper.isAnimating()) {
+            // The image has reached the target the tiles were prefetched for
+            endPrefetch();
+        }
+    }
+
+    /**
+     * Record that a gesture, fling or animation is about to move the image. Nothing is recorded
+     * while zoom work is paused, since nothing is drawn.
+     */
+    protected void onMotion() {
+        if (mZoomWorkPaused) {
+            return;
+        }
+        if (mMotionTracker == null) {
+            mMotionTracker = new PinchToZoomMotionTracker(this, this);
+        }
+        mMotionTracker.onMotion();
+    }
+
+    /**
+     * A callback from {@link PinchToZoomMotionTracker} indicating that the image has started
+     * moving. The view is switched to a hardware layer if the layer policy allows it.
+     */
+    @Override
+    public void onMotionStart() {
+        if (mRasterCache != null) {
+            mRasterCache.setMoving(true);
+        }
+        if (canPromoteLayer()) {
+            mLayerPromoted = true;
+            setLayerType(LAYER_TYPE_HARDWARE, null);
+        }
+    }
+
+    /**
+     * A callback from {@link PinchToZoomMotionTracker} indicating that the image has stopped
+     * moving. The original layer type is restored, the image is redrawn at full quality if it was
+     * drawn at reduced quality or from the overscan cache, and any
+     * {@link OnMotionSettledListener} is told how the motion was drawn.
+     *
+     * @param frameCount        number of frames drawn while the image was moving
+     * @param averageFrameNanos average time between those frames, or 0 if fewer than two were
+     *                          drawn
+     */
+    @Override
+    public void onMotionSettled(int frameCount, long averageFrameNanos) {
+        final boolean layerPromoted = mLayerPromoted;
+        restoreLayerType();
+        if (mRasterCache != null) {
+            mRasterCache.setMoving(false);
+        }
+        if (mDrawAtMotionQuality || mOverscanCache != null) {
+            // Redraw once at full quality, and at the exact translation rather than from the
+            // overscan cache
+            mDrawAtMotionQuality = false;
+            invalidate();
+        }
+        if (mOnMotionSettledListener != null) {
+            mOnMotionSettledListener.onMotionSettled(layerPromoted, frameCount,
+                    averageFrameNanos);
+        }
+    }
+
+    /**
+     * Determine whether this view may be switched to a hardware layer while the image moves. It
+     * must be hardware accelerated, must not already have a layer chosen by the application, and
+     * must fit within the largest texture seen on a hardware canvas.
+     *
+     * @return a boolean indicating whether or not a hardware layer should be used
+     */
+    protected boolean canPromoteLayer() {
+        return mGestureLayerEnabled && !mLayerPromoted && isHardwareAccelerated()
+                && getLayerType() == LAYER_TYPE_NONE && mMaxLayerWidth > 0
+                && getWidth() <= mMaxLayerWidth && getHeight() <= mMaxLayerHeight;
+    }
+
+    /**
+     * Remove the hardware layer added when the current motion started, if there is one.
+     */
+    protected void restoreLayerType() {
+        if (!mLayerPromoted) {
+            return;
+        }
+        mLayerPromoted = false;
+        setLayerType(LAYER_TYPE_NONE, null);
+    }
+
+    /**
+     * Stop any fling or animation in progress. Tile work started for the target of an animation
+     * carries on, but drawing may replace it from then on.
+     */
+    protected void stopMotion() {
+        if (mFlingHelper != null) {
+            mFlingHelper.stop();
+        }
+        if (mAnimationHelper != null && mAnimationHelper.isAnimating()) {
+            mAnimationHelper.stop();
+            endPrefetch();
+        }
+    }
+
     /**
      * A callback from the matrix helper indicating that the image matrix has been updated
-     * due to a scale or translation.
+     * due to a scale or translation. If the change was made by a gesture, fling or animation and
+     * reduced quality during motion is enabled, the next frame is drawn at reduced quality.
      *
      * @param imageMatrix the matrix containing the new values set by the matrix helper
      */
     @Override
     public void onMatrixChanged(Matrix imageMatrix) {
+        mDrawAtMotionQuality = mReducedQualityDuringMotion && mMotionTracker != null
+                && mMotionTracker.isMoving();
         setImageMatrix(imageMatrix);
     }
+
+    /**
+     * An interface which allows an interested class to measure touch prediction. See
+     * {@link #setTouchPredictionTime(int)}.
+     */
+    public interface OnTouchPredictionListener {
+        /**
+         * Called once a prediction can be compared with where the pointer actually went.
+         *
+         * @param errorPixels        distance in pixels between the predicted position and the
+         *                           actual position of the pointer at the predicted time
+         * @param latencySavedMillis how far ahead, in milliseconds, the prediction moved the
+         *                           image, after being capped and faded out
+         */
+        void onTouchPrediction(float errorPixels, float latencySavedMillis);
+    }
+
+    /**
+     * An interface which allows an interested class to find out how an oversize bitmap is drawn.
+     * See {@link #setOnOversizeImageListener(OnOversizeImageListener)}.
+     */
+    public interface OnOversizeImageListener {
+        /**
+         * Called once an oversize bitmap has been prepared for drawing.
+         *
+         * @param bitmapWidth      width of the source bitmap
+         * @param bitmapHeight     height of the source bitmap
+         * @param maxTextureWidth  largest bitmap width the hardware canvas can draw
+         * @param maxTextureHeight largest bitmap height the hardware canvas can draw
+         * @param renderMode       {@link #OVERSIZE_RENDER_MODE_TILED},
+         *                         {@link #OVERSIZE_RENDER_MODE_DOWNSAMPLED}, or
+         *                         {@link #OVERSIZE_RENDER_MODE_NONE} if neither was possible
+         */
+        void onOversizeImage(int bitmapWidth, int bitmapHeight, int maxTextureWidth,
+                             int maxTextureHeight, int renderMode);
+    }
+
+    /**
+     * An interface which allows an interested class to measure how smoothly the image moves. See
+     * {@link #setOnMotionSettledListener(OnMotionSettledListener)}.
+     */
+    public interface OnMotionSettledListener {
+        /**
+         * Called once the image has been still for a short time after moving.
+         *
+         * @param hardwareLayer             whether the view was drawn into a hardware layer while
+         *                                  the image moved
+         * @param frameCount                number of frames drawn while the image moved
+         * @param averageFrameIntervalNanos average time between those frames, in nanoseconds, or
+         *                                  0 if fewer than two were drawn
+         */
+        void onMotionSettled(boolean hardwareLayer, int frameCount,
+                             long averageFrameIntervalNanos);
+    }
 }
@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Resamples the pans and zooms reported by {@link PinchToZoomTouchHelper} to the display frame
+ * rate, for devices whose touch panel reports at a different rate from the display refresh.
+ * <p/>
+ * Each move is added with the time of its touch event and folded into a running transform, a
+ * scale and translation in view coordinates, that describes how far the gesture has moved the
+ * image since the last frame was applied. The running transform is kept at the time of the latest
+ * move and of the move before it. Once per frame, when stepped by the shared
+ * {@link PinchToZoomFrameDriver}, the transform is interpolated between those two moves to
+ * {@link #RESAMPLE_LATENCY} milliseconds before the frame time, and exactly one pan or zoom
+ * covering the difference from the previous frame is passed on to {@link #mListener}.
+ * <p/>
+ * Interpolating slightly behind the frame time means there is almost always a move on either side
+ * of the point being drawn, so the image moves smoothly even when moves arrive unevenly. Anything
+ * left over is applied on the following frames, or straight away by {@link #flush()} when the
+ * gesture changes. All state is held in primitive fields, so no objects are allocated while a
+ * gesture is resampled.
+ */
+class PinchToZoomInputResampler implements PinchToZoomFrameDriver.FrameClient {
+    // How far behind the frame time, in milliseconds, the touch track is sampled
+    protected static final long RESAMPLE_LATENCY = 5;
+
+    protected final PinchToZoomTouchHelper.OnPinchToZoomTouchListener mListener;
+
+    // Running transform at the latest move: x' = mScale * x + mTranslation
+    protected float mScale = 1.0f;
+    protected float mTranslationX;
+    protected float mTranslationY;
+    protected long mTime;
+
+    // Running transform at the move before the latest one
+    protected float mPreviousScale = 1.0f;
+    protected float mPreviousTranslationX;
+    protected float mPreviousTranslationY;
+    protected long mPreviousTime;
+
+    // Part of the running transform that has already been passed on to the listener
+    protected float mAppliedScale = 1.0f;
+    protected float mAppliedTranslationX;
+    protected float mAppliedTranslationY;
+
+    // Focus of the latest zoom, about which the next zoom is passed on
+    protected float mFocusX;
+    protected float mFocusY;
+
+    // Whether the helper is registered with the frame driver
+    protected boolean mScheduled;
+
+    PinchToZoomInputResampler(@NonNull PinchToZoomTouchHelper.OnPinchToZoomTouchListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Add a move that scales the image about a focus and then translates it.
+     *
+     * @param scaleFactor the change in scale
+     * @param focusX      the X coordinate of the focus of the scale
+     * @param focusY      the Y coordinate of the focus of the scale
+     * @param dx          the distance to translate on the X coordinate plane after scaling
+     * @param dy          the distance to translate on the Y coordinate plane after scaling
+     * @param eventTime   time of the touch event, in the
+     *                    {@link android.os.SystemClock#uptimeMillis()} time base
+     */
+    void addMove(float scaleFactor, float focusX, float focusY, float dx, float dy,
+                 long eventTime) {
+        mPreviousScale = mScale;
+        mPreviousTranslationX = mTranslationX;
+        mPreviousTranslationY = mTranslationY;
+        mPreviousTime = mTime;
+
+        // Compose x' = s * (x - f) + f + d onto the running transform
+        mScale *= scaleFactor;
+        mTranslationX = scaleFactor * mTranslationX + (1 - scaleFactor) * focusX + dx;
+        mTranslationY = scaleFactor * mTranslationY + (1 - scaleFactor) * focusY + dy;
+        mTime = eventTime;
+        if (scaleFactor != 1.0f) {
+            mFocusX = focusX;
+            mFocusY = focusY;
+        }
+
+        if (!mScheduled) {
+            // The first move since the last frame has nothing to interpolate from
+            mPreviousTime = eventTime;
+            mScheduled = true;
+            addToFrameDriver();
+        }
+    }
+
+    /**
+     * Pass on the interpolated transform for the current frame.
+     *
+     * @param frameTimeNanos the time at which the frame started rendering
+     * @return true until every move has been passed on
+     */
+    @Override
+    public boolean doFrame(long frameTimeNanos) {
+        if (!mScheduled) {
+            return false;
+        }
+
+        final long sampleTime = frameTimeNanos / 1000000 - RESAMPLE_LATENCY;
+        if (sampleTime >= mTime || mTime <= mPreviousTime) {
+            applyTo(mScale, mTranslationX, mTranslationY);
+        } else if (sampleTime > mPreviousTime) {
+            final float fraction = (float) (sampleTime - mPreviousTime) / (mTime - mPreviousTime);
+            applyTo(mPreviousScale + (mScale - mPreviousScale) * fraction,
+                    mPreviousTranslationX + (mTranslationX - mPreviousTranslationX) * fraction,
+                    mPreviousTranslationY + (mTranslationY - mPreviousTranslationY) * fraction);
+        } else {
+            applyTo(mPreviousScale, mPreviousTranslationX, mPreviousTranslationY);
+        }
+
+        if (isCaughtUp()) {
+            mScheduled = false;
+            restart();
+        }
+        return mScheduled;
+    }
+
+    /**
+     * Pass on every move that has not been passed on yet, and start again from an empty running
+     * transform. Called whenever the gesture changes, so that anything the touch helper reports
+     * afterwards is applied on top of every move before it.
+     */
+    void flush() {
+        applyTo(mScale, mTranslationX, mTranslationY);
+        cancel();
+    }
+
+    /**
+     * Forget every move that has not been passed on yet.
+     */
+    void cancel() {
+        if (mScheduled) {
+            mScheduled = false;
+            removeFromFrameDriver();
+        }
+        restart();
+    }
+
+    /**
+     * Pass on the difference between the part of the running transform already passed on and the
+     * given running transform, as a single pan or zoom.
+     */
+    protected void applyTo(float scale, float translationX, float translationY) {
+        if (scale == mAppliedScale && translationX == mAppliedTranslationX
+                && translationY == mAppliedTranslationY) {
+            return;
+        }
+
+        // x' = ratio * x + (translation - ratio * applied translation), expressed as a scale
+        // about the latest focus followed by a pan
+        final float ratio = scale / mAppliedScale;
+        final float dx = translationX - ratio * mAppliedTranslationX - (1 - ratio) * mFocusX;
+        final float dy = translationY - ratio * mAppliedTranslationY - (1 - ratio) * mFocusY;
+        mAppliedScale = scale;
+        mAppliedTranslationX = translationX;
+        mAppliedTranslationY = translationY;
+
+        if (ratio == 1.0f) {
+            mListener.onPan(dx, dy);
+        } else {
+            mListener.onPinchToZoomAndPan(ratio, mFocusX, mFocusY, dx, dy);
+        }
+    }
+
+    protected boolean isCaughtUp() {
+        return mAppliedScale == mScale && mAppliedTranslationX == mTranslationX
+                && mAppliedTranslationY == mTranslationY;
+    }
+
+    /**
+     * Reset the running transform to identity.
+     */
+    protected void restart() {
+        mScale = 1.0f;
+        mTranslationX = 0;
+        mTranslationY = 0;
+        mPreviousScale = 1.0f;
+        mPreviousTranslationX = 0;
+        mPreviousTranslationY = 0;
+        mAppliedScale = 1.0f;
+        mAppliedTranslationX = 0;
+        mAppliedTranslationY = 0;
+    }
+
+    protected void addToFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().add(this);
+    }
+
+    protected void removeFromFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().remove(this);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+/**
+ * Chooses which level of detail to draw an image at as its scale changes, without thrashing
+ * between levels.
+ * <p/>
+ * Level k holds the image downsampled by 2<sup>k</sup>, and is the ideal level while
+ * log<sub>2</sub>(1 / scale) lies between k and k + 1, where scale is the number of screen pixels
+ * per source pixel. Picking the level straight from the scale would switch back and forth every
+ * time a pinch hovers around a power of two. Instead, {@link #select(float, int, long)} keeps the
+ * current level until the ideal level moves more than {@link #HYSTERESIS} of a level outside its
+ * band, and then only switches once the new level has been wanted continuously for
+ * {@link #DWELL_TIME} milliseconds. A pinch that keeps changing direction, or moves slowly
+ * through a boundary, therefore causes at most one switch.
+ */
+class PinchToZoomLevelSelector {
+    // Fraction of a level by which the scale must leave the band of the current level
+    static final float HYSTERESIS = .25f;
+
+    // Time, in milliseconds, a new level must be wanted before switching to it
+    static final int DWELL_TIME = 150;
+
+    // The selected level, or -1 before the first selection
+    protected int mLevel = -1;
+
+    // Level waiting to be switched to, or -1, and when it was first wanted
+    protected int mCandidate = -1;
+    protected long mCandidateTime;
+
+    /**
+     * Select the level to draw at.
+     *
+     * @param scale    screen pixels per source pixel
+     * @param maxLevel the coarsest level available
+     * @param now      the current time, in milliseconds
+     * @return the selected level, between 0 and maxLevel
+     */
+    int select(float scale, int maxLevel, long now) {
+        final float ideal = getIdealLevel(scale, maxLevel);
+        final int target = Math.min(maxLevel, (int) ideal);
+        if (mLevel < 0 || mLevel > maxLevel) {
+            mLevel = target;
+            mCandidate = -1;
+            return mLevel;
+        }
+
+        if (ideal >= mLevel - HYSTERESIS && ideal < mLevel + 1 + HYSTERESIS) {
+            mCandidate = -1;
+            return mLevel;
+        }
+
+        if (target != mCandidate) {
+            mCandidate = target;
+            mCandidateTime = now;
+        } else if (now - mCandidateTime >= DWELL_TIME) {
+            mLevel = target;
+            mCandidate = -1;
+        }
+        return mLevel;
+    }
+
+    /**
+     * Determine whether a different level is wanted but has not been wanted for long enough.
+     * {@link #select(float, int, long)} must be called again later for the switch to happen.
+     *
+     * @return a boolean indicating whether or not a switch is waiting
+     */
+    boolean isSwitchPending() {
+        return mCandidate >= 0;
+    }
+
+    /**
+     * Forget the selected level, for example because the image has changed.
+     */
+    void reset() {
+        mLevel = -1;
+        mCandidate = -1;
+    }
+
+    /**
+     * Calculate the continuous level at which one level pixel covers one screen pixel, clamped to
+     * the available levels.
+     */
+    protected static float getIdealLevel(float scale, int maxLevel) {
+        if (scale <= 0) {
+            return maxLevel;
+        }
+        final float ideal = (float) (Math.log(1 / scale) / Math.log(2));
+        return Math.max(0, Math.min(maxLevel + .5f, ideal));
+    }
+}
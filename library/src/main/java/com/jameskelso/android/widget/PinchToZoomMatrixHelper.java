@@ -22,7 +22,8 @@ package com.jameskelso.android.widget;
 
 import android.graphics.Matrix;
 import android.graphics.Point;
-import android.graphics.Rect;
+import android.graphics.PointF;
+import android.graphics.RectF;
 import android.support.annotation.NonNull;
 
 /**
@@ -65,16 +66,17 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
     protected final float[] mMatrixValues = new float[9];
     protected final PinchToZoomMatrixState mMatrixState = new PinchToZoomMatrixState();
 
+    // Configuration, which may be shared with other instances
+    protected PinchToZoomConfig mConfig = PinchToZoomConfig.DEFAULT;
+
     // Instance state
-    protected boolean mCropToPadding = false;
-    protected boolean mPinAxesSmallerThanViewBounds = true;
-    protected Rect mPadding = new Rect();
-    protected Rect mTranslationExtra = new Rect();
     protected Point mSrcBitmapSize = new Point();
-    protected Point mBitmapMinSize = new Point(0, 0);
-    protected Point mBitmapMaxSize = new Point(0, 0);
     protected Matrix mMatrix = new Matrix();
 
+    // Translation applied along with the scale in progress, set by scaleAndTranslate
+    protected float mPendingTranslationX;
+    protected float mPendingTranslationY;
+
     protected PinchToZoomScaleHelper mScaleHelper;
     protected PinchToZoomTranslationHelper mTranslationHelper;
 
@@ -142,6 +144,32 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
         mScaleHelper.scale(mMatrixState);
     }
 
+    /**
+     * Scale the image about a focus and translate it in a single update of {@link #mMatrix}. The
+     * scale is performed as in {@link #scale(int, int, float, float, float)}, then the translation
+     * is applied, and the translation bounds are checked once for the combined result.
+     * {@link #mMatrixChangedListener} is notified once.
+     *
+     * @param viewMeasuredWidth  measured width of the view for which these calculations are
+     *                           performed
+     * @param viewMeasuredHeight measured height of the view for which these calculations are
+     *                           performed
+     * @param desiredScaleFactor the desired factor to which the image should be scaled
+     * @param focusX             the X coordinate about which the image should be scaled
+     * @param focusY             the Y coordinate about which the image should be scaled
+     * @param dx                 desired translation on the X coordinate plane
+     * @param dy                 desired translation on the Y coordinate plane
+     */
+    void scaleAndTranslate(int viewMeasuredWidth, int viewMeasuredHeight,
+                           float desiredScaleFactor, float focusX, float focusY, float dx,
+                           float dy) {
+        mPendingTranslationX = dx;
+        mPendingTranslationY = dy;
+        scale(viewMeasuredWidth, viewMeasuredHeight, desiredScaleFactor, focusX, focusY);
+        mPendingTranslationX = 0;
+        mPendingTranslationY = 0;
+    }
+
     void checkTranslationBounds(int viewMeasuredWidth, int viewMeasuredHeight) {
         updateMatrixState(viewMeasuredWidth, viewMeasuredHeight);
         mTranslationHelper.checkTranslationBounds(mMatrixState);
@@ -163,10 +191,126 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
      *                           performed
      * @param dx                 desired translation on the X axis
      * @param dy                 desired translation on the Y axis
+     * @return the translation that was applied once it was kept within the bounds of the view.
+     * The same instance is reused by every call.
+     */
+    PointF translate(int viewMeasuredWidth, int viewMeasuredHeight, float dx, float dy) {
+        updateMatrixState(viewMeasuredWidth, viewMeasuredHeight);
+        return mTranslationHelper.translate(dx, dy, mMatrixState);
+    }
+
+    /**
+     * Calculate the image matrix that results from zooming to an absolute zoom level while keeping
+     * the point of the image under a focus in place. The zoom level is capped by the minimum and
+     * maximum bitmap size, and the translation is corrected to lie within the bounds of the view.
+     * {@link #mMatrix} is not changed.
+     *
+     * @param viewMeasuredWidth  measured width of the view showing the image
+     * @param viewMeasuredHeight measured height of the view showing the image
+     * @param scaleFactor        the desired zoom level, where 1.0 shows the source image at its
+     *                           intrinsic size
+     * @param focusX             the X coordinate, within the view, that should stay in place
+     * @param focusY             the Y coordinate, within the view, that should stay in place
+     * @param outTarget          receives the resulting image matrix
+     */
+    void getZoomTarget(int viewMeasuredWidth, int viewMeasuredHeight, float scaleFactor,
+                       float focusX, float focusY, Matrix outTarget) {
+        updateMatrixState(viewMeasuredWidth, viewMeasuredHeight);
+        float currentScale = mMatrixValues[Matrix.MSCALE_X];
+        float scale = mScaleHelper.verifyScaleFactor(scaleFactor, mMatrixState);
+        float ratio = scale / currentScale;
+
+        setBoundedTarget(scale, focusX - (focusX - mMatrixValues[Matrix.MTRANS_X]) * ratio,
+                focusY - (focusY - mMatrixValues[Matrix.MTRANS_Y]) * ratio, outTarget);
+    }
+
+    /**
+     * Calculate the image matrix that results from moving a point of the source image to the
+     * center of the view at the current zoom level. The translation is corrected to lie within the
+     * bounds of the view. {@link #mMatrix} is not changed.
+     *
+     * @param viewMeasuredWidth  measured width of the view showing the image
+     * @param viewMeasuredHeight measured height of the view showing the image
+     * @param x                  the X coordinate, in source image pixels, to center on
+     * @param y                  the Y coordinate, in source image pixels, to center on
+     * @param outTarget          receives the resulting image matrix
+     */
+    void getCenterTarget(int viewMeasuredWidth, int viewMeasuredHeight, float x, float y,
+                         Matrix outTarget) {
+        updateMatrixState(viewMeasuredWidth, viewMeasuredHeight);
+        float scale = mMatrixValues[Matrix.MSCALE_X];
+
+        setBoundedTarget(scale, viewMeasuredWidth / 2f - x * scale,
+                viewMeasuredHeight / 2f - y * scale, outTarget);
+    }
+
+    /**
+     * Set a target image matrix, correcting its translation to lie within the bounds of the view.
+     * {@link #mMatrixState} must already have been updated for the view.
+     */
+    protected void setBoundedTarget(float scale, float translationX, float translationY,
+                                    Matrix outTarget) {
+        mMatrixState.scaledBitmapWidth = mSrcBitmapSize.x * scale;
+        mMatrixState.scaledBitmapHeight = mSrcBitmapSize.y * scale;
+        mMatrixState.translationX = translationX;
+        mMatrixState.translationY = translationY;
+        PointF correction = mTranslationHelper.getCorrectionsForTranslation(mMatrixState);
+
+        outTarget.setScale(scale, scale);
+        outTarget.postTranslate(translationX + correction.x, translationY + correction.y);
+    }
+
+    /**
+     * Jump to an absolute zoom level and translation, such as a frame of an animation. The zoom
+     * level is recorded by {@link #mScaleHelper}, and the translation bounds are checked
+     * afterwards. {@link #mMatrixChangedListener} will be notified of the updated matrix.
+     *
+     * @param viewMeasuredWidth  measured width of the view showing the image
+     * @param viewMeasuredHeight measured height of the view showing the image
+     * @param scaleFactor        the zoom level
+     * @param translationX       the translation on the X coordinate plane
+     * @param translationY       the translation on the Y coordinate plane
+     */
+    void setTransform(int viewMeasuredWidth, int viewMeasuredHeight, float scaleFactor,
+                      float translationX, float translationY) {
+        mMatrix.setScale(scaleFactor, scaleFactor);
+        mMatrix.postTranslate(translationX, translationY);
+
+        updateMatrixState(viewMeasuredWidth, viewMeasuredHeight);
+        mScaleHelper.restoreScaleFactor(scaleFactor, mMatrixState);
+        checkTranslationBounds(viewMeasuredWidth, viewMeasuredHeight);
+    }
+
+    /**
+     * Jump to the zoom level and translation of another image matrix, as described by
+     * {@link #setTransform(int, int, float, float, float)}.
+     *
+     * @param viewMeasuredWidth  measured width of the view showing the image
+     * @param viewMeasuredHeight measured height of the view showing the image
+     * @param transform          the image matrix to copy the zoom level and translation from
+     */
+    void setTransform(int viewMeasuredWidth, int viewMeasuredHeight, Matrix transform) {
+        transform.getValues(mMatrixValues);
+        setTransform(viewMeasuredWidth, viewMeasuredHeight, mMatrixValues[Matrix.MSCALE_X],
+                mMatrixValues[Matrix.MTRANS_X], mMatrixValues[Matrix.MTRANS_Y]);
+    }
+
+    /**
+     * Ask {@link #mTranslationHelper} how far the image may be translated from its current
+     * position before it would cross the bounds of the view.
+     *
+     * @param viewMeasuredWidth  measured width of the view for which these calculations are
+     *                           performed
+     * @param viewMeasuredHeight measured height of the view for which these calculations are
+     *                           performed
+     * @param outBounds          receives the available translation, as described by
+     *                           {@link PinchToZoomTranslationHelper#getAvailableTranslation(
+     *                           PinchToZoomMatrixState, RectF)}
      */
-    void translate(int viewMeasuredWidth, int viewMeasuredHeight, float dx, float dy) {
+    void getAvailableTranslation(int viewMeasuredWidth, int viewMeasuredHeight,
+                                 RectF outBounds) {
         updateMatrixState(viewMeasuredWidth, viewMeasuredHeight);
-        mTranslationHelper.translate(dx, dy, mMatrixState);
+        mTranslationHelper.getAvailableTranslation(mMatrixState, outBounds);
     }
 
     /**
@@ -190,6 +334,31 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
         mMatrixChangedListener.onMatrixChanged(mMatrix);
     }
 
+    /**
+     * Prepare this instance to perform calculations on behalf of a different view. The image
+     * matrix, the size of the source bitmap, and the zoom level are cleared without notifying
+     * any listener. Configuration is left untouched.
+     *
+     * @param listener the listener to notify of updates to the image matrix, or null
+     */
+    void prepareForReuse(OnPinchToZoomMatrixChangeListener listener) {
+        mMatrixChangedListener = listener;
+        mMatrix.reset();
+        mSrcBitmapSize.set(0, 0);
+        mScaleHelper.reset();
+    }
+
+    /**
+     * Replace the whole configuration at once. This is how a view shares its configuration with
+     * its matrix helper; the individual setters below create a new configuration for this
+     * instance only.
+     *
+     * @param config the configuration to use
+     */
+    void setConfig(@NonNull PinchToZoomConfig config) {
+        mConfig = config;
+    }
+
     /**
      * Record the padding for view for which calculations are being performed.
      *
@@ -199,7 +368,7 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
      * @param bottom desired bottom padding
      */
     void setPadding(int left, int top, int right, int bottom) {
-        mPadding.set(left, top, right, bottom);
+        mConfig = mConfig.withPadding(left, top, right, bottom);
     }
 
     /**
@@ -209,7 +378,7 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
      * @param cropToPadding flag indicating whether we should crop to padding
      */
     void setCropToPadding(boolean cropToPadding) {
-        this.mCropToPadding = cropToPadding;
+        mConfig = mConfig.withCropToPadding(cropToPadding);
     }
 
     /**
@@ -236,11 +405,7 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
      * @param bottom extra translation below the view
      */
     void setTranslationExtra(int left, int top, int right, int bottom) {
-        if (left < 0 || top < 0 || right < 0 || bottom < 0) {
-            throw new IllegalArgumentException("setTranslationExtra() values cannot be less than " +
-                    "0. Use setPadding() combined with setCropToPadding(true) instead.");
-        }
-        mTranslationExtra.set(left, top, right, bottom);
+        mConfig = mConfig.withTranslationExtra(left, top, right, bottom);
     }
 
     /**
@@ -251,11 +416,7 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
      * @param height minimum height to which a bitmap can be scaled
      */
     void setBitmapMinimumSize(int width, int height) {
-        if (width < 1 || height < 1) {
-            throw new IllegalArgumentException(
-                    "Minimum bitmap width and height must be greater than 0.");
-        }
-        mBitmapMinSize.set(width, height);
+        mConfig = mConfig.withBitmapMinimumSize(width, height);
     }
 
     /**
@@ -266,7 +427,7 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
      * @param height maximum height to which a bitmap can be scaled
      */
     void setBitmapMaximumSize(int width, int height) {
-        mBitmapMaxSize.set(width, height);
+        mConfig = mConfig.withBitmapMaximumSize(width, height);
     }
 
     /**
@@ -279,7 +440,7 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
      * @param pinAxesSmallerThanViewBounds whether or not translations should be pinned
      */
     void setPinAxesSmallerThanViewBounds(boolean pinAxesSmallerThanViewBounds) {
-        this.mPinAxesSmallerThanViewBounds = pinAxesSmallerThanViewBounds;
+        mConfig = mConfig.withPinAxesSmallerThanViewBounds(pinAxesSmallerThanViewBounds);
     }
 
     /**
@@ -298,43 +459,42 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
         mMatrixState.scaledBitmapHeight = mSrcBitmapSize.y * currentScaleY;
         mMatrixState.translationX = mMatrixValues[Matrix.MTRANS_X];
         mMatrixState.translationY = mMatrixValues[Matrix.MTRANS_Y];
-        mMatrixState.paddingLeft = mPadding.left;
-        mMatrixState.paddingTop = mPadding.top;
-        mMatrixState.paddingRight = mPadding.right;
-        mMatrixState.paddingBottom = mPadding.bottom;
-        mMatrixState.translationExtraLeft = mTranslationExtra.left;
-        mMatrixState.translationExtraTop = mTranslationExtra.top;
-        mMatrixState.translationExtraRight = mTranslationExtra.right;
-        mMatrixState.translationExtraBottom = mTranslationExtra.bottom;
+        mMatrixState.paddingLeft = mConfig.paddingLeft;
+        mMatrixState.paddingTop = mConfig.paddingTop;
+        mMatrixState.paddingRight = mConfig.paddingRight;
+        mMatrixState.paddingBottom = mConfig.paddingBottom;
+        mMatrixState.translationExtraLeft = mConfig.translationExtraLeft;
+        mMatrixState.translationExtraTop = mConfig.translationExtraTop;
+        mMatrixState.translationExtraRight = mConfig.translationExtraRight;
+        mMatrixState.translationExtraBottom = mConfig.translationExtraBottom;
         mMatrixState.viewWidth = viewWidth;
         mMatrixState.viewHeight = viewHeight;
-        mMatrixState.cropToPadding = mCropToPadding;
-        mMatrixState.pinAxesSmallerThanViewBounds = mPinAxesSmallerThanViewBounds;
+        mMatrixState.cropToPadding = mConfig.cropToPadding;
+        mMatrixState.pinAxesSmallerThanViewBounds = mConfig.pinAxesSmallerThanViewBounds;
         mMatrixState.srcBitmapWidth = mSrcBitmapSize.x;
         mMatrixState.srcBitmapHeight = mSrcBitmapSize.y;
-        mMatrixState.minBitmapWidth = mBitmapMinSize.x;
-        mMatrixState.minBitmapHeight = mBitmapMinSize.y;
-        mMatrixState.maxBitmapWidth = mBitmapMaxSize.x;
-        mMatrixState.maxBitmapHeight = mBitmapMaxSize.y;
+        mMatrixState.minBitmapWidth = mConfig.minBitmapWidth;
+        mMatrixState.minBitmapHeight = mConfig.minBitmapHeight;
+        mMatrixState.maxBitmapWidth = mConfig.maxBitmapWidth;
+        mMatrixState.maxBitmapHeight = mConfig.maxBitmapHeight;
     }
 
     /**
      * Update the {@link PinchToZoomSavedState} object so that it can later be used to create a new
-     * instance with the same state. This state should only contains information that is not
-     * persistent or can not be reconstructed later.
+     * instance with the same state. Only the size of the source bitmap and the current translation
+     * are saved. Configuration is rebuilt from layout XML, and the zoom level is saved by
+     * {@link #mScaleHelper}.
      *
      * @param state A {@link PinchToZoomSavedState} object that represents the internal state of the
      *              {@link PinchToZoomImageView} and all of its associated helpers.
      */
     void onSaveInstanceState(PinchToZoomSavedState state) {
-        state.cropToPadding = mCropToPadding;
-        state.pinAxesSmallerThanViewBounds = mPinAxesSmallerThanViewBounds;
-        state.padding = mPadding;
-        state.translationExtra = mTranslationExtra;
-        state.srcBitmapSize = mSrcBitmapSize;
-        state.bitmapMinSize = mBitmapMinSize;
-        state.bitmapMaxSize = mBitmapMaxSize;
-        state.matrix = mMatrix;
+        mMatrix.getValues(mMatrixValues);
+
+        state.srcBitmapWidth = mSrcBitmapSize.x;
+        state.srcBitmapHeight = mSrcBitmapSize.y;
+        state.translationX = mMatrixValues[Matrix.MTRANS_X];
+        state.translationY = mMatrixValues[Matrix.MTRANS_Y];
 
         mScaleHelper.onSaveInstanceState(state);
     }
@@ -342,24 +502,99 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
     /**
      * Re-apply a representation of internal state that had previously been generated by
      * {@link #onSaveInstanceState(PinchToZoomSavedState)}. This function will never be called with
-     * a null state.
+     * a null state. The image matrix is rebuilt from the saved zoom level and translation, since
+     * it never contains anything other than a uniform scale followed by a translation.
      *
      * @param state The frozen state that had previously been returned by
      *              {@link #onSaveInstanceState(PinchToZoomSavedState)}.
      */
     void onRestoreInstanceState(@NonNull PinchToZoomSavedState state) {
-        mCropToPadding = state.cropToPadding;
-        mPinAxesSmallerThanViewBounds = state.pinAxesSmallerThanViewBounds;
-        mPadding = state.padding;
-        mTranslationExtra = state.translationExtra;
-        mSrcBitmapSize = state.srcBitmapSize;
-        mBitmapMinSize = state.bitmapMinSize;
-        mBitmapMaxSize = state.bitmapMaxSize;
-        mMatrix = state.matrix;
+        mSrcBitmapSize.set(state.srcBitmapWidth, state.srcBitmapHeight);
+        mMatrix.setScale(state.currentScaleFactor, state.currentScaleFactor);
+        mMatrix.postTranslate(state.translationX, state.translationY);
 
         mScaleHelper.onRestoreInstanceState(state);
     }
 
+    /**
+     * Record the current zoom level and position in a
+     * {@link PinchToZoomViewportStore.Viewport}. The position is recorded as the point of the
+     * source image shown at the center of the view, so that it can be restored into a view of a
+     * different size.
+     *
+     * @param viewport           the viewport to update
+     * @param viewMeasuredWidth  measured width of the view showing the image
+     * @param viewMeasuredHeight measured height of the view showing the image
+     */
+    void onSaveViewport(PinchToZoomViewportStore.Viewport viewport, int viewMeasuredWidth,
+                        int viewMeasuredHeight) {
+        mMatrix.getValues(mMatrixValues);
+        float scale = mMatrixValues[Matrix.MSCALE_X];
+
+        viewport.srcBitmapWidth = mSrcBitmapSize.x;
+        viewport.srcBitmapHeight = mSrcBitmapSize.y;
+        viewport.scaleFactor = scale;
+        viewport.focusX = (viewMeasuredWidth / 2f - mMatrixValues[Matrix.MTRANS_X]) / scale;
+        viewport.focusY = (viewMeasuredHeight / 2f - mMatrixValues[Matrix.MTRANS_Y]) / scale;
+    }
+
+    /**
+     * Re-apply a viewport previously recorded by
+     * {@link #onSaveViewport(PinchToZoomViewportStore.Viewport, int, int)}. The saved zoom level
+     * is capped by the current minimum and maximum bitmap size, and the translation bounds are
+     * checked afterwards, so the result is always a position the user could have reached.
+     * {@link #mMatrixChangedListener} will be notified of the updated matrix. Nothing is changed
+     * if the viewport was saved against a source image of a different size.
+     *
+     * @param viewport           the viewport to apply
+     * @param viewMeasuredWidth  measured width of the view showing the image
+     * @param viewMeasuredHeight measured height of the view showing the image
+     * @return a boolean indicating whether or not the viewport was applied
+     */
+    boolean onRestoreViewport(@NonNull PinchToZoomViewportStore.Viewport viewport,
+                              int viewMeasuredWidth, int viewMeasuredHeight) {
+        if (mSrcBitmapSize.x == 0 || mSrcBitmapSize.y == 0
+                || viewport.srcBitmapWidth != mSrcBitmapSize.x
+                || viewport.srcBitmapHeight != mSrcBitmapSize.y) {
+            return false;
+        }
+
+        updateMatrixState(viewMeasuredWidth, viewMeasuredHeight);
+        float scale = mScaleHelper.restoreScaleFactor(viewport.scaleFactor, mMatrixState);
+
+        mMatrix.setScale(scale, scale);
+        mMatrix.postTranslate(viewMeasuredWidth / 2f - viewport.focusX * scale,
+                viewMeasuredHeight / 2f - viewport.focusY * scale);
+        checkTranslationBounds(viewMeasuredWidth, viewMeasuredHeight);
+        return true;
+    }
+
+    /**
+     * Carry the current zoom level and position over to a new view size in a single update of
+     * {@link #mMatrix}. The point of the source image shown at the center of the view before the
+     * change is shown at the center of the view after it. The zoom level is kept, capped by the
+     * minimum and maximum bitmap size, and the translation bounds are checked for the new size.
+     * {@link #mMatrixChangedListener} will be notified of the updated matrix.
+     *
+     * @param oldWidth  previous measured width of the view
+     * @param oldHeight previous measured height of the view
+     * @param newWidth  new measured width of the view
+     * @param newHeight new measured height of the view
+     */
+    void onViewSizeChanged(int oldWidth, int oldHeight, int newWidth, int newHeight) {
+        mMatrix.getValues(mMatrixValues);
+        float oldScale = mMatrixValues[Matrix.MSCALE_X];
+        float focusX = (oldWidth / 2f - mMatrixValues[Matrix.MTRANS_X]) / oldScale;
+        float focusY = (oldHeight / 2f - mMatrixValues[Matrix.MTRANS_Y]) / oldScale;
+
+        updateMatrixState(newWidth, newHeight);
+        float scale = mScaleHelper.restoreScaleFactor(oldScale, mMatrixState);
+
+        mMatrix.setScale(scale, scale);
+        mMatrix.postTranslate(newWidth / 2f - focusX * scale, newHeight / 2f - focusY * scale);
+        checkTranslationBounds(newWidth, newHeight);
+    }
+
     /**
      * A callback from {@link PinchToZoomScaleHelper#scale(PinchToZoomMatrixState)} indicating that
      * the image matrix should be scaled by scaleX and scaleY at focusX and focusY. Update
@@ -377,6 +612,9 @@ class PinchToZoomMatrixHelper implements PinchToZoomScaleHelper.OnPinchToZoomSca
     public void onScaleChanged(int viewWidth, int viewHeight, float scaleX, float scaleY,
                                float focusX, float focusY) {
         mMatrix.postScale(scaleX, scaleY, focusX, focusY);
+        if (mPendingTranslationX != 0 || mPendingTranslationY != 0) {
+            mMatrix.postTranslate(mPendingTranslationX, mPendingTranslationY);
+        }
         checkTranslationBounds(viewWidth, viewHeight);
     }
 
@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.view.View;
+
+/**
+ * Tracks when the image of a {@link PinchToZoomImageView} starts and stops moving.
+ * <p/>
+ * The view calls {@link #onMotion()} every time a gesture, fling or animation changes the image
+ * matrix. The first call notifies {@link #mMotionListener} that motion has started. Once no
+ * further call has been made for {@link #mSettleTimeout} milliseconds, the image has settled and
+ * the listener is notified again. Rather than rescheduling the timeout on every call, a single
+ * callback is posted, and when it runs it posts itself again for whatever is left of the timeout.
+ * <p/>
+ * While the image is moving, {@link #onFrameDrawn()} counts the frames drawn and the time between
+ * the first and the last, so the average frame interval of each motion can be reported when it
+ * settles.
+ */
+class PinchToZoomMotionTracker implements Runnable {
+    // Time, in milliseconds, without any motion after which the image has settled
+    static final int DEFAULT_SETTLE_TIMEOUT = 250;
+
+    protected final View mView;
+    protected final OnPinchToZoomMotionListener mMotionListener;
+
+    protected int mSettleTimeout = DEFAULT_SETTLE_TIMEOUT;
+
+    // Whether the image is moving, and when it last moved
+    protected boolean mMoving;
+    protected long mLastMotionTime;
+
+    // Frames drawn during the current motion, and when the first and last were drawn
+    protected int mFrameCount;
+    protected long mFirstFrameNanos;
+    protected long mLastFrameNanos;
+
+    PinchToZoomMotionTracker(View view, @NonNull OnPinchToZoomMotionListener listener) {
+        mView = view;
+        mMotionListener = listener;
+    }
+
+    /**
+     * Record that the image has moved, starting a motion if it was at rest.
+     */
+    void onMotion() {
+        mLastMotionTime = SystemClock.uptimeMillis();
+        if (mMoving) {
+            return;
+        }
+
+        mMoving = true;
+        mFrameCount = 0;
+        mMotionListener.onMotionStart();
+        postSettle(mSettleTimeout);
+    }
+
+    /**
+     * Record that a frame has been drawn. Frames drawn while the image is at rest are ignored.
+     */
+    void onFrameDrawn() {
+        if (!mMoving) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        if (mFrameCount == 0) {
+            mFirstFrameNanos = now;
+        }
+        mLastFrameNanos = now;
+        mFrameCount++;
+    }
+
+    /**
+     * Determine whether the image is moving.
+     *
+     * @return a boolean indicating whether or not the image has moved within the settle timeout
+     */
+    boolean isMoving() {
+        return mMoving;
+    }
+
+    /**
+     * Settle once the image has not moved for the whole settle timeout, or check again when the
+     * rest of the timeout has passed.
+     */
+    @Override
+    public void run() {
+        if (!mMoving) {
+            return;
+        }
+
+        final long remaining = mLastMotionTime + mSettleTimeout - SystemClock.uptimeMillis();
+        if (remaining > 0) {
+            postSettle(remaining);
+            return;
+        }
+        settle();
+    }
+
+    /**
+     * Settle straight away, for example because the view has been detached.
+     */
+    void settleNow() {
+        if (!mMoving) {
+            return;
+        }
+        removeSettle();
+        settle();
+    }
+
+    protected void settle() {
+        mMoving = false;
+        final long averageFrameNanos = mFrameCount > 1
+                ? (mLastFrameNanos - mFirstFrameNanos) / (mFrameCount - 1) : 0;
+        mMotionListener.onMotionSettled(mFrameCount, averageFrameNanos);
+    }
+
+    /**
+     * Set how long the image must be still before it has settled.
+     *
+     * @param settleTimeout time in milliseconds
+     */
+    void setSettleTimeout(int settleTimeout) {
+        if (settleTimeout < 1) {
+            throw new IllegalArgumentException("Settle timeout must be greater than 0.");
+        }
+        mSettleTimeout = settleTimeout;
+    }
+
+    protected void postSettle(long delayMillis) {
+        mView.postDelayed(this, delayMillis);
+    }
+
+    protected void removeSettle() {
+        mView.removeCallbacks(this);
+    }
+
+    /**
+     * An interface which allows an interested class to be notified when the image starts moving
+     * and when it settles.
+     */
+    interface OnPinchToZoomMotionListener {
+        void onMotionStart();
+
+        /**
+         * @param frameCount        number of frames drawn while the image was moving
+         * @param averageFrameNanos average time between those frames, or 0 if fewer than two
+         *                          were drawn
+         */
+        void onMotionSettled(int frameCount, long averageFrameNanos);
+    }
+}
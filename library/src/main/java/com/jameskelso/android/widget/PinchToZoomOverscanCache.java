@@ -0,0 +1,198 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+/**
+ * An offscreen copy of the content area of a {@link PinchToZoomImageView}, extended by a margin on
+ * every side, used to draw pans without redrawing the source image.
+ * <p/>
+ * When the image is rendered into the cache, the scale and translation of the image matrix are
+ * recorded. While the image is panned at the same scale, {@link #draw(Canvas, Matrix, int, int)}
+ * simply draws the cache offset by how far the translation has moved since, so the cost of a pan
+ * frame depends only on the size of the view and not on the size or zoom level of the image. The
+ * cache is rendered again once the pan has used up the margin on any side, or the scale has
+ * changed. The offset is rounded to whole pixels, so the cache is copied rather than resampled and
+ * stays sharp; the image may be up to half a pixel from its exact position, so the caller only
+ * uses the cache while the image is moving and draws the image directly once it settles.
+ * <p/>
+ * Rendering the cache costs more than drawing the image directly, so it is only worth doing while
+ * the scale is steady. If the scale has changed since the previous frame, for example during a
+ * zoom gesture or animation, the cache is dropped and the caller draws the image directly.
+ */
+class PinchToZoomOverscanCache {
+    private static final String TAG = "PinchToZoomOverscan";
+
+    // Recycled objects to avoid new instance creation
+    protected final float[] mMatrixValues = new float[9];
+    protected final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    protected final int mMargin;
+    protected final OnPinchToZoomCacheRenderListener mRenderListener;
+
+    protected Bitmap mBitmap;
+    protected Canvas mCanvas;
+
+    // Whether the cache holds the image, and the scale and translation it was rendered at
+    protected boolean mValid;
+    protected float mScaleX;
+    protected float mScaleY;
+    protected float mTranslationX;
+    protected float mTranslationY;
+
+    // Scale of the image matrix the last time it was drawn, to tell when the scale is steady
+    protected boolean mHasLastScale;
+    protected float mLastScaleX;
+    protected float mLastScaleY;
+
+    PinchToZoomOverscanCache(int margin, @NonNull OnPinchToZoomCacheRenderListener listener) {
+        if (margin < 1) {
+            throw new IllegalArgumentException("Overscan margin must be greater than 0.");
+        }
+        mMargin = margin;
+        mRenderListener = listener;
+    }
+
+    /**
+     * Draw the content area from the cache, rendering the cache first if it does not cover the
+     * content area at the current scale.
+     *
+     * @param canvas      the canvas to draw on, translated to the top left of the content area
+     * @param imageMatrix the image matrix of the view
+     * @param width       width of the content area
+     * @param height      height of the content area
+     * @return a boolean indicating whether or not the content was drawn. If false, the caller
+     * should draw the image directly.
+     */
+    boolean draw(Canvas canvas, Matrix imageMatrix, int width, int height) {
+        imageMatrix.getValues(mMatrixValues);
+        final float scaleX = mMatrixValues[Matrix.MSCALE_X];
+        final float scaleY = mMatrixValues[Matrix.MSCALE_Y];
+        final float translationX = mMatrixValues[Matrix.MTRANS_X];
+        final float translationY = mMatrixValues[Matrix.MTRANS_Y];
+
+        final boolean scaleSteady = mHasLastScale && scaleX == mLastScaleX
+                && scaleY == mLastScaleY;
+        mHasLastScale = true;
+        mLastScaleX = scaleX;
+        mLastScaleY = scaleY;
+        if (!scaleSteady || width <= 0 || height <= 0) {
+            mValid = false;
+            return false;
+        }
+
+        if (!covers(scaleX, scaleY, translationX, translationY, width, height)
+                && !render(scaleX, scaleY, translationX, translationY, width, height)) {
+            return false;
+        }
+
+        canvas.drawBitmap(mBitmap, Math.round(translationX - mTranslationX) - mMargin,
+                Math.round(translationY - mTranslationY) - mMargin, mPaint);
+        return true;
+    }
+
+    /**
+     * Determine whether the cache can be used to draw the content area with the image matrix at
+     * the given scale and translation.
+     */
+    protected boolean covers(float scaleX, float scaleY, float translationX, float translationY,
+                             int width, int height) {
+        return mValid && scaleX == mScaleX && scaleY == mScaleY
+                && mBitmap.getWidth() == width + 2 * mMargin
+                && mBitmap.getHeight() == height + 2 * mMargin
+                && Math.abs(translationX - mTranslationX) <= mMargin
+                && Math.abs(translationY - mTranslationY) <= mMargin;
+    }
+
+    /**
+     * Render the content area and its margin into the cache.
+     *
+     * @return a boolean indicating whether or not the cache was rendered. False if a bitmap large
+     * enough could not be allocated.
+     */
+    protected boolean render(float scaleX, float scaleY, float translationX, float translationY,
+                             int width, int height) {
+        final int cacheWidth = width + 2 * mMargin;
+        final int cacheHeight = height + 2 * mMargin;
+        if (mBitmap == null || mBitmap.getWidth() != cacheWidth
+                || mBitmap.getHeight() != cacheHeight) {
+            release();
+            try {
+                mBitmap = Bitmap.createBitmap(cacheWidth, cacheHeight, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                Log.w(TAG, "Unable to allocate overscan cache", e);
+                return false;
+            }
+            mCanvas = new Canvas(mBitmap);
+        }
+
+        mBitmap.eraseColor(Color.TRANSPARENT);
+        final int saveCount = mCanvas.save();
+        mCanvas.translate(mMargin, mMargin);
+        mRenderListener.onRenderCache(mCanvas);
+        mCanvas.restoreToCount(saveCount);
+
+        mValid = true;
+        mScaleX = scaleX;
+        mScaleY = scaleY;
+        mTranslationX = translationX;
+        mTranslationY = translationY;
+        return true;
+    }
+
+    /**
+     * Mark the cache as out of date, for example because the source image has changed. It is
+     * rendered again the next time it is drawn.
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Free the cache bitmap. A new one is allocated the next time the cache is rendered.
+     */
+    void release() {
+        mValid = false;
+        mCanvas = null;
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+
+    /**
+     * An interface which allows an interested class to render the image into the cache.
+     */
+    interface OnPinchToZoomCacheRenderListener {
+        /**
+         * @param canvas the cache canvas, translated so that the origin is the top left of the
+         *               content area
+         */
+        void onRenderCache(Canvas canvas);
+    }
+}
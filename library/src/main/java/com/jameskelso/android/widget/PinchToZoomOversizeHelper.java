@@ -0,0 +1,886 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Draws a bitmap that is larger than the largest texture a hardware canvas can hold, for
+ * {@link PinchToZoomImageView}.
+ * <p/>
+ * A hardware canvas uploads every bitmap it draws as a single texture, so a bitmap wider or taller
+ * than {@link Canvas#getMaximumBitmapWidth()} or {@link Canvas#getMaximumBitmapHeight()} cannot be
+ * drawn. Such a bitmap is drawn from a grid of tiles instead, each at most {@link #MAX_TILE_SIZE}
+ * pixels, which lets tiles outside the view be skipped. Each tile is cut with
+ * {@link #TILE_OVERLAP} extra pixels of its neighbours on every side and clipped to its own cell
+ * when drawn, so filtering at a cell edge samples real neighbouring pixels and no seams show
+ * between tiles. Tiles are cut at a level of detail to
+ * suit the current scale: level k is the bitmap downsampled by 2<sup>k</sup>, so a zoomed out
+ * image needs only a few small tiles. {@link #mLevelSelector} picks the level with hysteresis, so
+ * a pinch hovering around a power of two does not keep cutting new tiles.
+ * {@link #draw(Canvas, Drawable, Matrix)} draws through the bounds of the drawable and the image
+ * matrix exactly as the original bitmap would be drawn, so the coordinate space of the image is
+ * unchanged.
+ * <p/>
+ * Only the tiles that are visible, or within {@link #TILE_MARGIN} cells of the visible part of the
+ * bitmap, are cut. They are cut on a background thread, visible tiles first, and each is passed to
+ * {@link Bitmap#prepareToDraw()} there. From API 24 that starts uploading its texture ahead of
+ * the first draw; on earlier versions it does nothing for these bitmaps, and the upload happens
+ * when the tile is first drawn. A small preview of the whole bitmap is made before any tiles.
+ * Finished tiles are not drawn straight away. Each frame, {@link #doFrame(long)} commits
+ * at most {@link #MAX_COMMIT_TILES} of them, or {@link #MAX_COMMIT_BYTES} bytes, so a burst of
+ * tiles does not upload all of its textures in one frame. Tiles that were visible at the last
+ * draw are committed first, and the rest are carried to later frames. When the level changes,
+ * the tiles of the old level keep being drawn until every visible tile of the new level has been
+ * committed. Beneath them all, the preview fills any gaps. Once the visible part moves beyond the
+ * tiles that were asked for, tiles are cut around it instead, and tiles more than
+ * {@link #TILE_KEEP_MARGIN} cells away from it are dropped.
+ * <p/>
+ * When the view knows where the image is about to be shown, such as a restored viewport or the
+ * end of an animation, {@link #prefetch(RectF, Rect, float)} starts cutting the tiles for that
+ * region at the level that suits it. Until {@link #endPrefetch()}, drawing neither changes level
+ * nor asks for tiles of its own, so the frames in between draw whatever has been committed.
+ * <p/>
+ * Tiles and previews that have been drawn are never recycled, since a frame that drew them may
+ * still be rendering; they are dropped and left for the collector. Only bitmaps that were never
+ * drawn, such as tiles cut for a level that was abandoned before they were committed, are
+ * recycled straight away. If the source bitmap is recycled or cannot be read while the
+ * background thread is working, that work is dropped.
+ * <p/>
+ * If the tiles cannot be allocated, a single copy scaled down to fit the texture limit is drawn
+ * instead.
+ */
+class PinchToZoomOversizeHelper implements PinchToZoomFrameDriver.FrameClient {
+    private static final String TAG = "PinchToZoomOversize";
+
+    // Largest width and height of a tile cell, in pixels, when it fits within the texture limit
+    protected static final int MAX_TILE_SIZE = 1024;
+
+    // Pixels of the neighbouring cells cut into each side of a tile
+    protected static final int TILE_OVERLAP = 1;
+
+    // Cells around the visible part of the bitmap that are cut ahead of being visible, and cells
+    // around it within which tiles that have been cut are kept
+    protected static final int TILE_MARGIN = 1;
+    protected static final int TILE_KEEP_MARGIN = 2;
+
+    // Largest width and height of the preview, in pixels
+    protected static final int PREVIEW_SIZE = 1024;
+
+    // Most tiles, and most tile bytes, committed in a single frame. At least one tile is always
+    // committed, however large it is.
+    protected static final int MAX_COMMIT_TILES = 2;
+    protected static final int MAX_COMMIT_BYTES = 8 * 1024 * 1024;
+
+    // How the prepared bitmap is drawn
+    static final int MODE_NONE = 0;
+    static final int MODE_TILED = 1;
+    static final int MODE_DOWNSAMPLED = 2;
+
+    private static ExecutorService sTileExecutor;
+    private static Handler sMainHandler;
+
+    protected final OnPinchToZoomOversizeListener mListener;
+    protected final PinchToZoomLevelSelector mLevelSelector = new PinchToZoomLevelSelector();
+
+    // Recycled objects to avoid new instance creation
+    protected final float[] mMatrixValues = new float[9];
+    protected final Rect mKeepRegion = new Rect();
+    protected final Rect mPrefetchRegion = new Rect();
+
+    protected int mMode = MODE_NONE;
+
+    // The bitmap the tiles or downsampled copy were made from, and the texture limit
+    protected Bitmap mSource;
+    protected int mMaxWidth;
+    protected int mMaxHeight;
+
+    // Size of a tile cell in pixels, and the coarsest level, which fits in a single tile
+    protected int mTileSize;
+    protected int mMaxLevel;
+
+    // Tiles of the selected level, and of the level drawn before it until the selected level has
+    // every visible tile
+    protected TileLevel mLevel;
+    protected TileLevel mPreviousLevel;
+
+    // Tiles being cut ahead of being shown, at a level other than the selected level, and
+    // whether drawing is held off from asking for tiles until the prefetch ends
+    protected TileLevel mPrefetchLevel;
+    protected boolean mPrefetching;
+
+    // Screen pixels per source pixel at the last draw
+    protected float mLastScale;
+
+    // Number of times the level has changed for the current bitmap
+    protected int mLevelChanges;
+
+    // Low resolution copy drawn beneath the tiles. In MODE_DOWNSAMPLED, the copy that is drawn
+    // instead of tiles.
+    protected Bitmap mPreview;
+    protected PreviewJob mPreviewJob;
+
+    // Part of the source bitmap visible at the last draw, in bitmap pixels
+    protected final Rect mVisible = new Rect();
+
+    PinchToZoomOversizeHelper(@NonNull OnPinchToZoomOversizeListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Determine whether a drawable is a bitmap too large to be drawn on a canvas with the given
+     * texture limit.
+     *
+     * @param drawable  the drawable of the view
+     * @param maxWidth  largest bitmap width the canvas can draw
+     * @param maxHeight largest bitmap height the canvas can draw
+     * @return a boolean indicating whether or not the bitmap must be drawn by this helper
+     */
+    static boolean isOversize(@Nullable Drawable drawable, int maxWidth, int maxHeight) {
+        if (!(drawable instanceof BitmapDrawable) || maxWidth <= 0 || maxHeight <= 0) {
+            return false;
+        }
+        final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+        return bitmap != null && !bitmap.isRecycled()
+                && (bitmap.getWidth() > maxWidth || bitmap.getHeight() > maxHeight);
+    }
+
+    /**
+     * Start making the preview of a bitmap on the background thread. Tiles are cut once the level
+     * to draw at is known. Nothing is done if the bitmap has already been prepared.
+     *
+     * @param source    the oversize bitmap
+     * @param maxWidth  largest bitmap width the canvas can draw
+     * @param maxHeight largest bitmap height the canvas can draw
+     * @return the mode the bitmap will be drawn in
+     */
+    int prepare(Bitmap source, int maxWidth, int maxHeight) {
+        if (source == mSource) {
+            return mMode;
+        }
+        release();
+        mSource = source;
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+        // A cell and its overlap on both sides must fit within the texture limit
+        mTileSize = Math.max(1, Math.min(MAX_TILE_SIZE,
+                Math.min(maxWidth, maxHeight) - 2 * TILE_OVERLAP));
+        mMaxLevel = 0;
+        while (Math.max(source.getWidth(), source.getHeight()) > mTileSize << mMaxLevel) {
+            mMaxLevel++;
+        }
+
+        mMode = MODE_TILED;
+        mPreviewJob = new PreviewJob(source,
+                Math.min(PREVIEW_SIZE, Math.min(maxWidth, maxHeight)));
+        executeInBackground(mPreviewJob);
+        return mMode;
+    }
+
+    /**
+     * Keep the preview of the current bitmap once it has been made on the background thread.
+     */
+    protected void onPreviewReady(PreviewJob job, Bitmap preview) {
+        if (job != mPreviewJob) {
+            preview.recycle();
+            return;
+        }
+        mPreviewJob = null;
+        mPreview = preview;
+        mListener.onOversizeTilesCommitted();
+    }
+
+    /**
+     * Queue a tile of the selected level to be committed once it has been cut on the background
+     * thread.
+     */
+    protected void onTileReady(TileJob job, int index, Bitmap tile) {
+        final TileLevel level = getJobLevel(job);
+        if (level == null) {
+            tile.recycle();
+            return;
+        }
+        level.mPendingTiles.set(index, tile);
+        level.mPendingCount++;
+        if (level == mLevel) {
+            addToFrameDriver();
+        }
+    }
+
+    /**
+     * Find the level a tile job is cutting tiles for.
+     *
+     * @return the selected level or the prefetch level, or null if the job is no longer wanted
+     */
+    @Nullable
+    protected TileLevel getJobLevel(TileJob job) {
+        if (mLevel != null && job == mLevel.mJob) {
+            return mLevel;
+        }
+        if (mPrefetchLevel != null && job == mPrefetchLevel.mJob) {
+            return mPrefetchLevel;
+        }
+        return null;
+    }
+
+    /**
+     * Give up on tiles once the background thread has run out of memory, and draw a single
+     * downsampled copy of the bitmap instead.
+     */
+    protected void onTilesFailed(TileJob job) {
+        if (getJobLevel(job) == null) {
+            return;
+        }
+        removeFromFrameDriver();
+        dropLevel(mLevel);
+        dropLevel(mPreviousLevel);
+        dropLevel(mPrefetchLevel);
+        mLevel = null;
+        mPreviousLevel = null;
+        mPrefetchLevel = null;
+        mPrefetching = false;
+
+        mMode = MODE_NONE;
+        mPreview = mSource.isRecycled() ? null
+                : createScaledCopy(mSource, mMaxWidth, mMaxHeight);
+        if (mPreview != null) {
+            mMode = MODE_DOWNSAMPLED;
+        }
+        mListener.onOversizeModeChanged(mMode);
+        mListener.onOversizeTilesCommitted();
+    }
+
+    /**
+     * Switch level once a pending switch has waited long enough, commit the tiles that are ready
+     * within the budget for a single frame, and stop drawing the previous level once the selected
+     * level can be drawn without it.
+     *
+     * @param frameTimeNanos the time at which the frame started rendering
+     * @return true while a level switch is waiting or tiles remain to be committed
+     */
+    @Override
+    public boolean doFrame(long frameTimeNanos) {
+        if (mMode != MODE_TILED) {
+            return false;
+        }
+
+        boolean changed = false;
+        if (mLevelSelector.isSwitchPending() && !mPrefetching) {
+            changed = selectLevel(mLastScale);
+        }
+        if (commitTiles() > 0) {
+            changed = true;
+        }
+        if (mPreviousLevel != null && isVisibleComplete(mLevel)) {
+            // The previous level is no longer drawn. Its tiles are left for the collector rather
+            // than recycled, since the last frame that drew them may still be rendering.
+            mPreviousLevel = null;
+            changed = true;
+        }
+        if (changed) {
+            mListener.onOversizeTilesCommitted();
+        }
+        return (mLevelSelector.isSwitchPending() && !mPrefetching)
+                || (mLevel != null && mLevel.mPendingCount > 0);
+    }
+
+    /**
+     * Move tiles of the selected level from its pending tiles to its committed tiles, visible
+     * tiles first, until {@link #MAX_COMMIT_TILES} tiles or {@link #MAX_COMMIT_BYTES} bytes have
+     * been committed.
+     *
+     * @return the number of tiles committed
+     */
+    protected int commitTiles() {
+        final TileLevel level = mLevel;
+        if (level == null) {
+            return 0;
+        }
+
+        int committed = 0;
+        int bytes = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0, count = level.mPendingTiles.size(); i < count; i++) {
+                final Bitmap tile = level.mPendingTiles.get(i);
+                if (tile == null
+                        || (pass == 0 && !Rect.intersects(mVisible, level.mRects.get(i)))) {
+                    continue;
+                }
+
+                final int size = tile.getRowBytes() * tile.getHeight();
+                if (committed > 0
+                        && (committed >= MAX_COMMIT_TILES || bytes + size > MAX_COMMIT_BYTES)) {
+                    return committed;
+                }
+                level.mTiles.set(i, tile);
+                level.mPendingTiles.set(i, null);
+                level.mPendingCount--;
+                committed++;
+                bytes += size;
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Select the level for a scale, and switch to it if it has changed.
+     *
+     * @param scale screen pixels per source pixel
+     * @return a boolean indicating whether or not the level changed
+     */
+    protected boolean selectLevel(float scale) {
+        mLastScale = scale;
+        final int level = mLevelSelector.select(scale, mMaxLevel, SystemClock.uptimeMillis());
+        if (mLevelSelector.isSwitchPending()) {
+            addToFrameDriver();
+        }
+        if (mLevel != null && mLevel.mLevel == level) {
+            return false;
+        }
+
+        final TileLevel next;
+        if (mPreviousLevel != null && mPreviousLevel.mLevel == level) {
+            next = mPreviousLevel;
+            mPreviousLevel = null;
+        } else if (mPrefetchLevel != null && mPrefetchLevel.mLevel == level) {
+            next = mPrefetchLevel;
+            mPrefetchLevel = null;
+        } else {
+            next = new TileLevel(level, mSource.getWidth(), mSource.getHeight(), mTileSize);
+        }
+
+        final TileLevel old = mLevel;
+        if (old != null) {
+            mLevelChanges++;
+            cancelJob(old);
+            if (old.hasTiles()) {
+                // Keep drawing whichever earlier level was selected last
+                mPreviousLevel = old;
+            }
+        }
+
+        mLevel = next;
+        if (next.mPendingCount > 0) {
+            // Tiles cut for a prefetch are committed like any others
+            addToFrameDriver();
+        }
+        requestTiles(next);
+        return true;
+    }
+
+    /**
+     * Start cutting the missing tiles of a level that are visible or within {@link #TILE_MARGIN}
+     * cells of the visible part of the bitmap, unless they have already been asked for. Tiles
+     * more than {@link #TILE_KEEP_MARGIN} cells away are dropped: committed tiles are left for
+     * the collector, since the last frame that drew them may still be rendering, and pending
+     * tiles are recycled.
+     */
+    protected void requestTiles(TileLevel level) {
+        if (mVisible.isEmpty() || level.mJobRegion.contains(mVisible)) {
+            return;
+        }
+
+        final int step = mTileSize * level.mSampleSize;
+        mKeepRegion.set(mVisible);
+        mKeepRegion.inset(-TILE_KEEP_MARGIN * step, -TILE_KEEP_MARGIN * step);
+        for (int i = 0, count = level.mRects.size(); i < count; i++) {
+            if (Rect.intersects(mKeepRegion, level.mRects.get(i))) {
+                continue;
+            }
+            level.mTiles.set(i, null);
+            final Bitmap pending = level.mPendingTiles.get(i);
+            if (pending != null) {
+                pending.recycle();
+                level.mPendingTiles.set(i, null);
+                level.mPendingCount--;
+            }
+        }
+
+        cutTiles(level, mVisible);
+    }
+
+    /**
+     * Start cutting the missing tiles of a level that are within a region, or within
+     * {@link #TILE_MARGIN} cells of it, in place of any tiles the level was already cutting.
+     *
+     * @param level  the level to cut tiles for
+     * @param region the region about to be shown, in bitmap pixels
+     */
+    protected void cutTiles(TileLevel level, Rect region) {
+        if (level.mJob != null) {
+            // Tiles the job has already cut are still wanted, and are committed as usual
+            level.mJob.mCancelled = true;
+            level.mJob = null;
+        }
+        final int step = mTileSize * level.mSampleSize;
+        level.mJobRegion.set(region);
+        level.mJobRegion.inset(-TILE_MARGIN * step, -TILE_MARGIN * step);
+        level.mJob = new TileJob(mSource, level, region, level.mJobRegion);
+        executeInBackground(level.mJob);
+    }
+
+    /**
+     * Start cutting the tiles for the region of the bitmap that is about to be shown, at the level
+     * that suits the scale it will be shown at, before it is drawn there. Until
+     * {@link #endPrefetch()}, drawing does not change level or ask for tiles of its own.
+     *
+     * @param region the region about to be shown, in the coordinates of the drawable bounds
+     * @param bounds the bounds the drawable will have, which it may not have been given yet
+     * @param scale  screen pixels per drawable pixel it will be shown at
+     */
+    void prefetch(RectF region, Rect bounds, float scale) {
+        if (mMode != MODE_TILED || bounds.isEmpty()) {
+            return;
+        }
+        final float boundsScaleX = (float) bounds.width() / mSource.getWidth();
+        final float boundsScaleY = (float) bounds.height() / mSource.getHeight();
+        mPrefetchRegion.set((int) Math.floor((region.left - bounds.left) / boundsScaleX),
+                (int) Math.floor((region.top - bounds.top) / boundsScaleY),
+                (int) Math.ceil((region.right - bounds.left) / boundsScaleX),
+                (int) Math.ceil((region.bottom - bounds.top) / boundsScaleY));
+        if (!mPrefetchRegion.intersect(0, 0, mSource.getWidth(), mSource.getHeight())) {
+            return;
+        }
+
+        mPrefetching = true;
+        final int level = Math.min(mMaxLevel,
+                (int) PinchToZoomLevelSelector.getIdealLevel(scale * boundsScaleX, mMaxLevel));
+        final TileLevel target;
+        if (mLevel != null && mLevel.mLevel == level) {
+            target = mLevel;
+        } else {
+            if (mPrefetchLevel == null || mPrefetchLevel.mLevel != level) {
+                dropLevel(mPrefetchLevel);
+                mPrefetchLevel = new TileLevel(level, mSource.getWidth(), mSource.getHeight(),
+                        mTileSize);
+            }
+            target = mPrefetchLevel;
+        }
+        if (!target.mJobRegion.contains(mPrefetchRegion)) {
+            cutTiles(target, mPrefetchRegion);
+        }
+    }
+
+    /**
+     * Let drawing change level and ask for tiles again once the image is shown where it was
+     * prefetched for. Tiles cut for the prefetch are used once that level is selected.
+     */
+    void endPrefetch() {
+        mPrefetching = false;
+    }
+
+    /**
+     * Determine whether every tile of a level that was visible at the last draw has been
+     * committed.
+     */
+    protected boolean isVisibleComplete(TileLevel level) {
+        for (int i = 0, count = level.mRects.size(); i < count; i++) {
+            if (level.mTiles.get(i) == null && Rect.intersects(mVisible, level.mRects.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draw the prepared bitmap in place of the bitmap of a drawable.
+     *
+     * @param canvas      the canvas to draw on
+     * @param drawable    the drawable the bitmap was prepared from
+     * @param imageMatrix the image matrix of the view
+     */
+    void draw(Canvas canvas, Drawable drawable, Matrix imageMatrix) {
+        final Rect bounds = drawable.getBounds();
+        final float boundsScale = (float) bounds.width() / mSource.getWidth();
+        final int saveCount = canvas.save();
+        canvas.concat(imageMatrix);
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale(boundsScale, (float) bounds.height() / mSource.getHeight());
+        if (!canvas.getClipBounds(mVisible)) {
+            mVisible.setEmpty();
+        }
+        if (mMode == MODE_TILED && !mPrefetching) {
+            imageMatrix.getValues(mMatrixValues);
+            if (!selectLevel(mMatrixValues[Matrix.MSCALE_X] * boundsScale) && mLevel != null) {
+                requestTiles(mLevel);
+            }
+        }
+
+        final Paint paint = ((BitmapDrawable) drawable).getPaint();
+        if (mPreview != null && (mLevel == null || !isVisibleComplete(mLevel))) {
+            final int previewSaveCount = canvas.save();
+            canvas.scale((float) mSource.getWidth() / mPreview.getWidth(),
+                    (float) mSource.getHeight() / mPreview.getHeight());
+            canvas.drawBitmap(mPreview, 0, 0, paint);
+            canvas.restoreToCount(previewSaveCount);
+        }
+        drawLevel(canvas, mPreviousLevel, paint);
+        drawLevel(canvas, mLevel, paint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Draw the committed tiles of a level. Each tile covers its cell and its overlap, and is
+     * clipped to its cell.
+     */
+    protected void drawLevel(Canvas canvas, @Nullable TileLevel level, Paint paint) {
+        if (level == null) {
+            return;
+        }
+        for (int i = 0, count = level.mTiles.size(); i < count; i++) {
+            final Bitmap tile = level.mTiles.get(i);
+            if (tile == null) {
+                continue;
+            }
+            final Rect rect = level.mRects.get(i);
+            if (!canvas.quickReject(rect.left, rect.top, rect.right, rect.bottom,
+                    Canvas.EdgeType.AA)) {
+                final int saveCount = canvas.save();
+                canvas.clipRect(rect);
+                canvas.drawBitmap(tile, null, level.mSourceRects.get(i), paint);
+                canvas.restoreToCount(saveCount);
+            }
+        }
+    }
+
+    /**
+     * Determine how the current bitmap is drawn.
+     *
+     * @return {@link #MODE_NONE}, {@link #MODE_TILED} or {@link #MODE_DOWNSAMPLED}
+     */
+    int getMode() {
+        return mMode;
+    }
+
+    /**
+     * Stop cutting and committing tiles and drop every level, keeping only the preview, or the
+     * downsampled copy in {@link #MODE_DOWNSAMPLED}. Tiles that were never committed are
+     * recycled, and the rest are left for the collector. Tiles are cut again for the level that
+     * suits the scale the next time the bitmap is drawn.
+     */
+    void dropToPreview() {
+        removeFromFrameDriver();
+        dropLevel(mLevel);
+        dropLevel(mPreviousLevel);
+        dropLevel(mPrefetchLevel);
+        mLevel = null;
+        mPreviousLevel = null;
+        mPrefetchLevel = null;
+        mPrefetching = false;
+        mLevelSelector.reset();
+    }
+
+    /**
+     * Stop any background work and drop the tiles and preview. Tiles that were never committed are
+     * recycled, and the rest are left for the collector. The bitmap will be prepared again the
+     * next time it is drawn.
+     */
+    void release() {
+        if (mPreviewJob != null) {
+            mPreviewJob.mCancelled = true;
+            mPreviewJob = null;
+        }
+        dropToPreview();
+        mLevelChanges = 0;
+        mPreview = null;
+        mSource = null;
+        mMode = MODE_NONE;
+    }
+
+    /**
+     * Stop cutting tiles for a level, and free the tiles that were cut but not committed.
+     */
+    protected void cancelJob(TileLevel level) {
+        if (level.mJob != null) {
+            level.mJob.mCancelled = true;
+            level.mJob = null;
+        }
+        level.mJobRegion.setEmpty();
+        for (int i = 0, count = level.mPendingTiles.size(); i < count; i++) {
+            if (level.mPendingTiles.get(i) != null) {
+                level.mPendingTiles.get(i).recycle();
+                level.mPendingTiles.set(i, null);
+            }
+        }
+        level.mPendingCount = 0;
+    }
+
+    /**
+     * Stop cutting tiles for a level and drop its committed tiles. They are not recycled, since
+     * the last frame that drew them may still be rendering.
+     */
+    protected void dropLevel(@Nullable TileLevel level) {
+        if (level == null) {
+            return;
+        }
+        cancelJob(level);
+        for (int i = 0, count = level.mTiles.size(); i < count; i++) {
+            level.mTiles.set(i, null);
+        }
+    }
+
+    /**
+     * Make a copy of a bitmap scaled down to fit within a size.
+     *
+     * @return the copy, or null if it could not be allocated
+     */
+    @Nullable
+    protected static Bitmap createScaledCopy(Bitmap source, int maxWidth, int maxHeight) {
+        final float scale = Math.min((float) maxWidth / source.getWidth(),
+                (float) maxHeight / source.getHeight());
+        final int width = Math.max(1, Math.min(maxWidth, (int) (source.getWidth() * scale)));
+        final int height = Math.max(1, Math.min(maxHeight, (int) (source.getHeight() * scale)));
+        try {
+            return Bitmap.createScaledBitmap(source, width, height, true);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Unable to downsample oversize bitmap", e);
+            return null;
+        }
+    }
+
+    protected void executeInBackground(Runnable runnable) {
+        if (sTileExecutor == null) {
+            sTileExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        sTileExecutor.execute(runnable);
+    }
+
+    protected void postToMainThread(Runnable runnable) {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        sMainHandler.post(runnable);
+    }
+
+    protected void addToFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().add(this);
+    }
+
+    protected void removeFromFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().remove(this);
+    }
+
+    /**
+     * The tiles of one level of detail. Cell positions are in source bitmap pixels. Each tile
+     * bitmap is its cell grown by {@link #TILE_OVERLAP} tile pixels on every side, within the
+     * bitmap, and downsampled by the sample size of the level.
+     */
+    protected static class TileLevel {
+        protected final int mLevel;
+        protected final int mSampleSize;
+        protected final ArrayList<Rect> mRects = new ArrayList<Rect>();
+        protected final ArrayList<Rect> mSourceRects = new ArrayList<Rect>();
+
+        // Committed tiles, and tiles that have been cut but not committed, by index. Null
+        // otherwise.
+        protected final ArrayList<Bitmap> mTiles = new ArrayList<Bitmap>();
+        protected final ArrayList<Bitmap> mPendingTiles = new ArrayList<Bitmap>();
+        protected int mPendingCount;
+
+        // The background work cutting tiles for this level, while it is the selected level, and
+        // the part of the bitmap it was asked to cover. Empty when there is no work.
+        protected TileJob mJob;
+        protected final Rect mJobRegion = new Rect();
+
+        TileLevel(int level, int width, int height, int tileSize) {
+            mLevel = level;
+            mSampleSize = 1 << level;
+            final int step = tileSize * mSampleSize;
+            final int overlap = TILE_OVERLAP * mSampleSize;
+            for (int top = 0; top < height; top += step) {
+                for (int left = 0; left < width; left += step) {
+                    final Rect rect = new Rect(left, top, Math.min(left + step, width),
+                            Math.min(top + step, height));
+                    mRects.add(rect);
+                    mSourceRects.add(new Rect(Math.max(0, rect.left - overlap),
+                            Math.max(0, rect.top - overlap), Math.min(width, rect.right + overlap),
+                            Math.min(height, rect.bottom + overlap)));
+                    mTiles.add(null);
+                    mPendingTiles.add(null);
+                }
+            }
+        }
+
+        boolean hasTiles() {
+            for (int i = 0, count = mTiles.size(); i < count; i++) {
+                if (mTiles.get(i) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Background work making the preview of a bitmap, and passing it to
+     * {@link Bitmap#prepareToDraw()}. Does nothing once cancelled, or if the bitmap has been
+     * recycled or cannot be read.
+     */
+    protected class PreviewJob implements Runnable {
+        protected final Bitmap mSource;
+        protected final int mPreviewSize;
+        protected volatile boolean mCancelled;
+
+        PreviewJob(Bitmap source, int previewSize) {
+            mSource = source;
+            mPreviewSize = previewSize;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled || mSource.isRecycled()) {
+                return;
+            }
+            final Bitmap preview;
+            try {
+                preview = createScaledCopy(mSource, mPreviewSize, mPreviewSize);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Unable to read oversize bitmap for preview", e);
+                return;
+            }
+            if (preview == null) {
+                return;
+            }
+            preview.prepareToDraw();
+            postToMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    onPreviewReady(PreviewJob.this, preview);
+                }
+            });
+        }
+    }
+
+    /**
+     * Background work cutting the missing tiles of one level within a region of the bitmap. Tiles
+     * that were visible when the work was started are cut first. Each is passed to
+     * {@link Bitmap#prepareToDraw()} and handed back to the main thread in turn. Stops early once
+     * cancelled, and drops the rest of the work if the bitmap has been recycled or cannot be
+     * read.
+     */
+    protected class TileJob implements Runnable {
+        protected final Bitmap mSource;
+        protected final int mSampleSize;
+        protected final ArrayList<Rect> mRects;
+        protected final int[] mOrder;
+        protected volatile boolean mCancelled;
+
+        TileJob(Bitmap source, TileLevel level, Rect visible, Rect region) {
+            mSource = source;
+            mSampleSize = level.mSampleSize;
+            mRects = new ArrayList<Rect>(level.mSourceRects);
+
+            // Missing tiles within the region, visible ones first
+            int missing = 0;
+            final int count = mRects.size();
+            final int[] order = new int[count];
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < count; i++) {
+                    final Rect rect = level.mRects.get(i);
+                    if (level.mTiles.get(i) == null && level.mPendingTiles.get(i) == null
+                            && Rect.intersects(region, rect)
+                            && Rect.intersects(visible, rect) == (pass == 0)) {
+                        order[missing++] = i;
+                    }
+                }
+            }
+            mOrder = new int[missing];
+            System.arraycopy(order, 0, mOrder, 0, missing);
+        }
+
+        @Override
+        public void run() {
+            final Matrix sample = new Matrix();
+            sample.setScale(1f / mSampleSize, 1f / mSampleSize);
+            for (int i = 0; i < mOrder.length && !mCancelled; i++) {
+                if (mSource.isRecycled()) {
+                    return;
+                }
+                final int index = mOrder[i];
+                final Rect rect = mRects.get(index);
+                final Bitmap tile;
+                try {
+                    tile = mSampleSize == 1
+                            ? Bitmap.createBitmap(mSource, rect.left, rect.top, rect.width(),
+                            rect.height())
+                            : Bitmap.createBitmap(mSource, rect.left, rect.top, rect.width(),
+                            rect.height(), sample, true);
+                } catch (OutOfMemoryError e) {
+                    Log.w(TAG, "Unable to tile oversize bitmap, downsampling instead", e);
+                    postToMainThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            onTilesFailed(TileJob.this);
+                        }
+                    });
+                    return;
+                } catch (RuntimeException e) {
+                    // The bitmap was recycled or became unreadable while the tile was cut
+                    Log.w(TAG, "Unable to read oversize bitmap, dropping tiles", e);
+                    return;
+                }
+                tile.prepareToDraw();
+
+                postToMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTileReady(TileJob.this, index, tile);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * An interface which allows an interested class to be notified when more of an oversize
+     * bitmap can be drawn, or when it has to be drawn differently.
+     */
+    interface OnPinchToZoomOversizeListener {
+        void onOversizeTilesCommitted();
+
+        void onOversizeModeChanged(int mode);
+    }
+}
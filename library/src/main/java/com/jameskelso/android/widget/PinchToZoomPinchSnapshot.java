@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+/**
+ * A snapshot of the content area of a {@link PinchToZoomImageView}, taken when a pinch starts and
+ * scaled in place of the source image until the pinch ends.
+ * <p/>
+ * {@link #capture(Matrix, int, int)} renders the content area once into a bitmap and remembers the
+ * image matrix it was rendered at. {@link #draw(Canvas, Matrix, RectF)} then draws that bitmap
+ * through the change in the image matrix since, so every frame of the pinch costs one bitmap draw
+ * the size of the view, whatever the size of the source image. Parts of the image that were outside
+ * the view when the snapshot was taken are not in it, so if a pinch zooms out or pans far enough to
+ * reveal them, the snapshot is not drawn and the caller draws the source image instead. Once the
+ * pinch ends, {@link #discard()} drops the snapshot so the source image is drawn again at full
+ * quality. The bitmap is kept for the next pinch.
+ */
+class PinchToZoomPinchSnapshot {
+    private static final String TAG = "PinchToZoomSnapshot";
+
+    // Distance, in pixels, by which the snapshot may fall short of the content area
+    protected static final float COVERAGE_TOLERANCE = .5f;
+
+    // Recycled objects to avoid new instance creation
+    protected final Matrix mCaptureInverse = new Matrix();
+    protected final Matrix mDrawMatrix = new Matrix();
+    protected final RectF mCovered = new RectF();
+    protected final RectF mRequired = new RectF();
+    protected final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    protected final PinchToZoomOverscanCache.OnPinchToZoomCacheRenderListener mRenderListener;
+
+    protected Bitmap mBitmap;
+    protected Canvas mCanvas;
+
+    // Whether the bitmap holds a snapshot of the current pinch
+    protected boolean mCaptured;
+
+    PinchToZoomPinchSnapshot(
+            @NonNull PinchToZoomOverscanCache.OnPinchToZoomCacheRenderListener listener) {
+        mRenderListener = listener;
+    }
+
+    /**
+     * Render the content area into the snapshot.
+     *
+     * @param imageMatrix the image matrix of the view
+     * @param width       width of the content area
+     * @param height      height of the content area
+     * @return a boolean indicating whether or not a snapshot was taken
+     */
+    boolean capture(Matrix imageMatrix, int width, int height) {
+        mCaptured = false;
+        if (width <= 0 || height <= 0 || !imageMatrix.invert(mCaptureInverse)) {
+            return false;
+        }
+
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            release();
+            try {
+                mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                Log.w(TAG, "Unable to allocate pinch snapshot", e);
+                return false;
+            }
+            mCanvas = new Canvas(mBitmap);
+        }
+
+        mBitmap.eraseColor(Color.TRANSPARENT);
+        final int saveCount = mCanvas.save();
+        mRenderListener.onRenderCache(mCanvas);
+        mCanvas.restoreToCount(saveCount);
+        mCaptured = true;
+        return true;
+    }
+
+    /**
+     * Draw the snapshot as it would appear with the current image matrix, if it covers every part
+     * of the content area that the source image would cover.
+     *
+     * @param canvas      the canvas to draw on, translated to the top left of the content area
+     * @param imageMatrix the image matrix of the view
+     * @param imageBounds bounds of the source image, before the image matrix is applied
+     * @return a boolean indicating whether or not the snapshot was drawn. If false, the caller
+     * should draw the source image.
+     */
+    boolean draw(Canvas canvas, Matrix imageMatrix, RectF imageBounds) {
+        if (!mCaptured) {
+            return false;
+        }
+
+        mDrawMatrix.set(mCaptureInverse);
+        mDrawMatrix.postConcat(imageMatrix);
+
+        // The content area the source image would cover now, clipped to the view
+        imageMatrix.mapRect(mRequired, imageBounds);
+        if (!mRequired.intersect(0, 0, mBitmap.getWidth(), mBitmap.getHeight())) {
+            return true;
+        }
+
+        // The content area the snapshot covers now, allowing for rounding in the inverse matrix
+        mCovered.set(0, 0, mBitmap.getWidth(), mBitmap.getHeight());
+        mDrawMatrix.mapRect(mCovered);
+        mCovered.inset(-COVERAGE_TOLERANCE, -COVERAGE_TOLERANCE);
+        if (!mCovered.contains(mRequired)) {
+            return false;
+        }
+
+        canvas.drawBitmap(mBitmap, mDrawMatrix, mPaint);
+        return true;
+    }
+
+    /**
+     * Determine whether a snapshot has been taken for the current pinch.
+     *
+     * @return a boolean indicating whether or not there is a snapshot
+     */
+    boolean isCaptured() {
+        return mCaptured;
+    }
+
+    /**
+     * Drop the snapshot, keeping its bitmap for the next one.
+     */
+    void discard() {
+        mCaptured = false;
+    }
+
+    /**
+     * Drop the snapshot and free its bitmap.
+     */
+    void release() {
+        mCaptured = false;
+        mCanvas = null;
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * Draws a drawable that is not a bitmap, such as a vector or shape drawable, from tiles rendered
+ * at a zoom level close to the one it is shown at, for {@link PinchToZoomImageView}.
+ * <p/>
+ * Scaling such a drawable through the image matrix either redraws all of its paths every frame,
+ * or blurs it when it is drawn into a layer. Instead, the drawable is rendered into tiles of
+ * {@link #TILE_SIZE} pixels at a raster scale quantized to a power of two at or above the scale
+ * it is shown at, and the tiles are drawn through the image matrix. Only tiles within one tile of
+ * the visible region are rendered.
+ * <p/>
+ * While the image moves, the current tiles are drawn scaled, and nothing is rendered. Once it
+ * settles, missing tiles and tiles at a new raster scale are rendered a few at a time on each
+ * frame, at most {@link #MAX_RENDER_TILES} per frame, and the old tiles keep being drawn until
+ * every new tile is ready. Drawables are not safe to draw off the main thread, so tiles are
+ * rendered on it in these small batches. Until the first tiles are ready, the drawable is drawn
+ * directly.
+ */
+class PinchToZoomRasterCache implements PinchToZoomFrameDriver.FrameClient {
+    private static final String TAG = "PinchToZoomRaster";
+
+    // Width and height of a tile, in raster pixels
+    protected static final int TILE_SIZE = 256;
+
+    // Most tiles rendered in a single frame
+    protected static final int MAX_RENDER_TILES = 2;
+
+    protected final OnPinchToZoomRasterListener mListener;
+    protected final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // Recycled objects to avoid new instance creation
+    protected final RectF mTileRect = new RectF();
+
+    // The drawable the tiles were rendered from
+    protected Drawable mDrawable;
+
+    // Tiles that are drawn, and tiles being rendered at a new raster scale to replace them
+    protected TileSet mTiles;
+    protected TileSet mNextTiles;
+
+    // Part of the drawable visible at the last draw, and that grown by one tile on every side, in
+    // drawable pixels relative to its bounds
+    protected final Rect mVisible = new Rect();
+    protected final Rect mRegion = new Rect();
+
+    // Raster scale wanted at the last draw
+    protected float mTargetScale;
+
+    // Whether the image is moving, in which case nothing is rendered
+    protected boolean mMoving;
+
+    // Whether a tile could not be allocated, in which case the drawable is always drawn directly
+    protected boolean mFailed;
+
+    PinchToZoomRasterCache(@NonNull OnPinchToZoomRasterListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Determine whether a drawable can be drawn from raster tiles. Bitmaps are drawn from their
+     * own pixels, and drawables without an intrinsic size cannot be positioned.
+     *
+     * @param drawable the drawable of the view
+     * @return a boolean indicating whether or not the drawable should be drawn by this cache
+     */
+    static boolean canRaster(@Nullable Drawable drawable) {
+        return drawable != null && !(drawable instanceof BitmapDrawable)
+                && !(drawable instanceof PinchToZoomRegionDrawable)
+                && drawable.getIntrinsicWidth() > 0 && drawable.getIntrinsicHeight() > 0;
+    }
+
+    /**
+     * Quantize a scale to the power of two at or above it, so tiles are never drawn magnified.
+     *
+     * @param scale screen pixels per drawable pixel
+     * @return the raster scale
+     */
+    static float quantizeScale(float scale) {
+        if (scale <= 0) {
+            return 1f;
+        }
+        // Allow for rounding so that an exact power of two is not rounded up
+        return (float) Math.pow(2, Math.ceil(Math.log(scale) / Math.log(2) - .001));
+    }
+
+    /**
+     * Draw the drawable from its tiles, and schedule any tiles it needs once the image is still.
+     *
+     * @param canvas      the canvas to draw on
+     * @param drawable    the drawable of the view
+     * @param imageMatrix the image matrix of the view
+     * @return false if there are no tiles yet and the drawable should be drawn directly
+     */
+    boolean draw(Canvas canvas, Drawable drawable, Matrix imageMatrix) {
+        if (mFailed) {
+            return false;
+        }
+        if (drawable != mDrawable) {
+            release();
+            mDrawable = drawable;
+        }
+
+        final Rect bounds = drawable.getBounds();
+        final int saveCount = canvas.save();
+        canvas.concat(imageMatrix);
+        canvas.translate(bounds.left, bounds.top);
+        mTargetScale = quantizeScale(imageMatrix.mapRadius(1f));
+        if (!canvas.getClipBounds(mVisible)
+                || !mVisible.intersect(0, 0, bounds.width(), bounds.height())) {
+            mVisible.setEmpty();
+        }
+        final int margin = (int) Math.ceil(TILE_SIZE / mTargetScale);
+        mRegion.set(mVisible);
+        mRegion.inset(-margin, -margin);
+        if (mVisible.isEmpty() || !mRegion.intersect(0, 0, bounds.width(), bounds.height())) {
+            mRegion.setEmpty();
+        }
+        if (!mMoving) {
+            scheduleTiles();
+        }
+
+        // Panning onto parts that have not been rendered draws the drawable directly
+        final boolean drawn = mTiles != null && mTiles.nextMissingTile(mVisible) < 0;
+        if (drawn) {
+            canvas.scale(1f / mTiles.mScale, 1f / mTiles.mScale);
+            for (int i = 0, count = mTiles.mTiles.size(); i < count; i++) {
+                final int key = mTiles.mTiles.keyAt(i);
+                mTileRect.set(mTiles.getTileRect(key));
+                if (!canvas.quickReject(mTileRect, Canvas.EdgeType.AA)) {
+                    canvas.drawBitmap(mTiles.mTiles.valueAt(i), mTileRect.left, mTileRect.top,
+                            mPaint);
+                }
+            }
+        }
+        canvas.restoreToCount(saveCount);
+        return drawn;
+    }
+
+    /**
+     * Start rendering tiles if the current tiles are at the wrong raster scale, or do not cover
+     * the region around the visible part of the drawable.
+     */
+    protected void scheduleTiles() {
+        if (mRegion.isEmpty()) {
+            return;
+        }
+        if (mNextTiles == null || mNextTiles.mScale != mTargetScale) {
+            mNextTiles = mTiles != null && mTiles.mScale == mTargetScale ? mTiles
+                    : new TileSet(mTargetScale, mDrawable.getBounds());
+        }
+        if (mNextTiles.nextMissingTile(mRegion) >= 0) {
+            addToFrameDriver();
+        } else {
+            commitNextTiles();
+        }
+    }
+
+    /**
+     * Render up to {@link #MAX_RENDER_TILES} missing tiles, and draw from the new tiles once they
+     * cover the region around the visible part of the drawable.
+     *
+     * @param frameTimeNanos the time at which the frame started rendering
+     * @return true while tiles remain to be rendered
+     */
+    @Override
+    public boolean doFrame(long frameTimeNanos) {
+        if (mMoving || mNextTiles == null || mDrawable == null) {
+            return false;
+        }
+        for (int i = 0; i < MAX_RENDER_TILES; i++) {
+            final int key = mNextTiles.nextMissingTile(mRegion);
+            if (key < 0) {
+                commitNextTiles();
+                mListener.onRasterTilesChanged();
+                return false;
+            }
+            if (!renderTile(mNextTiles, key)) {
+                mFailed = true;
+                release();
+                mListener.onRasterTilesChanged();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draw from the tiles being rendered, and forget tiles outside the region around the visible
+     * part of the drawable. The old tiles are left for the collector rather than recycled, since
+     * the last frame that drew them may still be rendering.
+     */
+    protected void commitNextTiles() {
+        final TileSet tiles = mNextTiles;
+        mNextTiles = null;
+        if (tiles == null) {
+            return;
+        }
+        for (int i = tiles.mTiles.size() - 1; i >= 0; i--) {
+            if (!tiles.intersects(tiles.mTiles.keyAt(i), mRegion)) {
+                tiles.mTiles.removeAt(i);
+            }
+        }
+        mTiles = tiles;
+    }
+
+    /**
+     * Render a single tile of the drawable.
+     *
+     * @return false if the tile could not be allocated
+     */
+    protected boolean renderTile(TileSet tiles, int key) {
+        final Rect rect = tiles.getTileRect(key);
+        final Bitmap tile;
+        try {
+            tile = Bitmap.createBitmap(rect.width(), rect.height(), Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Unable to allocate raster tile, drawing directly instead", e);
+            return false;
+        }
+
+        final Rect bounds = mDrawable.getBounds();
+        final Canvas canvas = new Canvas(tile);
+        canvas.translate(-rect.left, -rect.top);
+        canvas.scale(tiles.mScale, tiles.mScale);
+        canvas.translate(-bounds.left, -bounds.top);
+        mDrawable.draw(canvas);
+        tiles.mTiles.put(key, tile);
+        return true;
+    }
+
+    /**
+     * Set whether the image is moving. Nothing is rendered while it moves. Once it settles, the
+     * listener is notified so the next draw can schedule the tiles it needs.
+     *
+     * @param moving whether or not the image is moving
+     */
+    void setMoving(boolean moving) {
+        if (moving == mMoving) {
+            return;
+        }
+        mMoving = moving;
+        if (!moving && mDrawable != null) {
+            mListener.onRasterTilesChanged();
+        }
+    }
+
+    /**
+     * Forget the tiles because the drawable has changed its appearance. They are rendered again
+     * once the image is still. The drawable is drawn directly until then.
+     */
+    void invalidate() {
+        removeFromFrameDriver();
+        mTiles = null;
+        mNextTiles = null;
+    }
+
+    /**
+     * Stop rendering and drop the tiles. The tiles that are drawn are left for the collector
+     * rather than recycled, since the last frame that drew them may still be rendering. Tiles
+     * rendered at a new raster scale that were never drawn are recycled.
+     */
+    void release() {
+        removeFromFrameDriver();
+        if (mNextTiles != mTiles) {
+            recycleTiles(mNextTiles);
+        }
+        mTiles = null;
+        mNextTiles = null;
+        mDrawable = null;
+    }
+
+    /**
+     * Allow the drawable to be drawn from tiles again after a tile could not be allocated.
+     */
+    void reset() {
+        release();
+        mFailed = false;
+    }
+
+    protected static void recycleTiles(@Nullable TileSet tiles) {
+        if (tiles == null) {
+            return;
+        }
+        for (int i = 0, count = tiles.mTiles.size(); i < count; i++) {
+            tiles.mTiles.valueAt(i).recycle();
+        }
+        tiles.mTiles.clear();
+    }
+
+    protected void addToFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().add(this);
+    }
+
+    protected void removeFromFrameDriver() {
+        PinchToZoomFrameDriver.getInstance().remove(this);
+    }
+
+    /**
+     * The tiles of the drawable at one raster scale, keyed by row and column. Tile rects are in
+     * raster pixels.
+     */
+    protected static class TileSet {
+        protected final float mScale;
+        protected final int mColumns;
+        protected final int mRows;
+        protected final int mRasterWidth;
+        protected final int mRasterHeight;
+        protected final SparseArray<Bitmap> mTiles = new SparseArray<Bitmap>();
+
+        // Recycled objects to avoid new instance creation
+        protected final Rect mRect = new Rect();
+
+        TileSet(float scale, Rect bounds) {
+            mScale = scale;
+            mRasterWidth = Math.max(1, Math.round(bounds.width() * scale));
+            mRasterHeight = Math.max(1, Math.round(bounds.height() * scale));
+            mColumns = (mRasterWidth + TILE_SIZE - 1) / TILE_SIZE;
+            mRows = (mRasterHeight + TILE_SIZE - 1) / TILE_SIZE;
+        }
+
+        /**
+         * Get the rect of a tile in raster pixels. The returned rect is reused.
+         */
+        Rect getTileRect(int key) {
+            final int left = key % mColumns * TILE_SIZE;
+            final int top = key / mColumns * TILE_SIZE;
+            mRect.set(left, top, Math.min(left + TILE_SIZE, mRasterWidth),
+                    Math.min(top + TILE_SIZE, mRasterHeight));
+            return mRect;
+        }
+
+        /**
+         * Determine whether a tile overlaps a region given in drawable pixels.
+         */
+        boolean intersects(int key, Rect region) {
+            final Rect rect = getTileRect(key);
+            return rect.left < region.right * mScale && region.left * mScale < rect.right
+                    && rect.top < region.bottom * mScale && region.top * mScale < rect.bottom;
+        }
+
+        /**
+         * Find a tile overlapping a region, given in drawable pixels, that has not been rendered.
+         *
+         * @return the key of the tile, or -1 if every tile overlapping the region is rendered
+         */
+        int nextMissingTile(Rect region) {
+            final int firstColumn = Math.max(0, (int) (region.left * mScale) / TILE_SIZE);
+            final int firstRow = Math.max(0, (int) (region.top * mScale) / TILE_SIZE);
+            for (int row = firstRow; row < mRows; row++) {
+                for (int column = firstColumn; column < mColumns; column++) {
+                    final int key = row * mColumns + column;
+                    if (!intersects(key, region)) {
+                        break;
+                    }
+                    if (mTiles.get(key) == null) {
+                        return key;
+                    }
+                }
+                if (!intersects(row * mColumns + firstColumn, region)) {
+                    break;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * An interface which allows an interested class to be notified when the tiles drawn for a
+     * drawable change.
+     */
+    interface OnPinchToZoomRasterListener {
+        void onRasterTilesChanged();
+    }
+}
@@ -0,0 +1,567 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A drawable that shows an image through a {@link BitmapRegionDecoder}, for images too large to
+ * decode in one go. Set one on a {@link PinchToZoomImageView} using
+ * {@link PinchToZoomImageView#setImageRegionDecoder(BitmapRegionDecoder)}.
+ * <p/>
+ * Nothing is decoded up front. Each time the drawable is drawn, the part of the image inside the
+ * clip is compared with the region of the current decode pass. If it is not covered, or the scale
+ * now calls for a different sample size, the pass is cancelled and a new one is started for the
+ * visible region. A pass decodes the region on a background thread in strips of
+ * {@link #STRIP_HEIGHT} decoded rows and up to {@link #STRIP_WIDTH} decoded columns, row by row,
+ * and each strip is drawn as soon as it has been decoded. The screen fills in a strip at a time
+ * rather than after one long decode, and a pass stops early once the user zooms or pans away
+ * from it.
+ * <p/>
+ * Strips are cut on a fixed grid for each sample size, and a pass covers whole cells of it. A pan
+ * in either direction starts a new pass only once it crosses into another row or column of the
+ * grid, and the new pass decodes only the cells not already decoded.
+ * <p/>
+ * Strips decoded at another sample size stay drawn beneath the current pass until it completes.
+ * Strips outside the region of a new pass are dropped.
+ * <p/>
+ * When the view knows where the image is about to be shown, such as a restored viewport or the
+ * end of an animation, {@link #prefetch(RectF, Rect, float)} starts a pass for that region straight
+ * away. Until {@link #endPrefetch()}, drawing does not start passes of its own, and no strips are
+ * dropped, so the frames in between draw whatever has been decoded.
+ * <p/>
+ * Strips are decoded as {@link Bitmap.Config#ARGB_8888} unless RGB_565 is allowed. When it is,
+ * the config is chosen from the first strip decoded, so nothing is decoded just to choose it. An
+ * image whose format carries alpha, such as a PNG with an alpha channel, keeps ARGB_8888.
+ * Otherwise {@link #chooseConfig(Bitmap)} picks {@link Bitmap.Config#RGB_565}, at half the memory
+ * per strip, unless the strip is mostly smooth gradients that would show banding. The first strip
+ * itself stays ARGB_8888.
+ */
+class PinchToZoomRegionDrawable extends Drawable {
+    private static final String TAG = "PinchToZoomRegion";
+
+    // Height of a strip, in decoded pixels
+    protected static final int STRIP_HEIGHT = 256;
+
+    // Largest width of a strip, in decoded pixels
+    protected static final int STRIP_WIDTH = 1024;
+
+    // Neighbouring probe pixels that differ by no more than this in every channel, but do
+    // differ, are part of a smooth gradient. RGB_565 steps are 8 apart in red and blue.
+    protected static final int GRADIENT_STEP = 4;
+
+    // Fraction of neighbouring probe pixels in smooth gradients above which RGB_565 would band
+    protected static final float GRADIENT_FRACTION = .3f;
+
+    private static ExecutorService sDecodeExecutor;
+    private static Handler sMainHandler;
+
+    protected final BitmapRegionDecoder mDecoder;
+    protected final int mWidth;
+    protected final int mHeight;
+    protected final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // Width of a column of the strip grid, in decoded pixels
+    protected int mStripWidth = STRIP_WIDTH;
+
+    // Whether strips may be decoded as RGB_565, and the config chosen for them. The config is
+    // null until the background thread has chosen it from the first strip, and is read by every
+    // pass when it starts decoding, so it is only ever chosen once.
+    protected final boolean mRgb565Allowed;
+    protected volatile Bitmap.Config mConfig;
+
+    // Screen pixels per drawable pixel, set by the view before each draw
+    protected float mDrawScale = 1f;
+
+    // Part of the image visible at the last draw, in image pixels
+    protected final Rect mVisible = new Rect();
+
+    // Decoded strips, in the order they are drawn
+    protected final ArrayList<Strip> mStrips = new ArrayList<Strip>();
+
+    // Region and sample size of the last pass, and the background work decoding it while it runs
+    protected final Rect mPassRegion = new Rect();
+    protected int mPassSampleSize;
+    protected StripJob mJob;
+
+    // Whether the last pass was started ahead of the image being shown there, and is kept until
+    // the view ends the prefetch, and whether it has completed in the meantime
+    protected boolean mPrefetching;
+    protected boolean mPrefetchComplete;
+
+    // Recycled objects to avoid new instance creation
+    protected final Rect mPrefetchRegion = new Rect();
+
+    PinchToZoomRegionDrawable(@NonNull BitmapRegionDecoder decoder, boolean rgb565Allowed) {
+        mDecoder = decoder;
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+        mRgb565Allowed = rgb565Allowed;
+        mConfig = rgb565Allowed ? null : Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Find the sample size to decode at for a scale. This is the largest power of two that does
+     * not decode fewer pixels than are shown.
+     *
+     * @param scale screen pixels per image pixel
+     * @return the sample size, at least 1
+     */
+    static int getSampleSize(float scale) {
+        int sampleSize = 1;
+        while (scale > 0 && scale * sampleSize * 2 <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Choose the config to decode an image as from a probe of part of it. RGB_565 is chosen only
+     * if the probe is opaque, and fewer than {@link #GRADIENT_FRACTION} of its horizontally
+     * neighbouring pixels are part of a smooth gradient.
+     *
+     * @param probe part of the image, decoded as ARGB_8888
+     * @return {@link Bitmap.Config#RGB_565} or {@link Bitmap.Config#ARGB_8888}
+     */
+    static Bitmap.Config chooseConfig(Bitmap probe) {
+        final int width = probe.getWidth();
+        final int height = probe.getHeight();
+        final boolean hasAlpha = probe.hasAlpha();
+        final int[] row = new int[width];
+        int smooth = 0;
+        for (int y = 0; y < height; y++) {
+            probe.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                // A decoder that knows the format is opaque, such as JPEG, reports no alpha
+                if (hasAlpha && Color.alpha(row[x]) != 0xFF) {
+                    return Bitmap.Config.ARGB_8888;
+                }
+                if (x > 0 && row[x] != row[x - 1] && isSmoothStep(row[x], row[x - 1])) {
+                    smooth++;
+                }
+            }
+        }
+        final int pairs = (width - 1) * height;
+        return pairs > 0 && smooth > pairs * GRADIENT_FRACTION
+                ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+    }
+
+    private static boolean isSmoothStep(int a, int b) {
+        return Math.abs(Color.red(a) - Color.red(b)) <= GRADIENT_STEP
+                && Math.abs(Color.green(a) - Color.green(b)) <= GRADIENT_STEP
+                && Math.abs(Color.blue(a) - Color.blue(b)) <= GRADIENT_STEP;
+    }
+
+    /**
+     * Set the scale the drawable is about to be drawn at, used to choose the sample size.
+     *
+     * @param drawScale screen pixels per drawable pixel
+     */
+    void setDrawScale(float drawScale) {
+        mDrawScale = drawScale;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        final Rect bounds = getBounds();
+        if (bounds.isEmpty()) {
+            return;
+        }
+        final float boundsScale = (float) bounds.width() / mWidth;
+        final int saveCount = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale(boundsScale, (float) bounds.height() / mHeight);
+        if (canvas.getClipBounds(mVisible) && mVisible.intersect(0, 0, mWidth, mHeight)
+                && !mPrefetching) {
+            requestPass(getSampleSize(mDrawScale * boundsScale));
+        }
+
+        // Strips of the current sample size are drawn last, over any others
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0, count = mStrips.size(); i < count; i++) {
+                final Strip strip = mStrips.get(i);
+                if ((strip.mSampleSize == mPassSampleSize) != (pass == 1)) {
+                    continue;
+                }
+                final Rect rect = strip.mRect;
+                if (!canvas.quickReject(rect.left, rect.top, rect.right, rect.bottom,
+                        Canvas.EdgeType.AA)) {
+                    canvas.drawBitmap(strip.mBitmap, null, rect, mPaint);
+                }
+            }
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Start a pass over the visible region, unless the last pass already covers it at the same
+     * sample size. A pass still running is cancelled. Strips that were already decoded at this
+     * sample size are not decoded again.
+     *
+     * @param sampleSize the sample size the visible region should be decoded at
+     * @return a boolean indicating whether or not a new pass was started
+     */
+    protected boolean requestPass(int sampleSize) {
+        if (sampleSize == mPassSampleSize && mPassRegion.contains(mVisible)) {
+            return false;
+        }
+        startPass(mVisible, sampleSize);
+        return true;
+    }
+
+    /**
+     * Cancel any pass still running and start one over a region. Unless prefetching, strips
+     * outside the region are dropped.
+     *
+     * @param region     the region to decode, in image pixels
+     * @param sampleSize the sample size to decode it at
+     */
+    protected void startPass(Rect region, int sampleSize) {
+        cancelPass();
+
+        // Align the region to the strip grid, so strips line up between passes
+        final int rowStep = STRIP_HEIGHT * sampleSize;
+        final int columnStep = mStripWidth * sampleSize;
+        mPassSampleSize = sampleSize;
+        mPassRegion.set(region.left / columnStep * columnStep,
+                region.top / rowStep * rowStep,
+                Math.min(mWidth, roundUp(region.right, columnStep)),
+                Math.min(mHeight, roundUp(region.bottom, rowStep)));
+        if (!mPrefetching) {
+            dropStripsOutsidePass();
+        }
+
+        final ArrayList<Rect> rects = new ArrayList<Rect>();
+        for (int top = mPassRegion.top; top < mPassRegion.bottom; top += rowStep) {
+            for (int left = mPassRegion.left; left < mPassRegion.right; left += columnStep) {
+                final Rect rect = new Rect(left, top,
+                        Math.min(left + columnStep, mPassRegion.right),
+                        Math.min(top + rowStep, mPassRegion.bottom));
+                if (!isDecoded(rect, sampleSize)) {
+                    rects.add(rect);
+                }
+            }
+        }
+        if (rects.isEmpty()) {
+            completePass();
+        } else {
+            mJob = new StripJob(mDecoder, sampleSize, rects);
+            executeInBackground(mJob);
+        }
+    }
+
+    /**
+     * Drop the strips outside the region of the last pass. They are left for the collector,
+     * since the last frame that drew them may still be rendering.
+     */
+    protected void dropStripsOutsidePass() {
+        for (int i = mStrips.size() - 1; i >= 0; i--) {
+            if (!Rect.intersects(mStrips.get(i).mRect, mPassRegion)) {
+                mStrips.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Start decoding the region of the image that is about to be shown, before it is drawn there.
+     * Until {@link #endPrefetch()}, the pass is not replaced when the drawable is drawn elsewhere
+     * in the meantime, and strips are not dropped.
+     *
+     * @param region    the region about to be shown, in the coordinates of the bounds
+     * @param bounds    the bounds the drawable will have, which it may not have been given yet
+     * @param drawScale screen pixels per drawable pixel it will be shown at
+     */
+    void prefetch(RectF region, Rect bounds, float drawScale) {
+        if (bounds.isEmpty()) {
+            return;
+        }
+        final float scaleX = (float) bounds.width() / mWidth;
+        final float scaleY = (float) bounds.height() / mHeight;
+        mPrefetchRegion.set((int) Math.floor((region.left - bounds.left) / scaleX),
+                (int) Math.floor((region.top - bounds.top) / scaleY),
+                (int) Math.ceil((region.right - bounds.left) / scaleX),
+                (int) Math.ceil((region.bottom - bounds.top) / scaleY));
+        if (!mPrefetchRegion.intersect(0, 0, mWidth, mHeight)) {
+            return;
+        }
+
+        mPrefetching = true;
+        final int sampleSize = getSampleSize(drawScale * scaleX);
+        if (sampleSize != mPassSampleSize || !mPassRegion.contains(mPrefetchRegion)) {
+            startPass(mPrefetchRegion, sampleSize);
+        }
+    }
+
+    /**
+     * Let drawing start passes again once the image is shown where it was prefetched for. The
+     * strips the prefetch kept are dropped as a pass would have dropped them.
+     */
+    void endPrefetch() {
+        if (!mPrefetching) {
+            return;
+        }
+        mPrefetching = false;
+        dropStripsOutsidePass();
+        if (mPrefetchComplete) {
+            mPrefetchComplete = false;
+            onPassComplete();
+        }
+        invalidateSelf();
+    }
+
+    protected boolean isDecoded(Rect rect, int sampleSize) {
+        for (int i = 0, count = mStrips.size(); i < count; i++) {
+            final Strip strip = mStrips.get(i);
+            if (strip.mSampleSize == sampleSize && strip.mRect.contains(rect)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Draw a strip of the current pass once it has been decoded on the background thread.
+     */
+    protected void onStripReady(StripJob job, Strip strip) {
+        if (job != mJob) {
+            strip.mBitmap.recycle();
+            return;
+        }
+        mStrips.add(strip);
+        if (--job.mRemaining == 0) {
+            mJob = null;
+            completePass();
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * Stop the current pass once the background thread could not decode a strip. The region is
+     * not tried again until the user moves away from it.
+     */
+    protected void onStripFailed(StripJob job) {
+        if (job == mJob) {
+            mJob = null;
+        }
+    }
+
+    /**
+     * Finish a pass that has covered its region, or wait until the prefetch ends if it is one.
+     */
+    protected void completePass() {
+        if (mPrefetching) {
+            mPrefetchComplete = true;
+        } else {
+            onPassComplete();
+        }
+    }
+
+    /**
+     * Drop the strips of other sample sizes once the pass has covered its region.
+     */
+    protected void onPassComplete() {
+        for (int i = mStrips.size() - 1; i >= 0; i--) {
+            if (mStrips.get(i).mSampleSize != mPassSampleSize) {
+                mStrips.remove(i);
+            }
+        }
+    }
+
+    protected void cancelPass() {
+        if (mJob != null) {
+            mJob.mCancelled = true;
+            mJob = null;
+        }
+        mPrefetchComplete = false;
+        mPassRegion.setEmpty();
+        mPassSampleSize = 0;
+    }
+
+    /**
+     * Stop any background work and drop the decoded strips. They are left for the collector
+     * rather than recycled, since the last frame that drew them may still be rendering. Strips
+     * the background thread hands back afterwards were never drawn, and are recycled as they
+     * arrive. The visible region is decoded again the next time the drawable is drawn. The
+     * decoder itself is left for its owner to recycle.
+     */
+    void release() {
+        cancelPass();
+        mPrefetching = false;
+        mStrips.clear();
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    protected void executeInBackground(Runnable runnable) {
+        if (sDecodeExecutor == null) {
+            sDecodeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        sDecodeExecutor.execute(runnable);
+    }
+
+    protected void postToMainThread(Runnable runnable) {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        sMainHandler.post(runnable);
+    }
+
+    /**
+     * A decoded strip. The rect is in image pixels, and the bitmap is the rect downsampled by the
+     * sample size.
+     */
+    protected static class Strip {
+        protected final Rect mRect;
+        protected final int mSampleSize;
+        protected final Bitmap mBitmap;
+
+        Strip(Rect rect, int sampleSize, Bitmap bitmap) {
+            mRect = rect;
+            mSampleSize = sampleSize;
+            mBitmap = bitmap;
+        }
+    }
+
+    /**
+     * Background work decoding the strips of one pass, row by row. Each is warmed and handed
+     * back to the main thread in turn. If the config has not been chosen yet, it is chosen from
+     * the first strip decoded. Stops early once cancelled.
+     */
+    protected class StripJob implements Runnable {
+        protected final BitmapRegionDecoder mDecoder;
+        protected final int mSampleSize;
+        protected final ArrayList<Rect> mRects;
+        protected volatile boolean mCancelled;
+
+        // Strips not yet handed back. Only used on the main thread.
+        protected int mRemaining;
+
+        StripJob(BitmapRegionDecoder decoder, int sampleSize, ArrayList<Rect> rects) {
+            mDecoder = decoder;
+            mSampleSize = sampleSize;
+            mRects = rects;
+            mRemaining = rects.size();
+        }
+
+        @Override
+        public void run() {
+            // Passes run one at a time, so a pass sees the config chosen by any pass before it
+            Bitmap.Config config = mConfig;
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = mSampleSize;
+            options.inPreferredConfig = config != null ? config : Bitmap.Config.ARGB_8888;
+            for (int i = 0, count = mRects.size(); i < count && !mCancelled; i++) {
+                final Rect rect = mRects.get(i);
+                Bitmap bitmap = null;
+                try {
+                    if (!mDecoder.isRecycled()) {
+                        bitmap = mDecoder.decodeRegion(rect, options);
+                    }
+                } catch (OutOfMemoryError e) {
+                    Log.w(TAG, "Unable to decode image region", e);
+                } catch (IllegalStateException e) {
+                    // The decoder was recycled after it was checked
+                    Log.w(TAG, "Unable to decode image region", e);
+                }
+                if (bitmap == null) {
+                    postToMainThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            onStripFailed(StripJob.this);
+                        }
+                    });
+                    return;
+                }
+                if (config == null) {
+                    // The decoder reports alpha when the format carries it, wherever it is used
+                    config = bitmap.hasAlpha() ? Bitmap.Config.ARGB_8888 : chooseConfig(bitmap);
+                    mConfig = config;
+                    options.inPreferredConfig = config;
+                }
+                bitmap.prepareToDraw();
+
+                final Strip strip = new Strip(rect, mSampleSize, bitmap);
+                postToMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onStripReady(StripJob.this, strip);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -1,9 +1,5 @@
 package com.jameskelso.android.widget;
 
-import android.graphics.Matrix;
-import android.graphics.Point;
-import android.graphics.PointF;
-import android.graphics.Rect;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.preference.Preference;
@@ -11,8 +7,22 @@ import android.support.annotation.NonNull;
 
 /**
  * A class for managing the instance state of a {@link PinchToZoomImageView}.
+ * <p/>
+ * Only dynamic state is saved (the zoom level, the translation, and the size of the source image
+ * those values were calculated against). Configuration such as padding, translation extra, and
+ * minimum/maximum bitmap size is rebuilt from layout XML when the view is recreated, so it is not
+ * written to the parcel. All values are written as primitives behind a version number and the
+ * length of the payload in bytes, so that the format can change without misreading state written
+ * by another version of the library. Every version must keep the version and length first, so a
+ * payload of an unknown version can be skipped and anything written after it is still read from
+ * the right position.
  */
 public class PinchToZoomSavedState extends Preference.BaseSavedState {
+    /**
+     * Version of the parcel format written by {@link #writeToParcel(Parcel, int)}
+     */
+    static final int VERSION = 1;
+
     public static final Parcelable.Creator<PinchToZoomSavedState> CREATOR = new Parcelable
             .Creator<PinchToZoomSavedState>() {
         public PinchToZoomSavedState createFromParcel(Parcel in) {
@@ -25,57 +35,44 @@ public class PinchToZoomSavedState extends Preference.BaseSavedState {
     };
 
     /**
-     * Saved state for {@link PinchToZoomTouchHelper}
+     * Version of the parcel format this state was read from
      */
-    int panThreshold;
-    int touchMode;
-    PointF firstTouch;
-    PointF lastTouch;
+    int version = VERSION;
 
     /**
      * Saved state for {@link PinchToZoomMatrixHelper}
      */
-    boolean cropToPadding;
-    boolean pinAxesSmallerThanViewBounds;
-    Rect padding;
-    Rect translationExtra;
-    Point srcBitmapSize;
-    Point bitmapMinSize;
-    Point bitmapMaxSize;
-    Matrix matrix;
+    int srcBitmapWidth;
+    int srcBitmapHeight;
+    float translationX;
+    float translationY;
 
     /**
      * Saved state for {@link PinchToZoomScaleHelper}
      */
-    float currentScaleFactor;
+    float currentScaleFactor = 1.0f;
 
     /**
-     * Constructor used when reading from a parcel. Reads the state of the superclass.
+     * Constructor used when reading from a parcel. Reads the state of the superclass. If the
+     * parcel was written using an unknown version of the format, its payload is skipped, no
+     * dynamic state is read and {@link #hasDynamicState()} will return false.
      *
      * @param source The parcel containing the instance state of the class.
      */
     public PinchToZoomSavedState(Parcel source) {
         super(source);
 
-        panThreshold = source.readInt();
-        touchMode = source.readInt();
-        firstTouch = source.readParcelable(null);
-        lastTouch = source.readParcelable(null);
-
-        cropToPadding = source.readByte() != 0;
-        pinAxesSmallerThanViewBounds = source.readByte() != 0;
-        padding = source.readParcelable(null);
-        translationExtra = source.readParcelable(null);
-        srcBitmapSize = source.readParcelable(null);
-        bitmapMinSize = source.readParcelable(null);
-        bitmapMaxSize = source.readParcelable(null);
-
-        float[] values = new float[9];
-        source.readFloatArray(values);
-        matrix = new Matrix();
-        matrix.setValues(values);
-
-        currentScaleFactor = source.readFloat();
+        version = source.readInt();
+        final int length = source.readInt();
+        final int end = source.dataPosition() + length;
+        if (version == VERSION) {
+            srcBitmapWidth = source.readInt();
+            srcBitmapHeight = source.readInt();
+            translationX = source.readFloat();
+            translationY = source.readFloat();
+            currentScaleFactor = source.readFloat();
+        }
+        source.setDataPosition(end);
     }
 
     /**
@@ -87,27 +84,34 @@ public class PinchToZoomSavedState extends Preference.BaseSavedState {
         super(superState);
     }
 
+    /**
+     * Determine whether this state holds dynamic state that can be restored.
+     *
+     * @return false if this state was read from a parcel with an unknown format version
+     */
+    boolean hasDynamicState() {
+        return version == VERSION;
+    }
+
     @Override
     public void writeToParcel(@NonNull Parcel out, int flags) {
         super.writeToParcel(out, flags);
 
-        out.writeInt(panThreshold);
-        out.writeInt(touchMode);
-        out.writeParcelable(firstTouch, 0);
-        out.writeParcelable(lastTouch, 0);
-
-        out.writeByte((byte) (cropToPadding ? 1 : 0));
-        out.writeByte((byte) (pinAxesSmallerThanViewBounds ? 1 : 0));
-        out.writeParcelable(padding, 0);
-        out.writeParcelable(translationExtra, 0);
-        out.writeParcelable(srcBitmapSize, 0);
-        out.writeParcelable(bitmapMinSize, 0);
-        out.writeParcelable(bitmapMaxSize, 0);
-
-        float[] values = new float[9];
-        matrix.getValues(values);
-        out.writeFloatArray(values);
+        out.writeInt(VERSION);
 
+        // Placeholder for the payload length, filled in once the payload has been written
+        final int lengthPosition = out.dataPosition();
+        out.writeInt(0);
+        final int start = out.dataPosition();
+        out.writeInt(srcBitmapWidth);
+        out.writeInt(srcBitmapHeight);
+        out.writeFloat(translationX);
+        out.writeFloat(translationY);
         out.writeFloat(currentScaleFactor);
+
+        final int end = out.dataPosition();
+        out.setDataPosition(lengthPosition);
+        out.writeInt(end - start);
+        out.setDataPosition(end);
     }
 }
@@ -162,6 +162,22 @@ class PinchToZoomScaleHelper {
                 mCurrentScaleFactor, mCurrentScaleFactor);
     }
 
+    /**
+     * Jump straight to a previously saved zoom level. The scale factor is capped in the same way
+     * as {@link #scale(PinchToZoomMatrixState)}, since the configuration of the view may have
+     * changed since it was saved. No callback is made; the caller is responsible for updating the
+     * image matrix.
+     *
+     * @param scaleFactor the saved scale factor
+     * @param state       an object encapsulating information about the current state of the image
+     *                    matrix and the view that it supports.
+     * @return the scale factor that was applied
+     */
+    float restoreScaleFactor(float scaleFactor, PinchToZoomMatrixState state) {
+        mCurrentScaleFactor = verifyScaleFactor(scaleFactor, state);
+        return mCurrentScaleFactor;
+    }
+
     /**
      * Determine if any scaling has been performed on the image.
      *
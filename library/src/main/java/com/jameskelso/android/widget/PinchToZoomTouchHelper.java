@@ -25,34 +25,51 @@ import android.graphics.PointF;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
 
 /**
  * Encapsulates touch-handling logic for {@link com.jameskelso.android.widget.PinchToZoomImageView}.
  * This class should be set as the {@link android.view.View.OnTouchListener} for the
  * {@link com.jameskelso.android.widget.PinchToZoomImageView}.
  * <p/>
- * When {@link #onTouch(android.view.View, android.view.MotionEvent)} is invoked, the event is
- * passed to {@link #mScaleGestureDetector} which, if a scale gesture is detected, will invoke
- * {@link #onScaleBegin(android.view.ScaleGestureDetector)} which will block the subsequent
- * {@link #processMotionEvent} by setting {@link #mTouchMode} to {@link #STATE_ZOOM}. In
- * addition, {@link #onScale(android.view.ScaleGestureDetector)} will be invoked, which will notify
- * the {@link #mOnPinchToZoomTouchListener}.
+ * When {@link #onTouch(android.view.View, android.view.MotionEvent)} is invoked, every pointer in
+ * the event is read once by {@link #mGestureTracker}, which works out how far the focus of the
+ * gesture has moved and how much its span has changed. {@link #processMotionEvent(View, int)}
+ * then routes the event based on its action. A second pointer going down sets
+ * {@link #mTouchMode} to {@link #STATE_ZOOM}, and subsequent moves notify the
+ * {@link #mOnPinchToZoomTouchListener} of a scale about the focus of all pointers combined with
+ * the distance that focus has moved, so the user can pan and zoom at the same time. When all but
+ * one pointer has been lifted, {@link #mTouchMode} returns to {@link #STATE_PAN}. The
+ * {@link #mOnPinchToZoomTouchListener} is notified when {@link #STATE_ZOOM} is entered and again
+ * when it is left, however the pinch ends.
  * <p/>
- * If the {@link #mScaleGestureDetector} doesn't detect a scale event, {@link #processMotionEvent}
- * will handle the touch. If the distance on the X and Y coordinate planes between the touch for
- * {@link #processMotionEventActionDown(android.graphics.PointF)} and the touch for
- * {@link #processMotionEventActionUp(android.view.View, android.graphics.PointF)} is less than
- * {@link #mPanThreshold}, the event will register as a tap (or click) and
+ * With a single pointer down, moves notify the {@link #mOnPinchToZoomTouchListener} of a pan
+ * event. If the distance on the X and Y coordinate planes between the touch for
+ * {@link #processMotionEventActionDown()} and the touch for
+ * {@link #processMotionEventActionUp(android.view.View)} is less than {@link #mPanThreshold}, and
+ * no other pointer went down in between, the event will register as a tap (or click) and
  * {@link #performUserTap(android.view.View)} will be invoked. This, in turn, will invoke
  * {@link #mOnClickListener} if it is not null.
  * <p/>
- * If the distance on the X and Y coordinate planes between the touch for
- * {@link #processMotionEventActionDown(android.graphics.PointF)} and the touch for
- * {@link #processMotionEventActionUp(android.view.View, android.graphics.PointF)} is greater than
- * or equal to {@link #mPanThreshold}, it will register as a pan event and will notify
- * {@link #mOnPinchToZoomTouchListener}.
+ * Every event of a gesture is also added to {@link #mVelocityTracker}. If a pan ends while the
+ * pointer is moving faster than the minimum fling velocity, the
+ * {@link #mOnPinchToZoomTouchListener} is notified of a fling. When a new gesture starts it is
+ * notified so that any fling in progress can be stopped.
+ * <p/>
+ * If a {@link #mTouchPredictor} is set, every sample of a single pointer pan is also passed to it,
+ * and the image is moved ahead of the pointer to the predicted position. The predicted part is
+ * reported separately to {@link #mOnPredictedPanListener}, which answers with how much of it the
+ * image actually moved once kept within its bounds. That amount is kept in
+ * {@link #mAppliedPredictionX} and {@link #mAppliedPredictionY}, and is taken back when the pan
+ * ends, unless the pan continues as a fling in the same direction. A pan into an edge therefore
+ * leaves the image against the edge.
+ * <p/>
+ * If a {@link #mInputResampler} is set, moves are handed to it rather than straight to the
+ * {@link #mOnPinchToZoomTouchListener}, and it passes them on once per display frame. Every other
+ * event first flushes the resampler, so the listener sees the whole gesture in order. Predicted
+ * pans are applied straight away, since they already lead the pointer.
  * <p/>
  * Regardless of whether the motion event is a scale gesture, a pan gesture, or a simple tap,
  * {@link #mOnTouchListener} will be notified of the event if it is not null.
@@ -63,8 +80,7 @@ import android.view.View;
  * defaults to an arguably reasonable value. Additionally, {@link #setPanThreshold(int)} will throw
  * an {@link java.lang.IllegalArgumentException} if the attempted value is less than 1.
  */
-class PinchToZoomTouchHelper implements View.OnTouchListener,
-        ScaleGestureDetector.OnScaleGestureListener {
+class PinchToZoomTouchHelper implements View.OnTouchListener {
     // Distance a user's finger must travel in order for a touch to not be considered a tap
     protected static final int DEFAULT_PAN_THRESHOLD = 3;
 
@@ -80,34 +96,48 @@ class PinchToZoomTouchHelper implements View.OnTouchListener,
     // Track which touch state we are in
     protected int mTouchMode = STATE_NONE;
 
-    // Track the first and last touches in a motion event
-    protected PointF mFirstTouch;
-    protected PointF mLastTouch;
-
     // Listeners which can be set on the ImageView
     protected View.OnTouchListener mOnTouchListener;
     protected View.OnClickListener mOnClickListener;
     protected OnPinchToZoomTouchListener mOnPinchToZoomTouchListener;
 
-    // Detect a scale gesture i.e. pinch-to-zoom
-    protected ScaleGestureDetector mScaleGestureDetector;
+    // Track the focus and span of all pointers i.e. pan and pinch-to-zoom
+    protected PinchToZoomGestureTracker mGestureTracker;
+
+    // Track the velocity of the current gesture i.e. fling. Only held while a gesture is active.
+    protected VelocityTracker mVelocityTracker;
+
+    // Velocities, in pixels per second, between which a pan is turned into a fling
+    protected int mMinimumFlingVelocity;
+    protected int mMaximumFlingVelocity;
+
+    // Predict where a panning pointer is going i.e. latency hiding. Null unless enabled.
+    protected PinchToZoomTouchPredictor mTouchPredictor;
+    protected OnPinchToZoomPredictedPanListener mOnPredictedPanListener;
+
+    // Resample moves to the display frame rate. Null unless enabled.
+    protected PinchToZoomInputResampler mInputResampler;
+
+    // Predicted translation that the image has been moved by but the pointer has not yet made up
+    protected float mAppliedPredictionX;
+    protected float mAppliedPredictionY;
 
     PinchToZoomTouchHelper(Context context,
                            @NonNull OnPinchToZoomTouchListener onPinchToZoomListener) {
         this.mOnPinchToZoomTouchListener = onPinchToZoomListener;
-        mScaleGestureDetector = new ScaleGestureDetector(context, this);
+        mGestureTracker = new PinchToZoomGestureTracker();
+
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mMinimumFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaximumFlingVelocity = configuration.getScaledMaximumFlingVelocity();
     }
 
     /**
-     * An implementation of {@link android.view.View.OnTouchListener}. The event is
-     * passed to {@link #mScaleGestureDetector} which, if a scale gesture is detected, will invoke
-     * {@link #onScaleBegin(android.view.ScaleGestureDetector)}.
-     * <p/>
-     * If the {@link #mScaleGestureDetector} doesn't detect a scale event,
-     * {@link #processMotionEvent} will handle the touch.
+     * An implementation of {@link android.view.View.OnTouchListener}. The event is read by
+     * {@link #mGestureTracker} and then handled by {@link #processMotionEvent(View, int)}.
      * <p/>
      * Regardless of whether the motion event is a scale gesture, a pan gesture, or a simple tap,
-     * {@link #mOnTouchListener} will be notified of the event if it is not null.\
+     * {@link #mOnTouchListener} will be notified of the event if it is not null.
      *
      * @param v     the View that is the source of the touch event
      * @param event information regarding the motion event
@@ -115,10 +145,31 @@ class PinchToZoomTouchHelper implements View.OnTouchListener,
      */
     @Override
     public boolean onTouch(View v, MotionEvent event) {
-        // Feed the event to the scale gesture detector
-        mScaleGestureDetector.onTouchEvent(event);
+        final int action = event.getActionMasked();
+
+        // Read every pointer in the event once
+        mGestureTracker.onTouchEvent(event);
 
-        processMotionEvent(v, event);
+        if (action == MotionEvent.ACTION_DOWN) {
+            if (mVelocityTracker == null) {
+                mVelocityTracker = VelocityTracker.obtain();
+            } else {
+                mVelocityTracker.clear();
+            }
+        }
+        if (mVelocityTracker != null) {
+            mVelocityTracker.addMovement(event);
+        }
+        if (mTouchPredictor != null && action == MotionEvent.ACTION_MOVE
+                && mTouchMode == STATE_PAN && mGestureTracker.mPointerCount == 1) {
+            addPredictionSamples(event);
+        }
+
+        processMotionEvent(v, action);
+
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            recycleVelocityTracker();
+        }
 
         // If we have a user-specified on touch event, go ahead and process it
         if (mOnTouchListener != null) {
@@ -128,141 +179,242 @@ class PinchToZoomTouchHelper implements View.OnTouchListener,
     }
 
     /**
-     * A callback from {@link #mScaleGestureDetector} that will notify the
-     * {@link #mOnPinchToZoomTouchListener} that a scale event has occurred.
+     * Route a touch event captured by the {@link View.OnTouchListener} to the appropriate method
+     * based on the event's action type. {@link #mGestureTracker} must already have read the event.
      *
-     * @param detector the gesture detector that fired the event
-     * @return a boolean indicating whether or not this event was handled
+     * @param v      the View that fired the event
+     * @param action the masked action of the MotionEvent captured by the touch listener
      */
-    @Override
-    public boolean onScale(ScaleGestureDetector detector) {
-        mOnPinchToZoomTouchListener.onPinchToZoom(detector.getScaleFactor(), detector.getFocusX(),
-                detector.getFocusY());
-        return true;
+    protected void processMotionEvent(View v, int action) {
+        if (mInputResampler != null && action != MotionEvent.ACTION_MOVE) {
+            mInputResampler.flush();
+        }
+
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                processMotionEventActionDown();
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                processMotionEventPointerDown();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                processMotionEventActionMove();
+                break;
+            case MotionEvent.ACTION_UP:
+                processMotionEventActionUp(v);
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                processMotionEventPointerUp();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                retractPrediction();
+                endTouchMode(STATE_NONE);
+                break;
+        }
     }
 
     /**
-     * A callback from {@link #mScaleGestureDetector} that will block subsequent calls to
-     * {@link #processMotionEvent} by setting {@link #mTouchMode} to {@link #STATE_ZOOM}
-     *
-     * @param detector the gesture detector that fired the event
-     * @return a boolean indicating whether or not this event was handled
+     * Process {@link MotionEvent#ACTION_DOWN} events. Since the user has begun interaction with the
+     * view, notify the {@link #mOnPinchToZoomTouchListener} so that any fling in progress stops,
+     * and set {@link #mTouchMode} to {@link #STATE_PAN} in case our next received event is
+     * {@link MotionEvent#ACTION_MOVE}.
      */
-    @Override
-    public boolean onScaleBegin(ScaleGestureDetector detector) {
+    protected void processMotionEventActionDown() {
+        mOnPinchToZoomTouchListener.onGestureStart();
+        endTouchMode(STATE_PAN);
+    }
+
+    /**
+     * Process {@link MotionEvent#ACTION_POINTER_DOWN} events. A second pointer has joined the
+     * gesture, so set {@link #mTouchMode} to {@link #STATE_ZOOM} and notify the
+     * {@link #mOnPinchToZoomTouchListener} that a pinch has started. Further pointers joining the
+     * same pinch are ignored.
+     */
+    protected void processMotionEventPointerDown() {
+        retractPrediction();
+        if (mTouchMode == STATE_ZOOM) {
+            return;
+        }
         mTouchMode = STATE_ZOOM;
-        return true;
+        mOnPinchToZoomTouchListener.onPinchStart();
     }
 
     /**
-     * A callback from {@link #mScaleGestureDetector} that is currently unused
-     *
-     * @param detector the gesture detector that fired the event
+     * Process {@link MotionEvent#ACTION_MOVE} events. In {@link #STATE_PAN}, notify the
+     * {@link #mOnPinchToZoomTouchListener} that a pan event has occurred, and pass it the distance
+     * the touch has moved since the last event. If the pointer is being predicted, then notify
+     * {@link #mOnPredictedPanListener} of the difference between the predicted translation and
+     * the part of it already applied. In {@link #STATE_ZOOM}, notify the
+     * {@link #mOnPinchToZoomTouchListener} of a scale about where the focus of all pointers was
+     * before this event, together with the distance the focus has moved since.
      */
-    @Override
-    public void onScaleEnd(ScaleGestureDetector detector) {
-        // Not currently used
+    protected void processMotionEventActionMove() {
+        PinchToZoomGestureTracker tracker = mGestureTracker;
+        if (mTouchMode == STATE_PAN) {
+            float dx = tracker.mDeltaX;
+            float dy = tracker.mDeltaY;
+            if (dx != 0 || dy != 0) {
+                if (mInputResampler != null) {
+                    mInputResampler.addMove(1.0f, 0, 0, dx, dy, tracker.mEventTime);
+                } else {
+                    mOnPinchToZoomTouchListener.onPan(dx, dy);
+                }
+            }
+            if (mTouchPredictor != null) {
+                applyPrediction();
+            }
+            return;
+        }
+
+        if (tracker.mDeltaX == 0 && tracker.mDeltaY == 0 && tracker.mScaleFactor == 1.0f) {
+            return;
+        }
+        if (mTouchMode == STATE_ZOOM) {
+            final float focusX = tracker.mFocusX - tracker.mDeltaX;
+            final float focusY = tracker.mFocusY - tracker.mDeltaY;
+            if (mInputResampler != null) {
+                mInputResampler.addMove(tracker.mScaleFactor, focusX, focusY, tracker.mDeltaX,
+                        tracker.mDeltaY, tracker.mEventTime);
+            } else {
+                mOnPinchToZoomTouchListener.onPinchToZoomAndPan(tracker.mScaleFactor, focusX,
+                        focusY, tracker.mDeltaX, tracker.mDeltaY);
+            }
+        }
     }
 
     /**
-     * Process touch events captured by the {@link View.OnTouchListener}. It will
-     * then route the event to the appropriate method to handle based on the event's action type.
+     * Process {@link MotionEvent#ACTION_UP} events. Since the user has stopped interacting with the
+     * View, set {@link #mTouchMode} to {@link #STATE_NONE}. If the touch has traveled less than
+     * the current {@link #mPanThreshold} since the initial {@link #processMotionEventActionDown()},
+     * and no other pointer went down in between, alert any {@link #mOnClickListener} that a tap
+     * gesture has occurred. Otherwise, if the user was panning, check whether the pan should
+     * continue as a fling. Predicted translation is taken back unless a fling carries it on.
      *
-     * @param v     the View that fired the event
-     * @param event the MotionEvent captured by the touch listener
+     * @param v the View that generated the motion event being handled
      */
-    protected void processMotionEvent(View v, @NonNull MotionEvent event) {
-        PointF currentTouch = new PointF(event.getX(), event.getY());
+    protected void processMotionEventActionUp(View v) {
+        final int touchMode = mTouchMode;
+        endTouchMode(STATE_NONE);
 
-        switch (event.getAction()) {
-            case MotionEvent.ACTION_DOWN:
-                processMotionEventActionDown(currentTouch);
-                break;
-            case MotionEvent.ACTION_MOVE:
-                processMotionEventActionMove(currentTouch);
-                break;
-            case MotionEvent.ACTION_UP:
-                processMotionEventActionUp(v, currentTouch);
-                break;
-            case MotionEvent.ACTION_POINTER_UP:
-                processMotionEventPointerUp(currentTouch);
-                break;
+        if (mGestureTracker.isTap(mPanThreshold)) {
+            // Process this action as a tap instead of a pan
+            retractPrediction();
+            performUserTap(v);
+        } else if (touchMode != STATE_PAN || !performFlingIfFastEnough()) {
+            retractPrediction();
         }
+        clearPrediction();
     }
 
     /**
-     * Process {@link MotionEvent#ACTION_DOWN} events. Since the user has begun interaction with the
-     * view, record the coordinates of the current touch in {@link #mFirstTouch} and
-     * {@link #mLastTouch} for use in handling subsequent MotionEvents. Also, set
-     * {@link #mTouchMode} to {@link #STATE_PAN} in case our next received event is
-     * {@link MotionEvent#ACTION_MOVE}.
+     * Notify the {@link #mOnPinchToZoomTouchListener} of a fling if the pointer was moving faster
+     * than {@link #mMinimumFlingVelocity} when it was lifted.
      *
-     * @param touch the coordinates (within View bounds) where the user's finger touched the View
+     * @return a boolean indicating whether or not a fling was reported
      */
-    protected void processMotionEventActionDown(PointF touch) {
-        mFirstTouch = touch;
-        mLastTouch = touch;
-        mTouchMode = STATE_PAN;
+    protected boolean performFlingIfFastEnough() {
+        if (mVelocityTracker == null) {
+            return false;
+        }
+
+        mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
+        float velocityX = mVelocityTracker.getXVelocity();
+        float velocityY = mVelocityTracker.getYVelocity();
+        if (Math.abs(velocityX) >= mMinimumFlingVelocity
+                || Math.abs(velocityY) >= mMinimumFlingVelocity) {
+            mOnPinchToZoomTouchListener.onFling(velocityX, velocityY);
+            return true;
+        }
+        return false;
     }
 
     /**
-     * Process {@link MotionEvent#ACTION_MOVE} events. If invoked following
-     * {@link #processMotionEventActionDown(android.graphics.PointF)} or
-     * another call to this method, determine how far the touch coordinates have moved from the last
-     * detected coordinates ({@link #mLastTouch}). Notify the {@link #mOnPinchToZoomTouchListener}
-     * that a pan event has occurred, and pass it the calculated distance from {@link #mLastTouch}.
-     * Record the current touch as the last detected coordinates.
+     * Pass every sample of a move event, including the samples batched into its history, to
+     * {@link #mTouchPredictor}.
      *
-     * @param touch the coordinates (within View bounds) where the user's finger touched the View
+     * @param event a move event with a single pointer
      */
-    protected void processMotionEventActionMove(PointF touch) {
-        // We don't process events for move if we aren't panning
-        if (mTouchMode != STATE_PAN) {
-            return;
+    protected void addPredictionSamples(MotionEvent event) {
+        final int historySize = event.getHistorySize();
+        for (int i = 0; i < historySize; i++) {
+            mTouchPredictor.addSample(event.getHistoricalX(0, i), event.getHistoricalY(0, i),
+                    event.getHistoricalEventTime(i));
         }
+        mTouchPredictor.addSample(event.getX(0), event.getY(0), event.getEventTime());
+    }
 
-        float dx = touch.x - mLastTouch.x;
-        float dy = touch.y - mLastTouch.y;
-
-        mLastTouch = touch;
+    /**
+     * Move the image towards the position predicted by {@link #mTouchPredictor}, and record how
+     * far it actually moved. A prediction that was cut short at an edge is requested again on the
+     * next move, so the image follows the prediction once the pointer turns back.
+     */
+    protected void applyPrediction() {
+        float dx = mTouchPredictor.mOffsetX - mAppliedPredictionX;
+        float dy = mTouchPredictor.mOffsetY - mAppliedPredictionY;
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        PointF applied = mOnPredictedPanListener.onPredictedPan(dx, dy);
+        mAppliedPredictionX += applied.x;
+        mAppliedPredictionY += applied.y;
+    }
 
-        mOnPinchToZoomTouchListener.onPan(dx, dy);
+    /**
+     * Notify the {@link #mOnPinchToZoomTouchListener} of a pan that takes back the predicted
+     * translation the image was moved by, so the image ends up where the pointer actually is, and
+     * forget the samples collected so far.
+     */
+    protected void retractPrediction() {
+        if (mAppliedPredictionX != 0 || mAppliedPredictionY != 0) {
+            mOnPinchToZoomTouchListener.onPan(-mAppliedPredictionX, -mAppliedPredictionY);
+        }
+        clearPrediction();
     }
 
     /**
-     * Process {@link MotionEvent#ACTION_UP} events. Since the user has stopped interacting with the
-     * View, set {@link #mTouchMode} to {@link #STATE_NONE}. Calculate the total distance the user's
-     * finger has traveled since the initial
-     * {@link #processMotionEventActionDown(android.graphics.PointF)}. If that distance is smaller
-     * than the current {@link #mPanThreshold}, alert any {@link #mOnClickListener} that a tap
-     * gesture has occurred.
-     *
-     * @param v     the View that generated the motion event being handled
-     * @param touch the coordinates (within View bounds) where the user's finger touched the View
+     * Forget any predicted translation and the samples collected so far, without moving the image.
      */
-    protected void processMotionEventActionUp(View v, PointF touch) {
-        mTouchMode = STATE_NONE;
+    protected void clearPrediction() {
+        mAppliedPredictionX = 0;
+        mAppliedPredictionY = 0;
+        if (mTouchPredictor != null) {
+            mTouchPredictor.reset();
+        }
+    }
 
-        // Calculate total x and y distance the user dragged
-        float dx = Math.abs(touch.x - mFirstTouch.x);
-        float dy = Math.abs(touch.y - mFirstTouch.y);
+    /**
+     * Return {@link #mVelocityTracker} to the pool once a gesture has ended.
+     */
+    protected void recycleVelocityTracker() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
 
-        // If the user didn't travel more than the pan threshold
-        if (dx < mPanThreshold && dy < mPanThreshold) {
-            // Process this action as a tap instead of a pan
-            performUserTap(v);
+    /**
+     * Process {@link MotionEvent#ACTION_POINTER_UP} events. Once only one pointer remains, the user
+     * has stopped zooming, so return {@link #mTouchMode} to {@link #STATE_PAN} and let the
+     * remaining pointer carry on panning from where it is.
+     */
+    protected void processMotionEventPointerUp() {
+        if (mGestureTracker.mPointerCount < 2) {
+            endTouchMode(STATE_PAN);
         }
     }
 
     /**
-     * Process {@link MotionEvent#ACTION_POINTER_UP} events. Reset the {@link #mTouchMode} to
-     * {@link #STATE_NONE} since the user has stopped zooming.
+     * Leave the current touch mode, notifying the {@link #mOnPinchToZoomTouchListener} that the
+     * pinch has ended if it was {@link #STATE_ZOOM}.
      *
-     * @param touch the coordinates (within View bounds) where the user's finger touched the View
+     * @param touchMode the touch mode to enter
      */
-    protected void processMotionEventPointerUp(PointF touch) {
-        // Reset the touch state. Nothing else to do
-        mTouchMode = STATE_NONE;
+    protected void endTouchMode(int touchMode) {
+        final boolean pinchEnded = mTouchMode == STATE_ZOOM;
+        mTouchMode = touchMode;
+        if (pinchEnded) {
+            mOnPinchToZoomTouchListener.onPinchEnd();
+        }
     }
 
     /**
@@ -283,8 +435,12 @@ class PinchToZoomTouchHelper implements View.OnTouchListener,
      * {@link com.jameskelso.android.widget.PinchToZoomImageView} has been changed.
      */
     void reset() {
-        mFirstTouch = null;
-        mLastTouch = null;
+        mGestureTracker.reset();
+        recycleVelocityTracker();
+        clearPrediction();
+        if (mInputResampler != null) {
+            mInputResampler.cancel();
+        }
         mTouchMode = STATE_NONE;
     }
 
@@ -310,8 +466,8 @@ class PinchToZoomTouchHelper implements View.OnTouchListener,
 
     /**
      * Set the total distance a user's finger must travel from the initial
-     * {@link #processMotionEventActionDown(android.graphics.PointF)} to the final
-     * {@link #processMotionEventActionUp(android.view.View, android.graphics.PointF)} for a gesture
+     * {@link #processMotionEventActionDown()} to the final
+     * {@link #processMotionEventActionUp(android.view.View)} for a gesture
      * to be considered a tap rather than a pan. This value must be at least 1.
      *
      * @param panThreshold the new threshold for touch events
@@ -324,33 +480,33 @@ class PinchToZoomTouchHelper implements View.OnTouchListener,
     }
 
     /**
-     * Update the {@link PinchToZoomSavedState} object so that it can later be used to create a new
-     * instance with the same state. This state should only contains information that is not
-     * persistent or can not be reconstructed later.
+     * Set the predictor used to move the image ahead of the pointer, replacing any predicted
+     * translation already applied.
      *
-     * @param state A {@link PinchToZoomSavedState} object that represents the internal state of the
-     *              {@link PinchToZoomImageView} and all of its associated helpers.
+     * @param predictor the predictor, or null to report pans where the pointer is
+     * @param listener  notified of predicted pans; required if predictor is not null
      */
-    void onSaveInstanceState(PinchToZoomSavedState state) {
-        state.panThreshold = mPanThreshold;
-        state.touchMode = mTouchMode;
-        state.firstTouch = mFirstTouch;
-        state.lastTouch = mLastTouch;
+    void setTouchPredictor(@Nullable PinchToZoomTouchPredictor predictor,
+                           @Nullable OnPinchToZoomPredictedPanListener listener) {
+        if (mInputResampler != null) {
+            mInputResampler.flush();
+        }
+        retractPrediction();
+        mTouchPredictor = predictor;
+        mOnPredictedPanListener = listener;
     }
 
     /**
-     * Re-apply a representation of internal state that had previously been generated by
-     * {@link #onSaveInstanceState(PinchToZoomSavedState)}. This function will never be called with
-     * a null state.
+     * Set the resampler used to pass moves on once per display frame. Any moves the current
+     * resampler has not yet passed on are passed on first.
      *
-     * @param state The frozen state that had previously been returned by
-     *              {@link #onSaveInstanceState(PinchToZoomSavedState)}.
+     * @param resampler the resampler, or null to pass moves on as they arrive
      */
-    void onRestoreInstanceState(@NonNull PinchToZoomSavedState state) {
-        mPanThreshold = state.panThreshold;
-        mTouchMode = state.touchMode;
-        mFirstTouch = state.firstTouch;
-        mLastTouch = state.lastTouch;
+    void setInputResampler(@Nullable PinchToZoomInputResampler resampler) {
+        if (mInputResampler != null) {
+            mInputResampler.flush();
+        }
+        mInputResampler = resampler;
     }
 
     /**
@@ -361,5 +517,25 @@ class PinchToZoomTouchHelper implements View.OnTouchListener,
         void onPinchToZoom(float desiredScaleFactor, float focusX, float focusY);
 
         void onPan(float dx, float dy);
+
+        void onPinchToZoomAndPan(float desiredScaleFactor, float focusX, float focusY, float dx,
+                                 float dy);
+
+        void onGestureStart();
+
+        void onPinchStart();
+
+        void onPinchEnd();
+
+        void onFling(float velocityX, float velocityY);
+    }
+
+    /**
+     * An interface which allows an interested class to move the image by a predicted translation,
+     * and report how much of it was applied once the image was kept within its bounds. The
+     * returned point may be reused by the implementation, so it is only read straight away.
+     */
+    interface OnPinchToZoomPredictedPanListener {
+        PointF onPredictedPan(float dx, float dy);
     }
 }
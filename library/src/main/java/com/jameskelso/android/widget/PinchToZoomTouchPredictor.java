@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Predicts where a panning pointer will be a short time from now, so that
+ * {@link PinchToZoomTouchHelper} can draw the image where the finger will be when the frame
+ * reaches the display rather than where it was when the touch was sampled.
+ * <p/>
+ * Each sample passed to {@link #addSample(float, float, long)} is kept in a small ring buffer. A
+ * straight line is fitted by least squares through the samples from the last
+ * {@link #MAX_SAMPLE_AGE} milliseconds, and its velocity is extrapolated {@link #mPredictionTime}
+ * milliseconds past the latest sample. The result is held in {@link #mOffsetX} and
+ * {@link #mOffsetY} as an offset from the latest sample.
+ * <p/>
+ * The offset is capped at {@link #mMaxDistance} pixels. It is also scaled down by how much of the
+ * fitted velocity the latest pair of samples still carries, so when the pointer stops suddenly
+ * the prediction fades out instead of overshooting.
+ * <p/>
+ * Once a later sample shows where the pointer actually was at the predicted time, the distance
+ * between the two and the latency the prediction hid are reported to {@link #mListener}, if one is
+ * set. All state is held in primitive fields, so no objects are allocated while a gesture is
+ * tracked.
+ */
+class PinchToZoomTouchPredictor {
+    // Furthest the prediction may move from the latest sample, in density-independent pixels
+    static final int DEFAULT_MAX_DISTANCE_DP = 24;
+
+    // Number of recent samples kept
+    protected static final int SAMPLE_COUNT = 8;
+
+    // Samples older than this many milliseconds before the latest sample are not used
+    protected static final long MAX_SAMPLE_AGE = 60;
+
+    // Ring buffer of recent samples
+    protected final float[] mSampleX = new float[SAMPLE_COUNT];
+    protected final float[] mSampleY = new float[SAMPLE_COUNT];
+    protected final long[] mSampleTime = new long[SAMPLE_COUNT];
+    protected int mSampleIndex = -1;
+    protected int mSampleSize;
+
+    // How far ahead to predict, in milliseconds, and the furthest to predict, in pixels
+    protected final int mPredictionTime;
+    protected final float mMaxDistance;
+
+    // Predicted offset from the latest sample
+    protected float mOffsetX;
+    protected float mOffsetY;
+
+    // Latency, in milliseconds, hidden by the current offset
+    protected float mLatencySaved;
+
+    // Absolute position, time and latency saved of the prediction being tracked, for measuring
+    // its error
+    protected boolean mPredictionPending;
+    protected float mPredictedX;
+    protected float mPredictedY;
+    protected long mPredictedTime;
+    protected float mPredictedLatencySaved;
+
+    protected PinchToZoomImageView.OnTouchPredictionListener mListener;
+
+    /**
+     * @param predictionTime how far ahead of the latest sample to predict, in milliseconds
+     * @param maxDistance    the furthest, in pixels, the prediction may be from the latest sample
+     */
+    PinchToZoomTouchPredictor(int predictionTime, float maxDistance) {
+        if (predictionTime < 1) {
+            throw new IllegalArgumentException("Prediction time must be greater than 0.");
+        }
+        mPredictionTime = predictionTime;
+        mMaxDistance = maxDistance;
+    }
+
+    /**
+     * Set a listener to be notified of the error of each prediction.
+     *
+     * @param listener the listener, or null to stop reporting
+     */
+    void setListener(@Nullable PinchToZoomImageView.OnTouchPredictionListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Record where the pointer was at a point in time and update the predicted offset. Samples
+     * must be added in time order.
+     *
+     * @param x      position of the pointer on the X coordinate plane
+     * @param y      position of the pointer on the Y coordinate plane
+     * @param timeMs time of the sample, in milliseconds
+     */
+    void addSample(float x, float y, long timeMs) {
+        if (mSampleSize > 0) {
+            measurePrediction(x, y, timeMs);
+        }
+
+        mSampleIndex = (mSampleIndex + 1) % SAMPLE_COUNT;
+        mSampleX[mSampleIndex] = x;
+        mSampleY[mSampleIndex] = y;
+        mSampleTime[mSampleIndex] = timeMs;
+        if (mSampleSize < SAMPLE_COUNT) {
+            mSampleSize++;
+        }
+
+        predict(x, y, timeMs);
+    }
+
+    /**
+     * If the pending prediction was for a time between the previous sample and this one,
+     * interpolate where the pointer actually was at that time and report how far off the
+     * prediction was.
+     */
+    protected void measurePrediction(float x, float y, long timeMs) {
+        if (!mPredictionPending || timeMs < mPredictedTime) {
+            return;
+        }
+        mPredictionPending = false;
+
+        final long previousTime = mSampleTime[mSampleIndex];
+        final float fraction = timeMs > previousTime
+                ? (float) (mPredictedTime - previousTime) / (timeMs - previousTime) : 1f;
+        final float actualX = mSampleX[mSampleIndex] + (x - mSampleX[mSampleIndex]) * fraction;
+        final float actualY = mSampleY[mSampleIndex] + (y - mSampleY[mSampleIndex]) * fraction;
+
+        if (mListener != null) {
+            final float errorX = mPredictedX - actualX;
+            final float errorY = mPredictedY - actualY;
+            mListener.onTouchPrediction((float) Math.sqrt(errorX * errorX + errorY * errorY),
+                    mPredictedLatencySaved);
+        }
+    }
+
+    /**
+     * Fit a velocity to the recent samples and extrapolate from the latest one.
+     */
+    protected void predict(float x, float y, long timeMs) {
+        mOffsetX = 0;
+        mOffsetY = 0;
+        mLatencySaved = 0;
+
+        // Least squares fit of position against time, relative to the latest sample
+        int count = 0;
+        float sumT = 0;
+        float sumX = 0;
+        float sumY = 0;
+        float sumTT = 0;
+        float sumTX = 0;
+        float sumTY = 0;
+        for (int i = 0; i < mSampleSize; i++) {
+            final int index = (mSampleIndex - i + SAMPLE_COUNT) % SAMPLE_COUNT;
+            final float t = mSampleTime[index] - timeMs;
+            if (-t > MAX_SAMPLE_AGE) {
+                break;
+            }
+            final float dx = mSampleX[index] - x;
+            final float dy = mSampleY[index] - y;
+            sumT += t;
+            sumX += dx;
+            sumY += dy;
+            sumTT += t * t;
+            sumTX += t * dx;
+            sumTY += t * dy;
+            count++;
+        }
+
+        final float varianceT = count * sumTT - sumT * sumT;
+        if (count < 3 || varianceT <= 0) {
+            return;
+        }
+        final float velocityX = (count * sumTX - sumT * sumX) / varianceT;
+        final float velocityY = (count * sumTY - sumT * sumY) / varianceT;
+        final float speedSquared = velocityX * velocityX + velocityY * velocityY;
+        if (speedSquared == 0) {
+            return;
+        }
+
+        // Fade the prediction out as the latest movement falls behind the fitted velocity
+        final int previous = (mSampleIndex - 1 + SAMPLE_COUNT) % SAMPLE_COUNT;
+        final long lastInterval = timeMs - mSampleTime[previous];
+        float blend = 0;
+        if (lastInterval > 0) {
+            final float lastVelocityX = (x - mSampleX[previous]) / lastInterval;
+            final float lastVelocityY = (y - mSampleY[previous]) / lastInterval;
+            blend = (lastVelocityX * velocityX + lastVelocityY * velocityY) / speedSquared;
+            blend = Math.max(0f, Math.min(1f, blend));
+        }
+        if (blend == 0) {
+            return;
+        }
+
+        float time = mPredictionTime * blend;
+        final float speed = (float) Math.sqrt(speedSquared);
+        if (speed * time > mMaxDistance) {
+            time = mMaxDistance / speed;
+        }
+
+        mOffsetX = velocityX * time;
+        mOffsetY = velocityY * time;
+        mLatencySaved = time;
+
+        // Only one prediction is tracked at a time, so predictions are measured once per
+        // prediction time however often the pointer is sampled
+        if (mPredictionPending) {
+            return;
+        }
+        mPredictionPending = true;
+        mPredictedX = x + mOffsetX;
+        mPredictedY = y + mOffsetY;
+        mPredictedTime = timeMs + mPredictionTime;
+        mPredictedLatencySaved = time;
+    }
+
+    /**
+     * Forget every sample and the current prediction.
+     */
+    void reset() {
+        mSampleIndex = -1;
+        mSampleSize = 0;
+        mOffsetX = 0;
+        mOffsetY = 0;
+        mLatencySaved = 0;
+        mPredictionPending = false;
+    }
+}
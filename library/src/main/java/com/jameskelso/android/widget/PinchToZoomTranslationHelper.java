@@ -21,6 +21,7 @@
 package com.jameskelso.android.widget;
 
 import android.graphics.PointF;
+import android.graphics.RectF;
 
 /**
  * Encapsulates translation logic for {@link PinchToZoomImageView}.
@@ -44,6 +45,7 @@ import android.graphics.PointF;
 class PinchToZoomTranslationHelper {
     // Recycled variables to avoid new instance creation
     protected final PointF mNeededCorrection = new PointF();
+    protected final PointF mAppliedTranslation = new PointF();
 
     protected OnPinchToZoomTranslationChangeListener mTranslationChangeListener;
 
@@ -63,14 +65,18 @@ class PinchToZoomTranslationHelper {
      * @param dy    desired translation on the Y coordinate plane
      * @param state an object encapsulating information about the current state of the image matrix
      *              and the view that it supports
+     * @return the translation that was applied, including corrections. The same instance is
+     * reused by every call.
      */
-    void translate(float dx, float dy, PinchToZoomMatrixState state) {
+    PointF translate(float dx, float dy, PinchToZoomMatrixState state) {
         updateTranslationStateForTranslation(dx, dy, state);
 
         PointF neededCorrection = getCorrectionsForTranslation(state);
+        mAppliedTranslation.set(dx + neededCorrection.x, dy + neededCorrection.y);
 
-        mTranslationChangeListener.onTranslationChanged(dx + neededCorrection.x, dy
-                + neededCorrection.y);
+        mTranslationChangeListener.onTranslationChanged(mAppliedTranslation.x,
+                mAppliedTranslation.y);
+        return mAppliedTranslation;
     }
 
     /**
@@ -113,6 +119,59 @@ class PinchToZoomTranslationHelper {
                 neededCorrection.y);
     }
 
+    /**
+     * Calculate how far the source bitmap may be translated from its current position before it
+     * would need a correction to bring it back within the bounds of the view (adjusted for padding
+     * and translation extra). An axis that is pinned to the center of the view has no available
+     * translation.
+     *
+     * @param state     an object encapsulating information about the current state of the image
+     *                  matrix and the view that it supports
+     * @param outBounds receives the smallest (left) and largest (right) translation available on
+     *                  the X coordinate plane, and the smallest (top) and largest (bottom)
+     *                  translation available on the Y coordinate plane, relative to the current
+     *                  translation
+     */
+    void getAvailableTranslation(PinchToZoomMatrixState state, RectF outBounds) {
+        // Both axes share one AxisState instance, so finish with X before asking for Y
+        PinchToZoomMatrixState.AxisState axisState = state.getXAxisState();
+        outBounds.left = Math.min(findMinimumTranslation(axisState) - axisState.translation, 0);
+        outBounds.right = Math.max(findMaximumTranslation(axisState) - axisState.translation, 0);
+
+        axisState = state.getYAxisState();
+        outBounds.top = Math.min(findMinimumTranslation(axisState) - axisState.translation, 0);
+        outBounds.bottom = Math.max(findMaximumTranslation(axisState) - axisState.translation, 0);
+    }
+
+    /**
+     * Determine the smallest translation on an axis that does not need a correction.
+     *
+     * @param state an object encapsulating information about the current state of an axis of the
+     *              image matrix and the view that it supports
+     * @return the smallest allowed translation on the specified axis
+     */
+    protected float findMinimumTranslation(PinchToZoomMatrixState.AxisState state) {
+        if (isPinnedAxis(state)) {
+            return state.translation + calculateTranslationForPinnedAxis(state);
+        }
+        return findFirstEdgeForTranslationCorrection(state);
+    }
+
+    /**
+     * Determine the largest translation on an axis that does not need a correction.
+     *
+     * @param state an object encapsulating information about the current state of an axis of the
+     *              image matrix and the view that it supports
+     * @return the largest allowed translation on the specified axis
+     */
+    protected float findMaximumTranslation(PinchToZoomMatrixState.AxisState state) {
+        if (isPinnedAxis(state)) {
+            return state.translation + calculateTranslationForPinnedAxis(state);
+        }
+        return Math.max(findFirstEdgeForTranslationCorrection(state),
+                findSecondEdgeForTranslationCorrection(state));
+    }
+
     /**
      * Update the {@link PinchToZoomMatrixState} object to include additional translation.
      *
@@ -249,8 +308,7 @@ class PinchToZoomTranslationHelper {
     protected float calculateTranslationForPinnedAxis(PinchToZoomMatrixState.AxisState state) {
         // No correction if we aren't pinning the axis or if the scaled bitmap is bigger than the
         // bounds of the view.
-        if (!state.pinAxesSmallerThanViewBounds
-                || state.scaledBitmapDimensionSize > state.getAdjustedViewSize()) {
+        if (!isPinnedAxis(state)) {
             return 0;
         }
 
@@ -262,6 +320,20 @@ class PinchToZoomTranslationHelper {
         return allowedTranslation - state.translation;
     }
 
+    /**
+     * Determine whether an axis should be centered within the containing view. This is the case
+     * when {@link PinchToZoomMatrixHelper#setPinAxesSmallerThanViewBounds(boolean)} is enabled and
+     * the scaled image is no larger than the view on this axis.
+     *
+     * @param state an object encapsulating information about the current state of an axis of the
+     *              image matrix and the view that it supports
+     * @return a boolean indicating whether or not the axis is pinned to the center of the view
+     */
+    protected boolean isPinnedAxis(PinchToZoomMatrixState.AxisState state) {
+        return state.pinAxesSmallerThanViewBounds
+                && state.scaledBitmapDimensionSize <= state.getAdjustedViewSize();
+    }
+
     /**
      * Determine the X or Y coordinate of the first edge of the translation bound (depending on the
      * desired axis). Typically this value is 0, but must be adjusted if the image is scaled larger
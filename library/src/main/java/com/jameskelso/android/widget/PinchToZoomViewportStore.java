@@ -0,0 +1,520 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2015 James W Kelso
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.jameskelso.android.widget;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A small persistent map from an image key to the last viewport (zoom level and position) that
+ * was shown for that image in a {@link PinchToZoomImageView}. Set one on a view using
+ * {@link PinchToZoomImageView#setViewportStore(PinchToZoomViewportStore)} and identify the current
+ * image with {@link PinchToZoomImageView#setViewportKey(String)}. The same store may be shared by
+ * any number of views.
+ * <p/>
+ * Viewports are written to an append-only log file. Each call to
+ * {@link #put(String, Viewport)} appends a single record on a background thread. When the log
+ * holds enough records that have been superseded, it is compacted by rewriting only the live
+ * entries to a new file, which then replaces the log. The log is read on the same background
+ * thread as soon as the store is created. Views check {@link #isLoaded()} and wait to be called
+ * back rather than reading the log on the main thread. Viewports put or removed before then are
+ * applied on the background thread once the log has been read, and later writes queue behind them
+ * until they have all been applied, so writes always take effect in the order they were made.
+ * <p/>
+ * The store keeps at most {@link #DEFAULT_MAX_ENTRIES} viewports unless a different limit is
+ * provided. When the limit is reached, the least recently used viewport is forgotten.
+ */
+public class PinchToZoomViewportStore {
+    private static final String TAG = "PinchToZoomViewport";
+
+    // Default number of viewports to remember
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    // Number of superseded records tolerated in the log before it is compacted
+    protected static final int COMPACTION_THRESHOLD = 64;
+
+    // Log record types
+    protected static final byte RECORD_PUT = 1;
+    protected static final byte RECORD_REMOVE = 2;
+
+    protected final File mFile;
+    protected final int mMaxEntries;
+    protected final ExecutorService mWriteExecutor;
+
+    // In-memory view of the log, in least to most recently used order. Guarded by this.
+    protected Map<String, Viewport> mViewports;
+
+    // Number of records currently in the log file. Guarded by this.
+    protected int mRecordCount;
+
+    // Whether the log has been read into mViewports
+    protected volatile boolean mLoaded;
+
+    // Writes queued on the background thread that have not yet been applied. Guarded by this.
+    protected int mQueuedWrites;
+
+    // Callbacks to run on the main thread once the log has been read. Guarded by this.
+    protected final ArrayList<Runnable> mLoadedCallbacks = new ArrayList<Runnable>();
+
+    public PinchToZoomViewportStore(@NonNull File file) {
+        this(file, DEFAULT_MAX_ENTRIES);
+    }
+
+    public PinchToZoomViewportStore(@NonNull File file, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum viewport entries must be greater than 0.");
+        }
+        mFile = file;
+        mMaxEntries = maxEntries;
+        mWriteExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        preload();
+    }
+
+    /**
+     * Read the log on a background thread so the first call to {@link #get(String)} does not
+     * need to touch the disk. This is done when the store is created.
+     */
+    public void preload() {
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+            }
+        });
+    }
+
+    /**
+     * Determine whether the log has been read, so that {@link #get(String)} will not block.
+     *
+     * @return a boolean indicating whether or not the log has been read
+     */
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Run a callback on the main thread once the log has been read. A callback that is already
+     * waiting is not added again.
+     *
+     * @param callback the callback to run
+     */
+    void runWhenLoaded(@NonNull Runnable callback) {
+        synchronized (this) {
+            if (!mLoaded) {
+                if (!mLoadedCallbacks.contains(callback)) {
+                    mLoadedCallbacks.add(callback);
+                }
+                return;
+            }
+        }
+        new Handler(Looper.getMainLooper()).post(callback);
+    }
+
+    /**
+     * Retrieve the viewport last saved for an image. Blocks until the log has been read, so call
+     * this from a background thread, or once {@link #isLoaded()} returns true.
+     *
+     * @param key key identifying the image
+     * @return the saved viewport, or null if none has been saved
+     */
+    @Nullable
+    public Viewport get(@NonNull String key) {
+        final boolean pending;
+        synchronized (this) {
+            pending = !mLoaded || mQueuedWrites > 0;
+        }
+        if (pending) {
+            // Wait for the log, and for anything put or removed while it was being read
+            flush();
+        }
+        synchronized (this) {
+            ensureLoaded();
+            return mViewports.get(key);
+        }
+    }
+
+    /**
+     * Save the viewport for an image, replacing any viewport previously saved for it. The record
+     * is appended to the log on a background thread.
+     *
+     * @param key      key identifying the image
+     * @param viewport the viewport to save
+     */
+    public void put(@NonNull final String key, @NonNull final Viewport viewport) {
+        applyWrite(new Runnable() {
+            @Override
+            public void run() {
+                putLoaded(key, viewport);
+            }
+        });
+    }
+
+    protected synchronized void putLoaded(String key, Viewport viewport) {
+        ensureLoaded();
+        mViewports.put(key, viewport);
+        appendRecord(RECORD_PUT, key, viewport);
+    }
+
+    /**
+     * Forget the viewport saved for an image.
+     *
+     * @param key key identifying the image
+     */
+    public void remove(@NonNull final String key) {
+        applyWrite(new Runnable() {
+            @Override
+            public void run() {
+                removeLoaded(key);
+            }
+        });
+    }
+
+    protected synchronized void removeLoaded(String key) {
+        ensureLoaded();
+        if (mViewports.remove(key) != null) {
+            appendRecord(RECORD_REMOVE, key, null);
+        }
+    }
+
+    /**
+     * Apply a write straight away if the log has been read and no earlier write is still queued.
+     * Otherwise queue it on the background thread behind the earlier writes, so that a write made
+     * before the log was read never lands after one made since.
+     *
+     * @param write the write to apply
+     */
+    protected synchronized void applyWrite(final Runnable write) {
+        if (mLoaded && mQueuedWrites == 0) {
+            write.run();
+            return;
+        }
+        mQueuedWrites++;
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write.run();
+                } finally {
+                    synchronized (PinchToZoomViewportStore.this) {
+                        mQueuedWrites--;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Block until all pending writes to the log have completed.
+     */
+    void flush() {
+        try {
+            mWriteExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // Nothing to do. Completes once every earlier write has completed.
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Unable to flush viewport log", e);
+        }
+    }
+
+    /**
+     * Read the log into memory if that has not already happened. Records are replayed in order. A
+     * truncated record at the end of the log (for example, if the process died part way through a
+     * write) is ignored. Once read, any callbacks waiting for the log are posted to the main
+     * thread.
+     */
+    protected synchronized void ensureLoaded() {
+        if (mViewports != null) {
+            return;
+        }
+        try {
+            readLog();
+        } finally {
+            mLoaded = true;
+            if (!mLoadedCallbacks.isEmpty()) {
+                final Handler handler = new Handler(Looper.getMainLooper());
+                for (int i = 0, count = mLoadedCallbacks.size(); i < count; i++) {
+                    handler.post(mLoadedCallbacks.get(i));
+                }
+                mLoadedCallbacks.clear();
+            }
+        }
+    }
+
+    /**
+     * Replay the log into a new {@link #mViewports}. Must be called while holding the lock on
+     * this.
+     */
+    protected void readLog() {
+        mViewports = new LinkedHashMap<String, Viewport>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Viewport> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+        mRecordCount = 0;
+
+        if (!mFile.exists()) {
+            return;
+        }
+
+        boolean truncated = false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            int type;
+            while ((type = in.read()) != -1) {
+                String key = in.readUTF();
+                if (type == RECORD_PUT) {
+                    mViewports.put(key, readViewport(in));
+                } else if (type == RECORD_REMOVE) {
+                    mViewports.remove(key);
+                } else {
+                    truncated = true;
+                    break;
+                }
+                mRecordCount++;
+            }
+        } catch (EOFException e) {
+            // The log ends part way through a record
+            truncated = true;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read viewport log", e);
+        } finally {
+            closeQuietly(in);
+        }
+
+        // Rewrite the log before anything else is appended to it, otherwise new records would be
+        // read back as part of the damaged one. The log is read on the background thread, ahead
+        // of any record waiting to be appended, so it is rewritten straight away.
+        if (truncated) {
+            Log.w(TAG, "Viewport log is damaged, discarding the remainder");
+            mRecordCount = mViewports.size();
+            writeCompactedLog(mViewports);
+        }
+    }
+
+    /**
+     * Append a record to the log on the background thread, and compact the log if too many of its
+     * records have been superseded. Must be called while holding the lock on this.
+     *
+     * @param type     {@link #RECORD_PUT} or {@link #RECORD_REMOVE}
+     * @param key      key identifying the image
+     * @param viewport the viewport to write, or null for {@link #RECORD_REMOVE}
+     */
+    protected void appendRecord(final byte type, final String key,
+                                @Nullable final Viewport viewport) {
+        mRecordCount++;
+        final boolean compact = mRecordCount - mViewports.size() > COMPACTION_THRESHOLD;
+        final Map<String, Viewport> snapshot = compact
+                ? new LinkedHashMap<String, Viewport>(mViewports) : null;
+        if (compact) {
+            mRecordCount = mViewports.size();
+        }
+
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (snapshot != null) {
+                    writeCompactedLog(snapshot);
+                } else {
+                    writeRecord(type, key, viewport);
+                }
+            }
+        });
+    }
+
+    /**
+     * Append a single record to the end of the log file.
+     */
+    protected void writeRecord(byte type, String key, @Nullable Viewport viewport) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(mFile, true)));
+            out.writeByte(type);
+            out.writeUTF(key);
+            if (viewport != null) {
+                writeViewport(out, viewport);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to append to viewport log", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Replace the log with one that holds a single record for each live entry. The new log is
+     * written to a temporary file first so a failure part way through leaves the old log intact.
+     */
+    protected void writeCompactedLog(Map<String, Viewport> entries) {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            for (Map.Entry<String, Viewport> entry : entries.entrySet()) {
+                out.writeByte(RECORD_PUT);
+                out.writeUTF(entry.getKey());
+                writeViewport(out, entry.getValue());
+            }
+            written = true;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to compact viewport log", e);
+        } finally {
+            closeQuietly(out);
+        }
+
+        if (!written || !tmp.renameTo(mFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+    }
+
+    protected static void writeViewport(DataOutputStream out, Viewport viewport)
+            throws IOException {
+        out.writeInt(viewport.srcBitmapWidth);
+        out.writeInt(viewport.srcBitmapHeight);
+        out.writeFloat(viewport.scaleFactor);
+        out.writeFloat(viewport.focusX);
+        out.writeFloat(viewport.focusY);
+    }
+
+    protected static Viewport readViewport(DataInputStream in) throws IOException {
+        Viewport viewport = new Viewport();
+        viewport.srcBitmapWidth = in.readInt();
+        viewport.srcBitmapHeight = in.readInt();
+        viewport.scaleFactor = in.readFloat();
+        viewport.focusX = in.readFloat();
+        viewport.focusY = in.readFloat();
+        return viewport;
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing useful to do here
+        }
+    }
+
+    /**
+     * A saved viewport. The position is stored as the point of the source image shown at the
+     * center of the view, so that it can be restored into a view of a different size.
+     */
+    public static class Viewport {
+        Viewport() {
+        }
+
+        /**
+         * @param srcBitmapWidth  width of the source image the viewport applies to
+         * @param srcBitmapHeight height of the source image the viewport applies to
+         * @param scaleFactor     zoom level, where 1.0 shows the image at its intrinsic size
+         * @param focusX          X coordinate, in source image pixels, shown at the center of the
+         *                        view
+         * @param focusY          Y coordinate, in source image pixels, shown at the center of the
+         *                        view
+         */
+        public Viewport(int srcBitmapWidth, int srcBitmapHeight, float scaleFactor, float focusX,
+                        float focusY) {
+            this.srcBitmapWidth = srcBitmapWidth;
+            this.srcBitmapHeight = srcBitmapHeight;
+            this.scaleFactor = scaleFactor;
+            this.focusX = focusX;
+            this.focusY = focusY;
+        }
+
+        public int getSrcBitmapWidth() {
+            return srcBitmapWidth;
+        }
+
+        public int getSrcBitmapHeight() {
+            return srcBitmapHeight;
+        }
+
+        public float getScaleFactor() {
+            return scaleFactor;
+        }
+
+        public float getFocusX() {
+            return focusX;
+        }
+
+        public float getFocusY() {
+            return focusY;
+        }
+
+        /**
+         * Size of the source image the viewport was saved against. A viewport is only restored
+         * if the current image has the same size.
+         */
+        int srcBitmapWidth;
+        int srcBitmapHeight;
+
+        /**
+         * {@link PinchToZoomScaleHelper}.mCurrentScaleFactor
+         */
+        float scaleFactor;
+
+        /**
+         * Coordinates of the source image, in source image pixels, shown at the center of the
+         * view
+         */
+        float focusX;
+        float focusY;
+    }
+}
@@ -0,0 +1,143 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Matrix;
+import android.test.AndroidTestCase;
+
+public class PinchToZoomAnimationHelperTest extends AndroidTestCase {
+    private PinchToZoomAnimationHelper mHelper;
+    private final float[] mStep = new float[3];
+    private final int[] mCallbacks = new int[3];
+    private Matrix mFrom;
+    private Matrix mTo;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mCallbacks[0] = 0;
+        mCallbacks[1] = 0;
+        mCallbacks[2] = 0;
+        mHelper = new PinchToZoomAnimationHelper(
+                new PinchToZoomAnimationHelper.OnPinchToZoomAnimationListener() {
+                    @Override
+                    public void onAnimationStep(float scaleFactor, float translationX,
+                                                float translationY) {
+                        mStep[0] = scaleFactor;
+                        mStep[1] = translationX;
+                        mStep[2] = translationY;
+                        mCallbacks[2]++;
+                    }
+                }) {
+            @Override
+            protected void addToFrameDriver() {
+                mCallbacks[0]++;
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+                mCallbacks[1]++;
+            }
+        };
+
+        mFrom = new Matrix();
+        mFrom.setScale(1f, 1f);
+        mFrom.postTranslate(0, 0);
+        mTo = new Matrix();
+        mTo.setScale(3f, 3f);
+        mTo.postTranslate(-200, -100);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mHelper = null;
+        super.tearDown();
+    }
+
+    public void testStart() {
+        mHelper.start(mFrom, mTo);
+        assertTrue(mHelper.isAnimating());
+        assertEquals(1, mCallbacks[0]);
+        assertEquals(1f, mHelper.mFromScale);
+        assertEquals(3f, mHelper.mToScale);
+        assertEquals(-200f, mHelper.mToTranslationX);
+        assertEquals(-100f, mHelper.mToTranslationY);
+    }
+
+    public void testDoFrameStart() {
+        mHelper.start(mFrom, mTo);
+        assertTrue(mHelper.doFrame(mHelper.mStartTimeNanos));
+        assertEquals(1f, mStep[0]);
+        assertEquals(0f, mStep[1]);
+        assertEquals(0f, mStep[2]);
+        assertTrue(mHelper.isAnimating());
+        assertEquals(1, mCallbacks[0]);
+    }
+
+    public void testDoFrameBeforeStart() {
+        mHelper.start(mFrom, mTo);
+        mHelper.doFrame(mHelper.mStartTimeNanos - 1000000);
+        assertEquals(1f, mStep[0]);
+    }
+
+    public void testDoFrameMiddle() {
+        mHelper.start(mFrom, mTo);
+        mHelper.doFrame(mHelper.mStartTimeNanos + mHelper.mDuration * 1000000 / 2);
+        assertEquals(2f, mStep[0], .001f);
+        assertEquals(-100f, mStep[1], .01f);
+        assertEquals(-50f, mStep[2], .01f);
+        assertTrue(mHelper.isAnimating());
+    }
+
+    public void testDoFrameEnd() {
+        mHelper.start(mFrom, mTo);
+        assertFalse(mHelper.doFrame(mHelper.mStartTimeNanos + mHelper.mDuration * 1000000));
+        assertEquals(3f, mStep[0]);
+        assertEquals(-200f, mStep[1]);
+        assertEquals(-100f, mStep[2]);
+        assertFalse(mHelper.isAnimating());
+        assertEquals(1, mCallbacks[0]);
+    }
+
+    public void testDoFrameStartFromListener() {
+        final PinchToZoomAnimationHelper[] helper = new PinchToZoomAnimationHelper[1];
+        helper[0] = new PinchToZoomAnimationHelper(
+                new PinchToZoomAnimationHelper.OnPinchToZoomAnimationListener() {
+                    @Override
+                    public void onAnimationStep(float scaleFactor, float translationX,
+                                                float translationY) {
+                        if (!helper[0].isAnimating()) {
+                            helper[0].start(mTo, mFrom);
+                        }
+                    }
+                }) {
+            @Override
+            protected void addToFrameDriver() {
+                mCallbacks[0]++;
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+                mCallbacks[1]++;
+            }
+        };
+        helper[0].start(mFrom, mTo);
+        assertTrue(helper[0].doFrame(helper[0].mStartTimeNanos + helper[0].mDuration * 1000000));
+        assertTrue(helper[0].isAnimating());
+        assertEquals(3f, helper[0].mFromScale);
+        assertEquals(0, mCallbacks[1]);
+    }
+
+    public void testStop() {
+        mHelper.start(mFrom, mTo);
+        mHelper.stop();
+        assertFalse(mHelper.isAnimating());
+        assertEquals(1, mCallbacks[1]);
+
+        mHelper.doFrame(mHelper.mStartTimeNanos + mHelper.mDuration * 1000000);
+        assertEquals(0, mCallbacks[2]);
+    }
+
+    public void testStopNotAnimating() {
+        mHelper.stop();
+        assertEquals(0, mCallbacks[1]);
+    }
+}
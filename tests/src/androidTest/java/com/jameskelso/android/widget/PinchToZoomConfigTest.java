@@ -0,0 +1,103 @@
+package com.jameskelso.android.widget;
+
+import android.test.AndroidTestCase;
+import android.util.AttributeSet;
+import android.util.Xml;
+
+import com.jameskelso.android.tests.R;
+
+import org.xmlpull.v1.XmlPullParser;
+
+public class PinchToZoomConfigTest extends AndroidTestCase {
+
+    public void testObtainNoAttributes() {
+        assertSame(PinchToZoomConfig.DEFAULT,
+                PinchToZoomConfig.obtain(getContext(), null, 0, 0));
+    }
+
+    public void testObtainMaxBitmapSize() throws Exception {
+        PinchToZoomConfig config = PinchToZoomConfig.obtain(getContext(),
+                getAttributeSet(R.layout.max_bmp_size), 0, 0);
+        assertEquals(200, config.maxBitmapWidth);
+        assertEquals(400, config.maxBitmapHeight);
+    }
+
+    public void testObtainInterned() throws Exception {
+        PinchToZoomConfig first = PinchToZoomConfig.obtain(getContext(),
+                getAttributeSet(R.layout.max_bmp_size), 0, 0);
+        PinchToZoomConfig second = PinchToZoomConfig.obtain(getContext(),
+                getAttributeSet(R.layout.max_bmp_size), 0, 0);
+        assertSame(first, second);
+    }
+
+    public void testObtainStyleOnly() throws Exception {
+        PinchToZoomConfig first = PinchToZoomConfig.obtain(getContext(),
+                getAttributeSet(R.layout.no_attributes), 0, 0);
+        PinchToZoomConfig second = PinchToZoomConfig.obtain(getContext(),
+                getAttributeSet(R.layout.no_attributes), 0, 0);
+        assertSame(PinchToZoomConfig.DEFAULT, first);
+        assertSame(first, second);
+    }
+
+    public void testObtainPanThresholdDefault() throws Exception {
+        PinchToZoomConfig config = PinchToZoomConfig.obtain(getContext(),
+                getAttributeSet(R.layout.no_attributes), 0, 0);
+        assertEquals(PinchToZoomTouchHelper.DEFAULT_PAN_THRESHOLD, config.panThreshold);
+    }
+
+    public void testWithPaddingInterned() {
+        PinchToZoomConfig first = PinchToZoomConfig.DEFAULT.withPadding(1, 2, 3, 4);
+        PinchToZoomConfig second = PinchToZoomConfig.DEFAULT.withPadding(1, 2, 3, 4);
+        assertSame(first, second);
+    }
+
+    public void testWithPaddingCopyOnWrite() {
+        PinchToZoomConfig config = PinchToZoomConfig.DEFAULT.withPadding(1, 2, 3, 4);
+        assertNotSame(PinchToZoomConfig.DEFAULT, config);
+        assertEquals(0, PinchToZoomConfig.DEFAULT.paddingLeft);
+        assertEquals(1, config.paddingLeft);
+        assertEquals(2, config.paddingTop);
+        assertEquals(3, config.paddingRight);
+        assertEquals(4, config.paddingBottom);
+    }
+
+    public void testWithUnchanged() {
+        assertSame(PinchToZoomConfig.DEFAULT, PinchToZoomConfig.DEFAULT.withPadding(0, 0, 0, 0));
+        assertSame(PinchToZoomConfig.DEFAULT,
+                PinchToZoomConfig.DEFAULT.withPinAxesSmallerThanViewBounds(true));
+    }
+
+    public void testWithRoundTrip() {
+        PinchToZoomConfig config = PinchToZoomConfig.DEFAULT.withCropToPadding(true)
+                .withCropToPadding(false);
+        assertSame(PinchToZoomConfig.DEFAULT, config);
+    }
+
+    public void testWithTranslationExtraIllegal() {
+        try {
+            PinchToZoomConfig.DEFAULT.withTranslationExtra(-1, 0, 0, 0);
+            fail("withTranslationExtra should not allow negative values.");
+        } catch (IllegalArgumentException e) {
+            // This test is supposed to throw this exception
+        }
+    }
+
+    public void testWithBitmapMinimumSizeIllegal() {
+        try {
+            PinchToZoomConfig.DEFAULT.withBitmapMinimumSize(0, 1);
+            fail("withBitmapMinimumSize should not allow zero or less values.");
+        } catch (IllegalArgumentException e) {
+            // This test is supposed to throw this exception
+        }
+    }
+
+    private AttributeSet getAttributeSet(int layoutResId) throws Exception {
+        XmlPullParser parser = getContext().getResources().getLayout(layoutResId);
+        int type;
+        while ((type = parser.next()) != XmlPullParser.START_TAG
+                && type != XmlPullParser.END_DOCUMENT) {
+            // Skip to the root element
+        }
+        return Xml.asAttributeSet(parser);
+    }
+}
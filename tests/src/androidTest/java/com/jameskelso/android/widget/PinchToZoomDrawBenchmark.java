@@ -0,0 +1,69 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+
+import com.jameskelso.android.tests.R;
+
+/**
+ * Compares the time taken to draw the source image at several zoom levels, drawing the whole
+ * bitmap through the image matrix against drawing only the visible part of it. Draws go to a
+ * software canvas the size of the view. The view is never attached, so zoom levels are set on the
+ * matrix helper directly rather than animated. Results are written to logcat.
+ */
+public class PinchToZoomDrawBenchmark extends AndroidTestCase {
+    private static final String TAG = "PinchToZoomBenchmark";
+    private static final int DRAWS = 200;
+    private static final int VIEW_SIZE = 500;
+    private static final float[] ZOOM_LEVELS = {1f, 2f, 4f, 8f};
+
+    public void testDrawTime() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.setBitmapMaximumSizePixels(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        final int spec = View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.layout(0, 0, VIEW_SIZE, VIEW_SIZE);
+
+        Bitmap target = Bitmap.createBitmap(VIEW_SIZE, VIEW_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        Matrix zoomTarget = new Matrix();
+        float[] values = new float[9];
+
+        for (float zoom : ZOOM_LEVELS) {
+            PinchToZoomMatrixHelper matrixHelper = imgView.ensureMatrixHelper();
+            matrixHelper.getZoomTarget(VIEW_SIZE, VIEW_SIZE, zoom, VIEW_SIZE / 2, VIEW_SIZE / 2,
+                    zoomTarget);
+            matrixHelper.setTransform(VIEW_SIZE, VIEW_SIZE, zoomTarget);
+            imgView.getImageMatrix().getValues(values);
+            assertEquals("Benchmark must draw at zoom " + zoom, zoom, values[Matrix.MSCALE_X],
+                    .001f);
+
+            imgView.setVisibleRectDrawingEnabled(false);
+            long wholeNanos = timeDraws(imgView, canvas);
+            imgView.setVisibleRectDrawingEnabled(true);
+            long visibleNanos = timeDraws(imgView, canvas);
+
+            Log.i(TAG, "Draw at zoom " + zoom + ": whole bitmap=" + (wholeNanos / DRAWS / 1000)
+                    + " us/draw, visible rect=" + (visibleNanos / DRAWS / 1000) + " us/draw");
+        }
+        target.recycle();
+
+        assertNotNull(imgView.mDrawHelper);
+    }
+
+    private long timeDraws(PinchToZoomImageView imgView, Canvas canvas) {
+        // Warm up
+        imgView.onDraw(canvas);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < DRAWS; i++) {
+            imgView.onDraw(canvas);
+        }
+        return System.nanoTime() - start;
+    }
+}
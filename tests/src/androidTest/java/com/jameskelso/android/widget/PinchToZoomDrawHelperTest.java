@@ -0,0 +1,111 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.test.AndroidTestCase;
+
+public class PinchToZoomDrawHelperTest extends AndroidTestCase {
+    private PinchToZoomDrawHelper mHelper;
+    private Bitmap mBitmap;
+    private BitmapDrawable mDrawable;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mHelper = new PinchToZoomDrawHelper();
+
+        // Red on the left half, blue on the right half
+        mBitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        mBitmap.eraseColor(Color.RED);
+        Canvas canvas = new Canvas(mBitmap);
+        canvas.clipRect(50, 0, 100, 100);
+        canvas.drawColor(Color.BLUE);
+
+        mDrawable = new BitmapDrawable(getContext().getResources(), mBitmap);
+        mDrawable.setBounds(0, 0, 100, 100);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mHelper = null;
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testCanDraw() {
+        assertTrue(mHelper.canDraw(mDrawable, new Matrix()));
+    }
+
+    public void testCanDrawNotBitmap() {
+        assertFalse(mHelper.canDraw(null, new Matrix()));
+        assertFalse(mHelper.canDraw(new ColorDrawable(Color.RED), new Matrix()));
+    }
+
+    public void testCanDrawTiled() {
+        mDrawable.setTileModeX(Shader.TileMode.REPEAT);
+        assertFalse(mHelper.canDraw(mDrawable, new Matrix()));
+    }
+
+    public void testCanDrawRotated() {
+        Matrix matrix = new Matrix();
+        matrix.setRotate(45);
+        assertFalse(mHelper.canDraw(mDrawable, matrix));
+    }
+
+    public void testCanDrawEmptyBounds() {
+        mDrawable.setBounds(0, 0, 0, 0);
+        assertFalse(mHelper.canDraw(mDrawable, new Matrix()));
+    }
+
+    public void testGetVisibleSource() {
+        Matrix matrix = new Matrix();
+        matrix.setScale(4f, 4f);
+        matrix.postTranslate(-100, -100);
+        assertTrue(mHelper.getVisibleSource(100, 100, new Rect(0, 0, 100, 100), matrix,
+                new Rect(0, 0, 50, 50)));
+        assertEquals(new Rect(25, 25, 38, 38), mHelper.mSrc);
+        assertEquals(new RectF(0, 0, 52, 52), mHelper.mDst);
+    }
+
+    public void testGetVisibleSourceScaledBounds() {
+        assertTrue(mHelper.getVisibleSource(100, 100, new Rect(0, 0, 200, 200), new Matrix(),
+                new Rect(0, 0, 50, 50)));
+        assertEquals(new Rect(0, 0, 25, 25), mHelper.mSrc);
+        assertEquals(new RectF(0, 0, 50, 50), mHelper.mDst);
+    }
+
+    public void testGetVisibleSourceClippedToBitmap() {
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(20, 20);
+        assertTrue(mHelper.getVisibleSource(100, 100, new Rect(0, 0, 100, 100), matrix,
+                new Rect(0, 0, 50, 50)));
+        assertEquals(new Rect(0, 0, 30, 30), mHelper.mSrc);
+        assertEquals(new RectF(20, 20, 50, 50), mHelper.mDst);
+    }
+
+    public void testGetVisibleSourceNotVisible() {
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(200, 0);
+        assertFalse(mHelper.getVisibleSource(100, 100, new Rect(0, 0, 100, 100), matrix,
+                new Rect(0, 0, 50, 50)));
+    }
+
+    public void testDraw() {
+        Bitmap target = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+        Matrix matrix = new Matrix();
+        matrix.setScale(4f, 4f);
+        matrix.postTranslate(-300, -100);
+
+        mHelper.draw(new Canvas(target), mDrawable, matrix);
+        assertEquals(Color.BLUE, target.getPixel(25, 25));
+        assertEquals(new Rect(75, 25, 88, 38), mHelper.mSrc);
+        target.recycle();
+    }
+}
@@ -0,0 +1,92 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.RectF;
+import android.test.AndroidTestCase;
+
+public class PinchToZoomFlingHelperTest extends AndroidTestCase {
+    private PinchToZoomFlingHelper mHelper;
+    private final float[] mDistance = new float[2];
+    private final int[] mCallbacks = new int[2];
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mDistance[0] = 0;
+        mDistance[1] = 0;
+        mCallbacks[0] = 0;
+        mCallbacks[1] = 0;
+        mHelper = new PinchToZoomFlingHelper(getContext(),
+                new PinchToZoomFlingHelper.OnPinchToZoomFlingListener() {
+                    @Override
+                    public void onFlingStep(float dx, float dy) {
+                        mDistance[0] += dx;
+                        mDistance[1] += dy;
+                    }
+                }) {
+            @Override
+            protected void addToFrameDriver() {
+                mCallbacks[0]++;
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+                mCallbacks[1]++;
+            }
+        };
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mHelper = null;
+        super.tearDown();
+    }
+
+    public void testFling() {
+        mHelper.fling(2000, 0, new RectF(-500, -500, 500, 500));
+        assertTrue(mHelper.isFlinging());
+        assertEquals(1, mCallbacks[0]);
+    }
+
+    public void testFlingStopsPreviousFling() {
+        mHelper.fling(2000, 0, new RectF(-500, -500, 500, 500));
+        mHelper.fling(0, 2000, new RectF(-500, -500, 500, 500));
+        assertEquals(1, mCallbacks[1]);
+        assertEquals(2, mCallbacks[0]);
+    }
+
+    public void testDoFrame() throws InterruptedException {
+        mHelper.fling(2000, -2000, new RectF(-500, -500, 500, 500));
+        Thread.sleep(50);
+        assertTrue(mHelper.doFrame(0));
+        assertTrue(mDistance[0] > 0);
+        assertTrue(mDistance[1] < 0);
+        assertEquals(1, mCallbacks[0]);
+    }
+
+    public void testDoFrameStaysWithinBounds() throws InterruptedException {
+        mHelper.fling(20000, 0, new RectF(-10, 0, 10, 0));
+        for (int i = 0; i < 100 && mHelper.isFlinging(); i++) {
+            Thread.sleep(16);
+            mHelper.doFrame(0);
+        }
+        assertFalse(mHelper.isFlinging());
+        assertEquals(10f, mDistance[0]);
+        assertEquals(0f, mDistance[1]);
+    }
+
+    public void testStop() throws InterruptedException {
+        mHelper.fling(2000, 0, new RectF(-500, -500, 500, 500));
+        mHelper.stop();
+        assertFalse(mHelper.isFlinging());
+        assertEquals(1, mCallbacks[1]);
+
+        Thread.sleep(50);
+        assertFalse(mHelper.doFrame(0));
+        assertEquals(0f, mDistance[0]);
+    }
+
+    public void testStopNotFlinging() {
+        mHelper.stop();
+        assertEquals(0, mCallbacks[1]);
+    }
+}
@@ -0,0 +1,169 @@
+package com.jameskelso.android.widget;
+
+import android.test.AndroidTestCase;
+
+public class PinchToZoomFrameDriverTest extends AndroidTestCase {
+    private PinchToZoomFrameDriver mDriver;
+    private final int[] mCallbacks = new int[2];
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mCallbacks[0] = 0;
+        mCallbacks[1] = 0;
+        mDriver = new PinchToZoomFrameDriver() {
+            @Override
+            protected void postFrameCallback() {
+                mCallbacks[0]++;
+            }
+
+            @Override
+            protected void removeFrameCallback() {
+                mCallbacks[1]++;
+            }
+        };
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mDriver = null;
+        super.tearDown();
+    }
+
+    public void testGetInstance() {
+        assertSame(PinchToZoomFrameDriver.getInstance(), PinchToZoomFrameDriver.getInstance());
+    }
+
+    public void testAddPostsOnce() {
+        mDriver.add(new CountingClient(1));
+        mDriver.add(new CountingClient(1));
+        assertTrue(mDriver.isActive());
+        assertEquals(1, mCallbacks[0]);
+    }
+
+    public void testAddTwice() {
+        CountingClient client = new CountingClient(1);
+        mDriver.add(client);
+        mDriver.add(client);
+        mDriver.doFrame(0);
+        assertEquals(1, client.mFrames);
+    }
+
+    public void testDoFrameStepsAllClients() {
+        CountingClient first = new CountingClient(3);
+        CountingClient second = new CountingClient(3);
+        mDriver.add(first);
+        mDriver.add(second);
+        mDriver.doFrame(0);
+        assertEquals(1, first.mFrames);
+        assertEquals(1, second.mFrames);
+        assertEquals(2, mCallbacks[0]);
+    }
+
+    public void testDoFrameDropsFinishedClients() {
+        CountingClient first = new CountingClient(1);
+        CountingClient second = new CountingClient(2);
+        mDriver.add(first);
+        mDriver.add(second);
+
+        mDriver.doFrame(0);
+        assertEquals(1, mDriver.mClients.size());
+        assertEquals(2, mCallbacks[0]);
+
+        mDriver.doFrame(0);
+        assertFalse(mDriver.isActive());
+        assertEquals(2, mCallbacks[0]);
+        assertEquals(1, first.mFrames);
+        assertEquals(2, second.mFrames);
+
+        // Adding a client once idle posts a new frame callback
+        mDriver.add(first);
+        assertEquals(3, mCallbacks[0]);
+    }
+
+    public void testRemoveLastClient() {
+        CountingClient client = new CountingClient(1);
+        mDriver.add(client);
+        mDriver.remove(client);
+        assertFalse(mDriver.isActive());
+        assertEquals(1, mCallbacks[1]);
+    }
+
+    public void testRemoveUnknownClient() {
+        mDriver.add(new CountingClient(1));
+        mDriver.remove(new CountingClient(1));
+        assertTrue(mDriver.isActive());
+        assertEquals(0, mCallbacks[1]);
+    }
+
+    public void testRemoveDuringFrame() {
+        final CountingClient second = new CountingClient(3);
+        PinchToZoomFrameDriver.FrameClient first = new PinchToZoomFrameDriver.FrameClient() {
+            @Override
+            public boolean doFrame(long frameTimeNanos) {
+                mDriver.remove(second);
+                return true;
+            }
+        };
+        mDriver.add(first);
+        mDriver.add(second);
+        mDriver.doFrame(0);
+        assertEquals(0, second.mFrames);
+        assertEquals(1, mDriver.mClients.size());
+    }
+
+    public void testAddDuringFrame() {
+        final CountingClient second = new CountingClient(3);
+        PinchToZoomFrameDriver.FrameClient first = new PinchToZoomFrameDriver.FrameClient() {
+            @Override
+            public boolean doFrame(long frameTimeNanos) {
+                mDriver.add(second);
+                return false;
+            }
+        };
+        mDriver.add(first);
+        mDriver.doFrame(0);
+        assertEquals(0, second.mFrames);
+        assertEquals(1, mDriver.mClients.size());
+        assertEquals(2, mCallbacks[0]);
+
+        mDriver.doFrame(0);
+        assertEquals(1, second.mFrames);
+        assertEquals(3, mCallbacks[0]);
+    }
+
+    public void testAddDuringFrameKeepsStepping() {
+        final CountingClient second = new CountingClient(3);
+        PinchToZoomFrameDriver.FrameClient first = new PinchToZoomFrameDriver.FrameClient() {
+            @Override
+            public boolean doFrame(long frameTimeNanos) {
+                mDriver.add(second);
+                return true;
+            }
+        };
+        mDriver.add(first);
+        mDriver.doFrame(0);
+
+        // Only one frame callback is posted for each frame
+        assertEquals(2, mCallbacks[0]);
+        assertTrue(mDriver.mPosted);
+        mDriver.doFrame(0);
+        assertEquals(3, mCallbacks[0]);
+        assertEquals(1, second.mFrames);
+    }
+
+    private static class CountingClient implements PinchToZoomFrameDriver.FrameClient {
+        final int mLength;
+        int mFrames;
+
+        CountingClient(int length) {
+            mLength = length;
+        }
+
+        @Override
+        public boolean doFrame(long frameTimeNanos) {
+            mFrames++;
+            return mFrames < mLength;
+        }
+    }
+}
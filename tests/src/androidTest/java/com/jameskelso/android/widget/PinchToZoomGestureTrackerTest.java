@@ -0,0 +1,134 @@
+package com.jameskelso.android.widget;
+
+import android.test.AndroidTestCase;
+import android.view.MotionEvent;
+
+import static com.jameskelso.android.widget.PinchToZoomTouchHelperTest.obtain;
+
+public class PinchToZoomGestureTrackerTest extends AndroidTestCase {
+    private static final int POINTER_1 = 1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+    private static final int POINTER_2 = 2 << MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+
+    private PinchToZoomGestureTracker mTracker;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mTracker = new PinchToZoomGestureTracker();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mTracker = null;
+        super.tearDown();
+    }
+
+    public void testOnTouchEventActionDown() {
+        assertFalse(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 10, 20)));
+        assertEquals(1, mTracker.mPointerCount);
+        assertEquals(10f, mTracker.mDownX);
+        assertEquals(20f, mTracker.mDownY);
+        assertEquals(10f, mTracker.mFocusX);
+        assertEquals(20f, mTracker.mFocusY);
+        assertEquals(0f, mTracker.mSpan);
+        assertFalse(mTracker.mMultiTouch);
+    }
+
+    public void testOnTouchEventActionMovePan() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 10, 20));
+        assertTrue(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, 15, 10)));
+        assertEquals(5f, mTracker.mDeltaX);
+        assertEquals(-10f, mTracker.mDeltaY);
+        assertEquals(1f, mTracker.mScaleFactor);
+    }
+
+    public void testOnTouchEventActionMoveUnchanged() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 10, 20));
+        assertFalse(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, 10, 20)));
+    }
+
+    public void testOnTouchEventPointerDownReAnchors() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        assertFalse(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_DOWN | POINTER_1,
+                100, 100, 200, 100)));
+        assertEquals(2, mTracker.mPointerCount);
+        assertEquals(150f, mTracker.mFocusX);
+        assertEquals(100f, mTracker.mSpan, .001f);
+        assertEquals(0f, mTracker.mDeltaX);
+        assertEquals(1f, mTracker.mScaleFactor);
+        assertTrue(mTracker.mMultiTouch);
+    }
+
+    public void testOnTouchEventCombinedPanAndZoom() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_DOWN | POINTER_1, 100, 100,
+                200, 100));
+        assertTrue(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, 60, 110, 260, 110)));
+        assertEquals(10f, mTracker.mDeltaX, .001f);
+        assertEquals(10f, mTracker.mDeltaY, .001f);
+        assertEquals(2f, mTracker.mScaleFactor, .001f);
+    }
+
+    public void testOnTouchEventThreePointers() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 0, 0));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_DOWN | POINTER_1, 0, 0, 90, 0));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_DOWN | POINTER_2, 0, 0, 90, 0,
+                45, 90));
+        assertEquals(3, mTracker.mPointerCount);
+        assertEquals(45f, mTracker.mFocusX, .001f);
+        assertEquals(30f, mTracker.mFocusY, .001f);
+
+        // Moving only the third pointer moves the focus by a third of the distance
+        assertTrue(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, 0, 0, 90, 0, 45, 120)));
+        assertEquals(10f, mTracker.mDeltaY, .001f);
+    }
+
+    public void testOnTouchEventPointerUpReAnchors() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_DOWN | POINTER_1, 100, 100,
+                200, 100));
+        assertFalse(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_UP | POINTER_1,
+                100, 100, 200, 100)));
+        assertEquals(1, mTracker.mPointerCount);
+        assertEquals(100f, mTracker.mFocusX);
+        assertEquals(0f, mTracker.mSpan);
+
+        // The remaining pointer continues from where it is rather than from the old focus
+        assertTrue(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, 101, 100)));
+        assertEquals(1f, mTracker.mDeltaX, .001f);
+        assertEquals(1f, mTracker.mScaleFactor);
+    }
+
+    public void testOnTouchEventActionUp() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 10, 20));
+        assertFalse(mTracker.onTouchEvent(obtain(MotionEvent.ACTION_UP, 12, 20)));
+        assertEquals(0, mTracker.mPointerCount);
+        assertEquals(12f, mTracker.mFocusX);
+    }
+
+    public void testIsTap() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 10, 20));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_UP, 12, 21));
+        assertTrue(mTracker.isTap(3));
+        assertFalse(mTracker.isTap(2));
+    }
+
+    public void testIsTapMultiTouch() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 10, 20));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_DOWN | POINTER_1, 10, 20, 10, 20));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_UP | POINTER_1, 10, 20, 10, 20));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_UP, 10, 20));
+        assertFalse(mTracker.isTap(3));
+    }
+
+    public void testReset() {
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mTracker.onTouchEvent(obtain(MotionEvent.ACTION_POINTER_DOWN | POINTER_1, 100, 100,
+                200, 100));
+        mTracker.reset();
+        assertEquals(0, mTracker.mPointerCount);
+        assertEquals(0f, mTracker.mSpan);
+        assertEquals(1f, mTracker.mScaleFactor);
+        assertFalse(mTracker.mMultiTouch);
+    }
+}
@@ -1,14 +1,21 @@
 package com.jameskelso.android.widget;
 
 import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.DrawFilter;
 import android.graphics.Matrix;
 import android.graphics.PointF;
 import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Parcelable;
 import android.test.AndroidTestCase;
+import android.util.Xml;
 import android.view.InflateException;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -17,6 +24,11 @@ import android.widget.ImageView;
 
 import com.jameskelso.android.tests.R;
 
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -55,49 +67,49 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
     public void testResolveAttrsMinBitmapWidth() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.min_bmp_size);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(20, helper.mBitmapMinSize.x);
+        assertEquals(20, helper.mConfig.minBitmapWidth);
     }
 
     public void testResolveAttrsMinBitmapWidthDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mBitmapMinSize.x);
+        assertEquals(0, helper.mConfig.minBitmapWidth);
     }
 
     public void testResolveAttrsMinBitmapHeight() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.min_bmp_size);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(40, helper.mBitmapMinSize.y);
+        assertEquals(40, helper.mConfig.minBitmapHeight);
     }
 
     public void testResolveAttrsMinBitmapHeightDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mBitmapMinSize.y);
+        assertEquals(0, helper.mConfig.minBitmapHeight);
     }
 
     public void testResolveAttrsMaxBitmapWidth() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.max_bmp_size);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(200, helper.mBitmapMaxSize.x);
+        assertEquals(200, helper.mConfig.maxBitmapWidth);
     }
 
     public void testResolveAttrsMaxBitmapWidthDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mBitmapMaxSize.x);
+        assertEquals(0, helper.mConfig.maxBitmapWidth);
     }
 
     public void testResolveAttrsMaxBitmapHeight() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.max_bmp_size);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(400, helper.mBitmapMaxSize.y);
+        assertEquals(400, helper.mConfig.maxBitmapHeight);
     }
 
     public void testResolveAttrsMaxBitmapHeightDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mBitmapMaxSize.y);
+        assertEquals(0, helper.mConfig.maxBitmapHeight);
     }
 
     public void testResolveAttrsPanThreshold() {
@@ -115,122 +127,122 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
     public void testResolveAttrsPinAxesSmallerThanViewBounds() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.pin_axes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertFalse(helper.mPinAxesSmallerThanViewBounds);
+        assertFalse(helper.mConfig.pinAxesSmallerThanViewBounds);
     }
 
     public void testResolveAttrsPinAxesSmallerThanViewBoundsDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertTrue(helper.mPinAxesSmallerThanViewBounds);
+        assertTrue(helper.mConfig.pinAxesSmallerThanViewBounds);
     }
 
     public void testResolveAttrsTransExtraLeft() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.extra_trans);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(1, helper.mTranslationExtra.left);
+        assertEquals(1, helper.mConfig.translationExtraLeft);
     }
 
     public void testResolveAttrsTransExtraLeftDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mTranslationExtra.left);
+        assertEquals(0, helper.mConfig.translationExtraLeft);
     }
 
     public void testResolveAttrsTransExtraTop() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.extra_trans);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(2, helper.mTranslationExtra.top);
+        assertEquals(2, helper.mConfig.translationExtraTop);
     }
 
     public void testResolveAttrsTransExtraTopDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mTranslationExtra.top);
+        assertEquals(0, helper.mConfig.translationExtraTop);
     }
 
     public void testResolveAttrsTransExtraRight() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.extra_trans);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(3, helper.mTranslationExtra.right);
+        assertEquals(3, helper.mConfig.translationExtraRight);
     }
 
     public void testResolveAttrsTransExtraRightDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mTranslationExtra.right);
+        assertEquals(0, helper.mConfig.translationExtraRight);
     }
 
     public void testResolveAttrsTransExtraBottom() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.extra_trans);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(4, helper.mTranslationExtra.bottom);
+        assertEquals(4, helper.mConfig.translationExtraBottom);
     }
 
     public void testResolveAttrsTransExtraBottomDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mTranslationExtra.bottom);
+        assertEquals(0, helper.mConfig.translationExtraBottom);
     }
 
     public void testResolveAttrsCropToPadding() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.crop_to_padding);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertTrue(helper.mCropToPadding);
+        assertTrue(helper.mConfig.cropToPadding);
     }
 
     // This test may fail on systems < level 16
     public void testResolveAttrsCropToPaddingDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertFalse(helper.mCropToPadding);
+        assertFalse(helper.mConfig.cropToPadding);
     }
 
     public void testResolveAttrsPaddingLeft() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.padding);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(5, helper.mPadding.left);
+        assertEquals(5, helper.mConfig.paddingLeft);
     }
 
     public void testResolveAttrsPaddingLeftDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mPadding.left);
+        assertEquals(0, helper.mConfig.paddingLeft);
     }
 
     public void testResolveAttrsPaddingTop() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.padding);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(3, helper.mPadding.top);
+        assertEquals(3, helper.mConfig.paddingTop);
     }
 
     public void testResolveAttrsPaddingTopDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mPadding.top);
+        assertEquals(0, helper.mConfig.paddingTop);
     }
 
     public void testResolveAttrsPaddingRight() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.padding);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(4, helper.mPadding.right);
+        assertEquals(4, helper.mConfig.paddingRight);
     }
 
     public void testResolveAttrsPaddingRightDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mPadding.right);
+        assertEquals(0, helper.mConfig.paddingRight);
     }
 
     public void testResolveAttrsPaddingBottom() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.padding);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(2, helper.mPadding.bottom);
+        assertEquals(2, helper.mConfig.paddingBottom);
     }
 
     public void testResolveAttrsPaddingBottomDefault() {
         PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(0, helper.mPadding.bottom);
+        assertEquals(0, helper.mConfig.paddingBottom);
     }
 
     public void testSetUpClickable() {
@@ -400,13 +412,647 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
                 latch.getCount());
     }
 
+    public void testOnMeasureLayoutStateNoSource() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_NO_SOURCE, imgView.mLayoutState);
+    }
+
+    public void testSetImageResourceLayoutStateAwaitingFit() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_AWAITING_FIT, imgView.mLayoutState);
+    }
+
+    public void testOnMeasureLayoutStateFitted() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_FITTED, imgView.mLayoutState);
+        assertEquals(500, imgView.mLayoutWidth);
+        assertEquals(500, imgView.mLayoutHeight);
+    }
+
+    public void testOnMeasureFitsOnce() {
+        final int[] fits = new int[1];
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mMatrixHelper = new PinchToZoomMatrixHelper(imgView) {
+            @Override
+            void performInitialScaleAndTranslate(int width, int height) {
+                fits[0]++;
+                super.performInitialScaleAndTranslate(width, height);
+            }
+        };
+        imgView.setImageResource(R.drawable.octopus);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.measure(spec, spec);
+        imgView.measure(spec, spec);
+        assertEquals(1, fits[0]);
+    }
+
+    public void testOnMeasureFitsOnceAtScaleOne() {
+        final int[] fits = new int[1];
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mMatrixHelper = new PinchToZoomMatrixHelper(imgView) {
+            @Override
+            void performInitialScaleAndTranslate(int width, int height) {
+                fits[0]++;
+                super.performInitialScaleAndTranslate(width, height);
+            }
+        };
+        imgView.setImageResource(R.drawable.octopus);
+        Drawable d = imgView.getDrawable();
+        final int widthSpec = View.MeasureSpec.makeMeasureSpec(d.getIntrinsicWidth(),
+                View.MeasureSpec.EXACTLY);
+        final int heightSpec = View.MeasureSpec.makeMeasureSpec(d.getIntrinsicHeight(),
+                View.MeasureSpec.EXACTLY);
+        imgView.measure(widthSpec, heightSpec);
+        imgView.measure(widthSpec, heightSpec);
+
+        assertTrue(imgView.mMatrixHelper.isActualSizeZoomLevel());
+        assertEquals(1, fits[0]);
+    }
+
+    public void testOnMeasureSizeChangedFitted() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.measure(View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY));
+        float fittedScale = imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor;
+        imgView.measure(View.MeasureSpec.makeMeasureSpec(250, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(250, View.MeasureSpec.EXACTLY));
+
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_FITTED, imgView.mLayoutState);
+        assertEquals(fittedScale / 2f, imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor,
+                .001f);
+    }
+
+    public void testOnMeasureSizeChangedUserTransformedKeepsFocus() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.measure(View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY));
+        imgView.onPinchToZoom(3f, 250, 250);
+        float scale = imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor;
+        PinchToZoomViewportStore.Viewport before = new PinchToZoomViewportStore.Viewport();
+        imgView.mMatrixHelper.onSaveViewport(before, 500, 500);
+
+        imgView.measure(View.MeasureSpec.makeMeasureSpec(400, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(300, View.MeasureSpec.EXACTLY));
+        PinchToZoomViewportStore.Viewport after = new PinchToZoomViewportStore.Viewport();
+        imgView.mMatrixHelper.onSaveViewport(after, 400, 300);
+
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_USER_TRANSFORMED, imgView.mLayoutState);
+        assertEquals(scale, imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor, .001f);
+        assertEquals(before.focusX, after.focusX, .5f);
+        assertEquals(before.focusY, after.focusY, .5f);
+        assertEquals(400, imgView.mLayoutWidth);
+        assertEquals(300, imgView.mLayoutHeight);
+    }
+
+    public void testOnFlingStep() {
+        final float[] translation = new float[2];
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mMatrixHelper = new PinchToZoomMatrixHelper(imgView) {
+            @Override
+            PointF translate(int viewMeasuredWidth, int viewMeasuredHeight, float dx, float dy) {
+                translation[0] = dx;
+                translation[1] = dy;
+                return new PointF(dx, dy);
+            }
+        };
+        imgView.onFlingStep(3, 4);
+        assertEquals(3f, translation[0]);
+        assertEquals(4f, translation[1]);
+    }
+
+    public void testResetStopsFling() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mFlingHelper = new PinchToZoomFlingHelper(getContext(), imgView) {
+            @Override
+            protected void addToFrameDriver() {
+
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+
+            }
+        };
+        imgView.mFlingHelper.fling(2000, 0, new RectF(-500, -500, 500, 500));
+        imgView.reset();
+        assertFalse(imgView.mFlingHelper.isFlinging());
+    }
+
+    public void testOnGestureStartStopsFling() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mFlingHelper = new PinchToZoomFlingHelper(getContext(), imgView) {
+            @Override
+            protected void addToFrameDriver() {
+
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+
+            }
+        };
+        imgView.mFlingHelper.fling(2000, 0, new RectF(-500, -500, 500, 500));
+        imgView.onGestureStart();
+        assertFalse(imgView.mFlingHelper.isFlinging());
+    }
+
+    public void testOnFlingWhilePaused() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.onFling(2000, 0);
+        assertNull(imgView.mFlingHelper);
+    }
+
+    public void testSetTouchPredictionTime() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        assertNull(imgView.mTouchHelper.mTouchPredictor);
+
+        imgView.setTouchPredictionTime(16);
+        assertNotNull(imgView.mTouchHelper.mTouchPredictor);
+        assertEquals(16, imgView.mTouchHelper.mTouchPredictor.mPredictionTime);
+
+        imgView.setTouchPredictionTime(0);
+        assertNull(imgView.mTouchHelper.mTouchPredictor);
+    }
+
+    public void testSetTouchPredictionTimeNegative() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        try {
+            imgView.setTouchPredictionTime(-1);
+            fail("PinchToZoomImageView should throw an IllegalArgumentException for a negative " +
+                    "touch prediction time");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testSetOnTouchPredictionListener() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        PinchToZoomImageView.OnTouchPredictionListener listener =
+                new PinchToZoomImageView.OnTouchPredictionListener() {
+                    @Override
+                    public void onTouchPrediction(float errorPixels, float latencySavedMillis) {
+
+                    }
+                };
+        imgView.setOnTouchPredictionListener(listener);
+        imgView.setTouchPredictionTime(16);
+        assertSame(listener, imgView.mTouchHelper.mTouchPredictor.mListener);
+
+        imgView.setOnTouchPredictionListener(null);
+        assertNull(imgView.mTouchHelper.mTouchPredictor.mListener);
+    }
+
+    public void testSetInputResamplingEnabled() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        assertNull(imgView.mTouchHelper.mInputResampler);
+
+        imgView.setInputResamplingEnabled(true);
+        PinchToZoomInputResampler resampler = imgView.mTouchHelper.mInputResampler;
+        assertNotNull(resampler);
+        imgView.setInputResamplingEnabled(true);
+        assertSame(resampler, imgView.mTouchHelper.mInputResampler);
+
+        imgView.setInputResamplingEnabled(false);
+        assertNull(imgView.mTouchHelper.mInputResampler);
+    }
+
+    public void testOnPanWhilePausedNoMotion() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.onPan(10, 10);
+        assertNull(imgView.mMotionTracker);
+    }
+
+    public void testOnMotionStartNotHardwareAccelerated() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mMaxLayerWidth = 4096;
+        imgView.mMaxLayerHeight = 4096;
+        imgView.onMotionStart();
+        assertFalse(imgView.mLayerPromoted);
+        assertEquals(View.LAYER_TYPE_NONE, imgView.getLayerType());
+    }
+
+    public void testOnMotionSettled() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        final Object[] report = new Object[3];
+        imgView.setOnMotionSettledListener(new PinchToZoomImageView.OnMotionSettledListener() {
+            @Override
+            public void onMotionSettled(boolean hardwareLayer, int frameCount,
+                                        long averageFrameIntervalNanos) {
+                report[0] = hardwareLayer;
+                report[1] = frameCount;
+                report[2] = averageFrameIntervalNanos;
+            }
+        });
+        imgView.mLayerPromoted = true;
+        imgView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        imgView.onMotionSettled(10, 16000000);
+
+        assertEquals(Boolean.TRUE, report[0]);
+        assertEquals(10, report[1]);
+        assertEquals(16000000L, report[2]);
+        assertFalse(imgView.mLayerPromoted);
+        assertEquals(View.LAYER_TYPE_NONE, imgView.getLayerType());
+    }
+
+    public void testGestureLayerEnabledByDefault() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        assertTrue(imgView.mGestureLayerEnabled);
+    }
+
+    public void testSetGestureLayerEnabledRestoresLayer() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mLayerPromoted = true;
+        imgView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        imgView.setGestureLayerEnabled(false);
+        assertFalse(imgView.mLayerPromoted);
+        assertEquals(View.LAYER_TYPE_NONE, imgView.getLayerType());
+        assertFalse(imgView.canPromoteLayer());
+    }
+
+    public void testCanPromoteLayerApplicationLayer() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+        assertFalse(imgView.canPromoteLayer());
+    }
+
+    public void testOnMatrixChangedDuringMotion() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setReducedQualityDuringMotion(true);
+        imgView.mMotionTracker = new PinchToZoomMotionTracker(imgView, imgView);
+        imgView.mMotionTracker.mMoving = true;
+        imgView.onMatrixChanged(new Matrix());
+        assertTrue(imgView.mDrawAtMotionQuality);
+
+        imgView.onMotionSettled(1, 0);
+        assertFalse(imgView.mDrawAtMotionQuality);
+    }
+
+    public void testOnMatrixChangedAtRest() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setReducedQualityDuringMotion(true);
+        imgView.onMatrixChanged(new Matrix());
+        assertFalse(imgView.mDrawAtMotionQuality);
+    }
+
+    public void testOnMatrixChangedReducedQualityDisabled() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mMotionTracker = new PinchToZoomMotionTracker(imgView, imgView);
+        imgView.mMotionTracker.mMoving = true;
+        imgView.onMatrixChanged(new Matrix());
+        assertFalse(imgView.mDrawAtMotionQuality);
+    }
+
+    public void testOnDrawAtMotionQuality() {
+        final DrawFilter[] filters = new DrawFilter[1];
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext()) {
+            @Override
+            protected void drawSource(Canvas canvas) {
+                filters[0] = canvas.getDrawFilter();
+            }
+        };
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        imgView.mDrawAtMotionQuality = true;
+        imgView.onDraw(canvas);
+        assertNotNull(filters[0]);
+        assertNull(canvas.getDrawFilter());
+
+        imgView.mDrawAtMotionQuality = false;
+        imgView.onDraw(canvas);
+        assertNull(filters[0]);
+        bitmap.recycle();
+    }
+
+    public void testSetOverscanCacheMargin() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setOverscanCacheMargin(32);
+        assertEquals(32, imgView.mOverscanCache.mMargin);
+
+        PinchToZoomOverscanCache cache = imgView.mOverscanCache;
+        imgView.setOverscanCacheMargin(32);
+        assertSame(cache, imgView.mOverscanCache);
+
+        imgView.setOverscanCacheMargin(0);
+        assertNull(imgView.mOverscanCache);
+    }
+
+    public void testSetOverscanCacheMarginNegative() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        try {
+            imgView.setOverscanCacheMargin(-1);
+            fail("Negative overscan margin should be invalid");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testDrawSourceFromOverscanCache() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        final int spec = View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.layout(0, 0, 100, 100);
+        imgView.setOverscanCacheMargin(16);
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        // At rest the image is drawn directly
+        imgView.drawSource(canvas);
+        imgView.drawSource(canvas);
+        assertNull(imgView.mOverscanCache.mBitmap);
+
+        imgView.mMotionTracker = new PinchToZoomMotionTracker(imgView, imgView);
+        imgView.mMotionTracker.mMoving = true;
+        imgView.drawSource(canvas);
+        assertTrue(imgView.mOverscanCache.mValid);
+        assertEquals(132, imgView.mOverscanCache.mBitmap.getWidth());
+
+        // A new image must be rendered again
+        imgView.setImageResource(R.drawable.octopus);
+        assertFalse(imgView.mOverscanCache.mValid);
+        bitmap.recycle();
+    }
+
+    public void testDrawOversize() {
+        final int[] result = new int[6];
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        Bitmap source = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        imgView.setImageBitmap(source);
+        imgView.setOnOversizeImageListener(new PinchToZoomImageView.OnOversizeImageListener() {
+            @Override
+            public void onOversizeImage(int bitmapWidth, int bitmapHeight, int maxTextureWidth,
+                                        int maxTextureHeight, int renderMode) {
+                result[0] = bitmapWidth;
+                result[1] = bitmapHeight;
+                result[2] = maxTextureWidth;
+                result[3] = maxTextureHeight;
+                result[4] = renderMode;
+                result[5]++;
+            }
+        });
+        imgView.mMaxLayerWidth = 64;
+        imgView.mMaxLayerHeight = 64;
+        imgView.mOversizeHelper = new PinchToZoomOversizeHelper(imgView) {
+            @Override
+            protected void executeInBackground(Runnable runnable) {
+                // Tiles are not needed to test the decision
+            }
+        };
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        assertTrue(imgView.drawOversize(canvas, imgView.getDrawable(), new Matrix()));
+        assertTrue(imgView.drawOversize(canvas, imgView.getDrawable(), new Matrix()));
+        assertEquals(100, result[0]);
+        assertEquals(50, result[1]);
+        assertEquals(64, result[2]);
+        assertEquals(64, result[3]);
+        assertEquals(PinchToZoomImageView.OVERSIZE_RENDER_MODE_TILED, result[4]);
+        assertEquals(1, result[5]);
+
+        // A new image is prepared again
+        imgView.setImageBitmap(source);
+        assertNull(imgView.mOversizeHelper.mSource);
+        bitmap.recycle();
+        source.recycle();
+    }
+
+    public void testIsOversizeSoftwareCanvas() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        Bitmap source = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        imgView.setImageBitmap(source);
+        imgView.mMaxLayerWidth = 64;
+        imgView.mMaxLayerHeight = 64;
+
+        // Only a hardware canvas has a texture limit
+        assertFalse(imgView.isOversize(new Canvas(), imgView.getDrawable()));
+        source.recycle();
+    }
+
+    public void testSetImageRegionDecoder() throws Exception {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        Bitmap source = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.PNG, 100, out);
+        source.recycle();
+        byte[] data = out.toByteArray();
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+
+        imgView.setImageRegionDecoder(decoder);
+        Drawable d = imgView.getDrawable();
+        assertTrue(d instanceof PinchToZoomRegionDrawable);
+        assertEquals(100, d.getIntrinsicWidth());
+        assertEquals(50, d.getIntrinsicHeight());
+
+        // Drawing passes the scale of the image matrix to the drawable
+        Matrix matrix = new Matrix();
+        matrix.setScale(.5f, .5f);
+        imgView.drawContent(new Canvas(), d, matrix);
+        assertEquals(.5f, ((PinchToZoomRegionDrawable) d).mDrawScale);
+
+        assertFalse(((PinchToZoomRegionDrawable) d).mRgb565Allowed);
+
+        imgView.setRgb565DecodingEnabled(true);
+        imgView.setImageRegionDecoder(decoder);
+        assertTrue(((PinchToZoomRegionDrawable) imgView.getDrawable()).mRgb565Allowed);
+
+        imgView.setImageRegionDecoder(null);
+        assertNull(imgView.getDrawable());
+        decoder.recycle();
+    }
+
+    public void testSetRasterCacheEnabled() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setRasterCacheEnabled(true);
+        assertNotNull(imgView.mRasterCache);
+        imgView.setRasterCacheEnabled(false);
+        assertNull(imgView.mRasterCache);
+    }
+
+    public void testSetPinchSnapshotEnabled() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setPinchSnapshotEnabled(true);
+        assertNotNull(imgView.mPinchSnapshot);
+        imgView.setPinchSnapshotEnabled(false);
+        assertNull(imgView.mPinchSnapshot);
+    }
+
+    public void testOnPinchStartAndEnd() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        final int spec = View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.layout(0, 0, 100, 100);
+        imgView.setPinchSnapshotEnabled(true);
+
+        imgView.onPinchStart();
+        assertTrue(imgView.mPinchSnapshot.isCaptured());
+        assertEquals(100, imgView.mPinchSnapshot.mBitmap.getWidth());
+
+        imgView.onPinchEnd();
+        assertFalse(imgView.mPinchSnapshot.isCaptured());
+    }
+
+    public void testOnPinchStartDisabled() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.onPinchStart();
+        imgView.onPinchEnd();
+        assertNull(imgView.mPinchSnapshot);
+    }
+
+    public void testInvalidateDrawableInvalidatesOverscanCache() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.setOverscanCacheMargin(16);
+        imgView.mOverscanCache.mValid = true;
+        imgView.invalidateDrawable(imgView.getDrawable());
+        assertFalse(imgView.mOverscanCache.mValid);
+    }
+
+    public void testAnimateZoomToBeforeLayout() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.animateZoomTo(2f, 0, 0);
+        assertNull(imgView.mAnimationHelper);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_AWAITING_FIT, imgView.mLayoutState);
+    }
+
+    public void testAnimateZoomToWhilePaused() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.animateZoomTo(2f, 250, 250);
+
+        assertFalse(imgView.mAnimationHelper.isAnimating());
+        assertEquals(2f, imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor, .001f);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_USER_TRANSFORMED, imgView.mLayoutState);
+    }
+
+    public void testAnimateCenterOnWhilePaused() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.animateZoomTo(4f, 250, 250);
+        imgView.animateCenterOn(100, 100);
+
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        imgView.mMatrixHelper.onSaveViewport(viewport, 500, 500);
+        assertEquals(100f, viewport.focusX, .5f);
+        assertEquals(100f, viewport.focusY, .5f);
+    }
+
+    public void testAnimationPrefetchesTarget() throws Exception {
+        Bitmap source = Bitmap.createBitmap(1000, 500, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.PNG, 100, out);
+        source.recycle();
+        byte[] data = out.toByteArray();
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+        final ArrayList<Runnable> background = new ArrayList<Runnable>();
+        PinchToZoomRegionDrawable d = new PinchToZoomRegionDrawable(decoder, false) {
+            @Override
+            protected void executeInBackground(Runnable runnable) {
+                background.add(runnable);
+            }
+        };
+
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageDrawable(d);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.mZoomWorkPaused = false;
+        imgView.mAnimationHelper = new PinchToZoomAnimationHelper(imgView) {
+            @Override
+            protected void addToFrameDriver() {
+                // Frames are not driven in this test
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+                // Frames are not driven in this test
+            }
+        };
+        imgView.mAnimationTarget = new Matrix();
+        imgView.animateZoomTo(4f, 250, 250);
+
+        // Decoding starts for the region the animation ends on, at the scale it ends at
+        assertTrue(imgView.mAnimationHelper.isAnimating());
+        assertTrue(d.mPrefetching);
+        assertEquals(1, background.size());
+        assertEquals(PinchToZoomRegionDrawable.getSampleSize(
+                imgView.mAnimationTarget.mapRadius(1f)), d.mPassSampleSize);
+        RectF target = new RectF(0, 0, 500, 500);
+        Matrix inverse = new Matrix();
+        imgView.mAnimationTarget.invert(inverse);
+        inverse.mapRect(target);
+        Rect targetRect = new Rect();
+        target.roundOut(targetRect);
+        assertTrue(targetRect.intersect(0, 0, 1000, 500));
+        assertTrue(d.mPassRegion.contains(targetRect));
+
+        // Drawing resumes its own tile work once the animation ends
+        imgView.mAnimationHelper.doFrame(imgView.mAnimationHelper.mStartTimeNanos
+                + TimeUnit.SECONDS.toNanos(1));
+        assertFalse(imgView.mAnimationHelper.isAnimating());
+        assertFalse(d.mPrefetching);
+
+        // Or once it is stopped
+        imgView.animateZoomTo(1f, 250, 250);
+        assertTrue(d.mPrefetching);
+        imgView.stopMotion();
+        assertFalse(d.mPrefetching);
+        d.release();
+        decoder.recycle();
+    }
+
+    public void testOnAnimationStep() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mMatrixHelper.mSrcBitmapSize.set(500, 500);
+        imgView.onAnimationStep(2f, -10, -20);
+        assertEquals(2f, imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor);
+    }
+
+    public void testOnPinchToZoomLayoutStateUserTransformed() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.onPinchToZoom(1.5f, 0, 0);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_USER_TRANSFORMED, imgView.mLayoutState);
+    }
+
+    public void testOnPanLayoutStateUserTransformed() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.onPan(1, 1);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_USER_TRANSFORMED, imgView.mLayoutState);
+    }
+
+    public void testSetBitmapMaximumSizePixelsRefits() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.setBitmapMaximumSizePixels(100, 100);
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_AWAITING_FIT, imgView.mLayoutState);
+    }
+
     public void testSetPaddingLeft() {
         final int padding = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setPadding(padding, 0, 0, 0);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.left);
+        assertEquals(padding, helper.mConfig.paddingLeft);
     }
 
     public void testSetPaddingTop() {
@@ -415,7 +1061,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         imgView.setPadding(0, padding, 0, 0);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.top);
+        assertEquals(padding, helper.mConfig.paddingTop);
     }
 
     public void testSetPaddingRight() {
@@ -424,7 +1070,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         imgView.setPadding(0, 0, padding, 0);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.right);
+        assertEquals(padding, helper.mConfig.paddingRight);
     }
 
     public void testSetPaddingBottom() {
@@ -433,7 +1079,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         imgView.setPadding(0, 0, 0, padding);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.bottom);
+        assertEquals(padding, helper.mConfig.paddingBottom);
     }
 
     public void testSetPaddingRelativeLeft() {
@@ -447,7 +1093,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         imgView.setPaddingRelative(padding, 0, 0, 0);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.left);
+        assertEquals(padding, helper.mConfig.paddingLeft);
     }
 
     public void testSetPaddingRelativeTop() {
@@ -461,7 +1107,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         imgView.setPaddingRelative(0, padding, 0, 0);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.top);
+        assertEquals(padding, helper.mConfig.paddingTop);
     }
 
     public void testSetPaddingRelativeRight() {
@@ -475,7 +1121,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         imgView.setPaddingRelative(0, 0, padding, 0);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.right);
+        assertEquals(padding, helper.mConfig.paddingRight);
     }
 
     public void testSetPaddingRelativeBottom() {
@@ -489,7 +1135,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         imgView.setPaddingRelative(0, 0, 0, padding);
 
         PinchToZoomMatrixHelper helper = imgView.mMatrixHelper;
-        assertEquals(padding, helper.mPadding.bottom);
+        assertEquals(padding, helper.mConfig.paddingBottom);
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
@@ -540,11 +1186,11 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
 
     public void testResetTouchHelper() {
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
-        imgView.mTouchHelper.mFirstTouch = new PointF(1, 1);
+        imgView.mTouchHelper.mGestureTracker.mPointerCount = 1;
         imgView.reset();
 
-        assertNull("PinchToZoomTouchHelper should be reset after setting a source image.",
-                imgView.mTouchHelper.mFirstTouch);
+        assertEquals("PinchToZoomTouchHelper should be reset after setting a source image.", 0,
+                imgView.mTouchHelper.mGestureTracker.mPointerCount);
     }
 
     public void testCaptureDrawableStateSourceBitmapWidth() {
@@ -569,56 +1215,56 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         final int translationExtra = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setTranslationExtra(translationExtra, 0, 0, 0);
-        assertEquals(translationExtra, imgView.mMatrixHelper.mTranslationExtra.left);
+        assertEquals(translationExtra, imgView.mMatrixHelper.mConfig.translationExtraLeft);
     }
 
     public void testSetTranslationExtraTop() {
         final int translationExtra = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setTranslationExtra(0, translationExtra, 0, 0);
-        assertEquals(translationExtra, imgView.mMatrixHelper.mTranslationExtra.top);
+        assertEquals(translationExtra, imgView.mMatrixHelper.mConfig.translationExtraTop);
     }
 
     public void testSetTranslationExtraRight() {
         final int translationExtra = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setTranslationExtra(0, 0, translationExtra, 0);
-        assertEquals(translationExtra, imgView.mMatrixHelper.mTranslationExtra.right);
+        assertEquals(translationExtra, imgView.mMatrixHelper.mConfig.translationExtraRight);
     }
 
     public void testSetTranslationExtraBottom() {
         final int translationExtra = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setTranslationExtra(0, 0, 0, translationExtra);
-        assertEquals(translationExtra, imgView.mMatrixHelper.mTranslationExtra.bottom);
+        assertEquals(translationExtra, imgView.mMatrixHelper.mConfig.translationExtraBottom);
     }
 
     public void testSetBitmapMinimumSizePixelsWidth() {
         final int size = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setBitmapMinimumSizePixels(size, 1);
-        assertEquals(size, imgView.mMatrixHelper.mBitmapMinSize.x);
+        assertEquals(size, imgView.mMatrixHelper.mConfig.minBitmapWidth);
     }
 
     public void testSetBitmapMinimumSizePixelsHeight() {
         final int size = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setBitmapMinimumSizePixels(1, size);
-        assertEquals(size, imgView.mMatrixHelper.mBitmapMinSize.y);
+        assertEquals(size, imgView.mMatrixHelper.mConfig.minBitmapHeight);
     }
 
     public void testSetBitmapMaximumSizePixelsWidth() {
         final int size = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setBitmapMaximumSizePixels(size, 1);
-        assertEquals(size, imgView.mMatrixHelper.mBitmapMaxSize.x);
+        assertEquals(size, imgView.mMatrixHelper.mConfig.maxBitmapWidth);
     }
 
     public void testSetBitmapMaximumSizePixelsHeight() {
         final int size = 5;
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setBitmapMaximumSizePixels(1, size);
-        assertEquals(size, imgView.mMatrixHelper.mBitmapMaxSize.y);
+        assertEquals(size, imgView.mMatrixHelper.mConfig.maxBitmapHeight);
     }
 
     public void testSetPanThreshold() {
@@ -631,7 +1277,7 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
     public void testPinAxesSmallerThanViewBounds() {
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.setPinAxesSmallerThanViewBounds(false);
-        assertFalse(imgView.mMatrixHelper.mPinAxesSmallerThanViewBounds);
+        assertFalse(imgView.mMatrixHelper.mConfig.pinAxesSmallerThanViewBounds);
     }
 
     public void testOnPinchToZoom() throws InterruptedException {
@@ -657,8 +1303,9 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
         imgView.mMatrixHelper = new PinchToZoomMatrixHelper(imgView) {
             @Override
-            public void translate(int focusX, int focusY, float dx, float dy) {
+            public PointF translate(int focusX, int focusY, float dx, float dy) {
                 latch.countDown();
+                return new PointF(dx, dy);
             }
         };
         imgView.onPan(0f, 0f);
@@ -705,27 +1352,29 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
                 latch.getCount());
     }
 
-    public void testOnSaveInstanceStateTouchHelper() throws InterruptedException {
+    public void testOnRestoreInstanceStateRequiresTranslationBoundsCheck() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.onRestoreInstanceState(imgView.onSaveInstanceState());
+        assertTrue(imgView.mRequiresTranslationBoundsCheck);
+    }
+
+    public void testOnRestoreInstanceStateUnknownVersion() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
-        imgView.mTouchHelper = new PinchToZoomTouchHelper(getContext(), imgView) {
+        imgView.mMatrixHelper = new PinchToZoomMatrixHelper(imgView) {
             @Override
-            void onSaveInstanceState(PinchToZoomSavedState state) {
+            void onRestoreInstanceState(PinchToZoomSavedState state) {
                 latch.countDown();
             }
         };
-        imgView.onSaveInstanceState();
+        PinchToZoomSavedState state = imgView.onSaveInstanceState();
+        state.version = PinchToZoomSavedState.VERSION + 1;
+        imgView.onRestoreInstanceState(state);
         latch.await(100, TimeUnit.MILLISECONDS);
-        assertEquals("onSaveInstanceState must call PinchToZoomTouchHelper.onSaveInstanceState", 0,
+        assertEquals("onRestoreInstanceState must ignore state from an unknown format version", 1,
                 latch.getCount());
     }
 
-    public void testOnRestoreInstanceStateRequiresTranslationBoundsCheck() {
-        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
-        imgView.onRestoreInstanceState(imgView.onSaveInstanceState());
-        assertTrue(imgView.mRequiresTranslationBoundsCheck);
-    }
-
     public void testOnRestoreInstanceStateMatrixHelper() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
@@ -741,19 +1390,491 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
                 0, latch.getCount());
     }
 
-    public void testOnRestoreInstanceStateTouchHelper() throws InterruptedException {
-        final CountDownLatch latch = new CountDownLatch(1);
+    public void testOnDetachedFromWindowPausesZoomWork() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mAttachedToWindow = true;
+        imgView.mZoomWorkPaused = false;
+        imgView.onDetachedFromWindow();
+        assertTrue(imgView.isZoomWorkPaused());
+    }
+
+    public void testHidingDropsOversizeTiles() {
         PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
-        imgView.mTouchHelper = new PinchToZoomTouchHelper(getContext(), imgView) {
+        Bitmap source = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        imgView.setImageBitmap(source);
+        imgView.mMaxLayerWidth = 64;
+        imgView.mMaxLayerHeight = 64;
+        imgView.mOversizeHelper = new PinchToZoomOversizeHelper(imgView) {
             @Override
-            void onRestoreInstanceState(PinchToZoomSavedState state) {
-                latch.countDown();
+            protected void executeInBackground(Runnable runnable) {
+                runnable.run();
+            }
+
+            @Override
+            protected void postToMainThread(Runnable runnable) {
+                runnable.run();
+            }
+
+            @Override
+            protected void addToFrameDriver() {
+                // Frames are stepped by the test
             }
         };
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        imgView.drawOversize(new Canvas(bitmap), imgView.getDrawable(), new Matrix());
+        imgView.mOversizeHelper.doFrame(0);
+        assertTrue(imgView.mOversizeHelper.mLevel.hasTiles());
+
+        // Hiding the view drops the tiles down to the preview
+        imgView.mAttachedToWindow = true;
+        imgView.mZoomWorkPaused = false;
+        imgView.setVisibility(View.INVISIBLE);
+        imgView.updateZoomWorkState();
+        assertTrue(imgView.isZoomWorkPaused());
+        assertNull(imgView.mOversizeHelper.mLevel);
+        assertNull(imgView.mOversizeHelper.mPreviousLevel);
+        assertNotNull(imgView.mOversizeHelper.mPreview);
+        assertEquals(PinchToZoomOversizeHelper.MODE_TILED, imgView.mOversizeHelper.getMode());
+        bitmap.recycle();
+        source.recycle();
+    }
+
+    public void testHidingDropsRegionStrips() throws Exception {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        Bitmap source = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.PNG, 100, out);
+        source.recycle();
+        byte[] data = out.toByteArray();
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+        PinchToZoomRegionDrawable d = new PinchToZoomRegionDrawable(decoder, false) {
+            @Override
+            protected void executeInBackground(Runnable runnable) {
+                runnable.run();
+            }
+
+            @Override
+            protected void postToMainThread(Runnable runnable) {
+                runnable.run();
+            }
+        };
+        imgView.setImageDrawable(d);
+        d.setBounds(0, 0, 100, 50);
+        Bitmap bitmap = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        d.draw(new Canvas(bitmap));
+        assertFalse(d.mStrips.isEmpty());
+
+        // Hiding the view frees the strips and stops the pass
+        imgView.mAttachedToWindow = true;
+        imgView.mZoomWorkPaused = false;
+        imgView.setVisibility(View.INVISIBLE);
+        imgView.updateZoomWorkState();
+        assertTrue(imgView.isZoomWorkPaused());
+        assertTrue(d.mStrips.isEmpty());
+        assertNull(d.mJob);
+        assertTrue(d.mPassRegion.isEmpty());
+        bitmap.recycle();
+        decoder.recycle();
+    }
+
+    public void testOnZoomWorkPausedTouchHelper() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mTouchHelper.mGestureTracker.mPointerCount = 1;
+        imgView.onZoomWorkPaused();
+
+        assertEquals("PinchToZoomTouchHelper should be reset when zoom work is paused.", 0,
+                imgView.mTouchHelper.mGestureTracker.mPointerCount);
+    }
+
+    public void testOnZoomWorkPausedRetainsMatrix() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor = 2f;
+        imgView.onZoomWorkPaused();
+
+        assertEquals(2f, imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor);
+    }
+
+    public void testOnZoomWorkResumedRequiresTranslationBoundsCheck() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.mLayoutState = PinchToZoomImageView.LAYOUT_STATE_USER_TRANSFORMED;
+        imgView.onZoomWorkResumed();
+
+        assertTrue(imgView.mRequiresTranslationBoundsCheck);
+    }
+
+    public void testOnZoomWorkResumedActualSize() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.onZoomWorkResumed();
+
+        assertFalse(imgView.mRequiresTranslationBoundsCheck);
+    }
+
+    public void testSetViewportKeyRequiresViewportRestore() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(createViewportStore());
+        imgView.setViewportKey("octopus");
+        assertTrue(imgView.mRequiresViewportRestore);
+    }
+
+    public void testSetViewportKeyNoStore() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportKey("octopus");
+        assertFalse(imgView.mRequiresViewportRestore);
+    }
+
+    public void testViewportRestoredForKey() {
+        PinchToZoomViewportStore store = createViewportStore();
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(store);
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.setViewportKey("octopus");
+        imgView.measure(spec, spec);
+        imgView.onPinchToZoom(1.5f, 100, 100);
+        imgView.onPan(-40, -30);
+        float[] expected = new float[9];
+        imgView.mMatrixHelper.mMatrix.getValues(expected);
+
+        // Leaving the image saves its viewport
+        imgView.setViewportKey(null);
+        store.flush();
+
+        PinchToZoomImageView newView = new PinchToZoomImageView(getContext());
+        newView.setViewportStore(store);
+        newView.setImageResource(R.drawable.octopus);
+        newView.setViewportKey("octopus");
+        newView.measure(spec, spec);
+
+        float[] actual = new float[9];
+        newView.mMatrixHelper.mMatrix.getValues(actual);
+        assertFalse(newView.mRequiresViewportRestore);
+        assertEquals(expected[Matrix.MSCALE_X], actual[Matrix.MSCALE_X], .001f);
+        assertEquals(expected[Matrix.MTRANS_X], actual[Matrix.MTRANS_X], .01f);
+        assertEquals(expected[Matrix.MTRANS_Y], actual[Matrix.MTRANS_Y], .01f);
+    }
+
+    public void testViewportRestoreWaitsForStore() {
+        final PinchToZoomViewportStore store = new PinchToZoomViewportStore(
+                new File(getContext().getCacheDir(), "viewport_wait_test")) {
+            @Override
+            public void preload() {
+                // Leave the log unread
+            }
+        };
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(store);
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.setViewportKey("octopus");
+        imgView.measure(spec, spec);
+
+        // The image is fitted without reading the store, and the lookup waits for the log
+        assertFalse(store.isLoaded());
+        assertEquals(PinchToZoomImageView.LAYOUT_STATE_FITTED, imgView.mLayoutState);
+        assertTrue(imgView.mRequiresViewportRestore);
+        assertTrue(store.mLoadedCallbacks.contains(imgView.mViewportLoadedCallback));
+
+        // Once the user moves the image, a late viewport is not applied
+        imgView.onPan(-10, -10);
+        imgView.restoreViewport();
+        assertFalse(imgView.mRequiresViewportRestore);
+    }
+
+    public void testDrawWaitsForViewportStore() {
+        File file = new File(getContext().getCacheDir(), "viewport_draw_test");
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        final PinchToZoomViewportStore store = new PinchToZoomViewportStore(file) {
+            @Override
+            public void preload() {
+                // Leave the log unread
+            }
+        };
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        final int[] draws = new int[1];
+        Bitmap source = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        BitmapDrawable d = new BitmapDrawable(getContext().getResources(), source) {
+            @Override
+            public void draw(Canvas canvas) {
+                draws[0]++;
+                super.draw(canvas);
+            }
+        };
+
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(store);
+        imgView.setImageDrawable(d);
+        imgView.setViewportKey("draw");
+        imgView.measure(spec, spec);
+        imgView.layout(0, 0, 500, 500);
+        Bitmap target = Bitmap.createBitmap(500, 500, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+
+        // The fitted image is not drawn while the saved viewport may still replace it
+        imgView.onDraw(canvas);
+        assertEquals(0, draws[0]);
+
+        // Once the log has been read, the lookup happens before the image is drawn
+        store.ensureLoaded();
+        imgView.onDraw(canvas);
+        assertFalse(imgView.mRequiresViewportRestore);
+        assertEquals(1, draws[0]);
+        target.recycle();
+        source.recycle();
+    }
+
+    public void testViewportRestorePrefetchesRegion() throws Exception {
+        PinchToZoomViewportStore store = createViewportStore();
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        Bitmap source = Bitmap.createBitmap(1000, 500, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.PNG, 100, out);
+        source.recycle();
+        byte[] data = out.toByteArray();
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(store);
+        imgView.setImageRegionDecoder(decoder);
+        imgView.setViewportKey("region");
+        imgView.measure(spec, spec);
+        imgView.onPinchToZoom(4f, 0, 0);
+        imgView.setViewportKey(null);
+        store.flush();
+
+        final ArrayList<Runnable> background = new ArrayList<Runnable>();
+        PinchToZoomRegionDrawable d = new PinchToZoomRegionDrawable(decoder, false) {
+            @Override
+            protected void executeInBackground(Runnable runnable) {
+                background.add(runnable);
+            }
+        };
+        PinchToZoomImageView newView = new PinchToZoomImageView(getContext());
+        newView.setViewportStore(store);
+        newView.setImageDrawable(d);
+        newView.setViewportKey("region");
+        newView.measure(spec, spec);
+
+        // Decoding of the restored viewport starts before the view has been laid out or drawn
+        Matrix matrix = newView.mMatrixHelper.mMatrix;
+        assertFalse(newView.mRequiresViewportRestore);
+        assertEquals(1, background.size());
+        assertSame(d.mJob, background.get(0));
+        assertFalse(d.mPrefetching);
+        assertEquals(PinchToZoomRegionDrawable.getSampleSize(matrix.mapRadius(1f)),
+                d.mPassSampleSize);
+        RectF visible = new RectF(0, 0, 500, 500);
+        Matrix inverse = new Matrix();
+        matrix.invert(inverse);
+        inverse.mapRect(visible);
+        Rect visibleRect = new Rect();
+        visible.roundOut(visibleRect);
+        assertTrue(visibleRect.intersect(0, 0, 1000, 500));
+        assertTrue(d.mPassRegion.contains(visibleRect));
+        d.release();
+        decoder.recycle();
+    }
+
+    public void testSetImageSavesViewport() {
+        PinchToZoomViewportStore store = createViewportStore();
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(store);
+        imgView.setImageResource(R.drawable.octopus);
+        imgView.setViewportKey("octopus");
+        imgView.measure(spec, spec);
+        imgView.setImageDrawable(null);
+
+        assertNotNull(store.get("octopus"));
+    }
+
+    public void testSaveViewportActualSize() {
+        PinchToZoomViewportStore store = createViewportStore();
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(store);
+        imgView.setViewportKey("octopus");
+        imgView.saveViewport();
+
+        assertNull("A viewport should not be saved before the image has been laid out",
+                store.get("octopus"));
+    }
+
+    public void testOnRestoreInstanceStateSkipsViewportRestore() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setViewportStore(createViewportStore());
+        imgView.setViewportKey("octopus");
         imgView.onRestoreInstanceState(imgView.onSaveInstanceState());
-        latch.await(100, TimeUnit.MILLISECONDS);
-        assertEquals("onSaveInstanceState must call PinchToZoomTouchHelper.onRestoreInstanceState",
-                0, latch.getCount());
+        assertFalse(imgView.mRequiresViewportRestore);
+    }
+
+    public void testResolveAttrsLightweight() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        assertTrue(imgView.mConfig.lightweight);
+        assertNull(imgView.mTouchHelper);
+        assertNull(imgView.mMatrixHelper);
+    }
+
+    public void testResolveAttrsLightweightDefault() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.no_attributes);
+        assertFalse(imgView.mConfig.lightweight);
+        assertNotNull(imgView.mTouchHelper);
+        assertNotNull(imgView.mMatrixHelper);
+    }
+
+    public void testResolveAttrsLightweightConfigured() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight_max_bmp_size);
+        assertNull(imgView.mTouchHelper);
+        assertNull(imgView.mMatrixHelper);
+        assertEquals(200, imgView.mConfig.maxBitmapWidth);
+        assertEquals(400, imgView.mConfig.maxBitmapHeight);
+    }
+
+    public void testLightweightOnMeasureDormantInitialScale() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+
+        assertNull(imgView.mMatrixHelper);
+        assertFalse(imgView.getImageMatrix().isIdentity());
+    }
+
+    public void testLightweightEnsureMatrixHelperMatchesDormantScale() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        Matrix dormant = new Matrix(imgView.getImageMatrix());
+
+        imgView.ensureMatrixHelper();
+        assertEquals(dormant, imgView.mMatrixHelper.mMatrix);
+        assertFalse(imgView.mMatrixHelper.isActualSizeZoomLevel());
+    }
+
+    public void testLightweightAnimateZoomToUntouched() throws Exception {
+        XmlPullParser parser = getContext().getResources().getLayout(R.layout.lightweight);
+        while (parser.next() != XmlPullParser.START_TAG) {
+            // Skip to the view element
+        }
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext(),
+                Xml.asAttributeSet(parser)) {
+            @Override
+            public boolean isShown() {
+                return true;
+            }
+
+            @Override
+            public int getWindowVisibility() {
+                return VISIBLE;
+            }
+        };
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.mAttachedToWindow = true;
+        imgView.updateZoomWorkState();
+
+        // Zoom work resumes although neither helper has been created
+        assertNull(imgView.mTouchHelper);
+        assertNull(imgView.mMatrixHelper);
+        assertFalse(imgView.isZoomWorkPaused());
+
+        imgView.mAnimationHelper = new PinchToZoomAnimationHelper(imgView) {
+            @Override
+            protected void addToFrameDriver() {
+                // Frames are not driven in this test
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+                // Frames are not driven in this test
+            }
+        };
+        imgView.mAnimationTarget = new Matrix();
+        imgView.animateZoomTo(4f, 250, 250);
+
+        // The zoom animates rather than jumping to the target
+        assertTrue(imgView.mAnimationHelper.isAnimating());
+        assertTrue(imgView.mMatrixHelper.mScaleHelper.mCurrentScaleFactor < 4f);
+
+        // Detaching pauses zoom work and stops the animation
+        imgView.mAttachedToWindow = false;
+        imgView.updateZoomWorkState();
+        assertTrue(imgView.isZoomWorkPaused());
+        assertFalse(imgView.mAnimationHelper.isAnimating());
+    }
+
+    public void testLightweightTouchCreatesTouchHelper() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        MotionEvent event = MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 1, 1, 0);
+        imgView.dispatchTouchEvent(event);
+        event.recycle();
+
+        assertNotNull(imgView.mTouchHelper);
+        assertEquals(1, imgView.mTouchHelper.mGestureTracker.mPointerCount);
+    }
+
+    public void testLightweightSetOnClickListener() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        imgView.setOnClickListener(mEmptyClickListener);
+        assertNull(imgView.mTouchHelper);
+
+        imgView.ensureTouchHelper();
+        assertEquals(mEmptyClickListener, imgView.mTouchHelper.mOnClickListener);
+        assertNull(imgView.mPendingOnClickListener);
+    }
+
+    public void testLightweightSetOnTouchListener() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        imgView.setOnTouchListener(mEmptyTouchListener);
+        assertNull(imgView.mTouchHelper);
+
+        imgView.ensureTouchHelper();
+        assertEquals(mEmptyTouchListener, imgView.mTouchHelper.mOnTouchListener);
+        assertNull(imgView.mPendingOnTouchListener);
+    }
+
+    public void testLightweightSetBitmapMaximumSizePixels() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        imgView.setBitmapMaximumSizePixels(200, 400);
+        assertNull(imgView.mMatrixHelper);
+
+        imgView.ensureMatrixHelper();
+        assertEquals(400, imgView.mMatrixHelper.mConfig.maxBitmapHeight);
+    }
+
+    public void testLightweightOnPinchToZoom() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        final int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+        imgView.measure(spec, spec);
+        imgView.onPinchToZoom(1.5f, 250, 250);
+        assertNotNull(imgView.mMatrixHelper);
+    }
+
+    public void testLightweightOnRestoreInstanceStateDormant() {
+        PinchToZoomImageView imgView = inflateFromResId(R.layout.lightweight);
+        Parcelable state = imgView.onSaveInstanceState();
+
+        PinchToZoomImageView newView = inflateFromResId(R.layout.lightweight);
+        newView.onRestoreInstanceState(state);
+        assertNull(newView.mMatrixHelper);
+    }
+
+    public void testResolveAttrsSharedConfig() {
+        PinchToZoomImageView first = inflateFromResId(R.layout.max_bmp_size);
+        PinchToZoomImageView second = inflateFromResId(R.layout.max_bmp_size);
+        assertSame(first.mConfig, second.mConfig);
+        assertSame(first.mConfig, first.mMatrixHelper.mConfig);
+    }
+
+    public void testSetPaddingSharedConfigUnchanged() {
+        PinchToZoomImageView first = inflateFromResId(R.layout.max_bmp_size);
+        PinchToZoomImageView second = inflateFromResId(R.layout.max_bmp_size);
+        first.setPadding(1, 2, 3, 4);
+
+        assertNotSame(first.mConfig, second.mConfig);
+        assertEquals(0, second.mConfig.paddingLeft);
+        assertEquals(0, second.mMatrixHelper.mConfig.paddingLeft);
     }
 
     public void testOnRestoreInstanceStateIllegal() {
@@ -766,6 +1887,13 @@ public class PinchToZoomImageViewTest extends AndroidTestCase {
         }
     }
 
+    private PinchToZoomViewportStore createViewportStore() {
+        File file = new File(getContext().getCacheDir(), "viewport_store_view_test");
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        return new PinchToZoomViewportStore(file);
+    }
+
     private int getDpFromPx(int px) {
         return Math.round(px * getContext().getResources().getDisplayMetrics().density);
     }
@@ -0,0 +1,154 @@
+package com.jameskelso.android.widget;
+
+import android.test.AndroidTestCase;
+
+public class PinchToZoomInputResamplerTest extends AndroidTestCase {
+    private PinchToZoomInputResampler mResampler;
+    private final float[] mPan = new float[3];
+    private final float[] mZoom = new float[6];
+    private final int[] mCallbacks = new int[2];
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        for (int i = 0; i < mPan.length; i++) {
+            mPan[i] = 0;
+        }
+        for (int i = 0; i < mZoom.length; i++) {
+            mZoom[i] = 0;
+        }
+        mCallbacks[0] = 0;
+        mCallbacks[1] = 0;
+        mResampler = new PinchToZoomInputResampler(
+                new PinchToZoomTouchHelperTest.EmptyTouchHelperListener() {
+                    @Override
+                    public void onPinchToZoom(float desiredScaleFactor, float focusX,
+                                              float focusY) {
+                        fail("PinchToZoomInputResampler should pass zooms on together with " +
+                                "their pan");
+                    }
+
+                    @Override
+                    public void onPan(float dx, float dy) {
+                        mPan[0] += dx;
+                        mPan[1] += dy;
+                        mPan[2]++;
+                    }
+
+                    @Override
+                    public void onPinchToZoomAndPan(float desiredScaleFactor, float focusX,
+                                                    float focusY, float dx, float dy) {
+                        mZoom[0] = desiredScaleFactor;
+                        mZoom[1] = focusX;
+                        mZoom[2] = focusY;
+                        mZoom[3] = dx;
+                        mZoom[4] = dy;
+                        mZoom[5]++;
+                    }
+                }) {
+            @Override
+            protected void addToFrameDriver() {
+                mCallbacks[0]++;
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+                mCallbacks[1]++;
+            }
+        };
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mResampler = null;
+        super.tearDown();
+    }
+
+    private static long frameTime(long millis) {
+        return millis * 1000000;
+    }
+
+    public void testAddMoveSchedulesOnce() {
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 100);
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 108);
+        assertEquals(1, mCallbacks[0]);
+        assertEquals(0f, mPan[2]);
+    }
+
+    public void testDoFrameAppliesOnePan() {
+        mResampler.addMove(1.0f, 0, 0, 10, 5, 100);
+        mResampler.addMove(1.0f, 0, 0, 10, 5, 104);
+        mResampler.addMove(1.0f, 0, 0, 10, 5, 108);
+        assertFalse(mResampler.doFrame(frameTime(200)));
+        assertEquals(1f, mPan[2]);
+        assertEquals(30f, mPan[0]);
+        assertEquals(15f, mPan[1]);
+    }
+
+    public void testDoFrameInterpolates() {
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 100);
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 116);
+
+        assertTrue(mResampler.doFrame(frameTime(108 + PinchToZoomInputResampler.RESAMPLE_LATENCY)));
+        assertEquals(15f, mPan[0], .01f);
+
+        assertFalse(mResampler.doFrame(frameTime(200)));
+        assertEquals(20f, mPan[0], .01f);
+        assertEquals(2f, mPan[2]);
+    }
+
+    public void testDoFrameBeforePreviousMove() {
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 100);
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 116);
+        assertTrue(mResampler.doFrame(frameTime(90)));
+        assertEquals(10f, mPan[0], .01f);
+    }
+
+    public void testDoFrameComposesZooms() {
+        mResampler.addMove(2.0f, 50, 50, 0, 0, 100);
+        mResampler.addMove(2.0f, 0, 0, 10, 0, 100);
+        assertFalse(mResampler.doFrame(frameTime(200)));
+
+        // 2 * (x - 50) + 50 followed by 2 * x + 10 is 4 * x - 90
+        assertEquals(1f, mZoom[5]);
+        assertEquals(4f, mZoom[0], .001f);
+        assertEquals(0f, mZoom[1]);
+        assertEquals(0f, mZoom[2]);
+        assertEquals(-90f, mZoom[3], .01f);
+        assertEquals(-100f, mZoom[4], .01f);
+        assertEquals(0f, mPan[2]);
+    }
+
+    public void testDoFrameNotScheduled() {
+        assertFalse(mResampler.doFrame(frameTime(200)));
+        assertEquals(0f, mPan[2]);
+    }
+
+    public void testFlush() {
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 100);
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 116);
+        mResampler.flush();
+        assertEquals(20f, mPan[0]);
+        assertEquals(1, mCallbacks[1]);
+        assertFalse(mResampler.mScheduled);
+
+        // Later moves start from an empty running transform
+        mResampler.addMove(1.0f, 0, 0, 5, 0, 130);
+        mResampler.flush();
+        assertEquals(25f, mPan[0]);
+    }
+
+    public void testFlushNothingPending() {
+        mResampler.flush();
+        assertEquals(0f, mPan[2]);
+        assertEquals(0, mCallbacks[1]);
+    }
+
+    public void testCancel() {
+        mResampler.addMove(1.0f, 0, 0, 10, 0, 100);
+        mResampler.cancel();
+        assertEquals(1, mCallbacks[1]);
+        assertFalse(mResampler.doFrame(frameTime(200)));
+        assertEquals(0f, mPan[2]);
+    }
+}
@@ -0,0 +1,67 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.drawable.Drawable;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+
+import com.jameskelso.android.tests.R;
+
+/**
+ * Counts how many times the initial fit runs over many measure passes, compared with the number
+ * of passes on which the previous check (a zoom level of exactly 1.0) would have fitted the image
+ * again. Results are written to logcat.
+ */
+public class PinchToZoomLayoutBenchmark extends AndroidTestCase {
+    private static final String TAG = "PinchToZoomBenchmark";
+    private static final int PASSES = 1000;
+
+    public void testMeasurePassesFittedScaleOne() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+        Drawable d = imgView.getDrawable();
+
+        // A view the same size as the image fits it at a zoom level of exactly 1.0
+        int fits = runPasses("fitted scale 1.0", imgView, d.getIntrinsicWidth(),
+                d.getIntrinsicHeight(), d.getIntrinsicWidth(), d.getIntrinsicHeight());
+        assertEquals(1, fits);
+    }
+
+    public void testMeasurePassesAlternatingSize() {
+        PinchToZoomImageView imgView = new PinchToZoomImageView(getContext());
+        imgView.setImageResource(R.drawable.octopus);
+
+        // As a parent measuring its children twice with different constraints would
+        runPasses("alternating size", imgView, 500, 500, 500, 400);
+    }
+
+    private int runPasses(String name, PinchToZoomImageView imgView, int width1, int height1,
+                           int width2, int height2) {
+        final int[] fits = new int[1];
+        imgView.mMatrixHelper = new PinchToZoomMatrixHelper(imgView) {
+            @Override
+            void performInitialScaleAndTranslate(int width, int height) {
+                fits[0]++;
+                super.performInitialScaleAndTranslate(width, height);
+            }
+        };
+
+        int previousFits = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < PASSES; i++) {
+            if (imgView.mMatrixHelper.isActualSizeZoomLevel()) {
+                previousFits++;
+            }
+            int width = i % 2 == 0 ? width1 : width2;
+            int height = i % 2 == 0 ? height1 : height2;
+            imgView.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        }
+        long nanos = System.nanoTime() - start;
+
+        Log.i(TAG, "Layout " + name + ": " + PASSES + " measure passes, fits=" + fits[0]
+                + ", fits by zoom level check=" + previousFits + ", "
+                + (nanos / PASSES) + " ns/pass");
+        return fits[0];
+    }
+}
@@ -0,0 +1,76 @@
+package com.jameskelso.android.widget;
+
+import android.test.AndroidTestCase;
+
+public class PinchToZoomLevelSelectorTest extends AndroidTestCase {
+    private PinchToZoomLevelSelector mSelector;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mSelector = new PinchToZoomLevelSelector();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mSelector = null;
+        super.tearDown();
+    }
+
+    public void testSelectFirst() {
+        assertEquals(1, mSelector.select(.3f, 4, 0));
+        assertFalse(mSelector.isSwitchPending());
+    }
+
+    public void testSelectZoomedIn() {
+        assertEquals(0, mSelector.select(4f, 4, 0));
+    }
+
+    public void testSelectMaxLevel() {
+        assertEquals(2, mSelector.select(.001f, 2, 0));
+        assertEquals(2, mSelector.select(.0001f, 2, 1000));
+        assertFalse(mSelector.isSwitchPending());
+    }
+
+    public void testSelectWithinHysteresis() {
+        mSelector.select(.3f, 4, 0);
+
+        // Ideal level .8, within a quarter of a level of level 1
+        assertEquals(1, mSelector.select(scaleForLevel(.8f), 4, 10));
+        assertFalse(mSelector.isSwitchPending());
+    }
+
+    public void testSelectDwell() {
+        mSelector.select(.3f, 4, 0);
+
+        // Ideal level .7 wants level 0, but only once it has been wanted for the dwell time
+        assertEquals(1, mSelector.select(scaleForLevel(.7f), 4, 100));
+        assertTrue(mSelector.isSwitchPending());
+        assertEquals(1, mSelector.select(scaleForLevel(.6f), 4,
+                100 + PinchToZoomLevelSelector.DWELL_TIME - 1));
+        assertEquals(0, mSelector.select(scaleForLevel(.6f), 4,
+                100 + PinchToZoomLevelSelector.DWELL_TIME));
+        assertFalse(mSelector.isSwitchPending());
+    }
+
+    public void testSelectReturnToBandCancelsSwitch() {
+        mSelector.select(.3f, 4, 0);
+        mSelector.select(scaleForLevel(.7f), 4, 100);
+        assertTrue(mSelector.isSwitchPending());
+
+        assertEquals(1, mSelector.select(scaleForLevel(1.5f), 4, 1000));
+        assertFalse(mSelector.isSwitchPending());
+        assertEquals(1, mSelector.select(scaleForLevel(.7f), 4, 1001));
+        assertTrue(mSelector.isSwitchPending());
+    }
+
+    public void testReset() {
+        mSelector.select(.3f, 4, 0);
+        mSelector.reset();
+        assertEquals(3, mSelector.select(.1f, 4, 10));
+    }
+
+    private static float scaleForLevel(float level) {
+        return (float) Math.pow(2, -level);
+    }
+}
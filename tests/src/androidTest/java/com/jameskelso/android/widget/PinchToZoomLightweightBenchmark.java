@@ -0,0 +1,83 @@
+package com.jameskelso.android.widget;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import com.jameskelso.android.tests.R;
+
+/**
+ * Compares the inflation time and retained heap of 500 lightweight views against 500 views that
+ * create their touch and zoom machinery up front, as the cells of a grid would. Results are
+ * written to logcat.
+ */
+public class PinchToZoomLightweightBenchmark extends AndroidTestCase {
+    private static final String TAG = "PinchToZoomBenchmark";
+    private static final int VIEW_COUNT = 500;
+
+    public void testInflationTime() {
+        // Warm up the inflater and the drawable cache
+        inflateViews(R.layout.image_resource);
+        inflateViews(R.layout.lightweight);
+
+        long start = System.nanoTime();
+        inflateViews(R.layout.image_resource);
+        long regularNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        inflateViews(R.layout.lightweight);
+        long lightweightNanos = System.nanoTime() - start;
+
+        Log.i(TAG, "Inflate+measure " + VIEW_COUNT + " views: lightweight="
+                + (lightweightNanos / 1000000) + " ms, regular=" + (regularNanos / 1000000)
+                + " ms");
+    }
+
+    public void testRetainedHeap() {
+        inflateViews(R.layout.image_resource);
+
+        long before = usedHeap();
+        PinchToZoomImageView[] regular = inflateViews(R.layout.image_resource);
+        long regularBytes = usedHeap() - before;
+
+        before = usedHeap();
+        PinchToZoomImageView[] lightweight = inflateViews(R.layout.lightweight);
+        long lightweightBytes = usedHeap() - before;
+
+        Log.i(TAG, "Retained heap per view: lightweight=" + (lightweightBytes / VIEW_COUNT)
+                + " bytes, regular=" + (regularBytes / VIEW_COUNT) + " bytes");
+
+        for (PinchToZoomImageView view : lightweight) {
+            assertNull(view.mTouchHelper);
+            assertNull(view.mMatrixHelper);
+        }
+        assertEquals(VIEW_COUNT, regular.length);
+    }
+
+    private PinchToZoomImageView[] inflateViews(int resourceId) {
+        LayoutInflater inflater = LayoutInflater.from(getContext());
+        final int spec = View.MeasureSpec.makeMeasureSpec(200, View.MeasureSpec.EXACTLY);
+
+        PinchToZoomImageView[] views = new PinchToZoomImageView[VIEW_COUNT];
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            views[i] = (PinchToZoomImageView) inflater.inflate(resourceId, null, false);
+            views[i].measure(spec, spec);
+        }
+        return views;
+    }
+
+    /**
+     * Java and native heap in use after a garbage collection. The native heap is included because
+     * each {@link android.graphics.Matrix} holds a native allocation.
+     */
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+}
@@ -2,7 +2,7 @@ package com.jameskelso.android.widget;
 
 import android.graphics.Matrix;
 import android.graphics.Point;
-import android.graphics.Rect;
+import android.graphics.PointF;
 import android.os.Bundle;
 import android.test.AndroidTestCase;
 
@@ -136,6 +136,85 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
         assertEquals("scale should call PinchToZoomScaleHelper.scale", 0, latch.getCount());
     }
 
+    public void testScaleAndTranslateMatrix() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        mHelper.scaleAndTranslate(100, 100, 2f, 50, 50, -10, -10);
+
+        Matrix expected = new Matrix();
+        expected.setScale(2f, 2f, 50, 50);
+        expected.postTranslate(-10, -10);
+        assertEquals(expected, mHelper.mMatrix);
+        assertEquals(0f, mHelper.mPendingTranslationX);
+        assertEquals(0f, mHelper.mPendingTranslationY);
+    }
+
+    public void testScaleAndTranslateNotifiesOnce() {
+        final int[] calls = new int[1];
+        mHelper = new PinchToZoomMatrixHelper(
+                new PinchToZoomMatrixHelper.OnPinchToZoomMatrixChangeListener() {
+                    @Override
+                    public void onMatrixChanged(Matrix imageMatrix) {
+                        calls[0]++;
+                    }
+                });
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        mHelper.scaleAndTranslate(100, 100, 2f, 50, 50, -10, -10);
+        assertEquals(1, calls[0]);
+    }
+
+    public void testGetZoomTarget() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        Matrix target = new Matrix();
+        mHelper.getZoomTarget(100, 100, 2f, 50, 50, target);
+
+        Matrix expected = new Matrix();
+        expected.setScale(2f, 2f);
+        expected.postTranslate(-50, -50);
+        assertEquals(expected, target);
+        assertTrue("getZoomTarget should not change the image matrix",
+                mHelper.mMatrix.isIdentity());
+    }
+
+    public void testGetCenterTarget() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        Matrix target = new Matrix();
+        mHelper.getCenterTarget(100, 100, 250, 300, target);
+
+        Matrix expected = new Matrix();
+        expected.setTranslate(-200, -250);
+        assertEquals(expected, target);
+    }
+
+    public void testGetCenterTargetTranslationBounds() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        Matrix target = new Matrix();
+        mHelper.getCenterTarget(100, 100, 0, 500, target);
+
+        Matrix expected = new Matrix();
+        expected.setTranslate(0, -400);
+        assertEquals(expected, target);
+    }
+
+    public void testSetTransform() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        mHelper.setTransform(100, 100, 2f, -100, -150);
+
+        Matrix expected = new Matrix();
+        expected.setScale(2f, 2f);
+        expected.postTranslate(-100, -150);
+        assertEquals(expected, mHelper.mMatrix);
+        assertEquals(2f, mHelper.mScaleHelper.mCurrentScaleFactor);
+    }
+
+    public void testSetTransformMatrix() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        Matrix transform = new Matrix();
+        transform.setScale(2f, 2f);
+        transform.postTranslate(-100, -150);
+        mHelper.setTransform(100, 100, transform);
+        assertEquals(transform, mHelper.mMatrix);
+    }
+
     public void testTranslateUpdateMatrixState() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
         mHelper = new PinchToZoomMatrixHelper(mEmptyMatrixListener) {
@@ -153,8 +232,9 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
         final CountDownLatch latch = new CountDownLatch(1);
         mHelper.mTranslationHelper = new PinchToZoomTranslationHelper(mHelper) {
             @Override
-            void translate(float dx, float dy, PinchToZoomMatrixState state) {
+            PointF translate(float dx, float dy, PinchToZoomMatrixState state) {
                 latch.countDown();
+                return new PointF(dx, dy);
             }
         };
         mHelper.translate(0, 0, 0, 0);
@@ -227,30 +307,41 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
     public void testSetPaddingLeft() {
         final int padding = 1;
         mHelper.setPadding(padding, 0, 0, 0);
-        assertEquals(padding, mHelper.mPadding.left);
+        assertEquals(padding, mHelper.mConfig.paddingLeft);
     }
 
     public void testSetPaddingRight() {
         final int padding = 1;
         mHelper.setPadding(0, 0, padding, 0);
-        assertEquals(padding, mHelper.mPadding.right);
+        assertEquals(padding, mHelper.mConfig.paddingRight);
     }
 
     public void testSetPaddingTop() {
         final int padding = 1;
         mHelper.setPadding(0, padding, 0, 0);
-        assertEquals(padding, mHelper.mPadding.top);
+        assertEquals(padding, mHelper.mConfig.paddingTop);
     }
 
     public void testSetPaddingBottom() {
         final int padding = 1;
         mHelper.setPadding(0, 0, 0, padding);
-        assertEquals(padding, mHelper.mPadding.bottom);
+        assertEquals(padding, mHelper.mConfig.paddingBottom);
     }
 
     public void testSetCropToPadding() {
         mHelper.setCropToPadding(true);
-        assertTrue(mHelper.mCropToPadding);
+        assertTrue(mHelper.mConfig.cropToPadding);
+    }
+
+    public void testSetConfig() {
+        PinchToZoomConfig config = PinchToZoomConfig.DEFAULT.withPanThreshold(12);
+        mHelper.setConfig(config);
+        assertSame(config, mHelper.mConfig);
+    }
+
+    public void testSetPaddingDefaultUnchanged() {
+        mHelper.setPadding(1, 2, 3, 4);
+        assertEquals(0, PinchToZoomConfig.DEFAULT.paddingLeft);
     }
 
     public void testSetSrcBitmapSizeWidth() {
@@ -268,25 +359,25 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
     public void testSetTranslationExtraLeft() {
         final int translationExtra = 1;
         mHelper.setTranslationExtra(translationExtra, 0, 0, 0);
-        assertEquals(translationExtra, mHelper.mTranslationExtra.left);
+        assertEquals(translationExtra, mHelper.mConfig.translationExtraLeft);
     }
 
     public void testSetTranslationExtraTop() {
         final int translationExtra = 1;
         mHelper.setTranslationExtra(0, translationExtra, 0, 0);
-        assertEquals(translationExtra, mHelper.mTranslationExtra.top);
+        assertEquals(translationExtra, mHelper.mConfig.translationExtraTop);
     }
 
     public void testSetTranslationExtraRight() {
         final int translationExtra = 1;
         mHelper.setTranslationExtra(0, 0, translationExtra, 0);
-        assertEquals(translationExtra, mHelper.mTranslationExtra.right);
+        assertEquals(translationExtra, mHelper.mConfig.translationExtraRight);
     }
 
     public void testSetTranslationExtraBottom() {
         final int translationExtra = 1;
         mHelper.setTranslationExtra(0, 0, 0, translationExtra);
-        assertEquals(translationExtra, mHelper.mTranslationExtra.bottom);
+        assertEquals(translationExtra, mHelper.mConfig.translationExtraBottom);
     }
 
     public void testSetTranslationExtraLeftIllegal() {
@@ -332,13 +423,13 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
     public void testSetBitmapMinimumSizeWidth() {
         final int minimumSize = 2;
         mHelper.setBitmapMinimumSize(minimumSize, 1);
-        assertEquals(minimumSize, mHelper.mBitmapMinSize.x);
+        assertEquals(minimumSize, mHelper.mConfig.minBitmapWidth);
     }
 
     public void testSetBitmapMinimumSizeHeight() {
         final int minimumSize = 2;
         mHelper.setBitmapMinimumSize(1, minimumSize);
-        assertEquals(minimumSize, mHelper.mBitmapMinSize.y);
+        assertEquals(minimumSize, mHelper.mConfig.minBitmapHeight);
     }
 
     public void testSetBitmapMinimumSizeWidthIllegal() {
@@ -364,18 +455,18 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
     public void testSetBitmapMaximumSizeWidth() {
         final int maxSize = 500;
         mHelper.setBitmapMaximumSize(maxSize, 1);
-        assertEquals(maxSize, mHelper.mBitmapMaxSize.x);
+        assertEquals(maxSize, mHelper.mConfig.maxBitmapWidth);
     }
 
     public void testSetBitmapMaximumSizeHeight() {
         final int maxSize = 500;
         mHelper.setBitmapMaximumSize(1, maxSize);
-        assertEquals(maxSize, mHelper.mBitmapMaxSize.y);
+        assertEquals(maxSize, mHelper.mConfig.maxBitmapHeight);
     }
 
     public void testSetPinAxesSmallerThanViewBounds() {
         mHelper.setPinAxesSmallerThanViewBounds(false);
-        assertFalse(mHelper.mPinAxesSmallerThanViewBounds);
+        assertFalse(mHelper.mConfig.pinAxesSmallerThanViewBounds);
     }
 
     public void testUpdateMatrixStateScaledBitmapWidth() {
@@ -483,13 +574,13 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
     }
 
     public void testUpdateMatrixStateCropToPadding() {
-        mHelper.mCropToPadding = true;
+        mHelper.setCropToPadding(true);
         mHelper.updateMatrixState(0, 0);
         assertTrue(mHelper.mMatrixState.cropToPadding);
     }
 
     public void testUpdateMatrixStatePinAxesSmallerThanViewBounds() {
-        mHelper.mPinAxesSmallerThanViewBounds = true;
+        mHelper.setPinAxesSmallerThanViewBounds(true);
         mHelper.updateMatrixState(0, 0);
         assertTrue(mHelper.mMatrixState.pinAxesSmallerThanViewBounds);
     }
@@ -510,28 +601,28 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
 
     public void testUpdateMatrixStateMinBitmapWidth() {
         final int size = 47;
-        mHelper.mBitmapMinSize.x = size;
+        mHelper.setBitmapMinimumSize(size, 1);
         mHelper.updateMatrixState(0, 0);
         assertEquals(size, mHelper.mMatrixState.minBitmapWidth);
     }
 
     public void testUpdateMatrixStateMinBitmapHeight() {
         final int size = 47;
-        mHelper.mBitmapMinSize.y = size;
+        mHelper.setBitmapMinimumSize(1, size);
         mHelper.updateMatrixState(0, 0);
         assertEquals(size, mHelper.mMatrixState.minBitmapHeight);
     }
 
     public void testUpdateMatrixStateMaxBitmapWidth() {
         final int size = 33;
-        mHelper.mBitmapMaxSize.x = size;
+        mHelper.setBitmapMaximumSize(size, 0);
         mHelper.updateMatrixState(0, 0);
         assertEquals(size, mHelper.mMatrixState.maxBitmapWidth);
     }
 
     public void testUpdateMatrixStateMaxBitmapHeight() {
         final int size = 33;
-        mHelper.mBitmapMaxSize.y = size;
+        mHelper.setBitmapMaximumSize(0, size);
         mHelper.updateMatrixState(0, 0);
         assertEquals(size, mHelper.mMatrixState.maxBitmapHeight);
     }
@@ -714,60 +805,32 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
                 "mMatrixChangedListener.onMatrixChanged", 0, latch.getCount());
     }
 
-    public void testOnSaveInstanceStateCropToPadding() {
-        mHelper.mCropToPadding = true;
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.onSaveInstanceState(state);
-        assertTrue(state.cropToPadding);
-    }
-
-    public void testOnSaveInstanceStatePinAxesSmallerThanViewBounds() {
-        mHelper.mPinAxesSmallerThanViewBounds = true;
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.onSaveInstanceState(state);
-        assertTrue(state.pinAxesSmallerThanViewBounds);
-    }
-
-    public void testOnSaveInstanceStatePadding() {
-        mHelper.mPadding = new Rect(1, 2, 3, 4);
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mPadding, state.padding);
-    }
-
-    public void testOnSaveInstanceStateTranslationExtra() {
-        mHelper.mTranslationExtra = new Rect(1, 2, 3, 4);
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mTranslationExtra, state.translationExtra);
-    }
-
-    public void testOnSaveInstanceStateSrcBitmapSize() {
+    public void testOnSaveInstanceStateSrcBitmapWidth() {
         mHelper.mSrcBitmapSize = new Point(1, 2);
         PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
         mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mSrcBitmapSize, state.srcBitmapSize);
+        assertEquals(mHelper.mSrcBitmapSize.x, state.srcBitmapWidth);
     }
 
-    public void testOnSaveInstanceStateBitmapMinSize() {
-        mHelper.mBitmapMinSize = new Point(1, 2);
+    public void testOnSaveInstanceStateSrcBitmapHeight() {
+        mHelper.mSrcBitmapSize = new Point(1, 2);
         PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
         mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mBitmapMinSize, state.bitmapMinSize);
+        assertEquals(mHelper.mSrcBitmapSize.y, state.srcBitmapHeight);
     }
 
-    public void testOnSaveInstanceStateBitmapMaxSize() {
-        mHelper.mBitmapMaxSize = new Point(1, 2);
+    public void testOnSaveInstanceStateTranslationX() {
+        mHelper.mMatrix.postTranslate(3, 4);
         PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
         mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mBitmapMaxSize, state.bitmapMaxSize);
+        assertEquals(3f, state.translationX);
     }
 
-    public void testOnSaveInstanceStateMatrix() {
-        mHelper.mMatrix.postScale(2, 2);
+    public void testOnSaveInstanceStateTranslationY() {
+        mHelper.mMatrix.postTranslate(3, 4);
         PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
         mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mMatrix, state.matrix);
+        assertEquals(4f, state.translationY);
     }
 
     public void testOnSaveInstanceStateScaleHelper() throws InterruptedException {
@@ -784,75 +847,167 @@ public class PinchToZoomMatrixHelperTest extends AndroidTestCase {
                 0, latch.getCount());
     }
 
-    public void testOnRestoreInstanceStateCropToPadding() {
+    public void testOnRestoreInstanceStateSrcBitmapSize() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.cropToPadding = true;
+        state.srcBitmapWidth = 1;
+        state.srcBitmapHeight = 2;
         mHelper.onRestoreInstanceState(state);
-        assertTrue(state.cropToPadding);
+        assertEquals(new Point(1, 2), mHelper.mSrcBitmapSize);
     }
 
-    public void testOnRestoreInstanceStatePinAxesSmallerThanViewBounds() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.pinAxesSmallerThanViewBounds = true;
-        mHelper.onRestoreInstanceState(state);
-        assertTrue(state.pinAxesSmallerThanViewBounds);
+    public void testOnRestoreInstanceStateConfiguration() {
+        mHelper.setPadding(1, 2, 3, 4);
+        mHelper.setTranslationExtra(5, 6, 7, 8);
+        PinchToZoomConfig config = mHelper.mConfig;
+        mHelper.onRestoreInstanceState(new PinchToZoomSavedState(new Bundle()));
+        assertSame("onRestoreInstanceState should not replace configuration rebuilt from XML",
+                config, mHelper.mConfig);
+        assertEquals(1, mHelper.mConfig.paddingLeft);
+        assertEquals(4, mHelper.mConfig.paddingBottom);
+        assertEquals(5, mHelper.mConfig.translationExtraLeft);
+        assertEquals(8, mHelper.mConfig.translationExtraBottom);
     }
 
-    public void testOnRestoreInstanceStatePadding() {
+    public void testOnRestoreInstanceStateMatrix() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.padding = new Rect(1, 2, 3, 4);
+        state.currentScaleFactor = 2f;
+        state.translationX = 3f;
+        state.translationY = 4f;
         mHelper.onRestoreInstanceState(state);
-        assertEquals(state.padding, mHelper.mPadding);
-    }
 
-    public void testOnRestoreInstanceStateTranslationExtra() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.translationExtra = new Rect(1, 2, 3, 4);
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.translationExtra, mHelper.mTranslationExtra);
+        Matrix expected = new Matrix();
+        expected.postScale(2, 2);
+        expected.postTranslate(3, 4);
+        assertEquals(expected, mHelper.mMatrix);
     }
 
-    public void testOnRestoreInstanceStateSrcBitmapSize() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.srcBitmapSize = new Point(1, 2);
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.srcBitmapSize, mHelper.mSrcBitmapSize);
+    public void testOnRestoreInstanceStateScaleHelper() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mHelper.mScaleHelper = new PinchToZoomScaleHelper(mEmptyScaleListener) {
+            @Override
+            void onRestoreInstanceState(PinchToZoomSavedState state) {
+                latch.countDown();
+            }
+        };
+        mHelper.onRestoreInstanceState(new PinchToZoomSavedState(new Bundle()));
+        latch.await(100, TimeUnit.MILLISECONDS);
+        assertEquals("onSaveInstanceState should call PinchToZoomScaleHelper" +
+                ".onRestoreInstanceState", 0, latch.getCount());
     }
 
-    public void testOnRestoreInstanceStateBitmapMinSize() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.bitmapMinSize = new Point(1, 2);
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.bitmapMinSize, mHelper.mBitmapMinSize);
+    public void testOnSaveViewportSrcBitmapSize() {
+        mHelper.mSrcBitmapSize = new Point(1, 2);
+        mHelper.mMatrix.setScale(2, 2);
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        mHelper.onSaveViewport(viewport, 100, 100);
+        assertEquals(1, viewport.srcBitmapWidth);
+        assertEquals(2, viewport.srcBitmapHeight);
+    }
+
+    public void testOnSaveViewportScaleFactor() {
+        mHelper.mMatrix.setScale(2, 2);
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        mHelper.onSaveViewport(viewport, 100, 100);
+        assertEquals(2f, viewport.scaleFactor);
+    }
+
+    public void testOnSaveViewportFocus() {
+        mHelper.mMatrix.setScale(2, 2);
+        mHelper.mMatrix.postTranslate(-50, -100);
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        mHelper.onSaveViewport(viewport, 100, 200);
+        assertEquals(50f, viewport.focusX);
+        assertEquals(100f, viewport.focusY);
+    }
+
+    public void testOnRestoreViewportMatrix() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        viewport.srcBitmapWidth = 500;
+        viewport.srcBitmapHeight = 500;
+        viewport.scaleFactor = 1.5f;
+        viewport.focusX = 250;
+        viewport.focusY = 200;
+        assertTrue(mHelper.onRestoreViewport(viewport, 100, 100));
+
+        Matrix expected = new Matrix();
+        expected.setScale(1.5f, 1.5f);
+        expected.postTranslate(50 - 375, 50 - 300);
+        assertEquals(expected, mHelper.mMatrix);
+        assertEquals(1.5f, mHelper.mScaleHelper.mCurrentScaleFactor);
+    }
+
+    public void testOnRestoreViewportRoundTrip() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        mHelper.mMatrix.setScale(1.5f, 1.5f);
+        mHelper.mMatrix.postTranslate(-120, -80);
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        mHelper.onSaveViewport(viewport, 100, 100);
+
+        PinchToZoomMatrixHelper restored = new PinchToZoomMatrixHelper(mEmptyMatrixListener);
+        restored.mSrcBitmapSize = new Point(500, 500);
+        restored.onRestoreViewport(viewport, 100, 100);
+        assertEquals(mHelper.mMatrix, restored.mMatrix);
+    }
+
+    public void testOnRestoreViewportDifferentSrcBitmapSize() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        viewport.srcBitmapWidth = 400;
+        viewport.srcBitmapHeight = 500;
+        viewport.scaleFactor = 1.5f;
+        assertFalse(mHelper.onRestoreViewport(viewport, 100, 100));
+        assertTrue(mHelper.mMatrix.isIdentity());
     }
 
-    public void testOnRestoreInstanceStateBitmapMaxSize() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.bitmapMaxSize = new Point(1, 2);
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.bitmapMaxSize, mHelper.mBitmapMaxSize);
+    public void testOnRestoreViewportCheckTranslationBounds() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mHelper = new PinchToZoomMatrixHelper(mEmptyMatrixListener) {
+            @Override
+            void checkTranslationBounds(int viewMeasuredWidth, int viewMeasuredHeight) {
+                latch.countDown();
+            }
+        };
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        viewport.srcBitmapWidth = 500;
+        viewport.srcBitmapHeight = 500;
+        viewport.scaleFactor = 1.5f;
+        mHelper.onRestoreViewport(viewport, 100, 100);
+        latch.await(100, TimeUnit.MILLISECONDS);
+        assertEquals("onRestoreViewport should call checkTranslationBounds", 0,
+                latch.getCount());
     }
 
-    public void testOnRestoreInstanceStateMatrix() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.matrix = new Matrix();
-        state.matrix.postScale(2, 2);
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.matrix, mHelper.mMatrix);
+    public void testOnViewSizeChangedMatrix() {
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        mHelper.mMatrix.setScale(1.5f, 1.5f);
+        mHelper.mMatrix.postTranslate(50 - 375, 50 - 300);
+        mHelper.onViewSizeChanged(100, 100, 200, 100);
+
+        Matrix expected = new Matrix();
+        expected.setScale(1.5f, 1.5f);
+        expected.postTranslate(100 - 375, 50 - 300);
+        assertEquals(expected, mHelper.mMatrix);
+        assertEquals(1.5f, mHelper.mScaleHelper.mCurrentScaleFactor);
     }
 
-    public void testOnRestoreInstanceStateScaleHelper() throws InterruptedException {
+    public void testOnViewSizeChangedCheckTranslationBounds() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
-        mHelper.mScaleHelper = new PinchToZoomScaleHelper(mEmptyScaleListener) {
+        mHelper = new PinchToZoomMatrixHelper(mEmptyMatrixListener) {
             @Override
-            void onRestoreInstanceState(PinchToZoomSavedState state) {
+            void checkTranslationBounds(int viewMeasuredWidth, int viewMeasuredHeight) {
+                assertEquals(200, viewMeasuredWidth);
+                assertEquals(100, viewMeasuredHeight);
                 latch.countDown();
             }
         };
-        mHelper.onRestoreInstanceState(new PinchToZoomSavedState(new Bundle()));
+        mHelper.mSrcBitmapSize = new Point(500, 500);
+        mHelper.mMatrix.setScale(1.5f, 1.5f);
+        mHelper.onViewSizeChanged(100, 100, 200, 100);
         latch.await(100, TimeUnit.MILLISECONDS);
-        assertEquals("onSaveInstanceState should call PinchToZoomScaleHelper" +
-                ".onRestoreInstanceState", 0, latch.getCount());
+        assertEquals("onViewSizeChanged should call checkTranslationBounds", 0,
+                latch.getCount());
     }
 
     public void testCheckTranslationBoundsTranslateHelper() throws InterruptedException {
@@ -0,0 +1,138 @@
+package com.jameskelso.android.widget;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+public class PinchToZoomMotionTrackerTest extends AndroidTestCase {
+    private PinchToZoomMotionTracker mTracker;
+    private final long[] mSettled = new long[3];
+    private final long[] mPosted = new long[2];
+    private int mStarts;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mStarts = 0;
+        mSettled[0] = 0;
+        mSettled[1] = 0;
+        mSettled[2] = 0;
+        mPosted[0] = 0;
+        mPosted[1] = 0;
+        mTracker = new PinchToZoomMotionTracker(null,
+                new PinchToZoomMotionTracker.OnPinchToZoomMotionListener() {
+                    @Override
+                    public void onMotionStart() {
+                        mStarts++;
+                    }
+
+                    @Override
+                    public void onMotionSettled(int frameCount, long averageFrameNanos) {
+                        mSettled[0] = frameCount;
+                        mSettled[1] = averageFrameNanos;
+                        mSettled[2]++;
+                    }
+                }) {
+            @Override
+            protected void postSettle(long delayMillis) {
+                mPosted[0] = delayMillis;
+                mPosted[1]++;
+            }
+
+            @Override
+            protected void removeSettle() {
+                mPosted[1]--;
+            }
+        };
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mTracker = null;
+        super.tearDown();
+    }
+
+    public void testOnMotion() {
+        mTracker.onMotion();
+        mTracker.onMotion();
+        assertTrue(mTracker.isMoving());
+        assertEquals(1, mStarts);
+        assertEquals(1, mPosted[1]);
+        assertEquals(PinchToZoomMotionTracker.DEFAULT_SETTLE_TIMEOUT, mPosted[0]);
+    }
+
+    public void testRunBeforeTimeout() {
+        mTracker.onMotion();
+        mTracker.run();
+        assertTrue(mTracker.isMoving());
+        assertEquals(0, mSettled[2]);
+        assertEquals(2, mPosted[1]);
+        assertTrue(mPosted[0] > 0);
+        assertTrue(mPosted[0] <= PinchToZoomMotionTracker.DEFAULT_SETTLE_TIMEOUT);
+    }
+
+    public void testRunAfterTimeout() {
+        mTracker.onMotion();
+        mTracker.mLastMotionTime = SystemClock.uptimeMillis()
+                - PinchToZoomMotionTracker.DEFAULT_SETTLE_TIMEOUT;
+        mTracker.run();
+        assertFalse(mTracker.isMoving());
+        assertEquals(1, mSettled[2]);
+        assertEquals(1, mPosted[1]);
+    }
+
+    public void testRunNotMoving() {
+        mTracker.run();
+        assertEquals(0, mSettled[2]);
+        assertEquals(0, mPosted[1]);
+    }
+
+    public void testOnFrameDrawn() {
+        mTracker.onFrameDrawn();
+        mTracker.onMotion();
+        mTracker.onFrameDrawn();
+        mTracker.onFrameDrawn();
+        mTracker.onFrameDrawn();
+        mTracker.mFirstFrameNanos = 0;
+        mTracker.mLastFrameNanos = 32000000;
+        mTracker.settleNow();
+        assertEquals(3, mSettled[0]);
+        assertEquals(16000000, mSettled[1]);
+    }
+
+    public void testSettleNow() {
+        mTracker.onMotion();
+        mTracker.settleNow();
+        assertFalse(mTracker.isMoving());
+        assertEquals(1, mSettled[2]);
+        assertEquals(0, mSettled[1]);
+        assertEquals(0, mPosted[1]);
+
+        mTracker.settleNow();
+        assertEquals(1, mSettled[2]);
+    }
+
+    public void testOnMotionAfterSettle() {
+        mTracker.onMotion();
+        mTracker.onFrameDrawn();
+        mTracker.settleNow();
+        mTracker.onMotion();
+        assertEquals(2, mStarts);
+        assertEquals(0, mTracker.mFrameCount);
+    }
+
+    public void testSetSettleTimeout() {
+        mTracker.setSettleTimeout(100);
+        mTracker.onMotion();
+        assertEquals(100, mPosted[0]);
+    }
+
+    public void testSetSettleTimeoutInvalid() {
+        try {
+            mTracker.setSettleTimeout(0);
+            fail("PinchToZoomMotionTracker should throw an IllegalArgumentException for a " +
+                    "settle timeout less than 1");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.test.AndroidTestCase;
+
+public class PinchToZoomOverscanCacheTest extends AndroidTestCase {
+    private PinchToZoomOverscanCache mCache;
+    private int mRenderCount;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mRenderCount = 0;
+        mCache = new PinchToZoomOverscanCache(10,
+                new PinchToZoomOverscanCache.OnPinchToZoomCacheRenderListener() {
+                    @Override
+                    public void onRenderCache(Canvas canvas) {
+                        mRenderCount++;
+                        canvas.drawColor(Color.RED);
+                    }
+                });
+        mTarget = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mCache.release();
+        mCache = null;
+        mTarget.recycle();
+        super.tearDown();
+    }
+
+    public void testConstructorInvalidMargin() {
+        try {
+            new PinchToZoomOverscanCache(0, null);
+            fail("Overscan margin of 0 should be invalid");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testDrawFirstFrame() {
+        // The scale is not yet known to be steady
+        assertFalse(mCache.draw(mCanvas, new Matrix(), 50, 50));
+        assertEquals(0, mRenderCount);
+        assertNull(mCache.mBitmap);
+    }
+
+    public void testDrawSteadyScale() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 50, 50);
+        assertTrue(mCache.draw(mCanvas, matrix, 50, 50));
+        assertEquals(1, mRenderCount);
+        assertEquals(70, mCache.mBitmap.getWidth());
+        assertEquals(70, mCache.mBitmap.getHeight());
+        assertEquals(Color.RED, mTarget.getPixel(0, 0));
+    }
+
+    public void testDrawPanWithinMargin() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 50, 50);
+        mCache.draw(mCanvas, matrix, 50, 50);
+
+        matrix.setTranslate(-10, 10);
+        assertTrue(mCache.draw(mCanvas, matrix, 50, 50));
+        assertEquals(1, mRenderCount);
+    }
+
+    public void testDrawPanRoundsToWholePixels() {
+        PinchToZoomOverscanCache cache = new PinchToZoomOverscanCache(10,
+                new PinchToZoomOverscanCache.OnPinchToZoomCacheRenderListener() {
+                    @Override
+                    public void onRenderCache(Canvas canvas) {
+                        canvas.clipRect(20, 0, 21, 50);
+                        canvas.drawColor(Color.RED);
+                    }
+                });
+        Matrix matrix = new Matrix();
+        cache.draw(mCanvas, matrix, 50, 50);
+        cache.draw(mCanvas, matrix, 50, 50);
+
+        // A fractional pan copies the cache to the nearest pixel rather than blending it
+        mTarget.eraseColor(Color.TRANSPARENT);
+        matrix.setTranslate(.4f, 0);
+        assertTrue(cache.draw(mCanvas, matrix, 50, 50));
+        assertEquals(Color.RED, mTarget.getPixel(20, 0));
+        assertEquals(Color.TRANSPARENT, mTarget.getPixel(21, 0));
+        cache.release();
+    }
+
+    public void testDrawPanBeyondMargin() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 50, 50);
+        mCache.draw(mCanvas, matrix, 50, 50);
+
+        matrix.setTranslate(11, 0);
+        assertTrue(mCache.draw(mCanvas, matrix, 50, 50));
+        assertEquals(2, mRenderCount);
+        assertEquals(11f, mCache.mTranslationX);
+    }
+
+    public void testDrawScaleChanged() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 50, 50);
+        mCache.draw(mCanvas, matrix, 50, 50);
+
+        matrix.setScale(2f, 2f);
+        assertFalse(mCache.draw(mCanvas, matrix, 50, 50));
+        assertFalse(mCache.mValid);
+
+        // Rendered again once the new scale holds for a second frame
+        assertTrue(mCache.draw(mCanvas, matrix, 50, 50));
+        assertEquals(2, mRenderCount);
+        assertEquals(2f, mCache.mScaleX);
+    }
+
+    public void testDrawSizeChanged() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 50, 50);
+        mCache.draw(mCanvas, matrix, 50, 50);
+
+        assertTrue(mCache.draw(mCanvas, matrix, 40, 50));
+        assertEquals(2, mRenderCount);
+        assertEquals(60, mCache.mBitmap.getWidth());
+    }
+
+    public void testDrawEmptyContent() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 0, 50);
+        assertFalse(mCache.draw(mCanvas, matrix, 0, 50));
+        assertEquals(0, mRenderCount);
+    }
+
+    public void testInvalidate() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 50, 50);
+        mCache.draw(mCanvas, matrix, 50, 50);
+
+        mCache.invalidate();
+        Bitmap bitmap = mCache.mBitmap;
+        assertTrue(mCache.draw(mCanvas, matrix, 50, 50));
+        assertEquals(2, mRenderCount);
+        assertSame(bitmap, mCache.mBitmap);
+    }
+
+    public void testRelease() {
+        Matrix matrix = new Matrix();
+        mCache.draw(mCanvas, matrix, 50, 50);
+        mCache.draw(mCanvas, matrix, 50, 50);
+
+        Bitmap bitmap = mCache.mBitmap;
+        mCache.release();
+        assertTrue(bitmap.isRecycled());
+        assertNull(mCache.mBitmap);
+        assertFalse(mCache.mValid);
+    }
+}
@@ -0,0 +1,446 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+
+public class PinchToZoomOversizeHelperTest extends AndroidTestCase {
+    private TestOversizeHelper mHelper;
+    private Bitmap mBitmap;
+    private BitmapDrawable mDrawable;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+    private int mReportedCommits;
+    private int mReportedMode;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mReportedCommits = 0;
+        mReportedMode = -1;
+        mHelper = new TestOversizeHelper();
+
+        // Red on the left half, blue on the right half
+        mBitmap = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        mBitmap.eraseColor(Color.RED);
+        Canvas canvas = new Canvas(mBitmap);
+        canvas.clipRect(50, 0, 100, 50);
+        canvas.drawColor(Color.BLUE);
+
+        mDrawable = new BitmapDrawable(getContext().getResources(), mBitmap);
+        mDrawable.setBounds(0, 0, 100, 50);
+
+        mTarget = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mHelper.release();
+        mHelper = null;
+        mBitmap.recycle();
+        mTarget.recycle();
+        super.tearDown();
+    }
+
+    public void testIsOversize() {
+        assertTrue(PinchToZoomOversizeHelper.isOversize(mDrawable, 60, 60));
+        assertTrue(PinchToZoomOversizeHelper.isOversize(mDrawable, 100, 40));
+        assertFalse(PinchToZoomOversizeHelper.isOversize(mDrawable, 100, 50));
+    }
+
+    public void testIsOversizeUnknownLimit() {
+        assertFalse(PinchToZoomOversizeHelper.isOversize(mDrawable, 0, 0));
+    }
+
+    public void testIsOversizeNotBitmap() {
+        assertFalse(PinchToZoomOversizeHelper.isOversize(null, 10, 10));
+        assertFalse(PinchToZoomOversizeHelper.isOversize(new ColorDrawable(Color.RED), 10, 10));
+    }
+
+    public void testPrepare() {
+        assertEquals(PinchToZoomOversizeHelper.MODE_TILED, mHelper.prepare(mBitmap, 30, 30));
+        assertEquals(28, mHelper.mTileSize);
+        assertEquals(2, mHelper.mMaxLevel);
+
+        // Only the preview is made until the level is known
+        mHelper.runBackground();
+        assertEquals(30, mHelper.mPreview.getWidth());
+        assertNull(mHelper.mLevel);
+    }
+
+    public void testPrepareSameBitmap() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.prepare(mBitmap, 30, 30);
+        assertEquals(1, mHelper.mBackground.size());
+    }
+
+    public void testDrawSelectsLevel() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        assertEquals(0, mHelper.mLevel.mLevel);
+        assertEquals(8, mHelper.mLevel.mRects.size());
+        assertEquals(new Rect(0, 0, 28, 28), mHelper.mLevel.mRects.get(0));
+        assertEquals(new Rect(84, 28, 100, 50), mHelper.mLevel.mRects.get(7));
+
+        // Tiles overlap their neighbours by a pixel, within the bitmap
+        assertEquals(new Rect(0, 0, 29, 29), mHelper.mLevel.mSourceRects.get(0));
+        assertEquals(new Rect(83, 27, 100, 50), mHelper.mLevel.mSourceRects.get(7));
+
+        mHelper.runBackground();
+        assertEquals(8, mHelper.mLevel.mPendingCount);
+        assertEquals(17, mHelper.mLevel.mPendingTiles.get(7).getWidth());
+        assertEquals(23, mHelper.mLevel.mPendingTiles.get(7).getHeight());
+        assertTrue(mHelper.mInFrameDriver);
+    }
+
+    public void testDrawSelectsCoarseLevel() {
+        mHelper.prepare(mBitmap, 30, 30);
+        Matrix matrix = new Matrix();
+        matrix.setScale(.25f, .25f);
+        mHelper.draw(mCanvas, mDrawable, matrix);
+        assertEquals(2, mHelper.mLevel.mLevel);
+        assertEquals(1, mHelper.mLevel.mRects.size());
+
+        mHelper.runBackground();
+        assertEquals(25, mHelper.mLevel.mPendingTiles.get(0).getWidth());
+    }
+
+    public void testDoFrameCommitsWithinBudget() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mHelper.runBackground();
+        mReportedCommits = 0;
+
+        assertTrue(mHelper.doFrame(0));
+        assertEquals(PinchToZoomOversizeHelper.MAX_COMMIT_TILES, countTiles(mHelper.mLevel));
+        assertEquals(1, mReportedCommits);
+        for (int i = 0; i < 3; i++) {
+            mHelper.doFrame(0);
+        }
+        assertEquals(8, countTiles(mHelper.mLevel));
+        assertFalse(mHelper.doFrame(0));
+    }
+
+    public void testDoFrameCommitsVisibleTilesFirst() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mHelper.runBackground();
+        mHelper.mVisible.set(60, 30, 100, 50);
+
+        mHelper.doFrame(0);
+        assertNotNull(mHelper.mLevel.mTiles.get(6));
+        assertNotNull(mHelper.mLevel.mTiles.get(7));
+        assertNull(mHelper.mLevel.mTiles.get(0));
+    }
+
+    public void testTileJobCutsVisibleTilesFirst() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.runBackground();
+        mCanvas.clipRect(60, 30, 100, 50);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        assertEquals(6, mHelper.mLevel.mJob.mOrder[0]);
+        assertEquals(7, mHelper.mLevel.mJob.mOrder[1]);
+        assertEquals(1, mHelper.mLevel.mJob.mOrder[2]);
+    }
+
+    public void testTileJobCutsOnlyTilesNearVisible() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.runBackground();
+        mCanvas.clipRect(0, 0, 10, 10);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+
+        // The visible tile, then the tiles within a cell of it
+        int[] order = mHelper.mLevel.mJob.mOrder;
+        assertEquals(4, order.length);
+        assertEquals(0, order[0]);
+        assertEquals(1, order[1]);
+        assertEquals(4, order[2]);
+        assertEquals(5, order[3]);
+    }
+
+    public void testMovingAwayDropsDistantTiles() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.runBackground();
+        int saveCount = mCanvas.save();
+        mCanvas.clipRect(84, 28, 100, 50);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mCanvas.restoreToCount(saveCount);
+        assertEquals(4, mHelper.mLevel.mJob.mOrder.length);
+        mHelper.runBackground();
+        mHelper.doFrame(0);
+        mHelper.doFrame(0);
+        Bitmap distant = mHelper.mLevel.mTiles.get(3);
+        assertNotNull(distant);
+
+        // Tiles more than two cells away are dropped, and the rest are kept
+        mCanvas.clipRect(0, 0, 10, 10);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        assertNull(mHelper.mLevel.mTiles.get(3));
+        assertNull(mHelper.mLevel.mTiles.get(7));
+        assertNotNull(mHelper.mLevel.mTiles.get(2));
+        assertNotNull(mHelper.mLevel.mTiles.get(6));
+        assertFalse(distant.isRecycled());
+
+        // Only the missing tiles near the new visible part are cut
+        int[] order = mHelper.mLevel.mJob.mOrder;
+        assertEquals(4, order.length);
+        assertEquals(0, order[0]);
+        assertEquals(1, order[1]);
+        assertEquals(4, order[2]);
+        assertEquals(5, order[3]);
+    }
+
+    public void testPrefetchCutsTilesAhead() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.runBackground();
+        mHelper.prefetch(new RectF(0, 0, 10, 10), new Rect(0, 0, 100, 50), 1f);
+        assertTrue(mHelper.mPrefetching);
+        PinchToZoomOversizeHelper.TileLevel level = mHelper.mPrefetchLevel;
+        assertEquals(0, level.mLevel);
+        assertEquals(4, level.mJob.mOrder.length);
+
+        // Drawing elsewhere in the meantime neither selects a level nor asks for tiles
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        assertNull(mHelper.mLevel);
+        mHelper.runBackground();
+        assertEquals(4, level.mPendingCount);
+
+        // Once it ends, the level is selected with the tiles already cut
+        mHelper.endPrefetch();
+        mCanvas.clipRect(0, 0, 10, 10);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        assertSame(level, mHelper.mLevel);
+        assertNull(mHelper.mPrefetchLevel);
+        assertTrue(mHelper.mInFrameDriver);
+        assertTrue(mHelper.mBackground.isEmpty());
+    }
+
+    public void testDoFrameNothingReady() {
+        mHelper.prepare(mBitmap, 30, 30);
+        assertFalse(mHelper.doFrame(0));
+        assertEquals(0, mReportedCommits);
+    }
+
+    public void testLevelChangeKeepsPreviousLevel() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mHelper.runBackground();
+        for (int i = 0; i < 4; i++) {
+            mHelper.doFrame(0);
+        }
+        PinchToZoomOversizeHelper.TileLevel fine = mHelper.mLevel;
+
+        // A switch to level 2 that has already waited long enough
+        mHelper.mLevelSelector.mCandidate = 2;
+        mHelper.mLevelSelector.mCandidateTime = 0;
+        assertTrue(mHelper.selectLevel(.25f));
+        assertEquals(2, mHelper.mLevel.mLevel);
+        assertSame(fine, mHelper.mPreviousLevel);
+        assertEquals(1, mHelper.mLevelChanges);
+
+        // The previous level is drawn until the visible tiles of the new level are committed
+        mHelper.mVisible.set(0, 0, 100, 50);
+        mHelper.doFrame(0);
+        assertSame(fine, mHelper.mPreviousLevel);
+        mHelper.runBackground();
+        mHelper.doFrame(0);
+        assertNull(mHelper.mPreviousLevel);
+    }
+
+    public void testLevelChangeBack() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mHelper.runBackground();
+        mHelper.doFrame(0);
+        PinchToZoomOversizeHelper.TileLevel fine = mHelper.mLevel;
+
+        mHelper.mLevelSelector.mCandidate = 2;
+        mHelper.mLevelSelector.mCandidateTime = 0;
+        mHelper.selectLevel(.25f);
+
+        // Returning before the coarse level has any tiles picks the fine level back up
+        mHelper.mLevelSelector.mCandidate = 0;
+        mHelper.mLevelSelector.mCandidateTime = 0;
+        mHelper.selectLevel(1f);
+        assertSame(fine, mHelper.mLevel);
+        assertNull(mHelper.mPreviousLevel);
+        assertEquals(2, countTiles(fine));
+
+        // Only the missing tiles are cut again
+        mHelper.runBackground();
+        assertEquals(6, fine.mPendingCount);
+    }
+
+    public void testTilesFailed() {
+        mHelper = new TestOversizeHelper() {
+            @Override
+            protected void onTileReady(TileJob job, int index, Bitmap tile) {
+                tile.recycle();
+                onTilesFailed(job);
+            }
+        };
+        mHelper.prepare(mBitmap, 50, 50);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mHelper.runBackground();
+        assertEquals(PinchToZoomOversizeHelper.MODE_DOWNSAMPLED, mHelper.getMode());
+        assertEquals(PinchToZoomOversizeHelper.MODE_DOWNSAMPLED, mReportedMode);
+        assertEquals(50, mHelper.mPreview.getWidth());
+        assertEquals(25, mHelper.mPreview.getHeight());
+        assertNull(mHelper.mLevel);
+        assertFalse(mHelper.mInFrameDriver);
+    }
+
+    public void testReleaseCancelsBackgroundWork() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mHelper.release();
+        mHelper.runBackground();
+        assertNull(mHelper.mLevel);
+        assertNull(mHelper.mPreview);
+        assertEquals(PinchToZoomOversizeHelper.MODE_NONE, mHelper.getMode());
+    }
+
+    public void testSourceRecycledDropsBackgroundWork() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mBitmap.recycle();
+        mHelper.runBackground();
+        assertNull(mHelper.mPreview);
+        assertEquals(0, mHelper.mLevel.mPendingCount);
+        assertEquals(PinchToZoomOversizeHelper.MODE_TILED, mHelper.getMode());
+    }
+
+    public void testDrawTiled() {
+        mHelper.prepare(mBitmap, 30, 30);
+        Bitmap target = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        Matrix matrix = new Matrix();
+        matrix.setScale(2f, 2f);
+        mHelper.draw(canvas, mDrawable, matrix);
+        mHelper.runBackground();
+        for (int i = 0; i < 4; i++) {
+            mHelper.doFrame(0);
+        }
+
+        mHelper.draw(canvas, mDrawable, matrix);
+        assertEquals(Color.RED, target.getPixel(10, 90));
+        assertEquals(Color.BLUE, target.getPixel(190, 10));
+        assertEquals(new Rect(0, 0, 100, 50), mHelper.mVisible);
+        target.recycle();
+    }
+
+    public void testDrawTilesAcrossSeams() {
+        mHelper.prepare(mBitmap, 30, 30);
+        Bitmap target = Bitmap.createBitmap(150, 75, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        Matrix matrix = new Matrix();
+        matrix.setScale(1.5f, 1.5f);
+        mHelper.draw(canvas, mDrawable, matrix);
+        mHelper.runBackground();
+        for (int i = 0; i < 4; i++) {
+            mHelper.doFrame(0);
+        }
+
+        // Either side of the seam between the first two columns, at x = 28 * 1.5, is solid
+        target.eraseColor(Color.TRANSPARENT);
+        mHelper.draw(canvas, mDrawable, matrix);
+        assertEquals(Color.RED, target.getPixel(41, 10));
+        assertEquals(Color.RED, target.getPixel(42, 10));
+        assertEquals(Color.RED, target.getPixel(41, 42));
+        target.recycle();
+    }
+
+    public void testDrawPreview() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.runBackground();
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        assertEquals(Color.RED, mTarget.getPixel(5, 25));
+        assertEquals(Color.BLUE, mTarget.getPixel(95, 25));
+    }
+
+    public void testRelease() {
+        mHelper.prepare(mBitmap, 30, 30);
+        mHelper.draw(mCanvas, mDrawable, new Matrix());
+        mHelper.runBackground();
+        mHelper.doFrame(0);
+        Bitmap tile = mHelper.mLevel.mTiles.get(0);
+        Bitmap pending = mHelper.mLevel.mPendingTiles.get(7);
+        mHelper.release();
+
+        // A committed tile may still be in a frame being rendered, so only the pending one is
+        // recycled
+        assertFalse(tile.isRecycled());
+        assertTrue(pending.isRecycled());
+        assertNull(mHelper.mLevel);
+        assertNull(mHelper.mSource);
+        assertFalse(mHelper.mInFrameDriver);
+        assertEquals(PinchToZoomOversizeHelper.MODE_NONE, mHelper.getMode());
+    }
+
+    private static int countTiles(PinchToZoomOversizeHelper.TileLevel level) {
+        int count = 0;
+        for (Bitmap tile : level.mTiles) {
+            if (tile != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Runs background work only when asked, and main thread work straight away
+     */
+    private class TestOversizeHelper extends PinchToZoomOversizeHelper {
+        final ArrayList<Runnable> mBackground = new ArrayList<Runnable>();
+        boolean mInFrameDriver;
+
+        TestOversizeHelper() {
+            super(new OnPinchToZoomOversizeListener() {
+                @Override
+                public void onOversizeTilesCommitted() {
+                    mReportedCommits++;
+                }
+
+                @Override
+                public void onOversizeModeChanged(int mode) {
+                    mReportedMode = mode;
+                }
+            });
+        }
+
+        void runBackground() {
+            while (!mBackground.isEmpty()) {
+                mBackground.remove(0).run();
+            }
+        }
+
+        @Override
+        protected void executeInBackground(Runnable runnable) {
+            mBackground.add(runnable);
+        }
+
+        @Override
+        protected void postToMainThread(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        protected void addToFrameDriver() {
+            mInFrameDriver = true;
+        }
+
+        @Override
+        protected void removeFromFrameDriver() {
+            mInFrameDriver = false;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.test.AndroidTestCase;
+
+public class PinchToZoomPinchSnapshotTest extends AndroidTestCase {
+    private PinchToZoomPinchSnapshot mSnapshot;
+    private int mRenderCount;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mRenderCount = 0;
+        mSnapshot = new PinchToZoomPinchSnapshot(
+                new PinchToZoomOverscanCache.OnPinchToZoomCacheRenderListener() {
+                    @Override
+                    public void onRenderCache(Canvas canvas) {
+                        mRenderCount++;
+                        canvas.drawColor(Color.RED);
+                    }
+                });
+        mTarget = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mSnapshot.release();
+        mSnapshot = null;
+        mTarget.recycle();
+        super.tearDown();
+    }
+
+    public void testCapture() {
+        assertTrue(mSnapshot.capture(new Matrix(), 50, 50));
+        assertTrue(mSnapshot.isCaptured());
+        assertEquals(1, mRenderCount);
+        assertEquals(50, mSnapshot.mBitmap.getWidth());
+    }
+
+    public void testCaptureEmptyContent() {
+        assertFalse(mSnapshot.capture(new Matrix(), 0, 50));
+        assertFalse(mSnapshot.isCaptured());
+        assertEquals(0, mRenderCount);
+    }
+
+    public void testCaptureNotInvertible() {
+        Matrix matrix = new Matrix();
+        matrix.setScale(0, 0);
+        assertFalse(mSnapshot.capture(matrix, 50, 50));
+        assertFalse(mSnapshot.isCaptured());
+    }
+
+    public void testDrawNotCaptured() {
+        assertFalse(mSnapshot.draw(mCanvas, new Matrix(), new RectF(0, 0, 100, 100)));
+    }
+
+    public void testDrawZoomedIn() {
+        mSnapshot.capture(new Matrix(), 50, 50);
+        Matrix matrix = new Matrix();
+        matrix.setScale(2f, 2f, 25, 25);
+        assertTrue(mSnapshot.draw(mCanvas, matrix, new RectF(0, 0, 100, 100)));
+        assertEquals(Color.RED, mTarget.getPixel(0, 0));
+        assertEquals(1, mRenderCount);
+    }
+
+    public void testDrawZoomedOutRevealsImage() {
+        mSnapshot.capture(new Matrix(), 50, 50);
+        Matrix matrix = new Matrix();
+        matrix.setScale(.5f, .5f);
+        assertFalse(mSnapshot.draw(mCanvas, matrix, new RectF(0, 0, 100, 100)));
+    }
+
+    public void testDrawZoomedOutWholeImage() {
+        // The whole image was already in view, so zooming out reveals nothing new
+        mSnapshot.capture(new Matrix(), 50, 50);
+        Matrix matrix = new Matrix();
+        matrix.setScale(.5f, .5f);
+        assertTrue(mSnapshot.draw(mCanvas, matrix, new RectF(0, 0, 50, 50)));
+    }
+
+    public void testDiscard() {
+        mSnapshot.capture(new Matrix(), 50, 50);
+        Bitmap bitmap = mSnapshot.mBitmap;
+        mSnapshot.discard();
+        assertFalse(mSnapshot.isCaptured());
+        assertFalse(mSnapshot.draw(mCanvas, new Matrix(), new RectF(0, 0, 50, 50)));
+
+        mSnapshot.capture(new Matrix(), 50, 50);
+        assertSame(bitmap, mSnapshot.mBitmap);
+    }
+
+    public void testRelease() {
+        mSnapshot.capture(new Matrix(), 50, 50);
+        Bitmap bitmap = mSnapshot.mBitmap;
+        mSnapshot.release();
+        assertTrue(bitmap.isRecycled());
+        assertNull(mSnapshot.mBitmap);
+        assertFalse(mSnapshot.isCaptured());
+    }
+}
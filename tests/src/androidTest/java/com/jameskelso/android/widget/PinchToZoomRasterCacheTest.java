@@ -0,0 +1,246 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+
+public class PinchToZoomRasterCacheTest extends AndroidTestCase {
+    private TestRasterCache mCache;
+    private TestDrawable mDrawable;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+    private int mChanges;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mChanges = 0;
+        mCache = new TestRasterCache();
+        mDrawable = new TestDrawable();
+        mDrawable.setBounds(0, 0, 600, 300);
+        mTarget = Bitmap.createBitmap(600, 300, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mCache.release();
+        mCache = null;
+        mTarget.recycle();
+        super.tearDown();
+    }
+
+    public void testCanRaster() {
+        assertTrue(PinchToZoomRasterCache.canRaster(mDrawable));
+        assertFalse(PinchToZoomRasterCache.canRaster(null));
+        assertFalse(PinchToZoomRasterCache.canRaster(new ColorDrawable(Color.RED)));
+        assertFalse(PinchToZoomRasterCache.canRaster(new BitmapDrawable(
+                getContext().getResources(), mTarget)));
+    }
+
+    public void testQuantizeScale() {
+        assertEquals(1f, PinchToZoomRasterCache.quantizeScale(1f));
+        assertEquals(1f, PinchToZoomRasterCache.quantizeScale(.6f));
+        assertEquals(.5f, PinchToZoomRasterCache.quantizeScale(.5f));
+        assertEquals(.5f, PinchToZoomRasterCache.quantizeScale(.3f));
+        assertEquals(2f, PinchToZoomRasterCache.quantizeScale(1.2f));
+        assertEquals(4f, PinchToZoomRasterCache.quantizeScale(3f));
+    }
+
+    public void testFirstDrawSchedulesTiles() {
+        assertFalse(mCache.draw(mCanvas, mDrawable, new Matrix()));
+        assertTrue(mCache.mInFrameDriver);
+        assertEquals(1f, mCache.mNextTiles.mScale);
+        assertEquals(3, mCache.mNextTiles.mColumns);
+        assertEquals(2, mCache.mNextTiles.mRows);
+        assertEquals(0, mDrawable.mDrawCount);
+    }
+
+    public void testDoFrameRendersWithinBudget() {
+        mCache.draw(mCanvas, mDrawable, new Matrix());
+        assertTrue(mCache.doFrame(0));
+        assertEquals(PinchToZoomRasterCache.MAX_RENDER_TILES, mDrawable.mDrawCount);
+        assertNull(mCache.mTiles);
+
+        mCache.doFrame(0);
+        assertTrue(mCache.doFrame(0));
+        assertEquals(6, mDrawable.mDrawCount);
+        assertFalse(mCache.doFrame(0));
+        assertNotNull(mCache.mTiles);
+        assertNull(mCache.mNextTiles);
+        assertEquals(1, mChanges);
+    }
+
+    public void testDrawFromTiles() {
+        renderAll(new Matrix());
+        final int drawCount = mDrawable.mDrawCount;
+
+        mTarget.eraseColor(Color.TRANSPARENT);
+        assertTrue(mCache.draw(mCanvas, mDrawable, new Matrix()));
+        assertEquals(Color.RED, mTarget.getPixel(10, 10));
+        assertEquals(Color.BLUE, mTarget.getPixel(590, 290));
+        assertEquals(drawCount, mDrawable.mDrawCount);
+    }
+
+    public void testMovingRendersNothing() {
+        mCache.setMoving(true);
+        mCache.draw(mCanvas, mDrawable, new Matrix());
+        assertNull(mCache.mNextTiles);
+        assertFalse(mCache.doFrame(0));
+        assertEquals(0, mDrawable.mDrawCount);
+
+        // Settling asks for a draw, which schedules the tiles
+        mCache.setMoving(false);
+        assertEquals(1, mChanges);
+    }
+
+    public void testZoomKeepsOldTilesUntilReady() {
+        renderAll(new Matrix());
+        PinchToZoomRasterCache.TileSet tiles = mCache.mTiles;
+
+        Matrix matrix = new Matrix();
+        matrix.setScale(2f, 2f);
+        assertTrue(mCache.draw(mCanvas, mDrawable, matrix));
+        assertSame(tiles, mCache.mTiles);
+        assertEquals(2f, mCache.mNextTiles.mScale);
+
+        renderAll(matrix);
+        assertEquals(2f, mCache.mTiles.mScale);
+    }
+
+    public void testPanOntoMissingTilesDrawsDirectly() {
+        Matrix matrix = new Matrix();
+        matrix.setScale(2f, 2f);
+        renderAll(matrix);
+        assertTrue(mCache.draw(mCanvas, mDrawable, matrix));
+
+        mCache.setMoving(true);
+        matrix.postTranslate(-600, 0);
+        assertFalse(mCache.draw(mCanvas, mDrawable, matrix));
+    }
+
+    public void testInvalidate() {
+        renderAll(new Matrix());
+        mCache.invalidate();
+        assertNull(mCache.mTiles);
+        assertFalse(mCache.mInFrameDriver);
+        assertFalse(mCache.draw(mCanvas, mDrawable, new Matrix()));
+    }
+
+    public void testRelease() {
+        renderAll(new Matrix());
+        Bitmap tile = mCache.mTiles.mTiles.valueAt(0);
+        mCache.release();
+
+        // A drawn tile may still be in a frame being rendered, so it is not recycled
+        assertFalse(tile.isRecycled());
+        assertNull(mCache.mTiles);
+        assertNull(mCache.mDrawable);
+    }
+
+    public void testReleaseRecyclesUndrawnTiles() {
+        renderAll(new Matrix());
+        Bitmap tile = mCache.mTiles.mTiles.valueAt(0);
+
+        Matrix matrix = new Matrix();
+        matrix.setScale(2f, 2f);
+        mCache.draw(mCanvas, mDrawable, matrix);
+        mCache.doFrame(0);
+        Bitmap next = mCache.mNextTiles.mTiles.valueAt(0);
+        mCache.release();
+        assertFalse(tile.isRecycled());
+        assertTrue(next.isRecycled());
+        assertNull(mCache.mNextTiles);
+    }
+
+    public void testNewDrawableReleasesTiles() {
+        renderAll(new Matrix());
+        Bitmap tile = mCache.mTiles.mTiles.valueAt(0);
+
+        TestDrawable drawable = new TestDrawable();
+        drawable.setBounds(0, 0, 600, 300);
+        assertFalse(mCache.draw(mCanvas, drawable, new Matrix()));
+        assertFalse(tile.isRecycled());
+        assertNull(mCache.mTiles);
+        assertSame(drawable, mCache.mDrawable);
+    }
+
+    private void renderAll(Matrix matrix) {
+        mCache.draw(mCanvas, mDrawable, matrix);
+        for (int i = 0; i < 100 && mCache.doFrame(0); i++) {
+            // Render every tile
+        }
+    }
+
+    /**
+     * Red on the left half, blue on the right half, counting the times it is drawn
+     */
+    private static class TestDrawable extends Drawable {
+        private final Paint mPaint = new Paint();
+        int mDrawCount;
+
+        @Override
+        public void draw(@NonNull Canvas canvas) {
+            mDrawCount++;
+            mPaint.setColor(Color.RED);
+            canvas.drawRect(0, 0, 300, 300, mPaint);
+            mPaint.setColor(Color.BLUE);
+            canvas.drawRect(300, 0, 600, 300, mPaint);
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return 600;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return 300;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.OPAQUE;
+        }
+    }
+
+    private class TestRasterCache extends PinchToZoomRasterCache {
+        boolean mInFrameDriver;
+
+        TestRasterCache() {
+            super(new OnPinchToZoomRasterListener() {
+                @Override
+                public void onRasterTilesChanged() {
+                    mChanges++;
+                }
+            });
+        }
+
+        @Override
+        protected void addToFrameDriver() {
+            mInFrameDriver = true;
+        }
+
+        @Override
+        protected void removeFromFrameDriver() {
+            mInFrameDriver = false;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class PinchToZoomRegionDrawableTest extends AndroidTestCase {
+    private BitmapRegionDecoder mDecoder;
+    private TestRegionDrawable mDrawable;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+    private int mInvalidations;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mInvalidations = 0;
+
+        // Red on the top half, blue on the bottom half
+        mDecoder = createDecoder(false);
+
+        mDrawable = new TestRegionDrawable(mDecoder, false);
+        mDrawable.setBounds(0, 0, 100, 600);
+        mDrawable.setCallback(new Drawable.Callback() {
+            @Override
+            public void invalidateDrawable(@NonNull Drawable who) {
+                mInvalidations++;
+            }
+
+            @Override
+            public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what,
+                                         long when) {
+            }
+
+            @Override
+            public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+            }
+        });
+
+        mTarget = Bitmap.createBitmap(100, 600, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mDrawable.release();
+        mDrawable = null;
+        mDecoder.recycle();
+        mTarget.recycle();
+        super.tearDown();
+    }
+
+    private static BitmapRegionDecoder createDecoder(boolean hasAlpha) throws IOException {
+        Bitmap source = Bitmap.createBitmap(100, 600, Bitmap.Config.ARGB_8888);
+        source.eraseColor(Color.RED);
+        Canvas canvas = new Canvas(source);
+        canvas.clipRect(0, 300, 100, 600);
+        canvas.drawColor(Color.BLUE);
+        source.setHasAlpha(hasAlpha);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.PNG, 100, out);
+        source.recycle();
+        byte[] data = out.toByteArray();
+        return BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+    }
+
+    public void testIntrinsicSize() {
+        assertEquals(100, mDrawable.getIntrinsicWidth());
+        assertEquals(600, mDrawable.getIntrinsicHeight());
+    }
+
+    public void testGetSampleSize() {
+        assertEquals(1, PinchToZoomRegionDrawable.getSampleSize(2f));
+        assertEquals(1, PinchToZoomRegionDrawable.getSampleSize(1f));
+        assertEquals(1, PinchToZoomRegionDrawable.getSampleSize(.6f));
+        assertEquals(2, PinchToZoomRegionDrawable.getSampleSize(.5f));
+        assertEquals(4, PinchToZoomRegionDrawable.getSampleSize(.2f));
+        assertEquals(1, PinchToZoomRegionDrawable.getSampleSize(0f));
+    }
+
+    public void testDrawStartsPass() {
+        mDrawable.draw(mCanvas);
+        assertEquals(new Rect(0, 0, 100, 600), mDrawable.mPassRegion);
+        assertEquals(1, mDrawable.mPassSampleSize);
+        assertEquals(3, mDrawable.mJob.mRects.size());
+        assertEquals(new Rect(0, 256, 100, 512), mDrawable.mJob.mRects.get(1));
+        assertEquals(new Rect(0, 512, 100, 600), mDrawable.mJob.mRects.get(2));
+        assertTrue(mDrawable.mStrips.isEmpty());
+    }
+
+    public void testStripsCommittedAsDecoded() {
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+        assertEquals(1, mDrawable.mStrips.size());
+        assertEquals(1, mInvalidations);
+        assertNotNull(mDrawable.mJob);
+
+        mDrawable.runMain(2);
+        assertEquals(3, mDrawable.mStrips.size());
+        assertEquals(3, mInvalidations);
+        assertNull(mDrawable.mJob);
+        assertEquals(88, mDrawable.mStrips.get(2).mBitmap.getHeight());
+    }
+
+    public void testDrawStrips() {
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(3);
+        mDrawable.draw(mCanvas);
+        assertEquals(Color.RED, mTarget.getPixel(50, 10));
+        assertEquals(Color.BLUE, mTarget.getPixel(50, 590));
+    }
+
+    public void testDrawVisibleRegionOnly() {
+        mCanvas.clipRect(0, 300, 100, 400);
+        mDrawable.draw(mCanvas);
+        assertEquals(new Rect(0, 256, 100, 512), mDrawable.mPassRegion);
+        assertEquals(1, mDrawable.mJob.mRects.size());
+    }
+
+    public void testPanWithinPassKeepsPass() {
+        mCanvas.save();
+        mCanvas.clipRect(0, 300, 100, 400);
+        mDrawable.draw(mCanvas);
+        mCanvas.restore();
+        PinchToZoomRegionDrawable.StripJob job = mDrawable.mJob;
+
+        mCanvas.clipRect(0, 260, 100, 500);
+        mDrawable.draw(mCanvas);
+        assertSame(job, mDrawable.mJob);
+    }
+
+    public void testPanAwayCancelsPass() {
+        mCanvas.save();
+        mCanvas.clipRect(0, 0, 100, 100);
+        mDrawable.draw(mCanvas);
+        mCanvas.restore();
+        PinchToZoomRegionDrawable.StripJob job = mDrawable.mJob;
+
+        mCanvas.clipRect(0, 500, 100, 600);
+        mDrawable.draw(mCanvas);
+        assertTrue(job.mCancelled);
+        assertNotSame(job, mDrawable.mJob);
+
+        // The cancelled pass decodes nothing more
+        mDrawable.runBackground();
+        mDrawable.runMain(3);
+        assertEquals(2, mDrawable.mStrips.size());
+        assertEquals(new Rect(0, 256, 100, 512), mDrawable.mStrips.get(0).mRect);
+        assertEquals(new Rect(0, 512, 100, 600), mDrawable.mStrips.get(1).mRect);
+    }
+
+    public void testDrawVisibleColumnsOnly() {
+        mDrawable.mStripWidth = 40;
+        mCanvas.clipRect(50, 300, 70, 400);
+        mDrawable.draw(mCanvas);
+        assertEquals(new Rect(40, 256, 80, 512), mDrawable.mPassRegion);
+        assertEquals(1, mDrawable.mJob.mRects.size());
+    }
+
+    public void testDrawStartsPassAcrossColumns() {
+        mDrawable.mStripWidth = 40;
+        mCanvas.clipRect(0, 0, 100, 300);
+        mDrawable.draw(mCanvas);
+        assertEquals(new Rect(0, 0, 100, 512), mDrawable.mPassRegion);
+        assertEquals(6, mDrawable.mJob.mRects.size());
+        assertEquals(new Rect(40, 0, 80, 256), mDrawable.mJob.mRects.get(1));
+        assertEquals(new Rect(80, 0, 100, 256), mDrawable.mJob.mRects.get(2));
+        assertEquals(new Rect(0, 256, 40, 512), mDrawable.mJob.mRects.get(3));
+    }
+
+    public void testPanWithinColumnKeepsPass() {
+        mDrawable.mStripWidth = 40;
+        mCanvas.save();
+        mCanvas.clipRect(45, 0, 60, 100);
+        mDrawable.draw(mCanvas);
+        mCanvas.restore();
+        PinchToZoomRegionDrawable.StripJob job = mDrawable.mJob;
+
+        mCanvas.clipRect(50, 0, 75, 100);
+        mDrawable.draw(mCanvas);
+        assertSame(job, mDrawable.mJob);
+    }
+
+    public void testPanIntoNextColumnDecodesOnlyThatColumn() {
+        mDrawable.mStripWidth = 40;
+        mCanvas.save();
+        mCanvas.clipRect(45, 0, 60, 100);
+        mDrawable.draw(mCanvas);
+        mCanvas.restore();
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+        assertEquals(1, mDrawable.mStrips.size());
+
+        mCanvas.clipRect(60, 0, 90, 100);
+        mDrawable.draw(mCanvas);
+        assertEquals(new Rect(40, 0, 100, 256), mDrawable.mPassRegion);
+        assertEquals(1, mDrawable.mJob.mRects.size());
+        assertEquals(new Rect(80, 0, 100, 256), mDrawable.mJob.mRects.get(0));
+        assertEquals(1, mDrawable.mStrips.size());
+    }
+
+    public void testDecodedStripsNotDecodedAgain() {
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(3);
+
+        mDrawable.mPassRegion.setEmpty();
+        mDrawable.draw(mCanvas);
+        assertNull(mDrawable.mJob);
+        assertTrue(mDrawable.mBackground.isEmpty());
+    }
+
+    public void testZoomOutKeepsStripsUntilPassComplete() {
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(3);
+
+        mDrawable.setDrawScale(.5f);
+        mDrawable.draw(mCanvas);
+        assertEquals(2, mDrawable.mPassSampleSize);
+        assertEquals(2, mDrawable.mJob.mRects.size());
+        assertEquals(3, mDrawable.mStrips.size());
+
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+        assertEquals(4, mDrawable.mStrips.size());
+        mDrawable.runMain(1);
+        assertEquals(2, mDrawable.mStrips.size());
+        assertEquals(50, mDrawable.mStrips.get(0).mBitmap.getWidth());
+    }
+
+    public void testDecodeArgb8888ByDefault() {
+        assertEquals(Bitmap.Config.ARGB_8888, mDrawable.mConfig);
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+        assertEquals(Bitmap.Config.ARGB_8888, mDrawable.mStrips.get(0).mBitmap.getConfig());
+    }
+
+    public void testDecodeRgb565WhenOpaque() {
+        mDrawable = new TestRegionDrawable(mDecoder, true);
+        mDrawable.setBounds(0, 0, 100, 600);
+        assertNull(mDrawable.mConfig);
+
+        // The config is chosen from the first strip, which is not decoded again
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        assertEquals(Bitmap.Config.RGB_565, mDrawable.mConfig);
+        mDrawable.runMain(3);
+        assertEquals(Bitmap.Config.ARGB_8888, mDrawable.mStrips.get(0).mBitmap.getConfig());
+        assertEquals(Bitmap.Config.RGB_565, mDrawable.mStrips.get(1).mBitmap.getConfig());
+        assertEquals(Bitmap.Config.RGB_565, mDrawable.mStrips.get(2).mBitmap.getConfig());
+    }
+
+    public void testConfigChosenOnce() {
+        mDrawable = new TestRegionDrawable(mDecoder, true);
+        mDrawable.setBounds(0, 0, 100, 600);
+
+        mCanvas.save();
+        mCanvas.clipRect(0, 0, 100, 100);
+        mDrawable.draw(mCanvas);
+        mCanvas.restore();
+        mDrawable.runBackground();
+        assertEquals(Bitmap.Config.RGB_565, mDrawable.mConfig);
+
+        // The next pass starts before the main thread has heard from the first
+        mCanvas.clipRect(0, 500, 100, 600);
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(3);
+        assertEquals(2, mDrawable.mStrips.size());
+        assertEquals(Bitmap.Config.RGB_565, mDrawable.mStrips.get(0).mBitmap.getConfig());
+        assertEquals(Bitmap.Config.RGB_565, mDrawable.mStrips.get(1).mBitmap.getConfig());
+    }
+
+    public void testDecodeArgb8888WhenFormatHasAlpha() throws IOException {
+        BitmapRegionDecoder decoder = createDecoder(true);
+        mDrawable = new TestRegionDrawable(decoder, true);
+        mDrawable.setBounds(0, 0, 100, 600);
+
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        assertEquals(Bitmap.Config.ARGB_8888, mDrawable.mConfig);
+        mDrawable.runMain(3);
+        assertEquals(Bitmap.Config.ARGB_8888, mDrawable.mStrips.get(1).mBitmap.getConfig());
+        mDrawable.release();
+        decoder.recycle();
+    }
+
+    public void testChooseConfigOpaque() {
+        Bitmap probe = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        probe.eraseColor(Color.RED);
+        assertEquals(Bitmap.Config.RGB_565, PinchToZoomRegionDrawable.chooseConfig(probe));
+        probe.recycle();
+    }
+
+    public void testChooseConfigTranslucent() {
+        Bitmap probe = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        probe.eraseColor(Color.RED);
+        probe.setPixel(10, 10, Color.argb(128, 255, 0, 0));
+        assertEquals(Bitmap.Config.ARGB_8888, PinchToZoomRegionDrawable.chooseConfig(probe));
+        probe.recycle();
+    }
+
+    public void testChooseConfigGradient() {
+        Bitmap probe = Bitmap.createBitmap(256, 16, Bitmap.Config.ARGB_8888);
+        for (int x = 0; x < 256; x++) {
+            for (int y = 0; y < 16; y++) {
+                probe.setPixel(x, y, Color.rgb(x, x, x));
+            }
+        }
+        assertEquals(Bitmap.Config.ARGB_8888, PinchToZoomRegionDrawable.chooseConfig(probe));
+        probe.recycle();
+    }
+
+    public void testChooseConfigBusy() {
+        Bitmap probe = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                probe.setPixel(x, y, (x + y) % 2 == 0 ? Color.WHITE : Color.DKGRAY);
+            }
+        }
+        assertEquals(Bitmap.Config.RGB_565, PinchToZoomRegionDrawable.chooseConfig(probe));
+        probe.recycle();
+    }
+
+    public void testPrefetchKeepsStripsUntilEnded() {
+        int saveCount = mCanvas.save();
+        mCanvas.clipRect(0, 300, 100, 400);
+        mDrawable.draw(mCanvas);
+        mCanvas.restoreToCount(saveCount);
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+        assertEquals(1, mDrawable.mStrips.size());
+
+        mDrawable.prefetch(new RectF(0, 0, 100, 100), new Rect(0, 0, 100, 600), 1f);
+        assertTrue(mDrawable.mPrefetching);
+        assertEquals(new Rect(0, 0, 100, 256), mDrawable.mPassRegion);
+        assertEquals(1, mDrawable.mJob.mRects.size());
+        assertEquals(1, mDrawable.mStrips.size());
+
+        // Drawing elsewhere in the meantime starts no pass of its own
+        mDrawable.draw(mCanvas);
+        assertEquals(new Rect(0, 0, 100, 256), mDrawable.mPassRegion);
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+        assertEquals(2, mDrawable.mStrips.size());
+
+        // Once it ends, strips outside the region are dropped as a pass would have
+        mDrawable.endPrefetch();
+        assertFalse(mDrawable.mPrefetching);
+        assertEquals(1, mDrawable.mStrips.size());
+        assertEquals(new Rect(0, 0, 100, 256), mDrawable.mStrips.get(0).mRect);
+    }
+
+    public void testPrefetchDecodesAhead() {
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(3);
+
+        mDrawable.prefetch(new RectF(0, 0, 100, 600), new Rect(0, 0, 100, 600), .25f);
+        assertEquals(4, mDrawable.mPassSampleSize);
+        assertEquals(1, mDrawable.mJob.mRects.size());
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+
+        // The strips of the old sample size are drawn until the prefetch ends
+        assertEquals(4, mDrawable.mStrips.size());
+        assertTrue(mDrawable.mPrefetchComplete);
+        mDrawable.endPrefetch();
+        assertEquals(1, mDrawable.mStrips.size());
+        assertEquals(4, mDrawable.mStrips.get(0).mSampleSize);
+    }
+
+    public void testRelease() {
+        mDrawable.draw(mCanvas);
+        mDrawable.runBackground();
+        mDrawable.runMain(1);
+        PinchToZoomRegionDrawable.StripJob job = mDrawable.mJob;
+        Bitmap strip = mDrawable.mStrips.get(0).mBitmap;
+
+        mDrawable.release();
+        assertTrue(job.mCancelled);
+        assertTrue(mDrawable.mStrips.isEmpty());
+        assertTrue(mDrawable.mPassRegion.isEmpty());
+
+        // A drawn strip may still be in a frame being rendered, so only strips that arrive after
+        // the release are recycled
+        assertFalse(strip.isRecycled());
+        mDrawable.runMain(1);
+        assertTrue(mDrawable.mLastReady.mBitmap.isRecycled());
+        assertTrue(mDrawable.mStrips.isEmpty());
+    }
+
+    /**
+     * Runs background work and main thread work only when asked
+     */
+    private static class TestRegionDrawable extends PinchToZoomRegionDrawable {
+        final ArrayList<Runnable> mBackground = new ArrayList<Runnable>();
+        final ArrayList<Runnable> mMain = new ArrayList<Runnable>();
+        Strip mLastReady;
+
+        TestRegionDrawable(BitmapRegionDecoder decoder, boolean rgb565Allowed) {
+            super(decoder, rgb565Allowed);
+        }
+
+        void runBackground() {
+            while (!mBackground.isEmpty()) {
+                mBackground.remove(0).run();
+            }
+        }
+
+        void runMain(int count) {
+            for (int i = 0; i < count && !mMain.isEmpty(); i++) {
+                mMain.remove(0).run();
+            }
+        }
+
+        @Override
+        protected void executeInBackground(Runnable runnable) {
+            mBackground.add(runnable);
+        }
+
+        @Override
+        protected void postToMainThread(Runnable runnable) {
+            mMain.add(runnable);
+        }
+
+        @Override
+        protected void onStripReady(StripJob job, Strip strip) {
+            mLastReady = strip;
+            super.onStripReady(job, strip);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.jameskelso.android.widget;
+
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Compares the size and write/read time of {@link PinchToZoomSavedState} against the format it
+ * replaced, which wrote configuration, touch state, and the full image matrix through
+ * {@link Parcel#writeParcelable(android.os.Parcelable, int)}. Results are written to logcat.
+ */
+public class PinchToZoomSavedStateBenchmark extends AndroidTestCase {
+    private static final String TAG = "PinchToZoomBenchmark";
+    private static final int ITERATIONS = 10000;
+
+    private PinchToZoomSavedState mState;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        mState = new PinchToZoomSavedState(new Bundle());
+        mState.srcBitmapWidth = 1016;
+        mState.srcBitmapHeight = 673;
+        mState.translationX = -120.5f;
+        mState.translationY = -64.25f;
+        mState.currentScaleFactor = 1.75f;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mState = null;
+        super.tearDown();
+    }
+
+    public void testParcelSize() {
+        Parcel compact = Parcel.obtain();
+        mState.writeToParcel(compact, 0);
+        int compactSize = compact.dataSize();
+        compact.recycle();
+
+        Parcel legacy = Parcel.obtain();
+        writeLegacyState(legacy);
+        int legacySize = legacy.dataSize();
+        legacy.recycle();
+
+        Log.i(TAG, "SavedState parcel size: compact=" + compactSize + " bytes, legacy="
+                + legacySize + " bytes");
+        assertTrue("Compact saved state should be smaller than the legacy format",
+                compactSize < legacySize);
+    }
+
+    public void testWriteReadTime() {
+        Parcel parcel = Parcel.obtain();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parcel.setDataSize(0);
+            mState.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            new PinchToZoomSavedState(parcel);
+        }
+        long compactNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parcel.setDataSize(0);
+            writeLegacyState(parcel);
+            parcel.setDataPosition(0);
+            readLegacyState(parcel);
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        parcel.recycle();
+
+        Log.i(TAG, "SavedState write+read: compact=" + (compactNanos / ITERATIONS)
+                + " ns, legacy=" + (legacyNanos / ITERATIONS) + " ns");
+    }
+
+    /**
+     * Write the same values the legacy format wrote, in the same order.
+     */
+    private void writeLegacyState(Parcel out) {
+        out.writeParcelable(new Bundle(), 0);
+
+        out.writeInt(PinchToZoomTouchHelper.DEFAULT_PAN_THRESHOLD);
+        out.writeInt(PinchToZoomTouchHelper.STATE_NONE);
+        out.writeParcelable(new PointF(1f, 2f), 0);
+        out.writeParcelable(new PointF(3f, 4f), 0);
+
+        out.writeByte((byte) 0);
+        out.writeByte((byte) 1);
+        out.writeParcelable(new Rect(), 0);
+        out.writeParcelable(new Rect(), 0);
+        out.writeParcelable(new Point(mState.srcBitmapWidth, mState.srcBitmapHeight), 0);
+        out.writeParcelable(new Point(), 0);
+        out.writeParcelable(new Point(), 0);
+
+        Matrix matrix = new Matrix();
+        matrix.setScale(mState.currentScaleFactor, mState.currentScaleFactor);
+        matrix.postTranslate(mState.translationX, mState.translationY);
+        float[] values = new float[9];
+        matrix.getValues(values);
+        out.writeFloatArray(values);
+
+        out.writeFloat(mState.currentScaleFactor);
+    }
+
+    /**
+     * Read the values written by {@link #writeLegacyState(Parcel)} the way the legacy format did.
+     */
+    private void readLegacyState(Parcel source) {
+        source.readParcelable(null);
+
+        source.readInt();
+        source.readInt();
+        source.readParcelable(null);
+        source.readParcelable(null);
+
+        source.readByte();
+        source.readByte();
+        source.readParcelable(null);
+        source.readParcelable(null);
+        source.readParcelable(null);
+        source.readParcelable(null);
+        source.readParcelable(null);
+
+        float[] values = new float[9];
+        source.readFloatArray(values);
+        new Matrix().setValues(values);
+
+        source.readFloat();
+    }
+}
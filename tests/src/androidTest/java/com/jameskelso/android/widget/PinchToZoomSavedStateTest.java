@@ -1,9 +1,5 @@
 package com.jameskelso.android.widget;
 
-import android.graphics.Matrix;
-import android.graphics.Point;
-import android.graphics.PointF;
-import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.test.AndroidTestCase;
@@ -12,18 +8,10 @@ import android.test.AndroidTestCase;
  * Created by jkelso on 2/19/15.
  */
 public class PinchToZoomSavedStateTest extends AndroidTestCase {
-    private static final int PAN_THRESHOLD = 24;
-    private static final int TOUCH_MODE = PinchToZoomTouchHelper.STATE_PAN;
-    private static final PointF FIRST_TOUCH = new PointF(1f, 2f);
-    private static final PointF LAST_TOUCH = new PointF(3f, 4f);
-    private static final boolean CROP_TO_PADDING = true;
-    private static final boolean PIN_AXES = true;
-    private static final Rect PADDING = new Rect(1, 2, 3, 4);
-    private static final Rect TRANSLATION_EXTRA = new Rect(5, 6, 7, 8);
-    private static final Point SRC_BITMAP_SIZE = new Point(5, 6);
-    private static final Point BITMAP_MIN_SIZE = new Point(7, 8);
-    private static final Point BITMAP_MAX_SIZE = new Point(9, 10);
-    private static final Matrix MATRIX = new Matrix();
+    private static final int SRC_BITMAP_WIDTH = 5;
+    private static final int SRC_BITMAP_HEIGHT = 6;
+    private static final float TRANSLATION_X = 7.5f;
+    private static final float TRANSLATION_Y = 8.5f;
     private static final float CURRENT_SCALE_FACTOR = 32.5f;
 
     private PinchToZoomSavedState mState;
@@ -33,22 +21,11 @@ public class PinchToZoomSavedStateTest extends AndroidTestCase {
     public void setUp() throws Exception {
         super.setUp();
 
-        MATRIX.postScale(2.5f, 2.5f, 0, 0);
-        MATRIX.postTranslate(2, 2);
-
         mState = new PinchToZoomSavedState(new Bundle());
-        mState.panThreshold = PAN_THRESHOLD;
-        mState.touchMode = TOUCH_MODE;
-        mState.firstTouch = FIRST_TOUCH;
-        mState.lastTouch = LAST_TOUCH;
-        mState.cropToPadding = CROP_TO_PADDING;
-        mState.pinAxesSmallerThanViewBounds = PIN_AXES;
-        mState.padding = PADDING;
-        mState.translationExtra = TRANSLATION_EXTRA;
-        mState.srcBitmapSize = SRC_BITMAP_SIZE;
-        mState.bitmapMinSize = BITMAP_MIN_SIZE;
-        mState.bitmapMaxSize = BITMAP_MAX_SIZE;
-        mState.matrix = MATRIX;
+        mState.srcBitmapWidth = SRC_BITMAP_WIDTH;
+        mState.srcBitmapHeight = SRC_BITMAP_HEIGHT;
+        mState.translationX = TRANSLATION_X;
+        mState.translationY = TRANSLATION_Y;
         mState.currentScaleFactor = CURRENT_SCALE_FACTOR;
 
         mParcel = Parcel.obtain();
@@ -64,83 +41,88 @@ public class PinchToZoomSavedStateTest extends AndroidTestCase {
         super.tearDown();
     }
 
-    public void testConstructorFromParcelPanThreshold() {
+    public void testConstructorFromParcelVersion() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(PAN_THRESHOLD, state.panThreshold);
+        assertEquals(PinchToZoomSavedState.VERSION, state.version);
     }
 
-    public void testConstructorFromParcelTouchMode() {
+    public void testConstructorFromParcelSrcBitmapWidth() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(TOUCH_MODE, state.touchMode);
+        assertEquals(SRC_BITMAP_WIDTH, state.srcBitmapWidth);
     }
 
-    public void testConstructorFromParcelFirstTouchX() {
+    public void testConstructorFromParcelSrcBitmapHeight() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(FIRST_TOUCH.x, state.firstTouch.x);
+        assertEquals(SRC_BITMAP_HEIGHT, state.srcBitmapHeight);
     }
 
-    public void testConstructorFromParcelFirstTouchY() {
+    public void testConstructorFromParcelTranslationX() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(FIRST_TOUCH.y, state.firstTouch.y);
+        assertEquals(TRANSLATION_X, state.translationX);
     }
 
-    public void testConstructorFromParcelLastTouchX() {
+    public void testConstructorFromParcelTranslationY() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(LAST_TOUCH.x, state.lastTouch.x);
+        assertEquals(TRANSLATION_Y, state.translationY);
     }
 
-    public void testConstructorFromParcelLastTouchY() {
+    public void testConstructorFromParcelCurrentScaleFactor() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(LAST_TOUCH.y, state.lastTouch.y);
+        assertEquals(CURRENT_SCALE_FACTOR, state.currentScaleFactor);
     }
 
-    public void testConstructorFromParcelCropToPadding() {
+    public void testConstructorFromParcelHasDynamicState() {
         PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(CROP_TO_PADDING, state.cropToPadding);
+        assertTrue(state.hasDynamicState());
     }
 
-    public void testConstructorFromParcelPinAxesSmallerThanViewBounds() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(PIN_AXES, state.pinAxesSmallerThanViewBounds);
-    }
+    public void testConstructorFromParcelUnknownVersion() {
+        Parcel parcel = Parcel.obtain();
+        parcel.writeParcelable(new Bundle(), 0);
+        parcel.writeInt(PinchToZoomSavedState.VERSION + 1);
+        parcel.writeInt(4);
+        parcel.writeFloat(CURRENT_SCALE_FACTOR);
+        parcel.setDataPosition(0);
 
-    public void testConstructorFromParcelPadding() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(PADDING, state.padding);
-    }
+        PinchToZoomSavedState state = new PinchToZoomSavedState(parcel);
+        parcel.recycle();
 
-    public void testConstructorFromParcelTranslationExtra() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(TRANSLATION_EXTRA, state.translationExtra);
+        assertFalse(state.hasDynamicState());
     }
 
-    public void testConstructorFromParcelSrcBitmapSize() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(SRC_BITMAP_SIZE, state.srcBitmapSize);
-    }
+    public void testConstructorFromParcelUnknownVersionSkipsPayload() {
+        Parcel parcel = Parcel.obtain();
+        parcel.writeParcelable(new Bundle(), 0);
+        parcel.writeInt(PinchToZoomSavedState.VERSION + 1);
+        parcel.writeInt(8);
+        parcel.writeFloat(CURRENT_SCALE_FACTOR);
+        parcel.writeFloat(TRANSLATION_X);
+        parcel.writeInt(SRC_BITMAP_WIDTH);
+        parcel.setDataPosition(0);
 
-    public void testConstructorFromParcelBitmapMinSize() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(BITMAP_MIN_SIZE, state.bitmapMinSize);
-    }
+        new PinchToZoomSavedState(parcel);
+        final int next = parcel.readInt();
+        parcel.recycle();
 
-    public void testConstructorFromParcelBitmapMaxSize() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(BITMAP_MAX_SIZE, state.bitmapMaxSize);
+        assertEquals(SRC_BITMAP_WIDTH, next);
     }
 
-    public void testConstructorFromParcelMatrix() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(MATRIX, state.matrix);
-    }
+    public void testConstructorFromParcelFollowingData() {
+        Parcel parcel = Parcel.obtain();
+        mState.writeToParcel(parcel, 0);
+        parcel.writeInt(SRC_BITMAP_HEIGHT);
+        parcel.setDataPosition(0);
 
-    public void testConstructorFromParcelCurrentScaleFactor() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(mParcel);
-        assertEquals(CURRENT_SCALE_FACTOR, state.currentScaleFactor);
+        new PinchToZoomSavedState(parcel);
+        final int next = parcel.readInt();
+        parcel.recycle();
+
+        assertEquals(SRC_BITMAP_HEIGHT, next);
     }
 
     public void testConstructorWithParcelable() {
-        // Nothing to test here
+        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
+        assertTrue(state.hasDynamicState());
     }
 
     public void testWriteToParcel() {
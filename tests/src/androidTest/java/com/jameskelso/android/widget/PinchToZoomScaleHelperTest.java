@@ -619,4 +619,22 @@ public class PinchToZoomScaleHelperTest extends AndroidTestCase {
         mHelper.onRestoreInstanceState(state);
         assertEquals(scaleFactor, mHelper.mCurrentScaleFactor);
     }
+
+    public void testRestoreScaleFactor() {
+        PinchToZoomMatrixState state = new PinchToZoomMatrixState();
+        state.srcBitmapWidth = 500;
+        state.srcBitmapHeight = 500;
+        float scaleFactor = mHelper.restoreScaleFactor(1.5f, state);
+        assertEquals(1.5f, scaleFactor);
+        assertEquals(1.5f, mHelper.mCurrentScaleFactor);
+    }
+
+    public void testRestoreScaleFactorCapped() {
+        PinchToZoomMatrixState state = new PinchToZoomMatrixState();
+        state.srcBitmapWidth = 500;
+        state.srcBitmapHeight = 500;
+        float scaleFactor = mHelper.restoreScaleFactor(4f, state);
+        assertEquals(2f, scaleFactor);
+        assertEquals(2f, mHelper.mCurrentScaleFactor);
+    }
 }
@@ -1,11 +1,9 @@
 package com.jameskelso.android.widget;
 
 import android.graphics.PointF;
-import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.test.AndroidTestCase;
 import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
 import android.view.View;
 
 import java.util.concurrent.CountDownLatch;
@@ -24,19 +22,7 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
     public void setUp() throws Exception {
         super.setUp();
 
-        mEmptyTouchHelperListener = new PinchToZoomTouchHelper.OnPinchToZoomTouchListener() {
-
-            @Override
-            public void onPinchToZoom(float desiredScaleFactor, float focusX,
-                                      float focusY) {
-
-            }
-
-            @Override
-            public void onPan(float dx, float dy) {
-
-            }
-        };
+        mEmptyTouchHelperListener = new EmptyTouchHelperListener();
         mHelper = new PinchToZoomTouchHelper(getContext(), mEmptyTouchHelperListener);
         mEmptyClickListener = new View.OnClickListener() {
             @Override
@@ -64,16 +50,15 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
         assertNotNull(mHelper.mOnPinchToZoomTouchListener);
     }
 
-    public void testConstructorGestureDetector() {
-        assertNotNull(mHelper.mScaleGestureDetector);
+    public void testConstructorGestureTracker() {
+        assertNotNull(mHelper.mGestureTracker);
     }
 
-    public void testOnTouchGestureDetector() throws InterruptedException {
+    public void testOnTouchGestureTracker() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
-        mHelper.mScaleGestureDetector = new ScaleGestureDetector(getContext(),
-                new ScaleGestureDetector.SimpleOnScaleGestureListener()) {
+        mHelper.mGestureTracker = new PinchToZoomGestureTracker() {
             @Override
-            public boolean onTouchEvent(@NonNull MotionEvent e) {
+            boolean onTouchEvent(@NonNull MotionEvent event) {
                 latch.countDown();
                 return false;
             }
@@ -81,237 +66,236 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
         mHelper.onTouch(null, MotionEvent.obtain(0, 0, 0, 0, 0, 0));
 
         latch.await(100, TimeUnit.MILLISECONDS);
-        assertEquals("PinchToZoomTouchHelper should call ScaleGestureDetector.onTouchEvent() " +
+        assertEquals("PinchToZoomTouchHelper should call PinchToZoomGestureTracker.onTouchEvent() " +
                 "during onTouch().", 0, latch.getCount());
     }
 
-    public void testOnScale() throws InterruptedException {
-        final CountDownLatch latch = new CountDownLatch(1);
-        mHelper.mScaleGestureDetector = new ScaleGestureDetector(getContext(),
-                new ScaleGestureDetector.SimpleOnScaleGestureListener()) {
+    public void testOnTouchPinchToZoomAndPan() {
+        final float[] result = new float[5];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
             @Override
-            public float getScaleFactor() {
-                return 0f;
+            public void onPinchToZoom(float desiredScaleFactor, float focusX, float focusY) {
+                fail("PinchToZoomTouchHelper should combine zoom and pan while zooming");
             }
 
             @Override
-            public float getFocusX() {
-                return 0f;
+            public void onPan(float dx, float dy) {
+                fail("PinchToZoomTouchHelper should combine zoom and pan while zooming");
             }
 
             @Override
-            public float getFocusY() {
-                return 0f;
+            public void onPinchToZoomAndPan(float desiredScaleFactor, float focusX,
+                                            float focusY, float dx, float dy) {
+                result[0] = desiredScaleFactor;
+                result[1] = focusX;
+                result[2] = focusY;
+                result[3] = dx;
+                result[4] = dy;
             }
         };
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_MOVE, 60, 110, 260, 110));
 
-        mHelper.mOnPinchToZoomTouchListener = new PinchToZoomTouchHelper
-                .OnPinchToZoomTouchListener() {
-            @Override
-            public void onPinchToZoom(float desiredScaleFactor, float focusX, float focusY) {
-                latch.countDown();
-            }
+        assertEquals(2f, result[0], .001f);
+        assertEquals(150f, result[1], .001f);
+        assertEquals(100f, result[2], .001f);
+        assertEquals(10f, result[3], .001f);
+        assertEquals(10f, result[4], .001f);
+    }
 
+    public void testOnTouchPanAfterPointerUp() {
+        final float[] result = new float[2];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
             @Override
             public void onPan(float dx, float dy) {
-                // Not used here
+                result[0] += dx;
+                result[1] += dy;
             }
         };
-        mHelper.onScale(mHelper.mScaleGestureDetector);
-
-        latch.await(100, TimeUnit.MILLISECONDS);
-
-        assertEquals("PinchToZoomTouchHelper should call " +
-                        "OnPinchToZoomTouchListener.onPinchToZoom() during onScale().", 0,
-                latch.getCount());
-    }
-
-    public void testOnScaleBegin() {
-        mHelper.onScaleBegin(null);
-        assertEquals(PinchToZoomTouchHelper.STATE_ZOOM, mHelper.mTouchMode);
-    }
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_UP
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_MOVE, 110, 105));
 
-    public void testOnScaleEnd() {
-        mHelper.onScaleEnd(null);
-        // Nothing to test here. Method doesn't do anything.
+        assertEquals(10f, result[0], .001f);
+        assertEquals(5f, result[1], .001f);
     }
 
-    public void testProcessMotionEventSwitchActionDown() {
-        final CountDownLatch latch = new CountDownLatch(1);
-        mHelper = new PinchToZoomTouchHelper(getContext(), mEmptyTouchHelperListener) {
-            @Override
-            protected void processMotionEventActionDown(PointF currentTouch) {
-                latch.countDown();
-            }
-
+    public void testOnTouchThirdPointerDoesNotJump() {
+        final int[] calls = new int[1];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
             @Override
-            protected void processMotionEventActionUp(View v, PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
+            public void onPinchToZoom(float desiredScaleFactor, float focusX, float focusY) {
+                calls[0]++;
             }
 
             @Override
-            protected void processMotionEventActionMove(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
+            public void onPan(float dx, float dy) {
+                calls[0]++;
             }
 
             @Override
-            protected void processMotionEventPointerUp(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
+            public void onPinchToZoomAndPan(float desiredScaleFactor, float focusX,
+                                            float focusY, float dx, float dy) {
+                calls[0]++;
             }
         };
-        mHelper.processMotionEvent(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0,
-                0));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (2 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100, 150, 300));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_MOVE, 100, 100, 200, 100, 150, 300));
 
-        assertEquals("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                "based on MotionEvent.getAction().", 0, latch.getCount());
+        assertEquals(0, calls[0]);
     }
 
-    public void testProcessMotionEventSwitchActionUp() {
-        final CountDownLatch latch = new CountDownLatch(1);
-        mHelper = new PinchToZoomTouchHelper(getContext(), mEmptyTouchHelperListener) {
+    public void testOnTouchPinchStartAndEnd() {
+        final int[] pinches = new int[2];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
             @Override
-            protected void processMotionEventActionDown(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
+            public void onPinchStart() {
+                pinches[0]++;
             }
 
             @Override
-            protected void processMotionEventActionUp(View v, PointF currentTouch) {
-                latch.countDown();
+            public void onPinchEnd() {
+                pinches[1]++;
             }
-
+        };
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100));
+        assertEquals(1, pinches[0]);
+        assertEquals(0, pinches[1]);
+
+        // A third pointer joins the same pinch, and lifting it leaves the pinch going
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (2 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100, 150, 300));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_UP
+                | (2 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100, 150, 300));
+        assertEquals(1, pinches[0]);
+        assertEquals(0, pinches[1]);
+
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_UP
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100));
+        assertEquals(1, pinches[1]);
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_UP, 100, 100));
+        assertEquals(1, pinches[0]);
+        assertEquals(1, pinches[1]);
+    }
+
+    public void testOnTouchPinchEndOnCancel() {
+        final int[] pinches = new int[2];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
             @Override
-            protected void processMotionEventActionMove(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
+            public void onPinchStart() {
+                pinches[0]++;
             }
 
             @Override
-            protected void processMotionEventPointerUp(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
+            public void onPinchEnd() {
+                pinches[1]++;
             }
         };
-        mHelper.processMotionEvent(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_UP, 0, 0,
-                0));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_DOWN, 100, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 100, 100, 200, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_CANCEL, 100, 100, 200, 100));
+        assertEquals(1, pinches[0]);
+        assertEquals(1, pinches[1]);
+        assertEquals(PinchToZoomTouchHelper.STATE_NONE, mHelper.mTouchMode);
+    }
 
-        assertEquals("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                "based on MotionEvent.getAction().", 0, latch.getCount());
+    public void testProcessMotionEventSwitchActionDown() {
+        mHelper.processMotionEvent(null, MotionEvent.ACTION_DOWN);
+        assertEquals(PinchToZoomTouchHelper.STATE_PAN, mHelper.mTouchMode);
     }
 
-    public void testProcessMotionEventSwitchActionMove() {
+    public void testProcessMotionEventSwitchPointerDown() {
+        mHelper.processMotionEvent(null, MotionEvent.ACTION_POINTER_DOWN);
+        assertEquals(PinchToZoomTouchHelper.STATE_ZOOM, mHelper.mTouchMode);
+    }
+
+    public void testProcessMotionEventSwitchActionUp() {
         final CountDownLatch latch = new CountDownLatch(1);
         mHelper = new PinchToZoomTouchHelper(getContext(), mEmptyTouchHelperListener) {
             @Override
-            protected void processMotionEventActionDown(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
-            }
-
-            @Override
-            protected void processMotionEventActionUp(View v, PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
-            }
-
-            @Override
-            protected void processMotionEventActionMove(PointF currentTouch) {
+            protected void processMotionEventActionUp(View v) {
                 latch.countDown();
             }
+        };
+        mHelper.processMotionEvent(null, MotionEvent.ACTION_UP);
+        assertEquals("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
+                " for MotionEvent.ACTION_UP", 0, latch.getCount());
+    }
 
+    public void testProcessMotionEventSwitchActionMove() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mHelper = new PinchToZoomTouchHelper(getContext(), mEmptyTouchHelperListener) {
             @Override
-            protected void processMotionEventPointerUp(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
+            protected void processMotionEventActionMove() {
+                latch.countDown();
             }
         };
-        mHelper.processMotionEvent(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_MOVE, 0, 0,
-                0));
-
+        mHelper.processMotionEvent(null, MotionEvent.ACTION_MOVE);
         assertEquals("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                "based on MotionEvent.getAction().", 0, latch.getCount());
+                " for MotionEvent.ACTION_MOVE", 0, latch.getCount());
     }
 
     public void testProcessMotionEventSwitchPointerUp() {
         final CountDownLatch latch = new CountDownLatch(1);
         mHelper = new PinchToZoomTouchHelper(getContext(), mEmptyTouchHelperListener) {
             @Override
-            protected void processMotionEventActionDown(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
-            }
-
-            @Override
-            protected void processMotionEventActionUp(View v, PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
-            }
-
-            @Override
-            protected void processMotionEventActionMove(PointF currentTouch) {
-                fail("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                        "based on MotionEvent.getAction().");
-            }
-
-            @Override
-            protected void processMotionEventPointerUp(PointF currentTouch) {
+            protected void processMotionEventPointerUp() {
                 latch.countDown();
             }
         };
-        mHelper.processMotionEvent(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_POINTER_UP, 0,
-                0, 0));
-
+        mHelper.processMotionEvent(null, MotionEvent.ACTION_POINTER_UP);
         assertEquals("PinchToZoomTouchHelper.processMotionEvent should call the correct method" +
-                "based on MotionEvent.getAction().", 0, latch.getCount());
+                " for MotionEvent.ACTION_POINTER_UP", 0, latch.getCount());
     }
 
-    public void testProcessMotionEventActionDownFirstTouch() {
-        final PointF motionDownPoint = new PointF(1, 2);
-        mHelper.processMotionEventActionDown(motionDownPoint);
-        assertSame(motionDownPoint, mHelper.mFirstTouch);
-    }
-
-    public void testProcessMotionEventActionDownLastTouch() {
-        final PointF motionDownPoint = new PointF(2, 4);
-        mHelper.processMotionEventActionDown(motionDownPoint);
-        assertSame(motionDownPoint, mHelper.mLastTouch);
-    }
-
-    public void testProcessMotionEventActionDownTouchMode() {
-        final PointF motionDownPoint = new PointF(1, 2);
-        mHelper.processMotionEventActionDown(motionDownPoint);
-        assertEquals(PinchToZoomTouchHelper.STATE_PAN, mHelper.mTouchMode);
+    public void testProcessMotionEventSwitchActionCancel() {
+        mHelper.mTouchMode = PinchToZoomTouchHelper.STATE_PAN;
+        mHelper.processMotionEvent(null, MotionEvent.ACTION_CANCEL);
+        assertEquals(PinchToZoomTouchHelper.STATE_NONE, mHelper.mTouchMode);
     }
 
     public void testProcessMotionEventActionMoveNotPan() {
-        final PointF motionMovePoint = new PointF(1, 2);
-        mHelper.processMotionEventActionMove(motionMovePoint);
-        assertNull("processMotionEventActionMove shouldn't process the event if mTouchMode is " +
-                "not STATE_PAN", mHelper.mLastTouch);
-    }
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
+            @Override
+            public void onPinchToZoom(float desiredScaleFactor, float focusX, float focusY) {
+                fail("processMotionEventActionMove shouldn't process the event if mTouchMode " +
+                        "is STATE_NONE");
+            }
 
-    public void testProcessMotionEventActionMoveLastTouch() {
-        final PointF motionDownPoint = new PointF(1, 2);
-        mHelper.processMotionEventActionDown(motionDownPoint);
+            @Override
+            public void onPan(float dx, float dy) {
+                fail("processMotionEventActionMove shouldn't process the event if mTouchMode " +
+                        "is STATE_NONE");
+            }
 
-        final PointF motionMovePoint = new PointF(2, 4);
-        mHelper.processMotionEventActionMove(motionMovePoint);
-        assertSame(motionMovePoint, mHelper.mLastTouch);
+            @Override
+            public void onPinchToZoomAndPan(float desiredScaleFactor, float focusX,
+                                            float focusY, float dx, float dy) {
+                fail("processMotionEventActionMove shouldn't process the event if mTouchMode " +
+                        "is STATE_NONE");
+            }
+        };
+        mHelper.mGestureTracker.mDeltaX = 1;
+        mHelper.mGestureTracker.mScaleFactor = 2;
+        mHelper.processMotionEventActionMove();
     }
 
     public void testProcessMotionEventActionMoveNotifyListener() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
         PinchToZoomTouchHelper.OnPinchToZoomTouchListener listener =
-                new PinchToZoomTouchHelper.OnPinchToZoomTouchListener() {
-                    @Override
-                    public void onPinchToZoom(float desiredScaleFactor, float focusX,
-                                              float focusY) {
-
-                    }
-
+                new EmptyTouchHelperListener() {
                     @Override
                     public void onPan(float dx, float dy) {
                         latch.countDown();
@@ -319,15 +303,12 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
                 };
         mHelper.mOnPinchToZoomTouchListener = listener;
 
-        final PointF motionDownPoint = new PointF(1, 2);
-        mHelper.processMotionEventActionDown(motionDownPoint);
-
-        final PointF motionMovePoint = new PointF(2, 4);
-        mHelper.processMotionEventActionMove(motionMovePoint);
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 1, 2, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_MOVE, 2, 4, 0));
 
         latch.await(100, TimeUnit.MILLISECONDS);
         assertEquals("PinchToZoomTouchHelper should notify OnPinchToZoomTouchListener on " +
-                "processMotionEventDown()", 0, latch.getCount());
+                "processMotionEventActionMove()", 0, latch.getCount());
     }
 
     public void testProcessMotionEventActionMoveNotifyListenerVerifyDx() throws
@@ -337,13 +318,7 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
 
         final CountDownLatch latch = new CountDownLatch(1);
         PinchToZoomTouchHelper.OnPinchToZoomTouchListener listener =
-                new PinchToZoomTouchHelper.OnPinchToZoomTouchListener() {
-                    @Override
-                    public void onPinchToZoom(float desiredScaleFactor, float focusX,
-                                              float focusY) {
-
-                    }
-
+                new EmptyTouchHelperListener() {
                     @Override
                     public void onPan(float dx, float dy) {
                         if (dx == (motionMovePoint.x - motionDownPoint.x)) {
@@ -353,8 +328,10 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
                 };
         mHelper.mOnPinchToZoomTouchListener = listener;
 
-        mHelper.processMotionEventActionDown(motionDownPoint);
-        mHelper.processMotionEventActionMove(motionMovePoint);
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN,
+                motionDownPoint.x, motionDownPoint.y, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_MOVE,
+                motionMovePoint.x, motionMovePoint.y, 0));
 
         latch.await(100, TimeUnit.MILLISECONDS);
         assertEquals("PinchToZoomTouchHelper calculated incorrect dx when notifiying " +
@@ -368,13 +345,7 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
 
         final CountDownLatch latch = new CountDownLatch(1);
         PinchToZoomTouchHelper.OnPinchToZoomTouchListener listener =
-                new PinchToZoomTouchHelper.OnPinchToZoomTouchListener() {
-                    @Override
-                    public void onPinchToZoom(float desiredScaleFactor, float focusX,
-                                              float focusY) {
-
-                    }
-
+                new EmptyTouchHelperListener() {
                     @Override
                     public void onPan(float dx, float dy) {
                         if (dy == (motionMovePoint.y - motionDownPoint.y)) {
@@ -384,8 +355,10 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
                 };
         mHelper.mOnPinchToZoomTouchListener = listener;
 
-        mHelper.processMotionEventActionDown(motionDownPoint);
-        mHelper.processMotionEventActionMove(motionMovePoint);
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN,
+                motionDownPoint.x, motionDownPoint.y, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_MOVE,
+                motionMovePoint.x, motionMovePoint.y, 0));
         latch.await(100, TimeUnit.MILLISECONDS);
         assertEquals("PinchToZoomTouchHelper calculated incorrect dy when notifiying " +
                 "OnPinchToZoomTouchListener.onPan()", 0, latch.getCount());
@@ -393,8 +366,7 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
 
     public void testProcessMotionEventActionUpTouchMode() {
         mHelper.mTouchMode = PinchToZoomTouchHelper.STATE_ZOOM;
-        mHelper.mFirstTouch = new PointF(0, 0);
-        mHelper.processMotionEventActionUp(null, new PointF(0, 0));
+        mHelper.processMotionEventActionUp(null);
         assertEquals(PinchToZoomTouchHelper.STATE_NONE, mHelper.mTouchMode);
     }
 
@@ -407,8 +379,8 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
             }
         };
         mHelper.setOnClickListener(listener);
-        mHelper.mFirstTouch = new PointF(0, 0);
-        mHelper.processMotionEventActionUp(null, new PointF(100, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_UP, 100, 0, 0));
         latch.await(100, TimeUnit.MILLISECONDS);
 
         assertEquals("PinchToZoomTouchHelper.processMotionEventActionUp() should not call " +
@@ -424,8 +396,8 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
             }
         };
         mHelper.setOnClickListener(listener);
-        mHelper.mFirstTouch = new PointF(0, 0);
-        mHelper.processMotionEventActionUp(null, new PointF(0, 100));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_UP, 0, 100, 0));
         latch.await(100, TimeUnit.MILLISECONDS);
 
         assertEquals("PinchToZoomTouchHelper.processMotionEventActionUp() should not call " +
@@ -441,18 +413,227 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
             }
         };
         mHelper.setOnClickListener(listener);
-        mHelper.mFirstTouch = new PointF(0, 0);
-        mHelper.processMotionEventActionUp(null, new PointF(0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_UP, 0, 0, 0));
         latch.await(100, TimeUnit.MILLISECONDS);
 
         assertEquals("PinchToZoomTouchHelper.processMotionEventActionUp() should call " +
                 "performUserTap() for touches under the pan threshold.", 0, latch.getCount());
     }
 
+    public void testProcessMotionEventActionDownGestureStart() {
+        final int[] calls = new int[1];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
+            @Override
+            public void onGestureStart() {
+                calls[0]++;
+            }
+        };
+        mHelper.processMotionEventActionDown();
+        assertEquals(1, calls[0]);
+    }
+
+    public void testOnTouchFling() {
+        final float[] velocity = new float[3];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
+            @Override
+            public void onFling(float velocityX, float velocityY) {
+                velocity[0] = velocityX;
+                velocity[1] = velocityY;
+                velocity[2]++;
+            }
+        };
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 10, MotionEvent.ACTION_MOVE, 100, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 20, MotionEvent.ACTION_MOVE, 200, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 20, MotionEvent.ACTION_UP, 200, 0, 0));
+
+        assertEquals(1f, velocity[2]);
+        assertTrue(velocity[0] > 0);
+        assertNull(mHelper.mVelocityTracker);
+    }
+
+    public void testOnTouchNoFlingWhenSlow() {
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
+            @Override
+            public void onFling(float velocityX, float velocityY) {
+                fail("PinchToZoomTouchHelper should not fling below the minimum fling velocity");
+            }
+        };
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 1000, MotionEvent.ACTION_MOVE, 5, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 2000, MotionEvent.ACTION_MOVE, 10, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 2000, MotionEvent.ACTION_UP, 10, 0, 0));
+    }
+
+    public void testOnTouchPredictsPan() {
+        final float[] pan = new float[2];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
+            @Override
+            public void onPan(float dx, float dy) {
+                pan[0] += dx;
+                pan[1] += dy;
+            }
+        };
+        mHelper.setTouchPredictor(new PinchToZoomTouchPredictor(16, 100),
+                createPredictedPanListener(pan, Float.MAX_VALUE));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 10, MotionEvent.ACTION_MOVE, 10, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 20, MotionEvent.ACTION_MOVE, 20, 0, 0));
+        assertEquals(20f, pan[0], .01f);
+
+        mHelper.onTouch(null, MotionEvent.obtain(0, 30, MotionEvent.ACTION_MOVE, 30, 0, 0));
+        assertEquals(46f, pan[0], .01f);
+        assertEquals(0f, pan[1], .01f);
+
+        // Cancelling the gesture takes back the predicted translation
+        mHelper.onTouch(null, MotionEvent.obtain(0, 40, MotionEvent.ACTION_CANCEL, 30, 0, 0));
+        assertEquals(30f, pan[0], .01f);
+        assertEquals(0f, mHelper.mAppliedPredictionX);
+    }
+
+    public void testOnTouchPredictionTakenBackOnPointerDown() {
+        final float[] pan = new float[2];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
+            @Override
+            public void onPan(float dx, float dy) {
+                pan[0] += dx;
+            }
+        };
+        mHelper.setTouchPredictor(new PinchToZoomTouchPredictor(16, 100),
+                createPredictedPanListener(pan, Float.MAX_VALUE));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_DOWN, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 10, MotionEvent.ACTION_MOVE, 10, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 20, MotionEvent.ACTION_MOVE, 20, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 30, MotionEvent.ACTION_MOVE, 30, 0, 0));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 30, 0, 100, 100));
+        assertEquals(30f, pan[0], .01f);
+        assertEquals(0, mHelper.mTouchPredictor.mSampleSize);
+    }
+
+    public void testOnTouchPredictionIntoEdge() {
+        // The image can move at most 35 pixels to the right
+        final float[] pan = new float[2];
+        mHelper.mOnPinchToZoomTouchListener = new EmptyTouchHelperListener() {
+            @Override
+            public void onPan(float dx, float dy) {
+                pan[0] = Math.min(pan[0] + dx, 35);
+                pan[1] += dy;
+            }
+        };
+        mHelper.setTouchPredictor(new PinchToZoomTouchPredictor(16, 100),
+                createPredictedPanListener(pan, 35));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 10, MotionEvent.ACTION_MOVE, 10, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 20, MotionEvent.ACTION_MOVE, 20, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 30, MotionEvent.ACTION_MOVE, 30, 0, 0));
+
+        // Only the part of the prediction that fit before the edge was applied
+        assertEquals(35f, pan[0], .01f);
+        assertEquals(5f, mHelper.mAppliedPredictionX, .01f);
+
+        // Taking it back leaves the image where the pointer is, not short of it
+        mHelper.onTouch(null, MotionEvent.obtain(0, 40, MotionEvent.ACTION_CANCEL, 30, 0, 0));
+        assertEquals(30f, pan[0], .01f);
+        assertEquals(0f, mHelper.mAppliedPredictionX);
+    }
+
+    public void testSetTouchPredictorNull() {
+        mHelper.setTouchPredictor(new PinchToZoomTouchPredictor(16, 100),
+                createPredictedPanListener(new float[2], Float.MAX_VALUE));
+        mHelper.setTouchPredictor(null, null);
+        assertNull(mHelper.mTouchPredictor);
+        assertNull(mHelper.mOnPredictedPanListener);
+    }
+
+    /**
+     * Create a listener that adds predicted pans to pan, moving no further right than maxX.
+     */
+    private static PinchToZoomTouchHelper.OnPinchToZoomPredictedPanListener
+            createPredictedPanListener(final float[] pan, final float maxX) {
+        return new PinchToZoomTouchHelper.OnPinchToZoomPredictedPanListener() {
+            final PointF mApplied = new PointF();
+
+            @Override
+            public PointF onPredictedPan(float dx, float dy) {
+                float x = Math.min(pan[0] + dx, maxX);
+                mApplied.set(x - pan[0], dy);
+                pan[0] = x;
+                pan[1] += dy;
+                return mApplied;
+            }
+        };
+    }
+
+    public void testOnTouchResamplesMoves() {
+        final float[] pan = new float[2];
+        EmptyTouchHelperListener listener = new EmptyTouchHelperListener() {
+            @Override
+            public void onPan(float dx, float dy) {
+                pan[0] += dx;
+                pan[1]++;
+            }
+        };
+        mHelper.mOnPinchToZoomTouchListener = listener;
+        mHelper.setInputResampler(new PinchToZoomInputResampler(listener) {
+            @Override
+            protected void addToFrameDriver() {
+            }
+
+            @Override
+            protected void removeFromFrameDriver() {
+            }
+        });
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 1000, MotionEvent.ACTION_MOVE, 10, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 1004, MotionEvent.ACTION_MOVE, 20, 0, 0));
+        assertEquals(0f, pan[1]);
+
+        mHelper.mInputResampler.doFrame(2000000000L);
+        assertEquals(20f, pan[0]);
+        assertEquals(1f, pan[1]);
+
+        // Lifting the pointer passes on anything still pending
+        mHelper.onTouch(null, MotionEvent.obtain(0, 3000, MotionEvent.ACTION_MOVE, 25, 0, 0));
+        mHelper.onTouch(null, MotionEvent.obtain(0, 3000, MotionEvent.ACTION_UP, 25, 0, 0));
+        assertEquals(25f, pan[0]);
+        assertEquals(2f, pan[1]);
+    }
+
+    public void testProcessMotionEventActionUpAfterPinch() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final View.OnClickListener listener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                latch.countDown();
+            }
+        };
+        mHelper.setOnClickListener(listener);
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_DOWN, 0, 0));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 0, 0, 100, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_POINTER_UP
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 0, 0, 100, 100));
+        mHelper.onTouch(null, obtain(MotionEvent.ACTION_UP, 0, 0));
+        latch.await(100, TimeUnit.MILLISECONDS);
+
+        assertEquals("PinchToZoomTouchHelper.processMotionEventActionUp() should not call " +
+                "performUserTap() after a multi-touch gesture.", 1, latch.getCount());
+    }
+
     public void testProcessMotionEventPointerUp() {
         mHelper.mTouchMode = PinchToZoomTouchHelper.STATE_ZOOM;
-        mHelper.processMotionEventPointerUp(null);
-        assertEquals(PinchToZoomTouchHelper.STATE_NONE, mHelper.mTouchMode);
+        mHelper.mGestureTracker.mPointerCount = 1;
+        mHelper.processMotionEventPointerUp();
+        assertEquals(PinchToZoomTouchHelper.STATE_PAN, mHelper.mTouchMode);
+    }
+
+    public void testProcessMotionEventPointerUpPointersRemaining() {
+        mHelper.mTouchMode = PinchToZoomTouchHelper.STATE_ZOOM;
+        mHelper.mGestureTracker.mPointerCount = 2;
+        mHelper.processMotionEventPointerUp();
+        assertEquals(PinchToZoomTouchHelper.STATE_ZOOM, mHelper.mTouchMode);
     }
 
     public void testPerformUserTap() throws InterruptedException {
@@ -492,16 +673,17 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
                 "listener is null", 1, latch.getCount());
     }
 
-    public void testResetFirstTouch() {
-        mHelper.mFirstTouch = new PointF(5, 5);
+    public void testResetGestureTracker() {
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 5, 5, 0));
         mHelper.reset();
-        assertNull(mHelper.mFirstTouch);
+        assertEquals(0, mHelper.mGestureTracker.mPointerCount);
     }
 
-    public void testResetLastTouch() {
-        mHelper.mFirstTouch = new PointF(4, 4);
+    public void testResetVelocityTracker() {
+        mHelper.onTouch(null, MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 5, 5, 0));
+        assertNotNull(mHelper.mVelocityTracker);
         mHelper.reset();
-        assertNull(mHelper.mLastTouch);
+        assertNull(mHelper.mVelocityTracker);
     }
 
     public void testResetTouchMode() {
@@ -548,60 +730,61 @@ public class PinchToZoomTouchHelperTest extends AndroidTestCase {
         }
     }
 
-    public void testOnSaveInstanceStatePanThreshold() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.mPanThreshold = 5;
-        mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mPanThreshold, state.panThreshold);
+    static MotionEvent obtain(int action, float... coords) {
+        int count = coords.length / 2;
+        MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[count];
+        MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[count];
+        for (int i = 0; i < count; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            pointerCoords[i] = new MotionEvent.PointerCoords();
+            pointerCoords[i].x = coords[i * 2];
+            pointerCoords[i].y = coords[i * 2 + 1];
+        }
+        return MotionEvent.obtain(0, 0, action, count, properties, pointerCoords, 0, 0, 1, 1, 0,
+                0, 0, 0);
     }
 
-    public void testOnSaveInstanceStateTouchMode() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.mTouchMode = PinchToZoomTouchHelper.STATE_ZOOM;
-        mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mTouchMode, state.touchMode);
-    }
+    /**
+     * A listener that ignores every callback, so tests only override the ones they check.
+     */
+    static class EmptyTouchHelperListener
+            implements PinchToZoomTouchHelper.OnPinchToZoomTouchListener {
+        @Override
+        public void onPinchToZoom(float desiredScaleFactor, float focusX, float focusY) {
 
-    public void testOnSaveInstanceStateFirstTouch() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.mFirstTouch = new PointF(1f, 2f);
-        mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mFirstTouch, state.firstTouch);
-    }
+        }
 
-    public void testOnSaveInstanceStateLastTouch() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        mHelper.mLastTouch = new PointF(1f, 2f);
-        mHelper.onSaveInstanceState(state);
-        assertEquals(mHelper.mLastTouch, state.lastTouch);
-    }
+        @Override
+        public void onPan(float dx, float dy) {
 
-    public void testOnRestoreInstanceStatePanThreshold() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.panThreshold = 23;
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.panThreshold, mHelper.mPanThreshold);
-    }
+        }
 
-    public void testOnRestoreInstanceStateTouchMode() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.touchMode = PinchToZoomTouchHelper.STATE_PAN;
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.touchMode, mHelper.mTouchMode);
-    }
+        @Override
+        public void onPinchToZoomAndPan(float desiredScaleFactor, float focusX, float focusY,
+                                        float dx, float dy) {
 
-    public void testOnRestoreInstanceStateFirstTouch() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.firstTouch = new PointF(1, 2);
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.firstTouch, mHelper.mFirstTouch);
-    }
+        }
 
-    public void testOnRestoreInstanceStateLastTouch() {
-        PinchToZoomSavedState state = new PinchToZoomSavedState(new Bundle());
-        state.lastTouch = new PointF(1, 2);
-        mHelper.onRestoreInstanceState(state);
-        assertEquals(state.lastTouch, mHelper.mLastTouch);
+        @Override
+        public void onGestureStart() {
+
+        }
+
+        @Override
+        public void onPinchStart() {
+
+        }
+
+        @Override
+        public void onPinchEnd() {
+
+        }
+
+        @Override
+        public void onFling(float velocityX, float velocityY) {
+
+        }
     }
 }
-
@@ -0,0 +1,120 @@
+package com.jameskelso.android.widget;
+
+import android.test.AndroidTestCase;
+
+public class PinchToZoomTouchPredictorTest extends AndroidTestCase {
+    private PinchToZoomTouchPredictor mPredictor;
+    private final float[] mMetrics = new float[3];
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mMetrics[0] = 0;
+        mMetrics[1] = 0;
+        mMetrics[2] = 0;
+        mPredictor = new PinchToZoomTouchPredictor(16, 100);
+        mPredictor.setListener(new PinchToZoomImageView.OnTouchPredictionListener() {
+            @Override
+            public void onTouchPrediction(float errorPixels, float latencySavedMillis) {
+                mMetrics[0] = errorPixels;
+                mMetrics[1] = latencySavedMillis;
+                mMetrics[2]++;
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mPredictor = null;
+        super.tearDown();
+    }
+
+    public void testConstructorInvalidPredictionTime() {
+        try {
+            new PinchToZoomTouchPredictor(0, 100);
+            fail("PinchToZoomTouchPredictor should throw an IllegalArgumentException for a " +
+                    "prediction time less than 1");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testAddSampleTooFewSamples() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(8, 0, 8);
+        assertEquals(0f, mPredictor.mOffsetX);
+        assertEquals(0f, mPredictor.mOffsetY);
+    }
+
+    public void testAddSampleConstantVelocity() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(8, -4, 8);
+        mPredictor.addSample(16, -8, 16);
+        assertEquals(16f, mPredictor.mOffsetX, .01f);
+        assertEquals(-8f, mPredictor.mOffsetY, .01f);
+        assertEquals(16f, mPredictor.mLatencySaved, .01f);
+    }
+
+    public void testAddSampleCapsDistance() {
+        mPredictor = new PinchToZoomTouchPredictor(16, 10);
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(80, 0, 8);
+        mPredictor.addSample(160, 0, 16);
+        assertEquals(10f, mPredictor.mOffsetX, .01f);
+        assertEquals(1f, mPredictor.mLatencySaved, .01f);
+    }
+
+    public void testAddSampleSuddenStop() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(8, 0, 8);
+        mPredictor.addSample(16, 0, 16);
+        mPredictor.addSample(16, 0, 24);
+        assertEquals(0f, mPredictor.mOffsetX);
+        assertEquals(0f, mPredictor.mLatencySaved);
+    }
+
+    public void testAddSampleSlowingDown() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(16, 0, 8);
+        mPredictor.addSample(32, 0, 16);
+        mPredictor.addSample(36, 0, 24);
+        assertTrue(mPredictor.mOffsetX > 0);
+        assertTrue(mPredictor.mLatencySaved < 16f);
+    }
+
+    public void testAddSampleIgnoresOldSamples() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(8, 0, 8);
+        mPredictor.addSample(16, 0, 1000);
+        mPredictor.addSample(24, 0, 1008);
+        assertEquals(0f, mPredictor.mOffsetX);
+    }
+
+    public void testMeasurePrediction() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(8, 0, 8);
+        mPredictor.addSample(16, 0, 16);
+        assertEquals(0f, mMetrics[2]);
+
+        // Predicted 32 at 32, and the pointer is found at 28 half way between 24 and 40
+        mPredictor.addSample(20, 0, 24);
+        assertEquals(0f, mMetrics[2]);
+        mPredictor.addSample(36, 0, 40);
+        assertEquals(1f, mMetrics[2]);
+        assertEquals(4f, mMetrics[0], .01f);
+        assertEquals(16f, mMetrics[1], .01f);
+    }
+
+    public void testReset() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(8, 0, 8);
+        mPredictor.addSample(16, 0, 16);
+        mPredictor.reset();
+        assertEquals(0f, mPredictor.mOffsetX);
+        assertEquals(0, mPredictor.mSampleSize);
+        assertFalse(mPredictor.mPredictionPending);
+
+        mPredictor.addSample(24, 0, 24);
+        assertEquals(0f, mMetrics[2]);
+    }
+}
@@ -1,6 +1,7 @@
 package com.jameskelso.android.widget;
 
 import android.graphics.PointF;
+import android.graphics.RectF;
 import android.test.AndroidTestCase;
 
 import java.util.concurrent.CountDownLatch;
@@ -475,4 +476,47 @@ public class PinchToZoomTranslationHelperTest extends AndroidTestCase {
         float edge = mHelper.findSecondEdgeForTranslationCorrection(state);
         assertEquals(50f, edge);
     }
+
+    public void testGetAvailableTranslation() {
+        PinchToZoomMatrixState state = new PinchToZoomMatrixState();
+        state.viewWidth = 100;
+        state.viewHeight = 100;
+        state.scaledBitmapWidth = 300;
+        state.scaledBitmapHeight = 300;
+        state.translationX = -50;
+        state.translationY = -180;
+        RectF bounds = new RectF();
+        mHelper.getAvailableTranslation(state, bounds);
+        assertEquals(-150f, bounds.left);
+        assertEquals(50f, bounds.right);
+        assertEquals(-20f, bounds.top);
+        assertEquals(180f, bounds.bottom);
+    }
+
+    public void testGetAvailableTranslationPinnedAxis() {
+        PinchToZoomMatrixState state = new PinchToZoomMatrixState();
+        state.viewWidth = 100;
+        state.viewHeight = 100;
+        state.scaledBitmapWidth = 300;
+        state.scaledBitmapHeight = 50;
+        state.translationY = 25;
+        state.pinAxesSmallerThanViewBounds = true;
+        RectF bounds = new RectF();
+        mHelper.getAvailableTranslation(state, bounds);
+        assertEquals(-200f, bounds.left);
+        assertEquals(0f, bounds.right);
+        assertEquals(0f, bounds.top);
+        assertEquals(0f, bounds.bottom);
+    }
+
+    public void testIsPinnedAxis() {
+        PinchToZoomMatrixState.AxisState state = new PinchToZoomMatrixState.AxisState();
+        state.pinAxesSmallerThanViewBounds = true;
+        state.scaledBitmapDimensionSize = 250f;
+        state.viewDimensionSize = 250;
+        assertTrue(mHelper.isPinnedAxis(state));
+
+        state.scaledBitmapDimensionSize = 251f;
+        assertFalse(mHelper.isPinnedAxis(state));
+    }
 }
@@ -0,0 +1,222 @@
+package com.jameskelso.android.widget;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PinchToZoomViewportStoreTest extends AndroidTestCase {
+    private File mFile;
+    private PinchToZoomViewportStore mStore;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "viewport_store_test");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        mStore = new PinchToZoomViewportStore(mFile);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mStore.flush();
+        mStore = null;
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        mFile = null;
+        super.tearDown();
+    }
+
+    public void testConstructorIllegalMaxEntries() {
+        try {
+            new PinchToZoomViewportStore(mFile, 0);
+            fail("PinchToZoomViewportStore should not allow a maximum of 0 entries");
+        } catch (IllegalArgumentException e) {
+            // This is supposed to happen
+        }
+    }
+
+    public void testLoadedInBackground() {
+        mStore.flush();
+        assertTrue(mStore.isLoaded());
+    }
+
+    public void testPutBeforeLoaded() {
+        PinchToZoomViewportStore store = new PinchToZoomViewportStore(mFile) {
+            @Override
+            public void preload() {
+                // Leave the log unread
+            }
+        };
+        store.put("a", createViewport(1));
+        store.flush();
+        assertTrue(store.isLoaded());
+        assertEquals(1.5f, store.get("a").scaleFactor);
+    }
+
+    public void testPutBeforeAndAfterLoaded() {
+        PinchToZoomViewportStore store = new PinchToZoomViewportStore(mFile) {
+            @Override
+            public void preload() {
+                // Leave the log unread
+            }
+        };
+
+        // Hold the background thread so the first put is still queued once the log is read
+        final CountDownLatch latch = new CountDownLatch(1);
+        store.mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        store.put("a", createViewport(1));
+        store.ensureLoaded();
+        assertTrue(store.isLoaded());
+        store.put("a", createViewport(2));
+        latch.countDown();
+
+        // The later put wins, in memory and in the log
+        assertViewport(2, store.get("a"));
+        store.flush();
+        PinchToZoomViewportStore reopened = new PinchToZoomViewportStore(mFile);
+        assertViewport(2, reopened.get("a"));
+    }
+
+    public void testRunWhenLoaded() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mStore.runWhenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    public void testViewportPublicConstructor() {
+        PinchToZoomViewportStore.Viewport viewport =
+                new PinchToZoomViewportStore.Viewport(10, 20, 2f, 3f, 4f);
+        assertEquals(10, viewport.getSrcBitmapWidth());
+        assertEquals(20, viewport.getSrcBitmapHeight());
+        assertEquals(2f, viewport.getScaleFactor());
+        assertEquals(3f, viewport.getFocusX());
+        assertEquals(4f, viewport.getFocusY());
+    }
+
+    public void testGetMissing() {
+        assertNull(mStore.get("missing"));
+    }
+
+    public void testPutGet() {
+        PinchToZoomViewportStore.Viewport viewport = createViewport(1);
+        mStore.put("a", viewport);
+        assertSame(viewport, mStore.get("a"));
+    }
+
+    public void testRemove() {
+        mStore.put("a", createViewport(1));
+        mStore.remove("a");
+        assertNull(mStore.get("a"));
+    }
+
+    public void testPersisted() {
+        mStore.put("a", createViewport(1));
+        mStore.put("b", createViewport(2));
+        mStore.flush();
+
+        PinchToZoomViewportStore reopened = new PinchToZoomViewportStore(mFile);
+        assertViewport(1, reopened.get("a"));
+        assertViewport(2, reopened.get("b"));
+    }
+
+    public void testPersistedReplace() {
+        mStore.put("a", createViewport(1));
+        mStore.put("a", createViewport(2));
+        mStore.flush();
+
+        PinchToZoomViewportStore reopened = new PinchToZoomViewportStore(mFile);
+        assertViewport(2, reopened.get("a"));
+    }
+
+    public void testPersistedRemove() {
+        mStore.put("a", createViewport(1));
+        mStore.remove("a");
+        mStore.flush();
+
+        PinchToZoomViewportStore reopened = new PinchToZoomViewportStore(mFile);
+        assertNull(reopened.get("a"));
+    }
+
+    public void testMaxEntries() {
+        mStore = new PinchToZoomViewportStore(mFile, 2);
+        mStore.put("a", createViewport(1));
+        mStore.put("b", createViewport(2));
+        mStore.get("a");
+        mStore.put("c", createViewport(3));
+
+        assertNotNull(mStore.get("a"));
+        assertNull("The least recently used viewport should be forgotten", mStore.get("b"));
+        assertNotNull(mStore.get("c"));
+    }
+
+    public void testCompaction() {
+        for (int i = 0; i <= PinchToZoomViewportStore.COMPACTION_THRESHOLD; i++) {
+            mStore.put("a", createViewport(i));
+        }
+        mStore.flush();
+
+        assertEquals(1, mStore.mRecordCount);
+        PinchToZoomViewportStore reopened = new PinchToZoomViewportStore(mFile);
+        assertViewport(PinchToZoomViewportStore.COMPACTION_THRESHOLD, reopened.get("a"));
+        assertEquals(1, reopened.mRecordCount);
+    }
+
+    public void testTruncatedLog() throws IOException {
+        mStore.put("a", createViewport(1));
+        mStore.flush();
+
+        // Simulate a write that was interrupted part way through a record
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        out.write(new byte[]{PinchToZoomViewportStore.RECORD_PUT, 0, 1, 'b', 0});
+        out.close();
+
+        PinchToZoomViewportStore reopened = new PinchToZoomViewportStore(mFile);
+        assertViewport(1, reopened.get("a"));
+        assertNull(reopened.get("b"));
+
+        reopened.put("c", createViewport(3));
+        reopened.flush();
+
+        PinchToZoomViewportStore reopenedAgain = new PinchToZoomViewportStore(mFile);
+        assertViewport(1, reopenedAgain.get("a"));
+        assertViewport(3, reopenedAgain.get("c"));
+    }
+
+    private PinchToZoomViewportStore.Viewport createViewport(int value) {
+        PinchToZoomViewportStore.Viewport viewport = new PinchToZoomViewportStore.Viewport();
+        viewport.srcBitmapWidth = value;
+        viewport.srcBitmapHeight = value + 1;
+        viewport.scaleFactor = value + .5f;
+        viewport.focusX = value + 2;
+        viewport.focusY = value + 3;
+        return viewport;
+    }
+
+    private void assertViewport(int value, PinchToZoomViewportStore.Viewport viewport) {
+        assertNotNull(viewport);
+        assertEquals(value, viewport.srcBitmapWidth);
+        assertEquals(value + 1, viewport.srcBitmapHeight);
+        assertEquals(value + .5f, viewport.scaleFactor);
+        assertEquals(value + 2f, viewport.focusX);
+        assertEquals(value + 3f, viewport.focusY);
+    }
+}